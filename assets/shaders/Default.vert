@@ -5,6 +5,7 @@ in vec3 sl_position;
 in vec3 sl_normal;
 in vec2 sl_textcoord01;
 in vec3 sl_color;
+in mat4 sl_instanceModelMatrix;
 
 out vec3 position;
 out vec3 normal;
@@ -14,16 +15,24 @@ uniform mat4 sl_mvp;
 uniform mat4 sl_modelViewMatrix;
 uniform mat4 sl_normalMatrix;
 uniform mat4 sl_modelMatrix;
-uniform mat4 sl_viewMatrix;
-uniform mat4 sl_projectionMatrix;
+uniform bool sl_instanced;
+
+#include "SlothFrame.glsl"
 
 void main() {
 	vec4 pos = vec4(sl_position.xyz, 1.0f);
 
-	mat4 normalMatrix = transpose(inverse(sl_modelMatrix));
+	mat4 modelMatrix = sl_modelMatrix;
+	mat4 mvp = sl_mvp;
+	if (sl_instanced) {
+		modelMatrix = sl_instanceModelMatrix;
+		mvp = sl_projectionMatrix * sl_viewMatrix * modelMatrix;
+	}
+
+	mat4 normalMatrix = transpose(inverse(modelMatrix));
 	normal = normalize(normalMatrix * vec4(sl_normal, 0.0)).xyz;
-	position = (sl_modelMatrix * pos).xyz;
+	position = (modelMatrix * pos).xyz;
 	texturecoord = sl_textcoord01;
-	gl_Position = sl_mvp * pos;
+	gl_Position = mvp * pos;
 }
 
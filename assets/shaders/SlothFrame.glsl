@@ -0,0 +1,8 @@
+// Per frame uniforms of the engine, bound to the SlothFrame uniform buffer
+layout(std140) uniform SlothFrame {
+	mat4 sl_projectionMatrix;
+	mat4 sl_viewMatrix;
+	vec4 sl_cameraPosition;
+	vec4 sl_cameraDirection;
+	float sl_time;
+};
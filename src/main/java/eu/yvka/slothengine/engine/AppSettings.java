@@ -59,6 +59,18 @@ public class AppSettings  {
 	 */
 	public static final String InputProvider = "input provider type";
 
+	/**
+	 * Specifies the directory of the shader program binary cache,
+	 * the cache is disabled if the property is null.
+	 */
+	public static final String ShaderCacheDirectory = "shader_cache_directory";
+
+	/**
+	 * Specifies the maximal count of top level subtrees which are updated
+	 * by a single task of the parallel scene update.
+	 */
+	public static final String SceneUpdateSplitThreshold = "scene_update_split_threshold";
+
 
 	private Map<String, Object> properties;
 
@@ -81,6 +93,8 @@ public class AppSettings  {
 		set(GLMinorVersion, 0);
 		set(OffscreenRendering, false);
 		set(InputProvider, "GLFW");
+		set(ShaderCacheDirectory, "cache/shaders");
+		set(SceneUpdateSplitThreshold, 4);
 	}
 
 	/**
@@ -1,16 +1,23 @@
 package eu.yvka.slothengine.geometry;
 
 import eu.yvka.slothengine.geometry.VertexAttributePointer.Format;
+import eu.yvka.slothengine.math.BoundingBox;
+import eu.yvka.slothengine.math.BoundingSphere;
 import eu.yvka.slothengine.renderer.Renderer;
 import eu.yvka.slothengine.utils.HardwareObject;
+import org.joml.Vector3f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import eu.yvka.slothengine.utils.BufferUtils;
 import eu.yvka.slothengine.utils.TypeSize;
 
 import java.nio.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class Mesh extends HardwareObject {
@@ -124,11 +131,23 @@ public class Mesh extends HardwareObject {
 	}
 
 	private Map<VertexBuffer.Type, VertexBuffer> buffers = new HashMap<>();
+	private final List<VertexBuffer> bufferList = new ArrayList<>();
 	private Mode mode = Mode.TRIANGLES;
 	private float lineSize = 1.0f;
 	private float pointSize = 1.0f;
 	private int vertexCount = -1;
 	private int elementCount = -1;
+	private final BoundingBox boundingBox = new BoundingBox();
+	private final BoundingSphere boundingSphere = new BoundingSphere();
+	private final List<VertexArray> vertexArrays = new ArrayList<>(1);
+	private int layoutVersion = 0;
+	private int boundsRevision = 0;
+
+	/**
+	 * The lazily built hierarchy of the triangles, which is
+	 * discarded whenever the positions or the indices change.
+	 */
+	private CompletableFuture<TriangleHierarchy> triangleHierarchy;
 
 	public Mesh() {
 		super(Mesh.class);
@@ -177,7 +196,14 @@ public class Mesh extends HardwareObject {
 		vertexBuffer.getPointer().setComponents(components);
 		vertexBuffer.getPointer().setFormat(format);
 		vertexBuffer.setupData(buffer);
+		layoutVersion++;
 		calculateCounts();
+
+		if (type == VertexBuffer.Type.Vertex || type == VertexBuffer.Type.Interleaved) {
+			updateBounds();
+		} else if (type == VertexBuffer.Type.Index) {
+			invalidateTriangleHierarchy();
+		}
 	}
 
 	public VertexBuffer getBuffer(VertexBuffer.Type type) {
@@ -190,6 +216,7 @@ public class Mesh extends HardwareObject {
 		if (vertexBuffer == null) {
 			vertexBuffer = new VertexBuffer(type);
 			buffers.put(type, vertexBuffer);
+			bufferList.add(vertexBuffer);
 		}
 		return vertexBuffer;
 	}
@@ -209,7 +236,12 @@ public class Mesh extends HardwareObject {
 		pointer.setStride(stride);
 		pointer.setOffset(offset);
 
+		layoutVersion++;
 		calculateCounts();
+
+		if (type == VertexBuffer.Type.Vertex) {
+			updateBounds();
+		}
 	}
 
 
@@ -219,6 +251,7 @@ public class Mesh extends HardwareObject {
 
 	public void setMode(Mode mode) {
 		this.mode = mode;
+		invalidateTriangleHierarchy();
 	}
 
 	public float getLineWidth() {
@@ -245,8 +278,14 @@ public class Mesh extends HardwareObject {
 		return buffers.values().stream();
 	}
 
-	public Iterable<VertexBuffer> getBuffers() {
-		return buffers.values();
+	/**
+	 * Retrieves the buffers of this mesh in the order of their creation,
+	 * the list can be iterated by index without allocating an iterator.
+	 *
+	 * @return the buffers of this mesh.
+	 */
+	public List<VertexBuffer> getBuffers() {
+		return bufferList;
 	}
 
 	public int getElementCount() {
@@ -262,8 +301,145 @@ public class Mesh extends HardwareObject {
 	}
 
 
+	/**
+	 * Retrieves the vertex array of this mesh which matches the specified
+	 * attribute layout, the vertex array is created if it doesn't exist yet.
+	 *
+	 * @param attributeLayout the attribute layout of the shader which renders this mesh.
+	 * @return the vertex array of the layout.
+	 */
+	public VertexArray getVertexArray(long attributeLayout) {
+		for (int i = 0; i < vertexArrays.size(); i++) {
+			VertexArray vertexArray = vertexArrays.get(i);
+			if (vertexArray.getAttributeLayout() == attributeLayout) {
+				return vertexArray;
+			}
+		}
+
+		VertexArray vertexArray = new VertexArray(attributeLayout);
+		vertexArrays.add(vertexArray);
+		return vertexArray;
+	}
+
+	/**
+	 * Retrieves the version of the buffer layout of this mesh which
+	 * is incremented whenever a buffer or pointer is set. Vertex arrays
+	 * of an outdated version must be specified again.
+	 *
+	 * @return the layout version of this mesh.
+	 */
+	public int getLayoutVersion() {
+		return layoutVersion;
+	}
+
+	/**
+	 * Retrieves the axis aligned bounding box of this mesh in model space.
+	 *
+	 * @return the bounding box of this mesh.
+	 */
+	public BoundingBox getBoundingBox() {
+		return boundingBox;
+	}
+
+	/**
+	 * Retrieves the bounding sphere of this mesh in model space.
+	 *
+	 * @return the bounding sphere of this mesh.
+	 */
+	public BoundingSphere getBoundingSphere() {
+		return boundingSphere;
+	}
+
+	/**
+	 * Retrieves the revision of the bounding volumes of this mesh which is
+	 * incremented by every <code>updateBounds</code>. Geometries compare it in
+	 * order to detect that their world bounds are outdated.
+	 *
+	 * @return the bounds revision of this mesh.
+	 */
+	public int getBoundsRevision() {
+		return boundsRevision;
+	}
+
+	/**
+	 * Recomputes the bounding volumes of this mesh from its vertex positions,
+	 * must be called if the content of the vertex buffer was modified.
+	 *
+	 * The bounds are updated automatically by <code>setBuffer</code> and <code>setPointer</code>.
+	 */
+	public void updateBounds() {
+		boundsRevision++;
+		invalidateTriangleHierarchy();
+		boundingBox.setEmpty();
+		boundingSphere.setEmpty();
+
+		VertexBuffer vertexBuffer = getBuffer(VertexBuffer.Type.Vertex);
+		if (vertexBuffer == null) return;
+
+		VertexBuffer interleavedBuffer = getBuffer(VertexBuffer.Type.Interleaved);
+		VertexAttributePointer pointer = vertexBuffer.getPointer();
+		Buffer data = interleavedBuffer != null ? interleavedBuffer.getBuffer() : vertexBuffer.getBuffer();
+
+		if (!(data instanceof FloatBuffer) || pointer.getFormat() != Format.Float) {
+			Log.warn("Bounds can only be computed of float vertex positions, the mesh is treated as infinite");
+			boundingBox.setInfinite();
+			return;
+		}
+
+		FloatBuffer positions = (FloatBuffer) data;
+		int components = Math.min(pointer.getComponents(), 3);
+		int stride = pointer.getStride() > 0 ? pointer.getStride() / TypeSize.FLOAT : pointer.getComponents();
+		int offset = (int) (pointer.getOffset() / TypeSize.FLOAT);
+		int limit = positions.limit();
+
+		if (components <= 0 || stride <= 0) return;
+
+		for (int i = offset; i + components <= limit; i += stride) {
+			boundingBox.merge(
+				positions.get(i),
+				components > 1 ? positions.get(i + 1) : 0.0f,
+				components > 2 ? positions.get(i + 2) : 0.0f
+			);
+		}
+
+		if (boundingBox.isEmpty()) return;
+
+		Vector3f center = boundingBox.getCenter(new Vector3f());
+		float radiusSquared = 0.0f;
+		for (int i = offset; i + components <= limit; i += stride) {
+			float dx = positions.get(i) - center.x;
+			float dy = (components > 1 ? positions.get(i + 1) : 0.0f) - center.y;
+			float dz = (components > 2 ? positions.get(i + 2) : 0.0f) - center.z;
+			radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+		}
+		boundingSphere.set(center, (float) Math.sqrt(radiusSquared));
+	}
+
+	/**
+	 * Requests the hierarchy of the triangles of this mesh, which is used to pick the
+	 * triangle under a ray. The hierarchy is built once on the common fork join pool
+	 * and shared by all geometries of this mesh until the positions or the indices change.
+	 *
+	 * @return the future of the hierarchy.
+	 */
+	public synchronized CompletableFuture<TriangleHierarchy> requestTriangleHierarchy() {
+		if (triangleHierarchy == null) {
+			triangleHierarchy = CompletableFuture.supplyAsync(() -> TriangleHierarchy.build(this), ForkJoinPool.commonPool());
+		}
+		return triangleHierarchy;
+	}
+
+	private synchronized void invalidateTriangleHierarchy() {
+		triangleHierarchy = null;
+	}
+
 	@Override
 	public void deleteObject(Renderer renderer) {
+		for (VertexArray vertexArray : vertexArrays) {
+			renderer.deleteVertexArray(vertexArray);
+		}
+		vertexArrays.clear();
+
 		for (VertexBuffer buffer : buffers.values()) {
 			renderer.deleteBuffer(buffer);
 			buffer.resetObject();
@@ -273,6 +449,9 @@ public class Mesh extends HardwareObject {
 
 	@Override
 	public void resetObject() {
+		for (VertexArray vertexArray : vertexArrays) {
+			vertexArray.resetObject();
+		}
 		enableUpdateRequired();
 	}
 
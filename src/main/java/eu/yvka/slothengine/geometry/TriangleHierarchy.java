@@ -0,0 +1,409 @@
+package eu.yvka.slothengine.geometry;
+
+import eu.yvka.slothengine.geometry.VertexAttributePointer.Format;
+import eu.yvka.slothengine.math.Ray;
+import eu.yvka.slothengine.utils.TypeSize;
+import org.joml.Vector3f;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over the triangles of a mesh in model space,
+ * which finds the triangle under a ray without testing every triangle.
+ *
+ * The positions are copied out of the vertex or interleaved buffer through the
+ * <code>VertexAttributePointer</code> of the vertices, so the hierarchy is immutable
+ * and could be shared by all geometries of the mesh and queried by several threads.
+ * The triangles are split at the median of their centroids along the longest axis
+ * until a leaf holds at most <code>MAX_LEAF_TRIANGLES</code> triangles.
+ */
+public class TriangleHierarchy {
+
+	private static final int MAX_LEAF_TRIANGLES = 4;
+	private static final int BOX_STRIDE = 6;
+	private static final float EPSILON = 1e-8f;
+
+	private final float[] positions;
+	private final int[] corners;
+	private final int triangleCount;
+
+	/**
+	 * The triangles in leaf order, each leaf references a range of this array.
+	 */
+	private final int[] order;
+	private final float[] bounds;
+
+	/**
+	 * Two values per node, an inner node stores the index of its right child and zero,
+	 * its left child follows directly. A leaf stores its first position in the
+	 * order and its count of triangles.
+	 */
+	private final int[] nodes;
+	private int nodeCount;
+
+	/**
+	 * The centroids of the triangles, only required while the hierarchy is built.
+	 */
+	private float[] centroids;
+
+	private TriangleHierarchy(float[] positions, int[] corners) {
+		this.positions = positions;
+		this.corners = corners;
+		this.triangleCount = corners.length / 3;
+		this.order = new int[triangleCount];
+		int capacity = Math.max(1, 2 * triangleCount - 1);
+		this.bounds = new float[capacity * BOX_STRIDE];
+		this.nodes = new int[capacity * 2];
+		this.centroids = new float[triangleCount * 3];
+	}
+
+	/**
+	 * Builds the hierarchy of the triangles of a mesh, meshes which aren't rendered
+	 * as triangles or which have no float positions result in an empty hierarchy.
+	 *
+	 * @param mesh the mesh.
+	 * @return the hierarchy of the triangles of the mesh.
+	 */
+	public static TriangleHierarchy build(Mesh mesh) {
+		float[] positions = readPositions(mesh);
+		int[] corners = readTriangles(mesh, positions.length / 3);
+		TriangleHierarchy hierarchy = new TriangleHierarchy(positions, corners);
+		hierarchy.build();
+		return hierarchy;
+	}
+
+	/**
+	 * @return the count of triangles.
+	 */
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+
+	/**
+	 * Retrieves a corner of a triangle.
+	 *
+	 * @param triangle the index of the triangle in the primitive order of the mesh.
+	 * @param corner the corner from 0 to 2.
+	 * @param dest the vector which receives the position of the corner.
+	 * @return the dest vector.
+	 */
+	public Vector3f getCorner(int triangle, int corner, Vector3f dest) {
+		int p = corners[triangle * 3 + corner] * 3;
+		return dest.set(positions[p], positions[p + 1], positions[p + 2]);
+	}
+
+	/**
+	 * Finds the nearest triangle which is hit by a ray in model space,
+	 * both sides of a triangle are hit.
+	 *
+	 * @param ray the ray in model space.
+	 * @param maxDistance the distance at which the ray ends.
+	 * @param hit receives the nearest hit.
+	 * @return true if the ray hit a triangle.
+	 */
+	public boolean intersect(Ray ray, float maxDistance, TriangleHit hit) {
+		hit.clear();
+		if (triangleCount == 0) return false;
+
+		float nearest = maxDistance;
+		int[] stack = new int[64];
+		int top = 0;
+		if (boxDistance(ray, 0, nearest) <= nearest) {
+			stack[top++] = 0;
+		}
+
+		while (top > 0) {
+			int node = stack[--top];
+			int count = nodes[node * 2 + 1];
+
+			if (count > 0) {
+				int first = nodes[node * 2];
+				for (int i = first; i < first + count; i++) {
+					float distance = intersectTriangle(ray, order[i], nearest, hit);
+					if (distance < nearest) {
+						nearest = distance;
+					}
+				}
+				continue;
+			}
+
+			int near = node + 1;
+			int far = nodes[node * 2];
+			float nearDistance = boxDistance(ray, near, nearest);
+			float farDistance = boxDistance(ray, far, nearest);
+			if (farDistance < nearDistance) {
+				int swap = near;
+				near = far;
+				far = swap;
+				float swapDistance = nearDistance;
+				nearDistance = farDistance;
+				farDistance = swapDistance;
+			}
+			if (top + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			// the nearer child is pushed last so that it is visited first
+			if (farDistance <= nearest) stack[top++] = far;
+			if (nearDistance <= nearest) stack[top++] = near;
+		}
+		return hit.isHit();
+	}
+
+	/**
+	 * Intersects a triangle by the algorithm of Möller and Trumbore,
+	 * "Fast, Minimum Storage Ray/Triangle Intersection", 1997.
+	 *
+	 * @return the distance of the hit or <code>Float.POSITIVE_INFINITY</code> on a miss.
+	 */
+	private float intersectTriangle(Ray ray, int triangle, float maxDistance, TriangleHit hit) {
+		int p0 = corners[triangle * 3] * 3;
+		int p1 = corners[triangle * 3 + 1] * 3;
+		int p2 = corners[triangle * 3 + 2] * 3;
+		Vector3f origin = ray.getOrigin();
+		Vector3f direction = ray.getDirection();
+
+		float e1x = positions[p1] - positions[p0], e1y = positions[p1 + 1] - positions[p0 + 1], e1z = positions[p1 + 2] - positions[p0 + 2];
+		float e2x = positions[p2] - positions[p0], e2y = positions[p2 + 1] - positions[p0 + 1], e2z = positions[p2 + 2] - positions[p0 + 2];
+
+		float px = direction.y * e2z - direction.z * e2y;
+		float py = direction.z * e2x - direction.x * e2z;
+		float pz = direction.x * e2y - direction.y * e2x;
+		float det = e1x * px + e1y * py + e1z * pz;
+		if (det > -EPSILON && det < EPSILON) return Float.POSITIVE_INFINITY;
+
+		float inverseDet = 1.0f / det;
+		float tx = origin.x - positions[p0], ty = origin.y - positions[p0 + 1], tz = origin.z - positions[p0 + 2];
+		float u = (tx * px + ty * py + tz * pz) * inverseDet;
+		if (u < 0.0f || u > 1.0f) return Float.POSITIVE_INFINITY;
+
+		float qx = ty * e1z - tz * e1y;
+		float qy = tz * e1x - tx * e1z;
+		float qz = tx * e1y - ty * e1x;
+		float v = (direction.x * qx + direction.y * qy + direction.z * qz) * inverseDet;
+		if (v < 0.0f || u + v > 1.0f) return Float.POSITIVE_INFINITY;
+
+		float distance = (e2x * qx + e2y * qy + e2z * qz) * inverseDet;
+		if (distance < 0.0f || distance > maxDistance) return Float.POSITIVE_INFINITY;
+
+		hit.set(triangle, u, v, distance);
+		return distance;
+	}
+
+	private float boxDistance(Ray ray, int node, float maxDistance) {
+		int o = node * BOX_STRIDE;
+		return ray.intersects(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], bounds[o + 4], bounds[o + 5], maxDistance);
+	}
+
+	/*
+	 * Build
+	 */
+
+	private void build() {
+		for (int t = 0; t < triangleCount; t++) {
+			order[t] = t;
+			for (int axis = 0; axis < 3; axis++) {
+				float sum = 0.0f;
+				for (int corner = 0; corner < 3; corner++) {
+					sum += positions[corners[t * 3 + corner] * 3 + axis];
+				}
+				centroids[t * 3 + axis] = sum / 3.0f;
+			}
+		}
+		if (triangleCount > 0) {
+			build(0, triangleCount);
+		}
+		centroids = null;
+	}
+
+	private int build(int from, int to) {
+		int node = nodeCount++;
+		computeBounds(node, from, to);
+
+		if (to - from <= MAX_LEAF_TRIANGLES) {
+			nodes[node * 2] = from;
+			nodes[node * 2 + 1] = to - from;
+			return node;
+		}
+
+		int o = node * BOX_STRIDE;
+		int axis = 0;
+		float extent = bounds[o + 3] - bounds[o];
+		if (bounds[o + 4] - bounds[o + 1] > extent) {
+			axis = 1;
+			extent = bounds[o + 4] - bounds[o + 1];
+		}
+		if (bounds[o + 5] - bounds[o + 2] > extent) {
+			axis = 2;
+		}
+
+		int middle = (from + to) >>> 1;
+		select(from, to - 1, middle, axis);
+
+		build(from, middle);
+		int right = build(middle, to);
+		nodes[node * 2] = right;
+		nodes[node * 2 + 1] = 0;
+		return node;
+	}
+
+	private void computeBounds(int node, int from, int to) {
+		int o = node * BOX_STRIDE;
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			int t = order[i];
+			for (int corner = 0; corner < 3; corner++) {
+				int p = corners[t * 3 + corner] * 3;
+				minX = Math.min(minX, positions[p]);
+				minY = Math.min(minY, positions[p + 1]);
+				minZ = Math.min(minZ, positions[p + 2]);
+				maxX = Math.max(maxX, positions[p]);
+				maxY = Math.max(maxY, positions[p + 1]);
+				maxZ = Math.max(maxZ, positions[p + 2]);
+			}
+		}
+		bounds[o] = minX;
+		bounds[o + 1] = minY;
+		bounds[o + 2] = minZ;
+		bounds[o + 3] = maxX;
+		bounds[o + 4] = maxY;
+		bounds[o + 5] = maxZ;
+	}
+
+	/**
+	 * Partially sorts the order by the centroids along an axis, so that the k-th
+	 * position holds the triangle which would be there after a full sort.
+	 */
+	private void select(int left, int right, int k, int axis) {
+		while (right > left) {
+			float pivot = centroids[order[(left + right) >>> 1] * 3 + axis];
+			int i = left, j = right;
+			while (i <= j) {
+				while (centroids[order[i] * 3 + axis] < pivot) i++;
+				while (centroids[order[j] * 3 + axis] > pivot) j--;
+				if (i <= j) {
+					int swap = order[i];
+					order[i++] = order[j];
+					order[j--] = swap;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Mesh access
+	 */
+
+	private static float[] readPositions(Mesh mesh) {
+		VertexBuffer vertexBuffer = mesh.getBuffer(VertexBuffer.Type.Vertex);
+		if (vertexBuffer == null) return new float[0];
+
+		VertexBuffer interleavedBuffer = mesh.getBuffer(VertexBuffer.Type.Interleaved);
+		VertexAttributePointer pointer = vertexBuffer.getPointer();
+		Buffer data = interleavedBuffer != null ? interleavedBuffer.getBuffer() : vertexBuffer.getBuffer();
+		if (!(data instanceof FloatBuffer) || pointer.getFormat() != Format.Float) {
+			return new float[0];
+		}
+
+		FloatBuffer buffer = (FloatBuffer) data;
+		int components = Math.min(pointer.getComponents(), 3);
+		int stride = pointer.getStride() > 0 ? pointer.getStride() / TypeSize.FLOAT : pointer.getComponents();
+		int offset = (int) (pointer.getOffset() / TypeSize.FLOAT);
+		int limit = buffer.limit();
+		if (components <= 0 || stride <= 0 || offset + components > limit) return new float[0];
+
+		int vertexCount = (limit - offset - components) / stride + 1;
+		float[] positions = new float[vertexCount * 3];
+		for (int v = 0; v < vertexCount; v++) {
+			int i = offset + v * stride;
+			positions[v * 3] = buffer.get(i);
+			positions[v * 3 + 1] = components > 1 ? buffer.get(i + 1) : 0.0f;
+			positions[v * 3 + 2] = components > 2 ? buffer.get(i + 2) : 0.0f;
+		}
+		return positions;
+	}
+
+	private static int[] readTriangles(Mesh mesh, int vertexCount) {
+		int[] elements = readElements(mesh, vertexCount);
+		int count = elements.length;
+
+		int triangles;
+		switch (mesh.getMode()) {
+			case TRIANGLES:
+				triangles = count / 3;
+				break;
+			case TRIANGLE_STRIP:
+			case TRIANGLE_FAN:
+				triangles = Math.max(0, count - 2);
+				break;
+			default:
+				return new int[0];
+		}
+
+		int[] corners = new int[triangles * 3];
+		int index = 0;
+		for (int t = 0; t < triangles; t++) {
+			int a, b, c;
+			if (mesh.getMode() == Mesh.Mode.TRIANGLES) {
+				a = elements[t * 3];
+				b = elements[t * 3 + 1];
+				c = elements[t * 3 + 2];
+			} else if (mesh.getMode() == Mesh.Mode.TRIANGLE_STRIP) {
+				// every second triangle of a strip has a flipped winding
+				a = elements[t + (t & 1)];
+				b = elements[t + 1 - (t & 1)];
+				c = elements[t + 2];
+			} else {
+				a = elements[0];
+				b = elements[t + 1];
+				c = elements[t + 2];
+			}
+			if (a >= vertexCount || b >= vertexCount || c >= vertexCount || a < 0 || b < 0 || c < 0) {
+				// keep the primitive order of the mesh, broken triangles become degenerated
+				a = b = c = 0;
+			}
+			corners[index++] = a;
+			corners[index++] = b;
+			corners[index++] = c;
+		}
+		return vertexCount > 0 ? corners : new int[0];
+	}
+
+	private static int[] readElements(Mesh mesh, int vertexCount) {
+		VertexBuffer indexBuffer = mesh.getBuffer(VertexBuffer.Type.Index);
+		if (indexBuffer == null) {
+			int[] elements = new int[vertexCount];
+			for (int i = 0; i < vertexCount; i++) {
+				elements[i] = i;
+			}
+			return elements;
+		}
+
+		Buffer data = indexBuffer.getBuffer();
+		int[] elements = new int[data.limit()];
+		for (int i = 0; i < elements.length; i++) {
+			if (data instanceof IntBuffer) {
+				elements[i] = ((IntBuffer) data).get(i);
+			} else if (data instanceof ShortBuffer) {
+				elements[i] = ((ShortBuffer) data).get(i) & 0xFFFF;
+			} else if (data instanceof ByteBuffer) {
+				elements[i] = ((ByteBuffer) data).get(i) & 0xFF;
+			} else {
+				return new int[0];
+			}
+		}
+		return elements;
+	}
+}
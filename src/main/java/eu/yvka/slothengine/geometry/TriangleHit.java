@@ -0,0 +1,104 @@
+package eu.yvka.slothengine.geometry;
+
+/**
+ * Result of a ray cast against the triangles of a mesh, which holds
+ * the index of the nearest hit triangle, the barycentric coordinates of
+ * the hit point inside of the triangle and the distance along the ray.
+ *
+ * The hit point is <code>(1 - u - v) * p0 + u * p1 + v * p2</code>
+ * where p0, p1 and p2 are the corners of the triangle.
+ */
+public class TriangleHit {
+
+	private int triangle = -1;
+	private float u;
+	private float v;
+	private float distance = Float.POSITIVE_INFINITY;
+
+	/**
+	 * Resets this hit to a miss.
+	 *
+	 * @return this hit in order to support method-chaining.
+	 */
+	public TriangleHit clear() {
+		triangle = -1;
+		u = v = 0.0f;
+		distance = Float.POSITIVE_INFINITY;
+		return this;
+	}
+
+	/**
+	 * Specifies the hit triangle.
+	 *
+	 * @param triangle the index of the triangle.
+	 * @param u the barycentric weight of the second corner.
+	 * @param v the barycentric weight of the third corner.
+	 * @param distance the distance along the ray.
+	 * @return this hit in order to support method-chaining.
+	 */
+	public TriangleHit set(int triangle, float u, float v, float distance) {
+		this.triangle = triangle;
+		this.u = u;
+		this.v = v;
+		this.distance = distance;
+		return this;
+	}
+
+	/**
+	 * Copies another hit.
+	 *
+	 * @param hit the hit to copy.
+	 * @return this hit in order to support method-chaining.
+	 */
+	public TriangleHit set(TriangleHit hit) {
+		return set(hit.triangle, hit.u, hit.v, hit.distance);
+	}
+
+	/**
+	 * @return true if a triangle was hit.
+	 */
+	public boolean isHit() {
+		return triangle >= 0;
+	}
+
+	/**
+	 * @return the index of the hit triangle in the primitive order of the mesh or -1 on a miss.
+	 */
+	public int getTriangle() {
+		return triangle;
+	}
+
+	/**
+	 * @return the barycentric weight of the second corner.
+	 */
+	public float getU() {
+		return u;
+	}
+
+	/**
+	 * @return the barycentric weight of the third corner.
+	 */
+	public float getV() {
+		return v;
+	}
+
+	/**
+	 * @return the barycentric weight of the first corner.
+	 */
+	public float getW() {
+		return 1.0f - u - v;
+	}
+
+	/**
+	 * @return the distance of the hit along the ray or <code>Float.POSITIVE_INFINITY</code> on a miss.
+	 */
+	public float getDistance() {
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		if (triangle < 0) return "TriangleHit[miss]";
+		return "TriangleHit[triangle=" + triangle + ", u=" + u + ", v=" + v + ", distance=" + distance + "]";
+	}
+}
@@ -0,0 +1,93 @@
+package eu.yvka.slothengine.geometry;
+
+import eu.yvka.slothengine.renderer.Renderer;
+import eu.yvka.slothengine.utils.HardwareObject;
+
+/**
+ * Abstraction of a vertex array object which captures the vertex attribute
+ * setup of a mesh for a specific attribute layout of a shader.
+ *
+ * Vertex arrays are created lazily by the renderer and owned by a mesh,
+ * a mesh holds one vertex array per distinct attribute layout it was rendered with.
+ */
+public class VertexArray extends HardwareObject {
+
+	/**
+	 * The attribute layout of the shaders which are compatible with this vertex array.
+	 */
+	private final long attributeLayout;
+
+	/**
+	 * The buffer layout version of the mesh at the time the
+	 * vertex array was specified.
+	 */
+	private int meshLayoutVersion = -1;
+
+	/**
+	 * The element array buffer which is bound to this vertex array.
+	 */
+	private int indexBufferId = 0;
+
+	/**
+	 * Creates a vertex array for the specified attribute layout.
+	 *
+	 * @param attributeLayout the attribute layout of the compatible shaders.
+	 */
+	public VertexArray(long attributeLayout) {
+		super(VertexArray.class);
+		this.attributeLayout = attributeLayout;
+	}
+
+	/**
+	 * @return the attribute layout of the shaders which are compatible with this vertex array.
+	 */
+	public long getAttributeLayout() {
+		return attributeLayout;
+	}
+
+	/**
+	 * @return the buffer layout version of the mesh which was captured by this vertex array.
+	 */
+	public int getMeshLayoutVersion() {
+		return meshLayoutVersion;
+	}
+
+	/**
+	 * Specifies the buffer layout version of the mesh which was captured by this vertex array.
+	 *
+	 * @param meshLayoutVersion the layout version of the mesh.
+	 */
+	public void setMeshLayoutVersion(int meshLayoutVersion) {
+		this.meshLayoutVersion = meshLayoutVersion;
+	}
+
+	/**
+	 * @return the id of the element array buffer which is bound to this vertex array.
+	 */
+	public int getIndexBufferId() {
+		return indexBufferId;
+	}
+
+	/**
+	 * Specifies the id of the element array buffer which is bound to this vertex array.
+	 *
+	 * @param indexBufferId the id of the element array buffer.
+	 */
+	public void setIndexBufferId(int indexBufferId) {
+		this.indexBufferId = indexBufferId;
+	}
+
+	@Override
+	public void deleteObject(Renderer renderer) {
+		renderer.deleteVertexArray(this);
+		resetObject();
+	}
+
+	@Override
+	public void resetObject() {
+		enableUpdateRequired();
+		meshLayoutVersion = -1;
+		indexBufferId = 0;
+		setId(UNSET_ID);
+	}
+}
@@ -20,7 +20,13 @@ public class VertexBuffer extends HardwareObject {
 		TextCoords05,
 		TextCoords06,
 		Color,
-		Interleaved, CpuOnly, Index
+		Interleaved, CpuOnly, Index,
+
+		/**
+		 * Per instance model matrices which are consumed by instanced draw calls,
+		 * each instance occupies 16 floats in column major order.
+		 */
+		InstanceModelMatrix
 	}
 
 	public enum Usage {
@@ -102,6 +108,12 @@ public class VertexBuffer extends HardwareObject {
      */
 	private VertexAttributePointer pointer;
 
+	/**
+	 * Byte offset of the current content in the buffer object,
+	 * streaming buffers move their content between several regions.
+	 */
+	private long streamOffset;
+
 
 	/**
 	 * Creates a vertex buffer of the specified type
@@ -206,6 +218,26 @@ public class VertexBuffer extends HardwareObject {
 		return pointer;
 	}
 
+	/**
+	 * Retrieves the byte offset of the current content in the buffer object on the GPU,
+	 * which is only different from zero for buffers with the usage <code>STREAM_DRAW</code>.
+	 *
+	 * @return the offset which is added to the offset of the vertex attribute pointer.
+	 */
+	public long getStreamOffset() {
+		return streamOffset;
+	}
+
+	/**
+	 * Specifies the byte offset of the current content in the buffer object on the GPU,
+	 * is called by the renderer after the upload of a streaming buffer.
+	 *
+	 * @param streamOffset the offset of the current content.
+	 */
+	public void setStreamOffset(long streamOffset) {
+		this.streamOffset = streamOffset;
+	}
+
 
 	@Override
 	public void deleteObject(Renderer renderer) {
@@ -216,6 +248,7 @@ public class VertexBuffer extends HardwareObject {
 	@Override
 	public void resetObject() {
 		enableUpdateRequired();
+		this.streamOffset = 0;
 		this.setId(UNSET_ID);
 	}
 }
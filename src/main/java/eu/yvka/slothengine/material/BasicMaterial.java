@@ -71,18 +71,28 @@ public class BasicMaterial implements Material {
 	 * Contains this and all other render passes which are responsible to
 	 * render a geometry.
 	 */
-	final List<Pass> renderPasses = new ArrayList<>();
+	final PassList renderPasses = new PassList();
 
 	/**
 	 * The Parameters which should be passed to shader uniform variables
 	 */
 	final Map<String, MaterialParameter> parameters = new HashMap<>();
 
+	/**
+	 * The Parameters in insertion order, allows an iteration without iterators.
+	 */
+	final List<MaterialParameter> parameterList = new ArrayList<>();
+
 	/**
 	 * The Texture Bindings
 	 */
 	final Map<String, TextureBinding> textures = new HashMap<>();
 
+	/**
+	 * The Texture Bindings in insertion order, allows an iteration without iterators.
+	 */
+	final List<TextureBinding> textureList = new ArrayList<>();
+
 	/**
 	 * Counter for already in used texture units.
 	 */
@@ -105,8 +115,16 @@ public class BasicMaterial implements Material {
 	 * as the first pass.
 	 */
 	public BasicMaterial(Shader shader) {
+		this(shader, Engine.getShader("Fallback"));
+	}
+
+	/**
+	 * Creates a basic material with a specified shader
+	 * and fallback shader as the first pass.
+	 */
+	public BasicMaterial(Shader shader, Shader fallbackShader) {
 		this.shader = shader;
-		fallbackShader = Engine.getShader("Fallback");
+		this.fallbackShader = fallbackShader;
 		name = shader.getShaderName();
 		renderPasses.add(this);
 	}
@@ -126,6 +144,11 @@ public class BasicMaterial implements Material {
 		return renderPasses;
 	}
 
+	@Override
+	public int getPassRevision() {
+		return renderPasses.getRevision();
+	}
+
 	@Override
 	public Pass createPass() {
 		Material newPass = new BasicMaterial(this.shader);
@@ -171,10 +194,21 @@ public class BasicMaterial implements Material {
 	}
 
 
+	@Override
+	public List<TextureBinding> getTextureBindingList() {
+		return textureList;
+	}
+
+	@Override
 	public Map<String,MaterialParameter> getMaterialParameters() {
 		return parameters;
 	}
 
+	@Override
+	public List<MaterialParameter> getMaterialParameterList() {
+		return parameterList;
+	}
+
 	@Override
 	public boolean isLightningEnabled() {
 		return receivesLights;
@@ -188,7 +222,12 @@ public class BasicMaterial implements Material {
 
 	@Override
 	public Pass setTexture(String name, Texture texture) {
-		textures.put(name, new TextureBinding(name, textureUnit, texture));
+		TextureBinding binding = new TextureBinding(name, textureUnit, texture);
+		TextureBinding previous = textures.put(name, binding);
+		if (previous != null) {
+			textureList.remove(previous);
+		}
+		textureList.add(binding);
 		setParameter(name, textureUnit++);
 		return this;
 	}
@@ -200,61 +239,61 @@ public class BasicMaterial implements Material {
 
 	@Override
 	public Pass setParameter(String name, float value) {
-		setParameterValue(name, value, ShaderVariable.VariableType.Float);
+		parameter(name).setFloats(ShaderVariable.VariableType.Float, value, 0, 0, 0);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, float v1, float v2) {
-		setParameterValue(name, new float[] {v1, v2}, ShaderVariable.VariableType.Float2);
+		parameter(name).setFloats(ShaderVariable.VariableType.Float2, v1, v2, 0, 0);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, float v1, float v2, float v3) {
-		setParameterValue(name, new float[] {v1, v2, v3}, ShaderVariable.VariableType.Float3);
+		parameter(name).setFloats(ShaderVariable.VariableType.Float3, v1, v2, v3, 0);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, float v1, float v2, float v3, float v4) {
-		setParameterValue(name, new float[] {v1, v2, v3, v4}, ShaderVariable.VariableType.Float4);
+		parameter(name).setFloats(ShaderVariable.VariableType.Float4, v1, v2, v3, v4);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, int value) {
-		setParameterValue(name,value, ShaderVariable.VariableType.Int);
+		parameter(name).setInts(ShaderVariable.VariableType.Int, value, 0, 0, 0);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, int v1, int v2) {
-		setParameterValue(name, new int[] {v1, v2}, ShaderVariable.VariableType.Int2);
+		parameter(name).setInts(ShaderVariable.VariableType.Int2, v1, v2, 0, 0);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, int v1, int v2, int v3) {
-		setParameterValue(name, new int[] {v1, v2, v3}, ShaderVariable.VariableType.Int3);
+		parameter(name).setInts(ShaderVariable.VariableType.Int3, v1, v2, v3, 0);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, int v1, int v2, int v3, int v4) {
-		setParameterValue(name, new int[] {v1, v2, v3, v4}, ShaderVariable.VariableType.Int4);
+		parameter(name).setInts(ShaderVariable.VariableType.Int4, v1, v2, v3, v4);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, Matrix4f matrix) {
-		setParameterValue(name, matrix, ShaderVariable.VariableType.Matrix4x4);
+		parameter(name).setMatrix(matrix);
 		return this;
 	}
 
 	@Override
 	public Pass setParameter(String name, Matrix3f matrix) {
-		setParameterValue(name, matrix, ShaderVariable.VariableType.Matrix3x3);
+		parameter(name).setMatrix(matrix);
 		return this;
 	}
 
@@ -351,14 +390,14 @@ public class BasicMaterial implements Material {
 		this.specular = specular;
 	}
 
-	private void setParameterValue(String name, Object value, ShaderVariable.VariableType type) {
+	private MaterialParameter parameter(String name) {
 		MaterialParameter param = parameters.get(name);
-		if (param != null) {
-			param.value = value;
-			param.type = type;
-		} else {
-			parameters.put(name, new MaterialParameter(name, value, type));
+		if (param == null) {
+			param = new MaterialParameter(name);
+			parameters.put(name, param);
+			parameterList.add(param);
 		}
+		return param;
 	}
 
 	@Override
@@ -393,5 +432,22 @@ public class BasicMaterial implements Material {
 		int result = 31 * name.hashCode();
 		return result;
 	}
-}
 
+	/**
+	 * List of the passes which counts its modifications, so that the retained
+	 * render list detects changed passes without a notification.
+	 */
+	static final class PassList extends ArrayList<Pass> {
+
+		int getRevision() {
+			return modCount;
+		}
+
+		@Override
+		public Pass set(int index, Pass pass) {
+			// a replaced pass is no structural modification of an ArrayList
+			modCount++;
+			return super.set(index, pass);
+		}
+	}
+}
@@ -75,6 +75,14 @@ public interface Material extends Pass {
      */
 	List<Pass> getPasses();
 
+	/**
+	 * Returns the revision of the pass list, which changes whenever
+	 * passes are added, removed or replaced.
+	 *
+	 * @return the revision of the pass list.
+	 */
+	int getPassRevision();
+
 	/**
 	 * Creates a new pass for
 	 * this Material.
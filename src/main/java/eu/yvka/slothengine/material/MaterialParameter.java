@@ -1,34 +1,242 @@
 package eu.yvka.slothengine.material;
 
 import eu.yvka.slothengine.shader.ShaderVariable;
+import eu.yvka.slothengine.shader.UniformHandle;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
 
+/**
+ * A named value of a material which is passed to
+ * the uniform with the same name.
+ *
+ * The value is kept in primitive slots and copies of matrices
+ * so that updating a parameter doesn't allocate any memory.
+ */
 public class MaterialParameter{
 
+	private static final ShaderVariable.VariableType[] FLOAT_TYPES = {
+		ShaderVariable.VariableType.Float,
+		ShaderVariable.VariableType.Float2,
+		ShaderVariable.VariableType.Float3,
+		ShaderVariable.VariableType.Float4
+	};
+
+	private static final ShaderVariable.VariableType[] INT_TYPES = {
+		ShaderVariable.VariableType.Int,
+		ShaderVariable.VariableType.Int2,
+		ShaderVariable.VariableType.Int3,
+		ShaderVariable.VariableType.Int4
+	};
+
 	protected String name;
-	protected Object value;
 	protected ShaderVariable.VariableType type;
+	private final UniformHandle handle;
 
-	MaterialParameter(String name, Object value, ShaderVariable.VariableType type ) {
+	private final float[] floatValue = new float[4];
+	private final int[] intValue = new int[4];
+	private Matrix4f matrix4Value;
+	private Matrix3f matrix3Value;
+
+	MaterialParameter(String name) {
 		this.name = name;
-		this.value = value;
-		this.type = type;
+		this.handle = UniformHandle.of(name);
 	}
 
 	public String getName() {
 		return this.name;
 	}
 
+	/**
+	 * @return the handle of the uniform which receives this parameter.
+	 */
+	public UniformHandle getHandle() {
+		return handle;
+	}
+
+	public ShaderVariable.VariableType getType() {
+		return type;
+	}
+
+	/**
+	 * Retrieves a component of a float or float vector parameter.
+	 *
+	 * @param index the index of the component between 0 and 3.
+	 * @return the value of the component.
+	 */
+	public float getFloat(int index) {
+		return floatValue[index];
+	}
+
+	/**
+	 * Retrieves a component of an int or int vector parameter.
+	 *
+	 * @param index the index of the component between 0 and 3.
+	 * @return the value of the component.
+	 */
+	public int getInt(int index) {
+		return intValue[index];
+	}
+
+	/**
+	 * @return the value of a 4x4 matrix parameter.
+	 */
+	public Matrix4f getMatrix4f() {
+		return matrix4Value;
+	}
+
+	/**
+	 * @return the value of a 3x3 matrix parameter.
+	 */
+	public Matrix3f getMatrix3f() {
+		return matrix3Value;
+	}
+
+	public void setValue(float value) {
+		setFloats(ShaderVariable.VariableType.Float, value, 0, 0, 0);
+	}
+
+	public void setValue(float v1, float v2) {
+		setFloats(ShaderVariable.VariableType.Float2, v1, v2, 0, 0);
+	}
+
+	public void setValue(float v1, float v2, float v3) {
+		setFloats(ShaderVariable.VariableType.Float3, v1, v2, v3, 0);
+	}
+
+	public void setValue(float v1, float v2, float v3, float v4) {
+		setFloats(ShaderVariable.VariableType.Float4, v1, v2, v3, v4);
+	}
+
+	public void setValue(int value) {
+		setInts(ShaderVariable.VariableType.Int, value, 0, 0, 0);
+	}
+
+	public void setValue(int v1, int v2) {
+		setInts(ShaderVariable.VariableType.Int2, v1, v2, 0, 0);
+	}
+
+	public void setValue(int v1, int v2, int v3) {
+		setInts(ShaderVariable.VariableType.Int3, v1, v2, v3, 0);
+	}
+
+	public void setValue(int v1, int v2, int v3, int v4) {
+		setInts(ShaderVariable.VariableType.Int4, v1, v2, v3, v4);
+	}
+
+	public void setValue(Vector3f value) {
+		setValue(value.x, value.y, value.z);
+	}
+
+	public void setValue(Vector4f value) {
+		setValue(value.x, value.y, value.z, value.w);
+	}
+
+	public void setValue(Matrix4f value) {
+		setMatrix(value);
+	}
+
+	public void setValue(Matrix3f value) {
+		setMatrix(value);
+	}
+
+	/**
+	 * Retrieves the value of this parameter as an object, a copy
+	 * is created by every call.
+	 *
+	 * @return the value as <code>Float</code>, <code>Integer</code>, a JOML vector or matrix or an int array.
+	 * @deprecated allocates, use the typed getters instead.
+	 */
+	@Deprecated
 	public Object getValue() {
-		return value;
+		if (type == null) return null;
+		switch (type) {
+			case Float: return floatValue[0];
+			case Float2: return new Vector2f(floatValue[0], floatValue[1]);
+			case Float3: return new Vector3f(floatValue[0], floatValue[1], floatValue[2]);
+			case Float4: return new Vector4f(floatValue[0], floatValue[1], floatValue[2], floatValue[3]);
+			case Int: return intValue[0];
+			case Int2: return new int[] { intValue[0], intValue[1] };
+			case Int3: return new int[] { intValue[0], intValue[1], intValue[2] };
+			case Int4: return intValue.clone();
+			case Matrix4x4: return new Matrix4f(matrix4Value);
+			case Matrix3x3: return new Matrix3f(matrix3Value);
+			default: return null;
+		}
 	}
 
+	/**
+	 * Specifies the value of this parameter by an object.
+	 *
+	 * @param value a <code>Number</code>, <code>Boolean</code>, JOML vector or matrix, or a float or int array with up to 4 elements.
+	 * @throws IllegalArgumentException if the type of the value isn't supported.
+	 * @deprecated boxes its value, use the typed setters instead.
+	 */
+	@Deprecated
 	public void setValue(Object value) {
-		this.value = value;
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			setValue(((Number) value).intValue());
+		} else if (value instanceof Number) {
+			setValue(((Number) value).floatValue());
+		} else if (value instanceof Boolean) {
+			setValue((Boolean) value ? 1 : 0);
+		} else if (value instanceof Vector2f) {
+			setValue(((Vector2f) value).x, ((Vector2f) value).y);
+		} else if (value instanceof Vector3f) {
+			setValue((Vector3f) value);
+		} else if (value instanceof Vector4f) {
+			setValue((Vector4f) value);
+		} else if (value instanceof Matrix4f) {
+			setValue((Matrix4f) value);
+		} else if (value instanceof Matrix3f) {
+			setValue((Matrix3f) value);
+		} else if (value instanceof float[] && ((float[]) value).length >= 1 && ((float[]) value).length <= 4) {
+			float[] v = (float[]) value;
+			setFloats(FLOAT_TYPES[v.length - 1], v[0], v.length > 1 ? v[1] : 0, v.length > 2 ? v[2] : 0, v.length > 3 ? v[3] : 0);
+		} else if (value instanceof int[] && ((int[]) value).length >= 1 && ((int[]) value).length <= 4) {
+			int[] v = (int[]) value;
+			setInts(INT_TYPES[v.length - 1], v[0], v.length > 1 ? v[1] : 0, v.length > 2 ? v[2] : 0, v.length > 3 ? v[3] : 0);
+		} else {
+			throw new IllegalArgumentException("Unsupported value of the material parameter " + name + ": " + value);
+		}
 	}
 
-	public ShaderVariable.VariableType getType() {
-		return type;
+	void setFloats(ShaderVariable.VariableType type, float v1, float v2, float v3, float v4) {
+		floatValue[0] = v1;
+		floatValue[1] = v2;
+		floatValue[2] = v3;
+		floatValue[3] = v4;
+		this.type = type;
 	}
 
-}
+	void setInts(ShaderVariable.VariableType type, int v1, int v2, int v3, int v4) {
+		intValue[0] = v1;
+		intValue[1] = v2;
+		intValue[2] = v3;
+		intValue[3] = v4;
+		this.type = type;
+	}
 
+	void setMatrix(Matrix4f matrix) {
+		if (matrix4Value == null) {
+			matrix4Value = new Matrix4f();
+		}
+		matrix4Value.set(matrix);
+		this.type = ShaderVariable.VariableType.Matrix4x4;
+	}
+
+	void setMatrix(Matrix3f matrix) {
+		if (matrix3Value == null) {
+			matrix3Value = new Matrix3f();
+		}
+		matrix3Value.set(matrix);
+		this.type = ShaderVariable.VariableType.Matrix3x3;
+	}
+
+	@Override
+	public String toString() {
+		return "MaterialParameter{name='" + name + "', type=" + type + "}";
+	}
+}
@@ -9,6 +9,7 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -26,6 +27,11 @@ public interface Pass {
 	 * context of Passes/Materials. Or the method can
 	 * be used to create a FrameBuffer for Deferred rendering.
 	 *
+	 * The method is called on the render thread right before the draw calls
+	 * of the pass are replayed, the draw calls themselves were already recorded.
+	 * Therefore only the parameters and uniforms of the shader could be changed here,
+	 * they are applied to the shader after this call.
+	 *
 	 * @param previousPass the render pass which was previously used to render a geometry or null if this
 	 *                     the first render pass for the actually rendered geometry.
      */
@@ -36,6 +42,9 @@ public interface Pass {
 	 * provides the possibility to manipulate
 	 * the next rendering pass.
 	 *
+	 * The method is called on the render thread right after the draw calls
+	 * of the pass were replayed and before the next pass is prepared.
+	 *
 	 * @param nextPass the next rendering pass or null if this was the final rendering pass of geometry.
 	 *
 	 */
@@ -66,6 +75,14 @@ public interface Pass {
      */
 	Map<String, TextureBinding> getTextures();
 
+	/**
+	 * Returns the texture bindings of this pass as list,
+	 * which can be iterated without the allocation of an iterator.
+	 *
+	 * @return the list of texture bindings.
+	 */
+	List<TextureBinding> getTextureBindingList();
+
 	/**
 	 * Returns the parameters of this material
 	 * contains mainly the uniforms which should by
@@ -75,6 +92,14 @@ public interface Pass {
      */
 	Map<String, MaterialParameter> getMaterialParameters();
 
+	/**
+	 * Returns the parameters of this material as list,
+	 * which can be iterated without the allocation of an iterator.
+	 *
+	 * @return the list of material parameters.
+	 */
+	List<MaterialParameter> getMaterialParameterList();
+
 
 	/**
 	 * Determines if this material should be affected
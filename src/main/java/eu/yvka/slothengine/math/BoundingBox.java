@@ -0,0 +1,214 @@
+package eu.yvka.slothengine.math;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Axis aligned bounding box which is described by
+ * its minimum and maximum corner.
+ *
+ * A box is empty if one component of the minimum
+ * is greater than the corresponding component of the maximum,
+ * which is the initial state of a new box.
+ */
+public class BoundingBox {
+
+	private final Vector3f min = new Vector3f();
+	private final Vector3f max = new Vector3f();
+	private boolean infinite = false;
+
+	/**
+	 * Creates an empty bounding box.
+	 */
+	public BoundingBox() {
+		setEmpty();
+	}
+
+	/**
+	 * Creates a bounding box of the specified corners.
+	 *
+	 * @param min the minimum corner.
+	 * @param max the maximum corner.
+	 */
+	public BoundingBox(Vector3f min, Vector3f max) {
+		set(min, max);
+	}
+
+	/**
+	 * @return the minimum corner of this box.
+	 */
+	public Vector3f getMin() {
+		return min;
+	}
+
+	/**
+	 * @return the maximum corner of this box.
+	 */
+	public Vector3f getMax() {
+		return max;
+	}
+
+	/**
+	 * Specifies the corners of this box.
+	 *
+	 * @param min the minimum corner.
+	 * @param max the maximum corner.
+	 * @return this box in order to support method-chaining.
+	 */
+	public BoundingBox set(Vector3f min, Vector3f max) {
+		this.min.set(min);
+		this.max.set(max);
+		this.infinite = false;
+		return this;
+	}
+
+	/**
+	 * Copies the specified box into this box.
+	 *
+	 * @param box the box to copy.
+	 * @return this box in order to support method-chaining.
+	 */
+	public BoundingBox set(BoundingBox box) {
+		this.min.set(box.min);
+		this.max.set(box.max);
+		this.infinite = box.infinite;
+		return this;
+	}
+
+	/**
+	 * Resets this box to an empty box which contains nothing.
+	 *
+	 * @return this box in order to support method-chaining.
+	 */
+	public BoundingBox setEmpty() {
+		min.set(Float.POSITIVE_INFINITY);
+		max.set(Float.NEGATIVE_INFINITY);
+		infinite = false;
+		return this;
+	}
+
+	/**
+	 * Marks this box as infinite, an infinite box contains everything
+	 * and is used if the extent of an object is unknown.
+	 *
+	 * @return this box in order to support method-chaining.
+	 */
+	public BoundingBox setInfinite() {
+		min.set(Float.NEGATIVE_INFINITY);
+		max.set(Float.POSITIVE_INFINITY);
+		infinite = true;
+		return this;
+	}
+
+	/**
+	 * @return true if this box doesn't contain anything.
+	 */
+	public boolean isEmpty() {
+		return !infinite && (min.x > max.x || min.y > max.y || min.z > max.z);
+	}
+
+	/**
+	 * @return true if this box contains everything.
+	 */
+	public boolean isInfinite() {
+		return infinite;
+	}
+
+	/**
+	 * Enlarges this box so that it contains the specified point.
+	 *
+	 * @param x the x coordinate of the point.
+	 * @param y the y coordinate of the point.
+	 * @param z the z coordinate of the point.
+	 * @return this box in order to support method-chaining.
+	 */
+	public BoundingBox merge(float x, float y, float z) {
+		if (infinite) return this;
+		min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+		max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+		return this;
+	}
+
+	/**
+	 * Enlarges this box so that it contains the specified box.
+	 *
+	 * @param box the box which should be contained by this box.
+	 * @return this box in order to support method-chaining.
+	 */
+	public BoundingBox merge(BoundingBox box) {
+		if (infinite || box.isEmpty()) return this;
+		if (box.infinite) return setInfinite();
+		min.set(Math.min(min.x, box.min.x), Math.min(min.y, box.min.y), Math.min(min.z, box.min.z));
+		max.set(Math.max(max.x, box.max.x), Math.max(max.y, box.max.y), Math.max(max.z, box.max.z));
+		return this;
+	}
+
+	/**
+	 * Computes the center of this box.
+	 *
+	 * @param dest the vector which receives the center.
+	 * @return the dest vector.
+	 */
+	public Vector3f getCenter(Vector3f dest) {
+		return dest.set(
+			(min.x + max.x) * 0.5f,
+			(min.y + max.y) * 0.5f,
+			(min.z + max.z) * 0.5f
+		);
+	}
+
+	/**
+	 * Transforms this box by the specified affine matrix and stores the
+	 * axis aligned box of the transformed box in dest.
+	 *
+	 * Uses the method of James Arvo, "Transforming Axis-Aligned Bounding Boxes", Graphics Gems 1990,
+	 * which requires no corner transformations.
+	 *
+	 * @param matrix the affine transformation.
+	 * @param scratch an array with at least 16 elements which is used as scratch space.
+	 * @param dest the box which receives the result, may be this box.
+	 * @return the dest box.
+	 */
+	public BoundingBox transform(Matrix4f matrix, float[] scratch, BoundingBox dest) {
+		if (isEmpty()) return dest.setEmpty();
+		if (infinite) return dest.setInfinite();
+
+		// column major: element of row r and column c is stored at c * 4 + r
+		matrix.get(scratch, 0);
+
+		float minX = scratch[12], maxX = scratch[12];
+		float minY = scratch[13], maxY = scratch[13];
+		float minZ = scratch[14], maxZ = scratch[14];
+
+		for (int c = 0; c < 3; c++) {
+			float lo = c == 0 ? min.x : c == 1 ? min.y : min.z;
+			float hi = c == 0 ? max.x : c == 1 ? max.y : max.z;
+
+			float a = scratch[c * 4] * lo, b = scratch[c * 4] * hi;
+			minX += Math.min(a, b);
+			maxX += Math.max(a, b);
+
+			a = scratch[c * 4 + 1] * lo;
+			b = scratch[c * 4 + 1] * hi;
+			minY += Math.min(a, b);
+			maxY += Math.max(a, b);
+
+			a = scratch[c * 4 + 2] * lo;
+			b = scratch[c * 4 + 2] * hi;
+			minZ += Math.min(a, b);
+			maxZ += Math.max(a, b);
+		}
+
+		dest.min.set(minX, minY, minZ);
+		dest.max.set(maxX, maxY, maxZ);
+		dest.infinite = false;
+		return dest;
+	}
+
+	@Override
+	public String toString() {
+		if (infinite) return "BoundingBox[infinite]";
+		if (isEmpty()) return "BoundingBox[empty]";
+		return "BoundingBox[min=" + min + ", max=" + max + "]";
+	}
+}
@@ -0,0 +1,64 @@
+package eu.yvka.slothengine.math;
+
+import org.joml.Vector3f;
+
+/**
+ * Bounding sphere which is described by
+ * its center and its radius, a negative radius
+ * marks an empty sphere.
+ */
+public class BoundingSphere {
+
+	private final Vector3f center = new Vector3f();
+	private float radius = -1.0f;
+
+	/**
+	 * @return the center of this sphere.
+	 */
+	public Vector3f getCenter() {
+		return center;
+	}
+
+	/**
+	 * @return the radius of this sphere.
+	 */
+	public float getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Specifies the center and the radius of this sphere.
+	 *
+	 * @param center the center of this sphere.
+	 * @param radius the radius of this sphere.
+	 * @return this sphere in order to support method-chaining.
+	 */
+	public BoundingSphere set(Vector3f center, float radius) {
+		this.center.set(center);
+		this.radius = radius;
+		return this;
+	}
+
+	/**
+	 * Resets this sphere to an empty sphere.
+	 *
+	 * @return this sphere in order to support method-chaining.
+	 */
+	public BoundingSphere setEmpty() {
+		center.zero();
+		radius = -1.0f;
+		return this;
+	}
+
+	/**
+	 * @return true if this sphere doesn't contain anything.
+	 */
+	public boolean isEmpty() {
+		return radius < 0.0f;
+	}
+
+	@Override
+	public String toString() {
+		return "BoundingSphere[center=" + center + ", radius=" + radius + "]";
+	}
+}
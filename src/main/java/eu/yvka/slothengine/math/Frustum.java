@@ -0,0 +1,160 @@
+package eu.yvka.slothengine.math;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * View frustum which is described by six planes.
+ *
+ * The planes are extracted from the combined projection and
+ * view matrix as described by Gribb and Hartmann in
+ * "Fast Extraction of Viewing Frustum Planes from the World-View-Projection Matrix".
+ * The normals of the planes are pointing into the frustum.
+ */
+public class Frustum {
+
+	/**
+	 * Result of an intersection test.
+	 */
+	public enum Intersection {
+		/**
+		 * The volume lies completely outside of the frustum.
+		 */
+		OUTSIDE,
+
+		/**
+		 * The volume intersects at least one plane of the frustum.
+		 */
+		INTERSECT,
+
+		/**
+		 * The volume lies completely inside of the frustum.
+		 */
+		INSIDE
+	}
+
+	private static final int PLANE_COUNT = 6;
+
+	/**
+	 * Planes in the order left, right, bottom, top, near, far
+	 * where each plane is stored as (a, b, c, d).
+	 */
+	private final float[] planes = new float[PLANE_COUNT * 4];
+	private final float[] matrix = new float[16];
+	private final Matrix4f viewProjection = new Matrix4f();
+
+	/**
+	 * Extracts the planes of the frustum from the camera matrices,
+	 * should be called once per frame.
+	 *
+	 * @param projection the projection matrix.
+	 * @param view the view matrix.
+	 */
+	public void update(Matrix4f projection, Matrix4f view) {
+		projection.mul(view, viewProjection);
+		update(viewProjection);
+	}
+
+	/**
+	 * Extracts the planes of the frustum from a combined
+	 * projection view matrix.
+	 *
+	 * @param viewProjection the combined matrix.
+	 */
+	public void update(Matrix4f viewProjection) {
+		viewProjection.get(matrix, 0);
+
+		for (int i = 0; i < PLANE_COUNT; i++) {
+			// row i / 2 of the matrix is added to (even planes)
+			// or subtracted from (odd planes) the last row.
+			int row = i >> 1;
+			float sign = (i & 1) == 0 ? 1.0f : -1.0f;
+
+			float a = matrix[3] + sign * matrix[row];
+			float b = matrix[7] + sign * matrix[4 + row];
+			float c = matrix[11] + sign * matrix[8 + row];
+			float d = matrix[15] + sign * matrix[12 + row];
+
+			float length = (float) Math.sqrt(a * a + b * b + c * c);
+			if (length > 0.0f) {
+				a /= length;
+				b /= length;
+				c /= length;
+				d /= length;
+			}
+
+			planes[i * 4] = a;
+			planes[i * 4 + 1] = b;
+			planes[i * 4 + 2] = c;
+			planes[i * 4 + 3] = d;
+		}
+	}
+
+	/**
+	 * Tests an axis aligned box against this frustum.
+	 *
+	 * @param box the box to test.
+	 * @return the result of the intersection test.
+	 */
+	public Intersection intersects(BoundingBox box) {
+		if (box.isEmpty()) return Intersection.OUTSIDE;
+		if (box.isInfinite()) return Intersection.INTERSECT;
+
+		Vector3f min = box.getMin();
+		Vector3f max = box.getMax();
+		Intersection result = Intersection.INSIDE;
+
+		for (int i = 0; i < PLANE_COUNT; i++) {
+			float a = planes[i * 4];
+			float b = planes[i * 4 + 1];
+			float c = planes[i * 4 + 2];
+			float d = planes[i * 4 + 3];
+
+			// corner which lies farthest along the plane normal
+			float px = a >= 0.0f ? max.x : min.x;
+			float py = b >= 0.0f ? max.y : min.y;
+			float pz = c >= 0.0f ? max.z : min.z;
+			if (a * px + b * py + c * pz + d < 0.0f) {
+				return Intersection.OUTSIDE;
+			}
+
+			// corner which lies farthest against the plane normal
+			float nx = a >= 0.0f ? min.x : max.x;
+			float ny = b >= 0.0f ? min.y : max.y;
+			float nz = c >= 0.0f ? min.z : max.z;
+			if (a * nx + b * ny + c * nz + d < 0.0f) {
+				result = Intersection.INTERSECT;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tests a sphere against this frustum.
+	 *
+	 * @param sphere the sphere to test.
+	 * @return the result of the intersection test.
+	 */
+	public Intersection intersects(BoundingSphere sphere) {
+		if (sphere.isEmpty()) return Intersection.OUTSIDE;
+
+		Vector3f center = sphere.getCenter();
+		float radius = sphere.getRadius();
+		Intersection result = Intersection.INSIDE;
+
+		for (int i = 0; i < PLANE_COUNT; i++) {
+			float distance = planes[i * 4] * center.x
+				+ planes[i * 4 + 1] * center.y
+				+ planes[i * 4 + 2] * center.z
+				+ planes[i * 4 + 3];
+
+			if (distance < -radius) {
+				return Intersection.OUTSIDE;
+			}
+			if (distance < radius) {
+				result = Intersection.INTERSECT;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,137 @@
+package eu.yvka.slothengine.math;
+
+import org.joml.Vector3f;
+
+/**
+ * Half line which starts at its origin and extends along its direction,
+ * the direction is expected to be normalized so that distances along the
+ * ray are measured in world units.
+ */
+public class Ray {
+
+	private final Vector3f origin = new Vector3f();
+	private final Vector3f direction = new Vector3f(0.0f, 0.0f, -1.0f);
+	private final Vector3f inverseDirection = new Vector3f(0.0f, 0.0f, Float.NEGATIVE_INFINITY);
+
+	/**
+	 * @return the origin of this ray.
+	 */
+	public Vector3f getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * @return the normalized direction of this ray.
+	 */
+	public Vector3f getDirection() {
+		return direction;
+	}
+
+	/**
+	 * @return the component wise reciprocal of the direction, which is used by the slab test.
+	 */
+	public Vector3f getInverseDirection() {
+		return inverseDirection;
+	}
+
+	/**
+	 * Specifies the origin and the direction of this ray.
+	 *
+	 * @param origin the origin of the ray.
+	 * @param direction the direction of the ray, which is normalized by this method.
+	 * @return this ray in order to support method-chaining.
+	 */
+	public Ray set(Vector3f origin, Vector3f direction) {
+		return set(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
+	}
+
+	/**
+	 * Specifies the origin and the direction of this ray.
+	 *
+	 * @param ox the x coordinate of the origin.
+	 * @param oy the y coordinate of the origin.
+	 * @param oz the z coordinate of the origin.
+	 * @param dx the x component of the direction.
+	 * @param dy the y component of the direction.
+	 * @param dz the z component of the direction.
+	 * @return this ray in order to support method-chaining.
+	 * @throws IllegalArgumentException if the direction has no length.
+	 */
+	public Ray set(float ox, float oy, float oz, float dx, float dy, float dz) {
+		float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (!(length > 0.0f)) {
+			throw new IllegalArgumentException("The direction of a ray must not be zero");
+		}
+		origin.set(ox, oy, oz);
+		direction.set(dx / length, dy / length, dz / length);
+		inverseDirection.set(1.0f / direction.x, 1.0f / direction.y, 1.0f / direction.z);
+		return this;
+	}
+
+	/**
+	 * Computes the point at the specified distance along this ray.
+	 *
+	 * @param distance the distance from the origin.
+	 * @param dest the vector which receives the point.
+	 * @return the dest vector.
+	 */
+	public Vector3f getPoint(float distance, Vector3f dest) {
+		return dest.set(direction).mul(distance).add(origin);
+	}
+
+	/**
+	 * Computes the distance at which this ray enters an axis aligned box
+	 * by the slab method, a ray which starts inside of the box enters it at zero.
+	 *
+	 * @param minX the minimum x coordinate of the box.
+	 * @param minY the minimum y coordinate of the box.
+	 * @param minZ the minimum z coordinate of the box.
+	 * @param maxX the maximum x coordinate of the box.
+	 * @param maxY the maximum y coordinate of the box.
+	 * @param maxZ the maximum z coordinate of the box.
+	 * @param maxDistance the distance at which the ray ends.
+	 * @return the distance of the entry point or <code>Float.POSITIVE_INFINITY</code> if the ray misses the box.
+	 */
+	public float intersects(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float maxDistance) {
+		float tx1 = (minX - origin.x) * inverseDirection.x;
+		float tx2 = (maxX - origin.x) * inverseDirection.x;
+		float near = Math.min(tx1, tx2);
+		float far = Math.max(tx1, tx2);
+
+		float ty1 = (minY - origin.y) * inverseDirection.y;
+		float ty2 = (maxY - origin.y) * inverseDirection.y;
+		near = Math.max(near, Math.min(ty1, ty2));
+		far = Math.min(far, Math.max(ty1, ty2));
+
+		float tz1 = (minZ - origin.z) * inverseDirection.z;
+		float tz2 = (maxZ - origin.z) * inverseDirection.z;
+		near = Math.max(near, Math.min(tz1, tz2));
+		far = Math.min(far, Math.max(tz1, tz2));
+
+		// NaN of a zero direction component on a slab border counts as a miss
+		if (!(far >= near) || far < 0.0f || near > maxDistance) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return Math.max(near, 0.0f);
+	}
+
+	/**
+	 * Computes the distance at which this ray enters an axis aligned box.
+	 *
+	 * @param box the box to test.
+	 * @return the distance of the entry point or <code>Float.POSITIVE_INFINITY</code> if the ray misses the box.
+	 */
+	public float intersects(BoundingBox box) {
+		if (box.isEmpty()) return Float.POSITIVE_INFINITY;
+		if (box.isInfinite()) return 0.0f;
+
+		Vector3f min = box.getMin();
+		Vector3f max = box.getMax();
+		return intersects(min.x, min.y, min.z, max.x, max.y, max.z, Float.POSITIVE_INFINITY);
+	}
+
+	@Override
+	public String toString() {
+		return "Ray[origin=" + origin + ", direction=" + direction + "]";
+	}
+}
@@ -55,6 +55,17 @@ public class Transformation {
 		return transformMatrix;
 	}
 
+	/**
+	 * Retrieves the matrix which was calculated by the last call
+	 * of <code>getTransformMatrix</code> or <code>combine</code> without
+	 * updating it, which allows concurrent reads of the matrix.
+	 *
+	 * @return the last calculated transform matrix.
+	 */
+	public Matrix4f getCachedTransformMatrix() {
+		return transformMatrix;
+	}
+
 	public void resetTransform() {
 		scale.set(1.0f);
 		position.zero();
@@ -63,10 +74,21 @@ public class Transformation {
 
 
 	private void calculateTransformMatrix() {
-		if (position.isChanged() || scale.isChanged() || rotation.isChanged()) {
-			transformMatrix.identity();
+		updateTransformMatrix();
+	}
+
+	/**
+	 * Recalculates the transform matrix if the position, rotation or scale
+	 * was changed since the last calculation.
+	 *
+	 * @return true if the matrix was recalculated.
+	 */
+	public boolean updateTransformMatrix() {
+		boolean changed = position.isChanged() | scale.isChanged() | rotation.isChanged();
+		if (changed) {
 			transformMatrix.translationRotateScale(position, rotation, scale);
 		}
+		return changed;
 	}
 
 	public void set(Transformation transform) {
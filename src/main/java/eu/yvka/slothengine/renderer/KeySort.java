@@ -0,0 +1,110 @@
+package eu.yvka.slothengine.renderer;
+
+/**
+ * In place sort of index arrays by the 64 bit sort keys of the referenced items,
+ * used by the render queue and the render list. The sort doesn't allocate memory.
+ */
+final class KeySort {
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	/**
+	 * Ranges with fewer descents per item are considered as nearly sorted
+	 * and sorted by an insertion sort, which is linear for sorted input.
+	 */
+	private static final int NEARLY_SORTED_RATIO = 32;
+
+	private KeySort() {}
+
+	/**
+	 * Sorts a range of indices, a nearly sorted range is sorted by an insertion sort
+	 * and any other range by a quick sort.
+	 *
+	 * @param indices the indices to sort.
+	 * @param keys the keys of the items which are referenced by the indices.
+	 * @param low the first position of the range.
+	 * @param high the last position of the range (inclusive).
+	 */
+	static void sortAdaptive(int[] indices, long[] keys, int low, int high) {
+		if (high <= low) return;
+
+		int descents = 0;
+		for (int i = low + 1; i <= high; i++) {
+			if (keys[indices[i - 1]] > keys[indices[i]]) {
+				descents++;
+			}
+		}
+
+		if (descents == 0) return;
+		if (descents <= (high - low + 1) / NEARLY_SORTED_RATIO) {
+			insertionSort(indices, keys, low, high);
+		} else {
+			sort(indices, keys, low, high);
+		}
+	}
+
+	/**
+	 * Quick sort of a range of indices by the keys of the referenced items
+	 * which falls back to an insertion sort for small ranges.
+	 *
+	 * @param indices the indices to sort.
+	 * @param keys the keys of the items which are referenced by the indices.
+	 * @param low the first position of the range.
+	 * @param high the last position of the range (inclusive).
+	 */
+	static void sort(int[] indices, long[] keys, int low, int high) {
+		while (high - low >= INSERTION_SORT_THRESHOLD) {
+			int pivotIndex = medianOfThree(indices, keys, low, (low + high) >>> 1, high);
+			long pivot = keys[indices[pivotIndex]];
+
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (keys[indices[i]] < pivot) i++;
+				while (keys[indices[j]] > pivot) j--;
+				if (i <= j) {
+					swap(indices, i++, j--);
+				}
+			}
+
+			// Recurse into the smaller partition to keep the stack depth logarithmic
+			if (j - low < high - i) {
+				sort(indices, keys, low, j);
+				low = i;
+			} else {
+				sort(indices, keys, i, high);
+				high = j;
+			}
+		}
+		insertionSort(indices, keys, low, high);
+	}
+
+	static void insertionSort(int[] indices, long[] keys, int low, int high) {
+		for (int i = low + 1; i <= high; i++) {
+			int index = indices[i];
+			long key = keys[index];
+			int j = i - 1;
+			while (j >= low && keys[indices[j]] > key) {
+				indices[j + 1] = indices[j];
+				j--;
+			}
+			indices[j + 1] = index;
+		}
+	}
+
+	private static int medianOfThree(int[] indices, long[] keys, int a, int b, int c) {
+		long ka = keys[indices[a]];
+		long kb = keys[indices[b]];
+		long kc = keys[indices[c]];
+		if (ka < kb) {
+			return kb < kc ? b : (ka < kc ? c : a);
+		}
+		return ka < kc ? a : (kb < kc ? c : b);
+	}
+
+	private static void swap(int[] indices, int i, int j) {
+		int tmp = indices[i];
+		indices[i] = indices[j];
+		indices[j] = tmp;
+	}
+}
@@ -1,7 +1,9 @@
 package eu.yvka.slothengine.renderer;
 
+import eu.yvka.slothengine.engine.AppSettings;
 import eu.yvka.slothengine.engine.Engine;
 import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexArray;
 import eu.yvka.slothengine.geometry.VertexAttributePointer;
 import eu.yvka.slothengine.geometry.VertexBuffer;
 import eu.yvka.slothengine.math.Color;
@@ -10,7 +12,11 @@ import eu.yvka.slothengine.shader.source.ShaderSource;
 import eu.yvka.slothengine.texture.Texture;
 import eu.yvka.slothengine.texture.image.Image;
 import eu.yvka.slothengine.utils.HardwareObject;
+import eu.yvka.slothengine.utils.BufferUtils;
 import eu.yvka.slothengine.utils.HardwareObjectManager;
+import eu.yvka.slothengine.utils.TypeSize;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
 import org.lwjgl.opengl.EXTTextureFilterAnisotropic;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GLCapabilities;
@@ -18,7 +24,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.*;
+import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.*;
@@ -26,17 +37,94 @@ import static org.lwjgl.opengl.GL13.*;
 import static org.lwjgl.opengl.GL14.GL_MIRRORED_REPEAT;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
 import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL41.GL_NUM_PROGRAM_BINARY_FORMATS;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_LENGTH;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
+import static org.lwjgl.opengl.GL41.glGetProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramParameteri;
 import static org.lwjgl.opengl.GL43.GL_COMPUTE_SHADER;
 
 public class Lwjgl3Renderer implements Renderer {
 
 	private static final Logger Log = LoggerFactory.getLogger(Lwjgl3Renderer.class);
 
+	/**
+	 * Vertex buffer types which are bound to shader attributes and
+	 * are part of the attribute layout of a shader.
+	 */
+	private static final VertexBuffer.Type[] LAYOUT_ATTRIBUTE_TYPES = {
+		VertexBuffer.Type.Vertex,
+		VertexBuffer.Type.Normal,
+		VertexBuffer.Type.TextCoords,
+		VertexBuffer.Type.TextCoords02,
+		VertexBuffer.Type.TextCoords03,
+		VertexBuffer.Type.TextCoords04,
+		VertexBuffer.Type.TextCoords05,
+		VertexBuffer.Type.TextCoords06,
+		VertexBuffer.Type.Color
+	};
+
+	/**
+	 * Count of bits which are used per attribute location in the attribute layout.
+	 */
+	private static final int LAYOUT_BITS_PER_ATTRIBUTE = 6;
+
+	/**
+	 * Program parameter of <code>GL_KHR_parallel_shader_compile</code> which reports
+	 * if the compilation and linking of a program has completed.
+	 */
+	private static final int GL_COMPLETION_STATUS_KHR = 0x91B1;
+
 	private HardwareObjectManager objectManager;
 	private RenderContext ctx;
 	private GLCapabilities caps;
+	private RenderStatistics statistics;
+
+	/**
+	 * Streaming buffer which receives the instance matrices of replayed instanced draw calls.
+	 */
+	private VertexBuffer instanceBuffer;
+	private final Matrix4f replayMatrix4 = new Matrix4f();
+	private final Matrix3f replayMatrix3 = new Matrix3f();
+
+	/**
+	 * Ring buffers of the vertex buffers with the usage <code>STREAM_DRAW</code>.
+	 */
+	private final Map<VertexBuffer, StreamingBuffer> streamingBuffers = new IdentityHashMap<>();
+	private final List<StreamingBuffer> streamingBufferList = new ArrayList<>();
+	private boolean persistentMapping;
+
+	/**
+	 * Cache of linked program binaries or null if the driver or the settings don't support it.
+	 */
+	private ShaderBinaryCache shaderBinaryCache;
+
+	/**
+	 * Programs whose compilation was started but whose status wasn't queried yet.
+	 */
+	private final Map<Shader, PendingProgram> pendingPrograms = new IdentityHashMap<>();
+
+	/**
+	 * The shader objects which are attached to a program, a shader object
+	 * is shared by all programs which use the same source.
+	 */
+	private final Map<Shader, List<ShaderSource>> attachedSources = new IdentityHashMap<>();
+	private boolean parallelShaderCompile;
+	private long frameNumber;
 
 	public Lwjgl3Renderer() {
 		initialize();
@@ -46,6 +134,21 @@ public class Lwjgl3Renderer implements Renderer {
 		objectManager = new HardwareObjectManager();
 		ctx = new RenderContext();
 		caps = GL.getCapabilities();
+		statistics = new RenderStatistics();
+		persistentMapping = StreamingBuffer.isPersistentMappingSupported(caps);
+		shaderBinaryCache = createShaderBinaryCache();
+		parallelShaderCompile = OpenGLCaps.supportedExtensions().contains("GL_KHR_parallel_shader_compile");
+	}
+
+	private ShaderBinaryCache createShaderBinaryCache() {
+		String directory = Engine.getSettings().getString(AppSettings.ShaderCacheDirectory, null);
+		if (directory == null || !(caps.OpenGL41 || caps.GL_ARB_get_program_binary)) return null;
+		if (glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) <= 0) {
+			Log.info("The shader binary cache is disabled, the driver provides no program binary formats");
+			return null;
+		}
+		return new ShaderBinaryCache(Paths.get(directory),
+			glGetString(GL_VENDOR), glGetString(GL_RENDERER), glGetString(GL_VERSION));
 	}
 
 	@Override
@@ -129,19 +232,48 @@ public class Lwjgl3Renderer implements Renderer {
 	@Override
 	public void setShader(Shader shader) {
 		assert shader != null;
-		boolean isValid = true;
-		if (shader.isUpdateRequired()) {
-			isValid = updateShaderData(shader);
-			shader.setValid(isValid);
-		}
-
-		if (isValid) {
+		if (prepareShader(shader, true)) {
 			bindShaderProgram(shader);
 			updateShaderUniforms(shader);
 		}
 	}
 
-	private boolean updateShaderData(Shader shader) {
+	/**
+	 * Compiles and links a shader if required. The compilation runs asynchronously,
+	 * a pending program is checked on every use and completed as soon as the driver
+	 * reports it as finished or, without <code>GL_KHR_parallel_shader_compile</code>, one frame later.
+	 *
+	 * @param shader the shader to prepare.
+	 * @param wait true if a pending program should be completed immediately, which may block.
+	 * @return true if the shader is linked and valid.
+	 */
+	private boolean prepareShader(Shader shader, boolean wait) {
+		PendingProgram pending = pendingPrograms.isEmpty() ? null : pendingPrograms.get(shader);
+		if (pending == null) {
+			if (!shader.isUpdateRequired()) return shader.isValid();
+
+			pending = startShaderCompile(shader);
+			if (pending == null) return shader.isValid();
+		}
+
+		if (!wait && !isCompileComplete(shader, pending)) return false;
+
+		pendingPrograms.remove(shader);
+		boolean isValid = finishShaderCompile(shader, pending);
+		shader.setValid(isValid);
+		return isValid;
+	}
+
+	/**
+	 * Loads the program of a shader from the binary cache or starts
+	 * the compilation of its modified sources and the link of the program
+	 * without querying any status.
+	 *
+	 * @param shader the shader to compile.
+	 * @return the pending program or null if the program was loaded from the cache.
+	 */
+	private PendingProgram startShaderCompile(Shader shader) {
+		long startTime = System.nanoTime();
 		int id  = shader.getId();
 
 		if (id == HardwareObject.UNSET_ID) {
@@ -153,43 +285,190 @@ public class Lwjgl3Renderer implements Renderer {
 			shader.setId(id);
 			objectManager.register(shader);
 		}
+
+		String cacheKey = null;
+		if (shaderBinaryCache != null) {
+			cacheKey = shaderBinaryCache.computeKey(shader);
+			if (loadShaderBinary(shader, cacheKey)) {
+				onShaderLinked(shader);
+				shaderBinaryCache.onHit();
+				Log.info("Loaded shader {} from the binary cache in {} ms ({} hits, {} misses)",
+					shader.getShaderName(), toMillis(System.nanoTime() - startTime),
+					shaderBinaryCache.getHits(), shaderBinaryCache.getMisses());
+				return null;
+			}
+			shaderBinaryCache.onMiss();
+			glProgramParameteri(id, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+		}
+
+		PendingProgram pending = new PendingProgram(frameNumber, startTime, cacheKey);
 		for (ShaderSource source : shader.getShaderSources()) {
-			if (source.isUpdateRequired()) {
-				if (! updateShaderSource(shader, source)) {
-					shader.disableUpdateRequired();
-					return false;
-				}
+			// sources of a cached program have no compiled shader object
+			if (source.isUpdateRequired() || source.getId() == HardwareObject.UNSET_ID) {
+				compileShaderSource(source);
+				pending.compiledSources.add(source);
 			}
-			glAttachShader(id, source.getId());
 		}
+		attachShaderSources(shader);
 
+		glLinkProgram(id);
+		shader.disableUpdateRequired();
+		shader.setValid(false);
+		pendingPrograms.put(shader, pending);
+		return pending;
+	}
 
-		boolean linkSuccess;
-		String infoLog;
+	/**
+	 * Attaches the shader objects of the sources to the program of a shader
+	 * and detaches the shader objects of removed sources.
+	 *
+	 * @param shader the shader whose program is linked next.
+	 */
+	private void attachShaderSources(Shader shader) {
+		List<ShaderSource> attached = attachedSources.get(shader);
+		if (attached == null) {
+			attached = new ArrayList<>(3);
+			attachedSources.put(shader, attached);
+		}
+
+		for (int i = attached.size() - 1; i >= 0; i--) {
+			ShaderSource source = attached.get(i);
+			if (!containsSource(shader.getShaderSources(), source)) {
+				attached.remove(i);
+				detachShaderSource(shader, source);
+			}
+		}
 
-		glLinkProgram(id);
-		linkSuccess = glGetProgrami(id, GL_LINK_STATUS) == GL_TRUE;
-		infoLog = glGetProgramInfoLog(shader.getId());
+		for (ShaderSource source : shader.getShaderSources()) {
+			if (!containsSource(attached, source)) {
+				glAttachShader(shader.getId(), source.getId());
+				source.attach();
+				attached.add(source);
+			}
+		}
+	}
+
+	/**
+	 * Detaches a shader object from a program and deletes it
+	 * if it isn't attached to any other program.
+	 *
+	 * @param shader the shader of the program.
+	 * @param source the source of the shader object.
+	 */
+	private void detachShaderSource(Shader shader, ShaderSource source) {
+		if (source.getId() == HardwareObject.UNSET_ID) return;
+
+		glDetachShader(shader.getId(), source.getId());
+		if (source.detach() == 0) {
+			deleteShaderSource(source);
+		}
+	}
+
+	private static boolean containsSource(Iterable<ShaderSource> sources, ShaderSource source) {
+		// identity comparison, sources without a shader object have equal ids
+		for (ShaderSource other : sources) {
+			if (other == source) return true;
+		}
+		return false;
+	}
+
+	private boolean isCompileComplete(Shader shader, PendingProgram pending) {
+		if (parallelShaderCompile) {
+			return glGetProgrami(shader.getId(), GL_COMPLETION_STATUS_KHR) == GL_TRUE;
+		}
+		return frameNumber > pending.startFrame;
+	}
+
+	/**
+	 * Queries the compile and link status of a pending program
+	 * and reports errors to the shader error listeners.
+	 *
+	 * @param shader the shader of the program.
+	 * @param pending the pending program.
+	 * @return true if the program was linked successfully.
+	 */
+	private boolean finishShaderCompile(Shader shader, PendingProgram pending) {
+		boolean compileSuccess = true;
+		for (int i = 0; i < pending.compiledSources.size(); i++) {
+			compileSuccess &= checkCompileStatus(shader, pending.compiledSources.get(i));
+		}
+		if (!compileSuccess) return false;
+
+		int id = shader.getId();
+		boolean linkSuccess = glGetProgrami(id, GL_LINK_STATUS) == GL_TRUE;
 		if (linkSuccess) {
 			Log.debug("Shader link success");
-			shader.disableUpdateRequired();
-			shader.setValid(true);
-			resetUniformLocation(shader);
-
+			onShaderLinked(shader);
+			if (pending.cacheKey != null) {
+				storeShaderBinary(shader, pending.cacheKey);
+			}
+			Log.info("Compiled shader {} in {} ms, ready after {} frames", shader.getShaderName(),
+				toMillis(System.nanoTime() - pending.startTime), frameNumber - pending.startFrame);
 		} else {
+			String infoLog = glGetProgramInfoLog(id);
 			Log.error("Failed to link shader program {}\n{}", shader, infoLog);
 			Engine.notifyShaderErrorListeners((notifier) -> {
 				notifier.onLinkError(shader, infoLog);
 			});
-			shader.setValid(false);
 		}
-
 		return linkSuccess;
+	}
 
+	private void onShaderLinked(Shader shader) {
+		shader.disableUpdateRequired();
+		shader.onLinked();
+		shader.setValid(true);
+		resolveAttributeLocations(shader);
+		bindFrameBlock(shader);
+		resolveUniformLocations(shader);
 	}
 
+	/**
+	 * Tries to load the program of a shader from the binary cache,
+	 * entries which are rejected by the driver are removed from the cache.
+	 *
+	 * @param shader the shader whose program should be loaded.
+	 * @param cacheKey the key of the shader in the cache.
+	 * @return true if the program was loaded and linked.
+	 */
+	private boolean loadShaderBinary(Shader shader, String cacheKey) {
+		ShaderBinaryCache.Entry entry = shaderBinaryCache.load(cacheKey);
+		if (entry == null) return false;
+
+		int id = shader.getId();
+		glProgramBinary(id, entry.getFormat(), entry.getBinary());
+		if (glGetProgrami(id, GL_LINK_STATUS) != GL_TRUE) {
+			Log.info("The cached binary of the shader {} is stale and will be replaced", shader.getShaderName());
+			shaderBinaryCache.invalidate(cacheKey);
+			return false;
+		}
+
+		for (ShaderSource source : shader.getShaderSources()) {
+			source.disableUpdateRequired();
+			Engine.notifyShaderErrorListeners((notifier) -> {
+				notifier.onResolved(shader, source);
+			});
+		}
+		return true;
+	}
 
-	private boolean updateShaderSource(Shader shader, ShaderSource source) {
+	private void storeShaderBinary(Shader shader, String cacheKey) {
+		int length = glGetProgrami(shader.getId(), GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0) return;
+
+		IntBuffer binaryLength = BufferUtils.createIntBuffer(1);
+		IntBuffer binaryFormat = BufferUtils.createIntBuffer(1);
+		ByteBuffer binary = BufferUtils.createByteBuffer(length);
+		glGetProgramBinary(shader.getId(), binaryLength, binaryFormat, binary);
+		binary.limit(binaryLength.get(0));
+		shaderBinaryCache.store(cacheKey, binaryFormat.get(0), binary);
+	}
+
+	private static long toMillis(long nanos) {
+		return nanos / 1000000L;
+	}
+
+	private void compileShaderSource(ShaderSource source) {
 		int id = source.getId();
 		if (id == HardwareObject.UNSET_ID) {
 			id = glCreateShader(toShaderTypeConstant(source.getType()));
@@ -200,13 +479,19 @@ public class Lwjgl3Renderer implements Renderer {
 			objectManager.register(source);
 		}
 
-
-		glShaderSource(id, source.getSource());
+		glShaderSource(id, source.getPreprocessedSource());
 		glCompileShader(id);
+		source.disableUpdateRequired();
+		source.onCompiled();
+	}
 
+	private boolean checkCompileStatus(Shader shader, ShaderSource source) {
+		int id = source.getId();
 		boolean compileSuccess = glGetShaderi(id, GL_COMPILE_STATUS) == GL_TRUE;
 		if (!compileSuccess) {
-			String infoLog = glGetShaderInfoLog(id);
+			String infoLog = source.getPreprocessError() != null
+				? source.getPreprocessError() + "\n" + glGetShaderInfoLog(id)
+				: glGetShaderInfoLog(id);
 			Log.error("Failed to compile shader {}\n{}", source.toString(), infoLog);
 			Engine.notifyShaderErrorListeners((notifier) -> {
 				notifier.onCompileError(shader, source, infoLog);
@@ -217,23 +502,115 @@ public class Lwjgl3Renderer implements Renderer {
 				notifier.onResolved(shader, source);
 			});
 		}
-		source.disableUpdateRequired();
-
 		return compileSuccess;
+	}
 
+	/**
+	 * Queries the locations of all known vertex attributes after the shader was linked
+	 * and encodes them into the attribute layout of the shader, which is
+	 * used to select the vertex array of a mesh.
+	 *
+	 * @param shader the linked shader.
+	 */
+	private void resolveAttributeLocations(Shader shader) {
+		long layout = 0;
+		for (int i = 0; i < LAYOUT_ATTRIBUTE_TYPES.length; i++) {
+			VertexBuffer.Type type = LAYOUT_ATTRIBUTE_TYPES[i];
+			Attribute attribute = shader.getAttribute(type);
+			attribute.bindName(type);
+
+			int location = glGetAttribLocation(shader.getId(), attribute.getName());
+			if (location >= 0) {
+				attribute.setLocation(location);
+				layout |= ((long) (location + 1) & 0x3F) << (i * LAYOUT_BITS_PER_ATTRIBUTE);
+			} else {
+				attribute.setLocation(Attribute.LOCATION_NOT_FOUND);
+			}
+			attribute.disableUpdateRequired();
+		}
+
+		Attribute instanceAttribute = shader.getAttribute(VertexBuffer.Type.InstanceModelMatrix);
+		instanceAttribute.reset();
+		shader.setAttributeLayout(layout);
+	}
+
+	/**
+	 * Binds the frame uniform block of a linked shader to the
+	 * frame binding point if the shader declares the block.
+	 *
+	 * @param shader the linked shader.
+	 */
+	private void bindFrameBlock(Shader shader) {
+		shader.setFrameBlockUsed(false);
+		if (!isUniformBufferSupported()) return;
+
+		int blockIndex = glGetUniformBlockIndex(shader.getId(), Shader.FRAME_BLOCK_NAME);
+		if (blockIndex != GL_INVALID_INDEX) {
+			glUniformBlockBinding(shader.getId(), blockIndex, Shader.FRAME_BLOCK_BINDING);
+			shader.setFrameBlockUsed(true);
+		}
 	}
 
 	private void updateShaderUniforms(Shader shader) {
-		for (Uniform uniform : shader.getUniforms()) {
+		List<Uniform> uniforms = shader.getUniforms();
+		for (int i = 0; i < uniforms.size(); i++) {
+			Uniform uniform = uniforms.get(i);
 			if (uniform.isUpdateRequired()) {
 				updateShaderUniform(shader, uniform);
+			} else if (uniform.getLocation() >= 0) {
+				statistics.onUniformUploadSkipped();
 			}
 		}
 	}
 
-	private void resetUniformLocation(Shader shader) {
-		for (Uniform uniform : shader.getUniforms()) {
-			uniform.reset();
+	/**
+	 * Introspects the active uniforms of a linked shader and assigns their locations.
+	 *
+	 * Uniforms which were requested before the link but aren't active in the
+	 * linked program are reported once and are never uploaded.
+	 *
+	 * @param shader the linked shader.
+	 */
+	private void resolveUniformLocations(Shader shader) {
+		int program = shader.getId();
+		List<Uniform> uniforms = shader.getUniforms();
+		for (int i = 0; i < uniforms.size(); i++) {
+			Uniform uniform = uniforms.get(i);
+			uniform.setLocation(ShaderVariable.LOCATION_NOT_FOUND);
+			uniform.enableUpdateRequired();
+		}
+
+		shader.setUniformsResolved(false);
+		IntBuffer size = BufferUtils.createIntBuffer(1);
+		IntBuffer type = BufferUtils.createIntBuffer(1);
+		int activeUniforms = glGetProgrami(program, GL_ACTIVE_UNIFORMS);
+		for (int index = 0; index < activeUniforms; index++) {
+			String name = glGetActiveUniform(program, index, size, type);
+			int location = glGetUniformLocation(program, name);
+			if (location < 0) {
+				// members of uniform blocks don't have a location
+				continue;
+			}
+			shader.getUniform(name).setLocation(location);
+
+			if (name.endsWith("[0]")) {
+				// arrays are reported by their first element only
+				String arrayName = name.substring(0, name.length() - 3);
+				shader.getUniform(arrayName).setLocation(location);
+				for (int element = 1; element < size.get(0); element++) {
+					String elementName = arrayName + "[" + element + "]";
+					shader.getUniform(elementName).setLocation(glGetUniformLocation(program, elementName));
+				}
+			}
+		}
+		shader.setUniformsResolved(true);
+
+		for (int i = 0; i < uniforms.size(); i++) {
+			Uniform uniform = uniforms.get(i);
+			if (uniform.getLocation() == ShaderVariable.LOCATION_NOT_FOUND) {
+				Log.warn("The uniform variable {} is not an active uniform of the shader {}", uniform.getName(), shader);
+				uniform.disableUpdateRequired();
+			}
 		}
 	}
 
@@ -242,14 +619,10 @@ public class Lwjgl3Renderer implements Renderer {
 		int location = uniform.getLocation();
 		ShaderVariable.VariableType type = uniform.getType();
 
-		if (location == ShaderVariable.LOCATION_UNKNOWN) {
-			updateUniformLocation(shader, uniform);
-			if (uniform.getLocation() == ShaderVariable.LOCATION_NOT_FOUND) {
-				// Ensures that and not found uniform variable are handled only once
-				uniform.disableUpdateRequired();
-				return;
-			}
-			location = uniform.getLocation();
+		if (location < 0) {
+			// the uniform isn't active in the linked program
+			uniform.disableUpdateRequired();
+			return;
 		}
 
 		if (type == null) {
@@ -258,63 +631,43 @@ public class Lwjgl3Renderer implements Renderer {
 			return;
 		}
 
-		Object value = uniform.getValue();
-		FloatBuffer fb;
 		switch (type) {
 			case Float:
-				float f1 = (float) value;
-				glUniform1f(location, f1);
+				glUniform1f(location, uniform.getFloat(0));
 				break;
 			case Float2:
-				float[] fv2 = (float[]) value;
-				glUniform2f(location, fv2[0], fv2[1]);
+				glUniform2f(location, uniform.getFloat(0), uniform.getFloat(1));
 				break;
 			case Float3:
-				float[] fv3 = (float[]) value;
-				glUniform3f(location, fv3[0], fv3[1], fv3[2]);
+				glUniform3f(location, uniform.getFloat(0), uniform.getFloat(1), uniform.getFloat(2));
 				break;
 			case Float4:
-				float[] fv4 = (float[]) value;
-				glUniform4f(location, fv4[0], fv4[1], fv4[2], fv4[3]);
+				glUniform4f(location, uniform.getFloat(0), uniform.getFloat(1), uniform.getFloat(2), uniform.getFloat(3));
 				break;
 			case Int:
-				int int1 = (int) value;
-				glUniform1i(location, int1);
+				glUniform1i(location, uniform.getInt(0));
 				break;
 			case Int2:
-				int[] int2 = (int[]) value;
-				glUniform2i(location, int2[0], int2[1]);
+				glUniform2i(location, uniform.getInt(0), uniform.getInt(1));
 				break;
 			case Int3:
-				int[] int3 = (int[]) value;
-				glUniform3i(location, int3[0], int3[1], int3[2]);
+				glUniform3i(location, uniform.getInt(0), uniform.getInt(1), uniform.getInt(2));
 				break;
 			case Int4:
-				int[] int4 = (int[]) value;
-				glUniform4i(location, int4[0], int4[1], int4[2], int4[3]);
+				glUniform4i(location, uniform.getInt(0), uniform.getInt(1), uniform.getInt(2), uniform.getInt(3));
 				break;
 			case Matrix3x3:
-				fb = (FloatBuffer) value;
-				glUniformMatrix3fv(location, false, fb);
+				glUniformMatrix3fv(location, false, uniform.getMatrixBuffer());
 				break;
 			case Matrix4x4:
-				fb = (FloatBuffer) value;
-				glUniformMatrix4fv(location, false, fb);
+				glUniformMatrix4fv(location, false, uniform.getMatrixBuffer());
 				break;
 		}
 
+		statistics.onUniformUploaded();
 		uniform.disableUpdateRequired();
 	}
 
-	private void updateUniformLocation(Shader shader, ShaderVariable shaderVariable) {
-		String name = shaderVariable.getName();
-		int location = glGetUniformLocation(shader.getId(), name);
-		if (location == ShaderVariable.LOCATION_NOT_FOUND) {
-			Log.warn("Could not find the uniform variable {} in the shader {}", name, shader);
-		}
-		shaderVariable.setLocation(location);
-	}
-
 	private void bindShaderProgram(Shader shader) {
 		int shaderId = shader.getId();
 		if (ctx.boundShader == null || ctx.boundShader.getId() != shaderId || shader.isUpdateRequired()) {
@@ -341,20 +694,23 @@ public class Lwjgl3Renderer implements Renderer {
 
 	@Override
 	public void deleteShader(Shader shader) {
+		pendingPrograms.remove(shader);
 		if (shader.getId() == HardwareObject.UNSET_ID) {
 			Log.warn("Shader Program is not uploaded to GPU, cannot be deleted");
 			return;
 		}
 
-		for (ShaderSource source : shader.getShaderSources()) {
-			if (source.getId() != HardwareObject.UNSET_ID && source.getId() >= 0) {
-				glDetachShader(shader.getId(), source.getId());
-				deleteShaderSource(source);
+		// shared shader objects are only deleted with their last program
+		List<ShaderSource> attached = attachedSources.remove(shader);
+		if (attached != null) {
+			for (int i = 0; i < attached.size(); i++) {
+				detachShaderSource(shader, attached.get(i));
 			}
 		}
 
 		glDeleteProgram(shader.getId());
 		shader.resetObject();
+		shader.setId(HardwareObject.UNSET_ID);
 	}
 
 	@Override
@@ -363,9 +719,14 @@ public class Lwjgl3Renderer implements Renderer {
 			Log.warn("Shader is not uploaded to GPU, cannot be deleted");
 			return;
 		}
+		if (source.getAttachCount() > 0) {
+			Log.warn("Shader {} is still attached to {} programs, cannot be deleted", source, source.getAttachCount());
+			return;
+		}
 		glDeleteShader(source.getId());
 		source.enableUpdateRequired();
 		source.resetObject();
+		source.setId(HardwareObject.UNSET_ID);
 	}
 
 	@Override
@@ -522,6 +883,203 @@ public class Lwjgl3Renderer implements Renderer {
 			return;
 		}
 
+		applyMeshState(mesh);
+		renderMesh(mesh, null, 0);
+	}
+
+	@Override
+	public void drawMeshInstanced(Mesh mesh, VertexBuffer instanceBuffer, int instanceCount) {
+		if (!isInstancingSupported()) {
+			throw new RendererExpception("Instanced rendering requires at least OpenGL 3.3");
+		}
+
+		if (instanceBuffer.getType() != VertexBuffer.Type.InstanceModelMatrix) {
+			throw new IllegalArgumentException("An instance buffer of the type InstanceModelMatrix is required");
+		}
+
+		if (mesh.getVertexCount() <= 0 || instanceCount <= 0) {
+			return;
+		}
+
+		applyMeshState(mesh);
+		renderMesh(mesh, instanceBuffer, instanceCount);
+	}
+
+	@Override
+	public boolean isInstancingSupported() {
+		return caps.OpenGL33;
+	}
+
+	@Override
+	public void executeCommands(RenderCommandBuffer commands) {
+		Shader shader = null;
+		Shader fallbackShader = null;
+		Shader activeShader = null;
+		int uniformStart = 0;
+
+		commands.rewind();
+		while (commands.hasRemaining()) {
+			int opcode = commands.readInt();
+			switch (opcode) {
+				case RenderCommandBuffer.SET_SHADER:
+					shader = commands.readObject();
+					fallbackShader = commands.readObject();
+					activeShader = null;
+					uniformStart = commands.getReadPosition();
+					break;
+				case RenderCommandBuffer.SET_UNIFORM:
+					executeUniformCommand(commands, shader);
+					break;
+				case RenderCommandBuffer.USE_SHADER:
+					activeShader = activateShader(commands, shader, fallbackShader, uniformStart);
+					break;
+				case RenderCommandBuffer.SET_TEXTURE:
+					int unit = commands.readInt();
+					Texture texture = commands.readObject();
+					if (activeShader != null) {
+						setTexture(unit, texture);
+					}
+					break;
+				case RenderCommandBuffer.SET_RENDER_STATE:
+					RenderState state = commands.readObject();
+					if (activeShader != null) {
+						applyRenderState(state);
+					}
+					break;
+				case RenderCommandBuffer.DRAW_MESH:
+					Mesh mesh = commands.readObject();
+					if (activeShader != null) {
+						drawMesh(mesh);
+					}
+					break;
+				case RenderCommandBuffer.DRAW_INSTANCED:
+					Mesh instancedMesh = commands.readObject();
+					int instanceCount = commands.readInt();
+					FloatBuffer instanceData = (FloatBuffer) mapStreamingBuffer(prepareInstanceBuffer(instanceCount), instanceCount * 16);
+					commands.readFloats(instanceData, instanceCount * 16);
+					if (activeShader != null) {
+						drawMeshInstanced(instancedMesh, instanceBuffer, instanceCount);
+					}
+					break;
+				case RenderCommandBuffer.CALL_HOOK:
+					RenderCommandBuffer.Hook hook = commands.readObject();
+					hook.run(commands.readInt());
+					break;
+				default:
+					throw new RendererExpception("Unknown render command %d", opcode);
+			}
+		}
+	}
+
+	/**
+	 * Activates the shader of a pass, if the shader is invalid the uniforms
+	 * of the pass are applied to the fallback shader which is activated instead.
+	 *
+	 * @param commands the replayed commands.
+	 * @param shader the shader of the pass.
+	 * @param fallbackShader the fallback shader or null.
+	 * @param uniformStart the read position of the first uniform command of the pass.
+	 * @return the activated shader or null if no valid shader is available.
+	 */
+	private Shader activateShader(RenderCommandBuffer commands, Shader shader, Shader fallbackShader, int uniformStart) {
+		// a pass with a fallback shader doesn't wait for the compilation of its shader
+		if (useShader(shader, fallbackShader == null)) return shader;
+		if (fallbackShader == null) return null;
+
+		int uniformEnd = commands.getReadPosition() - 4;
+		commands.seek(uniformStart);
+		while (commands.getReadPosition() < uniformEnd) {
+			commands.readInt();
+			executeUniformCommand(commands, fallbackShader);
+		}
+		commands.readInt();
+
+		return useShader(fallbackShader, true) ? fallbackShader : null;
+	}
+
+	private boolean useShader(Shader shader, boolean wait) {
+		try {
+			if (!prepareShader(shader, wait)) return false;
+			bindShaderProgram(shader);
+			updateShaderUniforms(shader);
+		} catch (Exception ex) {
+			Log.error("Failed to setup shader", ex);
+			return false;
+		}
+		return shader.isValid();
+	}
+
+	private void executeUniformCommand(RenderCommandBuffer commands, Shader shader) {
+		UniformHandle handle = commands.readObject();
+		ShaderVariable.VariableType type = commands.readVariableType();
+		if (shader == null) {
+			commands.skipUniformValue(type);
+			return;
+		}
+
+		Uniform uniform = shader.getUniform(handle);
+		switch (type) {
+			case Float:
+			case Float2:
+			case Float3:
+			case Float4:
+				float f1 = commands.readFloat();
+				float f2 = commands.readFloat();
+				float f3 = commands.readFloat();
+				float f4 = commands.readFloat();
+				if (type == ShaderVariable.VariableType.Float) uniform.setValue(f1);
+				else if (type == ShaderVariable.VariableType.Float2) uniform.setValue(f1, f2);
+				else if (type == ShaderVariable.VariableType.Float3) uniform.setValue(f1, f2, f3);
+				else uniform.setValue(f1, f2, f3, f4);
+				break;
+			case Int:
+			case Int2:
+			case Int3:
+			case Int4:
+				int i1 = commands.readInt();
+				int i2 = commands.readInt();
+				int i3 = commands.readInt();
+				int i4 = commands.readInt();
+				if (type == ShaderVariable.VariableType.Int) uniform.setValue(i1);
+				else if (type == ShaderVariable.VariableType.Int2) uniform.setValue(i1, i2);
+				else if (type == ShaderVariable.VariableType.Int3) uniform.setValue(i1, i2, i3);
+				else uniform.setValue(i1, i2, i3, i4);
+				break;
+			case Matrix3x3:
+				uniform.setValue(commands.readMatrix(replayMatrix3));
+				break;
+			case Matrix4x4:
+				uniform.setValue(commands.readMatrix(replayMatrix4));
+				break;
+		}
+	}
+
+	/**
+	 * Ensures that the instance buffer is able to hold the model matrices of
+	 * the specified count of instances, the buffer grows by powers of two.
+	 *
+	 * @param instanceCount the count of instances.
+	 * @return the instance buffer.
+	 */
+	private VertexBuffer prepareInstanceBuffer(int instanceCount) {
+		int requiredSize = instanceCount * 16;
+		if (instanceBuffer == null || instanceBuffer.getBuffer().capacity() < requiredSize) {
+			int capacity = Integer.highestOneBit(Math.max(instanceCount, 64) - 1) << 1;
+			if (instanceBuffer != null) {
+				deleteBuffer(instanceBuffer);
+			}
+			instanceBuffer = new VertexBuffer(
+				VertexBuffer.Type.InstanceModelMatrix,
+				BufferUtils.createFloatBuffer(capacity * 16),
+				VertexBuffer.Usage.STREAM_DRAW,
+				new VertexAttributePointer(4, VertexAttributePointer.Format.Float, 16 * TypeSize.FLOAT, 0)
+			);
+		}
+
+		return instanceBuffer;
+	}
+
+	private void applyMeshState(Mesh mesh) {
 		if (mesh.getLineWidth() != ctx.lineWith) {
 			if (mesh.getLineWidth() <= .0f) throw new RendererExpception("Line width must be greater than zero");
 			glLineWidth(mesh.getLineWidth());
@@ -533,22 +1091,76 @@ public class Lwjgl3Renderer implements Renderer {
 			glPointSize(mesh.getPointSize());
 			ctx.pointSize = mesh.getPointSize();
 		}
-
-		renderMesh(mesh);
-
 	}
 
-	private void renderMesh(Mesh mesh) {
+	private void renderMesh(Mesh mesh, VertexBuffer instanceBuffer, int instanceCount) {
 		if (ctx.boundShader == null) {
 			throw new RendererExpception("In order to render a mesh a shader must first bound to the renderer");
 		}
 
+		VertexArray vertexArray = mesh.getVertexArray(ctx.boundShader.getAttributeLayout());
+		bindVertexArray(vertexArray);
+
+		// the attribute pointers of streaming buffers follow the region of their current content
+		if (vertexArray.isUpdateRequired()
+			|| vertexArray.getMeshLayoutVersion() != mesh.getLayoutVersion()
+			|| hasStreamingBuffers(mesh)) {
+			specifyVertexArray(mesh, vertexArray);
+		} else {
+			updateMeshBuffers(mesh);
+		}
+
+		int instanceLocation = Attribute.LOCATION_NOT_FOUND;
+		if (instanceBuffer != null) {
+			instanceLocation = setInstanceAttributes(instanceBuffer);
+		}
+
+		VertexBuffer indices = mesh.getBuffer(VertexBuffer.Type.Index);
+		if (indices != null) {
+			drawTrianglesWithIndices(indices, mesh, instanceBuffer != null ? instanceCount : 0);
+		} else if (instanceBuffer != null) {
+			glDrawArraysInstanced(convertToMode(mesh.getMode()), 0, mesh.getVertexCount(), instanceCount);
+		} else {
+			glDrawArrays(convertToMode(mesh.getMode()), 0, mesh.getVertexCount());
+		}
+
+		if (instanceLocation >= 0) {
+			clearInstanceAttributes(instanceLocation);
+		}
+	}
+
+	private void bindVertexArray(VertexArray vertexArray) {
+		int id = vertexArray.getId();
+		if (id == HardwareObject.UNSET_ID) {
+			id = glGenVertexArrays();
+			if (id == 0) {
+				throw new RendererExpception("Failed to create a vertex array object");
+			}
+			vertexArray.setId(id);
+			objectManager.register(vertexArray);
+		}
+
+		if (ctx.boundVertexArray != id) {
+			glBindVertexArray(id);
+			ctx.boundVertexArray = id;
+			// the element array buffer binding is part of the vertex array state
+			ctx.boundElementArrayVboBuffer = vertexArray.getIndexBufferId();
+		}
+	}
+
+	/**
+	 * Records the attribute pointers and the element array buffer of a mesh
+	 * into the currently bound vertex array.
+	 *
+	 * @param mesh the mesh which owns the vertex array.
+	 * @param vertexArray the bound vertex array.
+	 */
+	private void specifyVertexArray(Mesh mesh, VertexArray vertexArray) {
 		VertexBuffer interleavedBuffer = mesh.getBuffer(VertexBuffer.Type.Interleaved);
 		if (interleavedBuffer != null && interleavedBuffer.isUpdateRequired()) {
 			updateBuffer(interleavedBuffer);
 		}
 
-
 		for (VertexBuffer buffer : mesh.getBuffers()) {
 			VertexBuffer.Type type = buffer.getType();
 			if (VertexBuffer.Type.Index.equals(type) ||
@@ -558,52 +1170,122 @@ public class Lwjgl3Renderer implements Renderer {
 			setVertexAttributes(buffer, interleavedBuffer);
 		}
 
-
-
-
 		VertexBuffer indices = mesh.getBuffer(VertexBuffer.Type.Index);
 		if (indices != null) {
-			drawTrianglesWithIndices(indices, mesh);
-		} else {
-			glDrawArrays(convertToMode(mesh.getMode()), 0, mesh.getVertexCount());
+			updateBuffer(indices);
+			vertexArray.setIndexBufferId(indices.getId());
 		}
-		clearVertexAttributes();
-	}
 
+		vertexArray.setMeshLayoutVersion(mesh.getLayoutVersion());
+		vertexArray.disableUpdateRequired();
+	}
 
+	private boolean hasStreamingBuffers(Mesh mesh) {
+		List<VertexBuffer> buffers = mesh.getBuffers();
+		for (int i = 0; i < buffers.size(); i++) {
+			if (isStreaming(buffers.get(i))) return true;
+		}
+		return false;
+	}
 
+	/**
+	 * Uploads the modified buffers of a mesh whose vertex array is already specified.
+	 *
+	 * @param mesh the mesh to update.
+	 */
+	private void updateMeshBuffers(Mesh mesh) {
+		List<VertexBuffer> buffers = mesh.getBuffers();
+		for (int i = 0; i < buffers.size(); i++) {
+			VertexBuffer buffer = buffers.get(i);
+			// pointers into an interleaved buffer don't have own data
+			if (buffer.isUpdateRequired() && buffer.getBuffer() != null
+				&& buffer.getType() != VertexBuffer.Type.CpuOnly) {
+				updateBuffer(buffer);
+			}
+		}
+	}
 
-	private void drawTrianglesWithIndices(VertexBuffer indices, Mesh mesh) {
+	private void drawTrianglesWithIndices(VertexBuffer indices, Mesh mesh, int instanceCount) {
 		if (indices.getType() != VertexBuffer.Type.Index) {
 			throw new IllegalArgumentException("An index buffer is required for the indices parameter");
 		}
 
 		updateBuffer(indices);
-		glDrawElements(
-			convertToMode(mesh.getMode()),
-			indices.getBuffer().limit(),
-			convertToFormat(indices.getPointer().getFormat()),
-			0
-		);
+		if (instanceCount > 0) {
+			glDrawElementsInstanced(
+				convertToMode(mesh.getMode()),
+				indices.getBuffer().limit(),
+				convertToFormat(indices.getPointer().getFormat()),
+				0,
+				instanceCount
+			);
+		} else {
+			glDrawElements(
+				convertToMode(mesh.getMode()),
+				indices.getBuffer().limit(),
+				convertToFormat(indices.getPointer().getFormat()),
+				0
+			);
+		}
+	}
 
+	/**
+	 * Binds the instance buffer to the four consecutive attribute locations of the
+	 * <code>sl_instanceModelMatrix</code> attribute, one location per matrix column,
+	 * which are advanced once per instance.
+	 *
+	 * @param instanceBuffer the buffer which contains the model matrices.
+	 * @return the first location of the attribute or a negative value if the shader doesn't use it.
+	 */
+	private int setInstanceAttributes(VertexBuffer instanceBuffer) {
+		Attribute attribute = ctx.boundShader.getAttribute(instanceBuffer.getType());
+		int location = resolveAttributeLocation(attribute, instanceBuffer);
+		if (location < 0) return location;
+
+		updateBuffer(instanceBuffer);
+
+		int columnSize = 4 * TypeSize.FLOAT;
+		long offset = instanceBuffer.getStreamOffset();
+		for (int column = 0; column < 4; column++) {
+			glEnableVertexAttribArray(location + column);
+			glVertexAttribPointer(location + column, 4, GL_FLOAT, false, 4 * columnSize, offset + column * columnSize);
+			glVertexAttribDivisor(location + column, 1);
+		}
+		return location;
 	}
 
-	private void clearVertexAttributes() {
-		if (ctx.boundShader != null) {
-			for(Attribute attribute : ctx.boundShader.getAttributes()) {
-				int location = attribute.getLocation();
-				if (location >= 0) {
-					glDisableVertexAttribArray(attribute.getLocation());
-				}
-			}
+	private void clearInstanceAttributes(int location) {
+		for (int column = 0; column < 4; column++) {
+			glVertexAttribDivisor(location + column, 0);
+			glDisableVertexAttribArray(location + column);
 		}
 	}
 
-
 	private void setVertexAttributes(VertexBuffer buffer, VertexBuffer interleavedBuffer) {
 		assert ctx.boundShader != null;
 
 		Attribute attribute = ctx.boundShader.getAttribute(buffer.getType());
+		int location = resolveAttributeLocation(attribute, buffer);
+
+		// When invalid location lets ignore this attribute for now.
+		if (location < 0) return;
+
+		VertexBuffer dataBuffer = interleavedBuffer == null ? buffer : interleavedBuffer;
+		updateBuffer(dataBuffer);
+
+		glEnableVertexAttribArray(location);
+		glVertexAttribPointer(
+			location,
+			buffer.getPointer().getComponents(),
+			convertToFormat(buffer.getPointer().getFormat()),
+			buffer.getPointer().getNormalized(),
+			buffer.getPointer().getStride(),
+			buffer.getPointer().getOffset() + dataBuffer.getStreamOffset());
+	}
+
+
+
+	private int resolveAttributeLocation(Attribute attribute, VertexBuffer buffer) {
 		int location = attribute.getLocation();
 
 		if (location == Attribute.LOCATION_UNKNOWN && attribute.isUpdateRequired()) {
@@ -618,33 +1300,14 @@ public class Lwjgl3Renderer implements Renderer {
 			if ( location < 0 ) {
 				Log.warn("The attribute {} isn't an active attribute in the shader {}.\nThe attribute could not be bounded to the shader.", attribute.getName(), ctx.boundShader.getShaderName());
 				attribute.disableUpdateRequired();
-				return;
+				return location;
 			}
 
 			attribute.setLocation(location);
 		}
-
-		// When invalid location lets ignore this attribute for now.
-		if (location < 0) return;
-
-		if (interleavedBuffer == null) {
-			updateBuffer(buffer);
-		} else {
-			updateBuffer(interleavedBuffer);
-		}
-
-		glEnableVertexAttribArray(location);
-		glVertexAttribPointer(
-			location,
-			buffer.getPointer().getComponents(),
-			convertToFormat(buffer.getPointer().getFormat()),
-			buffer.getPointer().getNormalized(),
-			buffer.getPointer().getStride(),
-			buffer.getPointer().getOffset());
+		return location;
 	}
 
-
-
 	private int convertToMode(Mesh.Mode mode) {
 		switch (mode) {
 			case POINTS: return GL_POINT;
@@ -682,6 +1345,11 @@ public class Lwjgl3Renderer implements Renderer {
 
 	@Override
 	public void updateBuffer(VertexBuffer buffer) {
+		if (isStreaming(buffer)) {
+			updateStreamingBuffer(buffer);
+			return;
+		}
+
 		int target;
 		int bufferId = buffer.getId();
 		boolean bufferCreated  = false;
@@ -765,6 +1433,113 @@ public class Lwjgl3Renderer implements Renderer {
 		buffer.disableUpdateRequired();
 	}
 
+	@Override
+	public Buffer mapBuffer(VertexBuffer buffer) {
+		if (!isStreaming(buffer)) {
+			throw new RendererExpception("Only vertex buffers with the usage STREAM_DRAW could be mapped, %s has the usage %s", buffer.getType(), buffer.getUsage());
+		}
+
+		return mapStreamingBuffer(buffer, buffer.getBuffer().capacity());
+	}
+
+	/**
+	 * Allocates the next range of the streaming buffer of a vertex buffer for a direct write.
+	 *
+	 * @param buffer the streaming vertex buffer.
+	 * @param count the count of elements which are written.
+	 * @return the range, positioned at its start.
+	 */
+	private Buffer mapStreamingBuffer(VertexBuffer buffer, int count) {
+		StreamingBuffer streamingBuffer = bindStreamingBuffer(buffer);
+		Buffer range = streamingBuffer.map(count);
+		adoptStreamingBufferId(buffer, streamingBuffer);
+		buffer.enableUpdateRequired();
+		return range;
+	}
+
+	/**
+	 * Determines if a vertex buffer is uploaded through a streaming buffer,
+	 * index buffers are part of the vertex array state and always use a plain buffer object.
+	 *
+	 * @param buffer the vertex buffer.
+	 * @return true if the buffer is a streaming buffer.
+	 */
+	private boolean isStreaming(VertexBuffer buffer) {
+		return buffer.getUsage() == VertexBuffer.Usage.STREAM_DRAW && buffer.getType() != VertexBuffer.Type.Index;
+	}
+
+	/**
+	 * Writes the modified content of a streaming vertex buffer into the next range of its
+	 * streaming buffer, unless the content was already written into a mapped range.
+	 *
+	 * @param buffer the streaming vertex buffer.
+	 */
+	private void updateStreamingBuffer(VertexBuffer buffer) {
+		StreamingBuffer streamingBuffer = bindStreamingBuffer(buffer);
+		if (!buffer.isUpdateRequired()) return;
+
+		VertexAttributePointer.Format format = buffer.getPointer().getFormat();
+		if (!streamingBuffer.isMapped()) {
+			streamingBuffer.write(buffer.getBuffer(), format);
+			adoptStreamingBufferId(buffer, streamingBuffer);
+		}
+		buffer.setStreamOffset(streamingBuffer.commit(format));
+		buffer.disableUpdateRequired();
+	}
+
+	/**
+	 * Takes over the id of a persistently mapped streaming buffer which replaced
+	 * its buffer object in order to grow, the new buffer object is bound.
+	 *
+	 * @param buffer the streaming vertex buffer.
+	 * @param streamingBuffer the streaming buffer of the vertex buffer.
+	 */
+	private void adoptStreamingBufferId(VertexBuffer buffer, StreamingBuffer streamingBuffer) {
+		if (buffer.getId() != streamingBuffer.getId()) {
+			buffer.setId(streamingBuffer.getId());
+			ctx.boundVboBuffer = streamingBuffer.getId();
+		}
+	}
+
+	/**
+	 * Binds the streaming buffer of a vertex buffer and creates it on the first use,
+	 * the frame regions of the streaming buffer start with the capacity of the vertex buffer.
+	 *
+	 * @param buffer the streaming vertex buffer.
+	 * @return the bound streaming buffer.
+	 */
+	private StreamingBuffer bindStreamingBuffer(VertexBuffer buffer) {
+		StreamingBuffer streamingBuffer = streamingBuffers.get(buffer);
+		if (streamingBuffer == null || buffer.getId() != streamingBuffer.getId()) {
+			int bufferId = glGenBuffers();
+			if (bufferId == GL_INVALID_VALUE) {
+				throw new RendererExpception("Invalid buffer object name returned, creation of buffer object failed");
+			}
+			buffer.setId(bufferId);
+			objectManager.register(buffer);
+
+			glBindBuffer(GL_ARRAY_BUFFER, bufferId);
+			ctx.boundVboBuffer = bufferId;
+
+			VertexAttributePointer.Format format = buffer.getPointer().getFormat();
+			int regionSize = buffer.getBuffer().capacity() * format.getSizeInBytes();
+			streamingBuffer = new StreamingBuffer(bufferId, regionSize, format, persistentMapping);
+			StreamingBuffer previous = streamingBuffers.put(buffer, streamingBuffer);
+			if (previous != null) {
+				streamingBufferList.remove(previous);
+			}
+			streamingBufferList.add(streamingBuffer);
+			buffer.enableUpdateRequired();
+			return streamingBuffer;
+		}
+
+		if (ctx.boundVboBuffer != streamingBuffer.getId()) {
+			glBindBuffer(GL_ARRAY_BUFFER, streamingBuffer.getId());
+			ctx.boundVboBuffer = streamingBuffer.getId();
+		}
+		return streamingBuffer;
+	}
+
 	private int convertToUsageConstant(VertexBuffer.Usage usage) {
 		switch (usage) {
 			case DYNAMIC_COPY: return GL_DYNAMIC_COPY;
@@ -774,8 +1549,8 @@ public class Lwjgl3Renderer implements Renderer {
 			case STATIC_DRAW:  return GL_STATIC_DRAW;
 			case STATIC_READ:  return GL_STATIC_READ;
 			case STREAM_COPY:  return GL_STREAM_COPY;
-			case STREAM_DRAW:  return GL_STATIC_DRAW;
-			case STREAM_READ:  return GL_STATIC_READ;
+			case STREAM_DRAW:  return GL_STREAM_DRAW;
+			case STREAM_READ:  return GL_STREAM_READ;
 			default:
 				throw new RendererExpception("Unrecognized usage specified.");
 		}
@@ -784,14 +1559,80 @@ public class Lwjgl3Renderer implements Renderer {
 
 	@Override
 	public void deleteBuffer(VertexBuffer buffer) {
+		StreamingBuffer streamingBuffer = streamingBuffers.remove(buffer);
+		if (streamingBuffer != null) {
+			streamingBufferList.remove(streamingBuffer);
+		}
+		if (streamingBuffer != null && streamingBuffer.getId() == buffer.getId()) {
+			glBindBuffer(GL_ARRAY_BUFFER, streamingBuffer.getId());
+			ctx.boundVboBuffer = streamingBuffer.getId();
+			streamingBuffer.release();
+		}
+
 		int id = buffer.getId();
 		if (id != HardwareObject.UNSET_ID) {
 			glDeleteBuffers(id);
+			if (ctx.boundVboBuffer == id) {
+				ctx.boundVboBuffer = 0;
+			}
 			buffer.resetObject();
 		}
 
 	}
 
+	@Override
+	public void setUniformBuffer(UniformBuffer buffer) {
+		if (!isUniformBufferSupported()) {
+			throw new RendererExpception("Uniform buffers require at least OpenGL 3.1");
+		}
+
+		int id = buffer.getId();
+		if (id == HardwareObject.UNSET_ID) {
+			id = glGenBuffers();
+			buffer.setId(id);
+			objectManager.register(buffer);
+			glBindBuffer(GL_UNIFORM_BUFFER, id);
+			glBufferData(GL_UNIFORM_BUFFER, buffer.getData().capacity(), GL_DYNAMIC_DRAW);
+		}
+
+		if (buffer.isUpdateRequired()) {
+			ByteBuffer data = buffer.getData();
+			data.clear();
+			glBindBuffer(GL_UNIFORM_BUFFER, id);
+			glBufferSubData(GL_UNIFORM_BUFFER, 0, data);
+			buffer.disableUpdateRequired();
+		}
+
+		glBindBufferBase(GL_UNIFORM_BUFFER, buffer.getBinding(), id);
+	}
+
+	@Override
+	public void deleteUniformBuffer(UniformBuffer buffer) {
+		int id = buffer.getId();
+		if (id != HardwareObject.UNSET_ID) {
+			glDeleteBuffers(id);
+			buffer.resetObject();
+		}
+	}
+
+	@Override
+	public boolean isUniformBufferSupported() {
+		return caps.OpenGL31;
+	}
+
+	@Override
+	public void deleteVertexArray(VertexArray vertexArray) {
+		int id = vertexArray.getId();
+		if (id != HardwareObject.UNSET_ID) {
+			if (ctx.boundVertexArray == id) {
+				glBindVertexArray(0);
+				ctx.boundVertexArray = 0;
+			}
+			glDeleteVertexArrays(id);
+			vertexArray.resetObject();
+		}
+	}
+
 	@Override
 	public void applyRenderState(RenderState state) {
 
@@ -904,16 +1745,50 @@ public class Lwjgl3Renderer implements Renderer {
 	public void cleanUp() {
 		invalidateState();
 		objectManager.deleteAllObjects();
+		if (shaderBinaryCache != null) {
+			Log.info("Shader binary cache {}: {} hits, {} misses", shaderBinaryCache.getDirectory(),
+				shaderBinaryCache.getHits(), shaderBinaryCache.getMisses());
+		}
 		Log.info("Clean up all renderer resources");
 	}
 
 	@Override
 	public void resetGLObjects() {
 		objectManager.resetAllObjects();
+		streamingBuffers.clear();
+		streamingBufferList.clear();
+		pendingPrograms.clear();
+		attachedSources.clear();
 	}
 
 	@Override
 	public void onNewFrame() {
+		frameNumber++;
+		for (int i = 0; i < streamingBufferList.size(); i++) {
+			streamingBufferList.get(i).beginFrame();
+		}
 		objectManager.deleteAllUnused();
+		statistics.reset();
+	}
+
+	@Override
+	public RenderStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * State of a program whose compilation was started asynchronously.
+	 */
+	private static class PendingProgram {
+		final long startFrame;
+		final long startTime;
+		final String cacheKey;
+		final List<ShaderSource> compiledSources = new ArrayList<>(3);
+
+		PendingProgram(long startFrame, long startTime, String cacheKey) {
+			this.startFrame = startFrame;
+			this.startTime = startTime;
+			this.cacheKey = cacheKey;
+		}
 	}
 }
@@ -0,0 +1,479 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.material.MaterialParameter;
+import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.ShaderVariable;
+import eu.yvka.slothengine.shader.UniformHandle;
+import eu.yvka.slothengine.texture.Texture;
+import eu.yvka.slothengine.utils.BufferUtils;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact stream of render commands such as shader changes, uniform writes and draw calls.
+ *
+ * The primitive arguments of the commands are written into an off heap buffer,
+ * references to engine objects are stored in an object table and the stream
+ * only contains their index. A command buffer is recorded without any access
+ * to the graphics context, which allows to record several buffers concurrently,
+ * and is then replayed by <code>Renderer.executeCommands</code> on the render thread.
+ *
+ * A command buffer must not be shared between threads while it is recorded.
+ *
+ * Layout of the commands:
+ * <code><pre>
+ * SET_SHADER       shader, fallback shader or -1
+ * SET_UNIFORM      handle, type, 4 floats | 4 ints | 9 floats | 16 floats
+ * USE_SHADER
+ * SET_TEXTURE      unit, texture
+ * SET_RENDER_STATE state
+ * DRAW_MESH        mesh
+ * DRAW_INSTANCED   mesh, count, count * 16 floats
+ * CALL_HOOK        hook, argument
+ * </pre></code>
+ */
+public class RenderCommandBuffer {
+
+	/**
+	 * Selects the shader whose uniforms are written by the following
+	 * <code>SET_UNIFORM</code> commands.
+	 */
+	public static final int SET_SHADER = 1;
+
+	/**
+	 * Writes a value into a uniform of the selected shader.
+	 */
+	public static final int SET_UNIFORM = 2;
+
+	/**
+	 * Activates the selected shader or its fallback if the shader is invalid.
+	 */
+	public static final int USE_SHADER = 3;
+
+	/**
+	 * Binds a texture to a texture unit.
+	 */
+	public static final int SET_TEXTURE = 4;
+
+	/**
+	 * Applies a render state.
+	 */
+	public static final int SET_RENDER_STATE = 5;
+
+	/**
+	 * Draws a mesh with the active shader.
+	 */
+	public static final int DRAW_MESH = 6;
+
+	/**
+	 * Draws several instances of a mesh, followed by the model matrix of each instance.
+	 */
+	public static final int DRAW_INSTANCED = 7;
+
+	/**
+	 * Invokes a hook on the render thread, allows work which must run
+	 * in the order of the draw calls, such as the preparation of a pass.
+	 */
+	public static final int CALL_HOOK = 8;
+
+	/**
+	 * Callback which is invoked by the renderer when a <code>CALL_HOOK</code> command is replayed.
+	 */
+	public interface Hook {
+
+		/**
+		 * Invoked on the render thread in the order of the recorded commands.
+		 *
+		 * @param argument the argument which was recorded with the hook.
+		 */
+		void run(int argument);
+	}
+
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+	private static final int NO_OBJECT = -1;
+
+	private static final ShaderVariable.VariableType[] VARIABLE_TYPES = ShaderVariable.VariableType.values();
+
+	private ByteBuffer data;
+
+	/**
+	 * Float view of the whole data buffer, which allows to copy float ranges in bulk.
+	 */
+	private FloatBuffer floatView;
+	private final List<Object> objects = new ArrayList<>();
+	private int readPosition;
+
+	/**
+	 * Creates an empty command buffer.
+	 */
+	public RenderCommandBuffer() {
+		data = BufferUtils.createByteBuffer(INITIAL_CAPACITY);
+		floatView = data.asFloatBuffer();
+	}
+
+	/**
+	 * Removes all recorded commands, the allocated memory is kept for the next recording.
+	 */
+	public void clear() {
+		data.clear();
+		objects.clear();
+		readPosition = 0;
+	}
+
+	/**
+	 * @return the size of the recorded commands in bytes.
+	 */
+	public int size() {
+		return data.position();
+	}
+
+	/**
+	 * @return true if no command was recorded.
+	 */
+	public boolean isEmpty() {
+		return data.position() == 0;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	// R E C O R D I N G
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records the selection of a shader.
+	 *
+	 * @param shader the shader whose uniforms are written by the following commands.
+	 * @param fallbackShader the shader which should be used if the shader is invalid or null.
+	 */
+	public void setShader(Shader shader, Shader fallbackShader) {
+		ensureRemaining(12);
+		data.putInt(SET_SHADER);
+		data.putInt(addObject(shader));
+		data.putInt(fallbackShader != null ? addObject(fallbackShader) : NO_OBJECT);
+	}
+
+	/**
+	 * Records the activation of the selected shader.
+	 */
+	public void useShader() {
+		ensureRemaining(4);
+		data.putInt(USE_SHADER);
+	}
+
+	public void setUniform(UniformHandle handle, float value) {
+		putFloatUniform(handle, ShaderVariable.VariableType.Float, value, 0, 0, 0);
+	}
+
+	public void setUniform(UniformHandle handle, Vector3f value) {
+		putFloatUniform(handle, ShaderVariable.VariableType.Float3, value.x, value.y, value.z, 0);
+	}
+
+	public void setUniform(UniformHandle handle, int value) {
+		putIntUniform(handle, ShaderVariable.VariableType.Int, value, 0, 0, 0);
+	}
+
+	public void setUniform(UniformHandle handle, Matrix4f value) {
+		putUniformHeader(handle, ShaderVariable.VariableType.Matrix4x4, 64);
+		value.get(data.position(), data);
+		data.position(data.position() + 64);
+	}
+
+	public void setUniform(UniformHandle handle, Matrix3f value) {
+		putUniformHeader(handle, ShaderVariable.VariableType.Matrix3x3, 36);
+		value.get(data.position(), data);
+		data.position(data.position() + 36);
+	}
+
+	/**
+	 * Records the value of a material parameter for the uniform with the same name.
+	 *
+	 * @param parameter the material parameter.
+	 */
+	public void setUniform(MaterialParameter parameter) {
+		ShaderVariable.VariableType type = parameter.getType();
+		if (type == null) return;
+
+		switch (type) {
+			case Float:
+			case Float2:
+			case Float3:
+			case Float4:
+				putFloatUniform(parameter.getHandle(), type,
+					parameter.getFloat(0), parameter.getFloat(1),
+					parameter.getFloat(2), parameter.getFloat(3));
+				break;
+			case Int:
+			case Int2:
+			case Int3:
+			case Int4:
+				putIntUniform(parameter.getHandle(), type,
+					parameter.getInt(0), parameter.getInt(1),
+					parameter.getInt(2), parameter.getInt(3));
+				break;
+			case Matrix3x3:
+				setUniform(parameter.getHandle(), parameter.getMatrix3f());
+				break;
+			case Matrix4x4:
+				setUniform(parameter.getHandle(), parameter.getMatrix4f());
+				break;
+		}
+	}
+
+	/**
+	 * Records the binding of a texture.
+	 *
+	 * @param unit the texture unit.
+	 * @param texture the texture to bind.
+	 */
+	public void setTexture(int unit, Texture texture) {
+		ensureRemaining(12);
+		data.putInt(SET_TEXTURE);
+		data.putInt(unit);
+		data.putInt(addObject(texture));
+	}
+
+	/**
+	 * Records the application of a render state.
+	 *
+	 * @param state the render state.
+	 */
+	public void setRenderState(RenderState state) {
+		ensureRemaining(8);
+		data.putInt(SET_RENDER_STATE);
+		data.putInt(addObject(state));
+	}
+
+	/**
+	 * Records a draw call of a mesh.
+	 *
+	 * @param mesh the mesh to draw.
+	 */
+	public void drawMesh(Mesh mesh) {
+		ensureRemaining(8);
+		data.putInt(DRAW_MESH);
+		data.putInt(addObject(mesh));
+	}
+
+	/**
+	 * Records an instanced draw call, the model matrices of the instances
+	 * must be recorded by exactly <code>instanceCount</code> calls of <code>putInstance</code>.
+	 *
+	 * @param mesh the mesh to draw.
+	 * @param instanceCount the count of instances.
+	 */
+	public void drawMeshInstanced(Mesh mesh, int instanceCount) {
+		ensureRemaining(12 + instanceCount * 64);
+		data.putInt(DRAW_INSTANCED);
+		data.putInt(addObject(mesh));
+		data.putInt(instanceCount);
+	}
+
+	/**
+	 * Records the model matrix of an instance of the last instanced draw call.
+	 *
+	 * @param modelMatrix the model matrix of the instance.
+	 */
+	public void putInstance(Matrix4f modelMatrix) {
+		ensureRemaining(64);
+		modelMatrix.get(data.position(), data);
+		data.position(data.position() + 64);
+	}
+
+	/**
+	 * Records the invocation of a hook.
+	 *
+	 * @param hook the hook to invoke during the replay.
+	 * @param argument the argument which is passed to the hook.
+	 */
+	public void callHook(Hook hook, int argument) {
+		ensureRemaining(12);
+		data.putInt(CALL_HOOK);
+		data.putInt(addObject(hook));
+		data.putInt(argument);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	// R E P L A Y
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Moves the read position to the first recorded command.
+	 */
+	public void rewind() {
+		readPosition = 0;
+	}
+
+	/**
+	 * @return true if there are unread commands.
+	 */
+	public boolean hasRemaining() {
+		return readPosition < data.position();
+	}
+
+	/**
+	 * @return the current read position, which could be restored by <code>seek</code>.
+	 */
+	public int getReadPosition() {
+		return readPosition;
+	}
+
+	/**
+	 * Moves the read position to a position which was obtained by <code>getReadPosition</code>.
+	 *
+	 * @param position the new read position.
+	 */
+	public void seek(int position) {
+		if (position < 0 || position > data.position()) {
+			throw new IllegalArgumentException("The read position " + position + " is outside of the recorded commands");
+		}
+		readPosition = position;
+	}
+
+	public int readInt() {
+		int value = data.getInt(readPosition);
+		readPosition += 4;
+		return value;
+	}
+
+	public float readFloat() {
+		float value = data.getFloat(readPosition);
+		readPosition += 4;
+		return value;
+	}
+
+	/**
+	 * Copies a range of floats in bulk, such as the model matrices of an instanced draw call.
+	 *
+	 * @param dest the buffer which receives the floats at its position.
+	 * @param count the count of floats to copy.
+	 */
+	public void readFloats(FloatBuffer dest, int count) {
+		// all commands consist of 4 byte values, so the read position is aligned to a float
+		int start = readPosition >> 2;
+		floatView.limit(start + count);
+		floatView.position(start);
+		dest.put(floatView);
+		readPosition += count * 4;
+	}
+
+	/**
+	 * Reads an object reference.
+	 *
+	 * @return the referenced object or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T readObject() {
+		int index = readInt();
+		return index == NO_OBJECT ? null : (T) objects.get(index);
+	}
+
+	/**
+	 * Reads the type of a uniform command.
+	 *
+	 * @return the type of the uniform value.
+	 */
+	public ShaderVariable.VariableType readVariableType() {
+		return VARIABLE_TYPES[readInt()];
+	}
+
+	/**
+	 * Reads a 4x4 matrix.
+	 *
+	 * @param dest the matrix which receives the values.
+	 * @return dest
+	 */
+	public Matrix4f readMatrix(Matrix4f dest) {
+		dest.set(
+			readFloat(), readFloat(), readFloat(), readFloat(),
+			readFloat(), readFloat(), readFloat(), readFloat(),
+			readFloat(), readFloat(), readFloat(), readFloat(),
+			readFloat(), readFloat(), readFloat(), readFloat());
+		return dest;
+	}
+
+	/**
+	 * Reads a 3x3 matrix.
+	 *
+	 * @param dest the matrix which receives the values.
+	 * @return dest
+	 */
+	public Matrix3f readMatrix(Matrix3f dest) {
+		dest.set(
+			readFloat(), readFloat(), readFloat(),
+			readFloat(), readFloat(), readFloat(),
+			readFloat(), readFloat(), readFloat());
+		return dest;
+	}
+
+	/**
+	 * Skips the payload of a uniform command of the specified type.
+	 *
+	 * @param type the type of the uniform value.
+	 */
+	public void skipUniformValue(ShaderVariable.VariableType type) {
+		readPosition += payloadSize(type);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	// I N T E R N A L S
+	////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void putFloatUniform(UniformHandle handle, ShaderVariable.VariableType type, float v1, float v2, float v3, float v4) {
+		putUniformHeader(handle, type, 16);
+		data.putFloat(v1);
+		data.putFloat(v2);
+		data.putFloat(v3);
+		data.putFloat(v4);
+	}
+
+	private void putIntUniform(UniformHandle handle, ShaderVariable.VariableType type, int v1, int v2, int v3, int v4) {
+		putUniformHeader(handle, type, 16);
+		data.putInt(v1);
+		data.putInt(v2);
+		data.putInt(v3);
+		data.putInt(v4);
+	}
+
+	private void putUniformHeader(UniformHandle handle, ShaderVariable.VariableType type, int payloadSize) {
+		ensureRemaining(12 + payloadSize);
+		data.putInt(SET_UNIFORM);
+		data.putInt(addObject(handle));
+		data.putInt(type.ordinal());
+	}
+
+	private static int payloadSize(ShaderVariable.VariableType type) {
+		switch (type) {
+			case Matrix3x3:
+				return 36;
+			case Matrix4x4:
+				return 64;
+			default:
+				return 16;
+		}
+	}
+
+	private int addObject(Object object) {
+		objects.add(object);
+		return objects.size() - 1;
+	}
+
+	private void ensureRemaining(int bytes) {
+		if (data.remaining() >= bytes) return;
+
+		int capacity = data.capacity();
+		while (capacity - data.position() < bytes) {
+			capacity *= 2;
+		}
+		ByteBuffer newData = BufferUtils.createByteBuffer(capacity);
+		data.flip();
+		newData.put(data);
+		data = newData;
+		floatView = data.asFloatBuffer();
+	}
+}
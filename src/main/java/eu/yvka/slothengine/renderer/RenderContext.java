@@ -292,6 +292,11 @@ public class RenderContext {
 	 */
 	public int boundElementArrayVboBuffer;
 
+	/**
+	 * The current bounded vertex array object.
+	 */
+	public int boundVertexArray;
+
 	/**
 	 * Viewport start x coordinate
 	 */
@@ -373,6 +378,7 @@ public class RenderContext {
 		boundShader = null;
 		boundVboBuffer = 0;
 		boundElementArrayVboBuffer = 0;
+		boundVertexArray = 0;
 		viewPortX = 0;
 		viewportY = 0;
 		viewPortWidth = -1;
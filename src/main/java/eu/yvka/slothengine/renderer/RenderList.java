@@ -0,0 +1,405 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.material.Pass;
+import eu.yvka.slothengine.scene.Geometry;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retained list of the passes of all renderable geometries of a scene in sort order.
+ *
+ * The list is owned by the scene and updated by change notifications when geometries are
+ * added, removed or get a new mesh or material. In contrast to the <code>RenderQueue</code>
+ * the items are kept between frames, a frame only marks the visible geometries, which
+ * collects the visible items of the opaque and the transparent bucket in two lists.
+ *
+ * The items are sorted by the sort key of the <code>RenderQueue</code> without the distance
+ * to the camera. The passes and meshes of the items get dense ids from tables of this list,
+ * which are recycled when their last item is removed. Changed items are patched into
+ * the order by an insertion sort, which is linear for a nearly sorted list, only large
+ * changes fall back to a full sort.
+ */
+public class RenderList {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final long REMOVED_KEY = Long.MAX_VALUE;
+
+	private Geometry[] geometries = new Geometry[INITIAL_CAPACITY];
+	private Pass[] passes = new Pass[INITIAL_CAPACITY];
+	private Mesh[] meshes = new Mesh[INITIAL_CAPACITY];
+	private int[] passIndices = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The dense ids of the pass and the mesh of each item, which are recycled with the items.
+	 */
+	private int[] passIds = new int[INITIAL_CAPACITY];
+	private int[] meshIds = new int[INITIAL_CAPACITY];
+	private final SortIdTable passIdTable = new SortIdTable();
+	private final SortIdTable meshIdTable = new SortIdTable();
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private long[] visibleFrames = new long[INITIAL_CAPACITY];
+
+	/**
+	 * True if the key of an item was created before the ids of its shader or texture were assigned,
+	 * such keys are refreshed whenever the item is visible until the ids are known.
+	 */
+	private boolean[] unresolvedKeys = new boolean[INITIAL_CAPACITY];
+
+	/**
+	 * The slots of the items which were marked as visible since the last <code>clearVisible</code>,
+	 * separated by the bucket of their pass.
+	 */
+	private int[] visibleOpaque = new int[INITIAL_CAPACITY];
+	private int visibleOpaqueCount;
+	private int[] visibleTransparent = new int[INITIAL_CAPACITY];
+	private int visibleTransparentCount;
+
+	/**
+	 * The pass revision of the material when the items were created.
+	 */
+	private int[] passRevisions = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The used slots in sort order, followed by removed slots until the next <code>prepare</code>.
+	 */
+	private int[] order = new int[INITIAL_CAPACITY];
+	private int orderSize;
+
+	private int[] freeSlots = new int[INITIAL_CAPACITY];
+	private int freeSlotCount;
+	private int slotCount;
+
+	/**
+	 * The slots of the items of each geometry.
+	 */
+	private final Map<Geometry, int[]> geometrySlots = new IdentityHashMap<>();
+	private boolean orderChanged;
+	private int removedCount;
+
+	/**
+	 * Adds the passes of a geometry, geometries without mesh, material or which are invisible are ignored.
+	 *
+	 * @param geometry the geometry to add.
+	 */
+	public void add(Geometry geometry) {
+		if (geometrySlots.containsKey(geometry) || !isRenderable(geometry)) return;
+
+		Material material = geometry.getMaterial();
+		List<Pass> materialPasses = material.getPasses();
+		int passRevision = material.getPassRevision();
+		int[] slots = new int[materialPasses.size()];
+		for (int i = 0; i < slots.length; i++) {
+			int slot = allocateSlot();
+			geometries[slot] = geometry;
+			passes[slot] = materialPasses.get(i);
+			meshes[slot] = geometry.getMesh();
+			passIndices[slot] = i;
+			passIds[slot] = passIdTable.acquire(passes[slot]);
+			meshIds[slot] = meshIdTable.acquire(meshes[slot]);
+			keys[slot] = createKey(slot);
+			visibleFrames[slot] = -1;
+			passRevisions[slot] = passRevision;
+			order[orderSize++] = slot;
+			slots[i] = slot;
+		}
+		geometrySlots.put(geometry, slots);
+		orderChanged = true;
+	}
+
+	/**
+	 * Removes the passes of a geometry.
+	 *
+	 * @param geometry the geometry to remove.
+	 */
+	public void remove(Geometry geometry) {
+		int[] slots = geometrySlots.remove(geometry);
+		if (slots == null) return;
+
+		for (int slot : slots) {
+			passIdTable.release(passes[slot]);
+			meshIdTable.release(meshes[slot]);
+			geometries[slot] = null;
+			passes[slot] = null;
+			meshes[slot] = null;
+			keys[slot] = REMOVED_KEY;
+			visibleFrames[slot] = -1;
+		}
+		removedCount += slots.length;
+		orderChanged = true;
+	}
+
+	/**
+	 * Updates the passes of a geometry after its mesh, material or visibility was changed.
+	 *
+	 * @param geometry the changed geometry.
+	 */
+	public void update(Geometry geometry) {
+		remove(geometry);
+		add(geometry);
+	}
+
+	/**
+	 * Removes all items.
+	 */
+	public void clear() {
+		Arrays.fill(geometries, 0, slotCount, null);
+		Arrays.fill(passes, 0, slotCount, null);
+		Arrays.fill(meshes, 0, slotCount, null);
+		passIdTable.clear();
+		meshIdTable.clear();
+		geometrySlots.clear();
+		clearVisible();
+		orderSize = 0;
+		slotCount = 0;
+		freeSlotCount = 0;
+		removedCount = 0;
+		orderChanged = false;
+	}
+
+	/**
+	 * Removes the slots of removed items from the order and patches
+	 * the order of added and changed items, called once per frame.
+	 */
+	public void prepare() {
+		if (!orderChanged) return;
+
+		KeySort.sortAdaptive(order, keys, 0, orderSize - 1);
+		if (removedCount > 0) {
+			// removed items are sorted behind all other items
+			for (int i = orderSize - removedCount; i < orderSize; i++) {
+				releaseSlot(order[i]);
+			}
+			orderSize -= removedCount;
+			removedCount = 0;
+		}
+		orderChanged = false;
+	}
+
+	/**
+	 * Removes all items from the visible lists, called before the visible geometries of a frame are marked.
+	 */
+	public void clearVisible() {
+		visibleOpaqueCount = 0;
+		visibleTransparentCount = 0;
+	}
+
+	/**
+	 * Marks the items of a geometry as visible in the specified frame and adds them to the visible
+	 * list of their bucket. The keys of the items are refreshed if their bucket changed or if
+	 * they were created before the ids of their shader or texture were assigned.
+	 *
+	 * @param geometry the visible geometry.
+	 * @param frame the number of the frame.
+	 * @return true if the geometry is part of this list.
+	 */
+	public boolean markVisible(Geometry geometry, long frame) {
+		int[] slots = geometrySlots.get(geometry);
+		if (slots == null) return false;
+
+		// changed passes can't be patched and require new items
+		if (isPassListChanged(slots, geometry.getMaterial())) {
+			update(geometry);
+			slots = geometrySlots.get(geometry);
+			if (slots == null) return false;
+		}
+
+		for (int slot : slots) {
+			if (visibleFrames[slot] == frame) continue;
+			visibleFrames[slot] = frame;
+
+			int bucket = RenderQueue.getBucket(passes[slot]);
+			if (unresolvedKeys[slot] || bucket != RenderQueue.getBucket(keys[slot])) {
+				refreshKey(slot);
+			}
+			if (bucket == RenderQueue.BUCKET_OPAQUE) {
+				if (visibleOpaqueCount == visibleOpaque.length) {
+					visibleOpaque = Arrays.copyOf(visibleOpaque, visibleOpaqueCount * 2);
+				}
+				visibleOpaque[visibleOpaqueCount++] = slot;
+			} else {
+				if (visibleTransparentCount == visibleTransparent.length) {
+					visibleTransparent = Arrays.copyOf(visibleTransparent, visibleTransparentCount * 2);
+				}
+				visibleTransparent[visibleTransparentCount++] = slot;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param bucket the bucket of the items.
+	 * @return the count of visible items of the bucket in the order in which they were marked.
+	 */
+	public int getVisibleCount(int bucket) {
+		return bucket == RenderQueue.BUCKET_OPAQUE ? visibleOpaqueCount : visibleTransparentCount;
+	}
+
+	/**
+	 * Retrieves the geometry of the i-th visible item of a bucket.
+	 *
+	 * @param bucket the bucket of the item.
+	 * @param i the position of the item in the visible list of the bucket.
+	 * @return the geometry of the item or null if the item was removed after it was marked.
+	 */
+	public Geometry getVisibleGeometry(int bucket, int i) {
+		return geometries[visibleSlot(bucket, i)];
+	}
+
+	/**
+	 * Retrieves the pass of the i-th visible item of a bucket.
+	 *
+	 * @param bucket the bucket of the item.
+	 * @param i the position of the item in the visible list of the bucket.
+	 * @return the pass of the item.
+	 */
+	public Pass getVisiblePass(int bucket, int i) {
+		return passes[visibleSlot(bucket, i)];
+	}
+
+	/**
+	 * Retrieves the index of the pass of the i-th visible item of a bucket inside of its material.
+	 *
+	 * @param bucket the bucket of the item.
+	 * @param i the position of the item in the visible list of the bucket.
+	 * @return the pass index of the item.
+	 */
+	public int getVisiblePassIndex(int bucket, int i) {
+		return passIndices[visibleSlot(bucket, i)];
+	}
+
+	/**
+	 * Retrieves the sort key of the i-th visible item of a bucket, which was refreshed when the item was marked.
+	 *
+	 * @param bucket the bucket of the item.
+	 * @param i the position of the item in the visible list of the bucket.
+	 * @return the sort key of the item without the distance to the camera.
+	 */
+	public long getVisibleSortKey(int bucket, int i) {
+		return keys[visibleSlot(bucket, i)];
+	}
+
+	/**
+	 * @return the count of positions in sort order, which includes the positions
+	 * of items that were removed since the last <code>prepare</code>.
+	 */
+	public int size() {
+		return orderSize;
+	}
+
+	/**
+	 * Determines if the i-th item in sort order was marked as visible in the specified frame.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @param frame the number of the frame.
+	 * @return true if the item is visible.
+	 */
+	public boolean isVisible(int i, long frame) {
+		return visibleFrames[order[i]] == frame;
+	}
+
+	/**
+	 * Retrieves the geometry of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the geometry of the item or null if the item was removed.
+	 */
+	public Geometry getGeometry(int i) {
+		return geometries[order[i]];
+	}
+
+	/**
+	 * Retrieves the pass of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the pass of the item.
+	 */
+	public Pass getPass(int i) {
+		return passes[order[i]];
+	}
+
+	/**
+	 * Retrieves the index of the pass inside of its material of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the pass index of the item.
+	 */
+	public int getPassIndex(int i) {
+		return passIndices[order[i]];
+	}
+
+	/**
+	 * Retrieves the sort key of the i-th item in sort order, the key is recalculated
+	 * since the shader or texture ids of a pass change without a notification.
+	 * A changed key is patched into the order by the next <code>prepare</code>.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the current sort key of the item.
+	 */
+	public long refreshSortKey(int i) {
+		return refreshKey(order[i]);
+	}
+
+	private long refreshKey(int slot) {
+		long key = createKey(slot);
+		if (key != keys[slot]) {
+			keys[slot] = key;
+			orderChanged = true;
+		}
+		return key;
+	}
+
+	private long createKey(int slot) {
+		unresolvedKeys[slot] = !RenderQueue.hasResolvedIds(passes[slot]);
+		return RenderQueue.createSortKey(passes[slot], passIds[slot], meshIds[slot], passIndices[slot], 0.0f);
+	}
+
+	private int visibleSlot(int bucket, int i) {
+		return bucket == RenderQueue.BUCKET_OPAQUE ? visibleOpaque[i] : visibleTransparent[i];
+	}
+
+	private boolean isPassListChanged(int[] slots, Material material) {
+		if (slots.length == 0) {
+			return !material.getPasses().isEmpty();
+		}
+		return passRevisions[slots[0]] != material.getPassRevision();
+	}
+
+	private static boolean isRenderable(Geometry geometry) {
+		Material material = geometry.getMaterial();
+		return geometry.isVisible() && geometry.getMesh() != null && material != null;
+	}
+
+	private int allocateSlot() {
+		if (freeSlotCount > 0) {
+			return freeSlots[--freeSlotCount];
+		}
+
+		if (slotCount == keys.length) {
+			int capacity = slotCount * 2;
+			geometries = Arrays.copyOf(geometries, capacity);
+			passes = Arrays.copyOf(passes, capacity);
+			meshes = Arrays.copyOf(meshes, capacity);
+			passIndices = Arrays.copyOf(passIndices, capacity);
+			passIds = Arrays.copyOf(passIds, capacity);
+			meshIds = Arrays.copyOf(meshIds, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			visibleFrames = Arrays.copyOf(visibleFrames, capacity);
+			unresolvedKeys = Arrays.copyOf(unresolvedKeys, capacity);
+			passRevisions = Arrays.copyOf(passRevisions, capacity);
+			order = Arrays.copyOf(order, capacity);
+		}
+		return slotCount++;
+	}
+
+	private void releaseSlot(int slot) {
+		if (freeSlotCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		}
+		freeSlots[freeSlotCount++] = slot;
+	}
+}
@@ -0,0 +1,320 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.material.Pass;
+import eu.yvka.slothengine.material.TextureBinding;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.texture.Texture;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the passes of all visible geometries of a frame and
+ * orders them by a 64 bit sort key before they are submitted to the renderer.
+ *
+ * Each queued item represents a single pass of a geometry. The sort key
+ * of an item is build from its bucket, the pass index, the shader, the bound
+ * texture, the material, the mesh and the distance to the camera:
+ *
+ * <code><pre>
+ *  Opaque:      | 0 | 0 | pass:2 | shader:12 | texture:8 | material:12 | mesh:12 | depth:16 |
+ *  Transparent: | 0 | 1 | pass:2 | depth':28 | shader:12 | texture:8 | material:12          |
+ * </pre></code>
+ *
+ * The material and mesh fields hold dense ids of the passes and meshes, which are
+ * recycled once a pass or mesh isn't used anymore. The ids of the items which are added
+ * with their distance are assigned by this queue until it is cleared, items with a precomputed
+ * key use the ids of the <code>RenderList</code> which created the key. Different passes or meshes
+ * therefore only share their bits if more than 4096 of them are queued at the same time.
+ *
+ * Opaque items are therefore grouped by their state and mesh and drawn front to back
+ * within a group, which places geometries which could be instanced next to each other.
+ * Transparent items are drawn back to front (depth' is the inverted depth) after all opaque items.
+ *
+ * The queue keeps its arrays between frames and sorts them in place so
+ * that a steady state frame doesn't allocate any memory.
+ */
+public class RenderQueue {
+
+	/**
+	 * Bucket of items which are rendered without blending.
+	 */
+	public static final int BUCKET_OPAQUE = 0;
+
+	/**
+	 * Bucket of items which are blended with the color buffer.
+	 */
+	public static final int BUCKET_TRANSPARENT = 1;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private static final int BUCKET_SHIFT = 62;
+	private static final int PASS_SHIFT = 60;
+	private static final long PASS_MASK = 0x3L;
+	private static final long SHADER_MASK = 0xFFFL;
+	private static final long TEXTURE_MASK = 0xFFL;
+	private static final long MATERIAL_MASK = 0xFFFL;
+	private static final long DEPTH_MASK = 0xFFFFFFFL;
+	private static final long TRANSPARENT_DEPTH_MASK = DEPTH_MASK << 32;
+	private static final long MESH_MASK = 0xFFFL;
+	private static final long OPAQUE_DEPTH_MASK = 0xFFFFL;
+
+	private Geometry[] geometries = new Geometry[INITIAL_CAPACITY];
+	private Pass[] passes = new Pass[INITIAL_CAPACITY];
+	private int[] passIndices = new int[INITIAL_CAPACITY];
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private int[] order = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	private final SortIdTable passIds = new SortIdTable();
+	private final SortIdTable meshIds = new SortIdTable();
+
+	/**
+	 * Removes all items from this queue, the
+	 * allocated storage is kept for the next frame.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			geometries[i] = null;
+			passes[i] = null;
+		}
+		passIds.clear();
+		meshIds.clear();
+		size = 0;
+	}
+
+	/**
+	 * Adds a pass of a geometry to this queue.
+	 *
+	 * @param geometry the geometry which should be rendered.
+	 * @param pass the pass of the geometry's material.
+	 * @param passIndex the index of the pass inside of the material.
+	 * @param distance the distance between the camera and the geometry.
+	 */
+	public void add(Geometry geometry, Pass pass, int passIndex, float distance) {
+		int passId = passIds.acquire(pass);
+		int meshId = meshIds.acquire(geometry.getMesh());
+		add(geometry, pass, passIndex, createSortKey(pass, passId, meshId, passIndex, distance));
+	}
+
+	/**
+	 * Adds a pass of a geometry with a precomputed sort key to this queue.
+	 *
+	 * @param geometry the geometry which should be rendered.
+	 * @param pass the pass of the geometry's material.
+	 * @param passIndex the index of the pass inside of the material.
+	 * @param key the sort key of the item.
+	 */
+	public void add(Geometry geometry, Pass pass, int passIndex, long key) {
+		ensureCapacity(size + 1);
+		geometries[size] = geometry;
+		passes[size] = pass;
+		passIndices[size] = passIndex;
+		keys[size] = key;
+		order[size] = size;
+		size++;
+	}
+
+	/**
+	 * Sorts the queued items by their sort key,
+	 * the sort is performed in place and doesn't allocate memory.
+	 */
+	public void sort() {
+		KeySort.sort(order, keys, 0, size - 1);
+	}
+
+	/**
+	 * Sorts a range of the queued items by their sort key, a range which was queued
+	 * in nearly sorted order is sorted in linear time.
+	 *
+	 * @param from the first position of the range.
+	 * @param to the exclusive end of the range.
+	 */
+	public void sort(int from, int to) {
+		KeySort.sortAdaptive(order, keys, from, to - 1);
+	}
+
+	/**
+	 * @return the count of queued items.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Retrieves the geometry of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the geometry of the item.
+	 */
+	public Geometry getGeometry(int i) {
+		return geometries[order[i]];
+	}
+
+	/**
+	 * Retrieves the pass of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the pass of the item.
+	 */
+	public Pass getPass(int i) {
+		return passes[order[i]];
+	}
+
+	/**
+	 * Retrieves the index of the pass inside of its material
+	 * of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the pass index of the item.
+	 */
+	public int getPassIndex(int i) {
+		return passIndices[order[i]];
+	}
+
+	/**
+	 * Retrieves the sort key of the i-th item in sort order.
+	 *
+	 * @param i the position of the item in sort order.
+	 * @return the sort key of the item.
+	 */
+	public long getSortKey(int i) {
+		return keys[order[i]];
+	}
+
+	/**
+	 * Creates the sort key of a pass.
+	 *
+	 * @param pass the pass which should be rendered.
+	 * @param passId the dense id of the pass.
+	 * @param meshId the dense id of the mesh which should be rendered.
+	 * @param passIndex the index of the pass inside of its material.
+	 * @param distance the distance between the geometry and the camera.
+	 * @return the sort key.
+	 */
+	static long createSortKey(Pass pass, int passId, int meshId, int passIndex, float distance) {
+		long bucket = getBucket(pass);
+		long shader = shaderBits(pass.getShader()) & SHADER_MASK;
+		long texture = textureBits(pass) & TEXTURE_MASK;
+		long material = passId & MATERIAL_MASK;
+		long depth = depthBits(distance);
+
+		long key = (bucket << BUCKET_SHIFT) | ((Math.min(passIndex, (int) PASS_MASK) & PASS_MASK) << PASS_SHIFT);
+		if (bucket == BUCKET_OPAQUE) {
+			key |= shader << 48
+				| texture << 40
+				| material << 28
+				| (meshId & MESH_MASK) << 16
+				| depth >>> 12;
+		} else {
+			key |= ((~depth) & DEPTH_MASK) << 32
+				| shader << 20
+				| texture << 12
+				| material;
+		}
+		return key;
+	}
+
+	/**
+	 * Replaces the depth bits of an opaque sort key, which allows to create the state bits
+	 * of a key once and to patch the distance to the camera into it per frame.
+	 *
+	 * @param key the sort key of an opaque item.
+	 * @param distance the distance between the geometry and the camera.
+	 * @return the sort key with the new depth.
+	 */
+	static long withOpaqueDepth(long key, float distance) {
+		return (key & ~OPAQUE_DEPTH_MASK) | depthBits(distance) >>> 12;
+	}
+
+	/**
+	 * Replaces the inverted depth bits of a transparent sort key.
+	 *
+	 * @param key the sort key of a transparent item.
+	 * @param distance the distance between the geometry and the camera.
+	 * @return the sort key with the new depth.
+	 */
+	static long withTransparentDepth(long key, float distance) {
+		return (key & ~TRANSPARENT_DEPTH_MASK) | ((~depthBits(distance)) & DEPTH_MASK) << 32;
+	}
+
+	/**
+	 * Determines the bucket of a pass.
+	 *
+	 * @param pass the pass
+	 * @return <code>BUCKET_TRANSPARENT</code> if the pass uses blending otherwise <code>BUCKET_OPAQUE</code>.
+	 */
+	static int getBucket(Pass pass) {
+		RenderState.BlendFunc blendMode = pass.getRenderState().getBlendMode();
+		if (blendMode == null || blendMode == RenderState.BlendFunc.Off || blendMode == RenderState.BlendFunc.Default) {
+			return BUCKET_OPAQUE;
+		}
+		return BUCKET_TRANSPARENT;
+	}
+
+	/**
+	 * Retrieves the bucket of a sort key.
+	 *
+	 * @param key the sort key.
+	 * @return <code>BUCKET_TRANSPARENT</code> or <code>BUCKET_OPAQUE</code>.
+	 */
+	static int getBucket(long key) {
+		return (int) (key >>> BUCKET_SHIFT) & 1;
+	}
+
+	/**
+	 * Determines if the shader and the texture of a pass have their ids, the key of a pass
+	 * must be recreated once they were assigned by the renderer.
+	 *
+	 * @param pass the pass
+	 * @return true if the ids which are part of the sort key are assigned.
+	 */
+	static boolean hasResolvedIds(Pass pass) {
+		Shader shader = pass.getShader();
+		if (shader != null && shader.getId() < 0) {
+			return false;
+		}
+		List<TextureBinding> textures = pass.getTextureBindingList();
+		if (textures.isEmpty()) {
+			return true;
+		}
+		Texture texture = textures.get(0).getTexture();
+		return texture == null || texture.getId() >= 0;
+	}
+
+	/**
+	 * Converts a positive distance into 28 bits which keep the order of the distance,
+	 * the bits of a positive IEEE-754 float are monotonic.
+	 */
+	private static long depthBits(float distance) {
+		if (!(distance > 0.0f)) {
+			return 0L;
+		}
+		return (Float.floatToRawIntBits(distance) >>> 3) & DEPTH_MASK;
+	}
+
+	private static int shaderBits(Shader shader) {
+		return shader != null ? shader.getId() : 0;
+	}
+
+	private static int textureBits(Pass pass) {
+		List<TextureBinding> textures = pass.getTextureBindingList();
+		if (textures.isEmpty()) {
+			return 0;
+		}
+		Texture texture = textures.get(0).getTexture();
+		return texture != null ? texture.getId() : 0;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= keys.length) return;
+
+		int newCapacity = Math.max(capacity, keys.length * 2);
+		geometries = Arrays.copyOf(geometries, newCapacity);
+		passes = Arrays.copyOf(passes, newCapacity);
+		passIndices = Arrays.copyOf(passIndices, newCapacity);
+		keys = Arrays.copyOf(keys, newCapacity);
+		order = Arrays.copyOf(order, newCapacity);
+	}
+}
@@ -0,0 +1,155 @@
+package eu.yvka.slothengine.renderer;
+
+/**
+ * Per frame counters of a renderer which are reset
+ * at the begin of each frame by <code>Renderer.onNewFrame</code>.
+ */
+public class RenderStatistics {
+
+	private int culledNodes;
+	private int culledGeometries;
+	private int visibleGeometries;
+	private int occludedGeometries;
+	private int occluderTriangles;
+	private long occlusionTime;
+	private int uniformUploads;
+	private int skippedUniformUploads;
+
+	/**
+	 * Resets all counters, is called once per frame.
+	 */
+	public void reset() {
+		culledNodes = 0;
+		culledGeometries = 0;
+		visibleGeometries = 0;
+		occludedGeometries = 0;
+		occluderTriangles = 0;
+		occlusionTime = 0;
+		uniformUploads = 0;
+		skippedUniformUploads = 0;
+	}
+
+	/**
+	 * Counts a node whose whole subtree was rejected by the frustum test.
+	 */
+	public void onNodeCulled() {
+		culledNodes++;
+	}
+
+	/**
+	 * Counts a geometry whose mesh was rejected by the frustum test.
+	 */
+	public void onGeometryCulled() {
+		culledGeometries++;
+	}
+
+	/**
+	 * Counts a geometry which passed the frustum test.
+	 */
+	public void onGeometryVisible() {
+		visibleGeometries++;
+	}
+
+	/**
+	 * Counts a geometry which passed the frustum test but is hidden behind an occluder.
+	 */
+	public void onGeometryOccluded() {
+		occludedGeometries++;
+	}
+
+	/**
+	 * Records the cost of the occlusion culling of the current frame.
+	 *
+	 * @param triangles the count of rasterized occluder triangles.
+	 * @param nanos the time spent by the rasterization and the occlusion tests in nanoseconds.
+	 */
+	public void onOcclusionCulled(int triangles, long nanos) {
+		occluderTriangles += triangles;
+		occlusionTime += nanos;
+	}
+
+	/**
+	 * Counts a uniform whose value was uploaded to the gpu.
+	 */
+	public void onUniformUploaded() {
+		uniformUploads++;
+	}
+
+	/**
+	 * Counts an active uniform which wasn't uploaded when its shader was
+	 * activated, because its value didn't change since the last upload.
+	 */
+	public void onUniformUploadSkipped() {
+		skippedUniformUploads++;
+	}
+
+	/**
+	 * @return the count of nodes whose subtree was culled in the current frame.
+	 */
+	public int getCulledNodes() {
+		return culledNodes;
+	}
+
+	/**
+	 * @return the count of geometries which were culled individually in the current frame.
+	 */
+	public int getCulledGeometries() {
+		return culledGeometries;
+	}
+
+	/**
+	 * @return the count of geometries which passed the frustum test in the current frame.
+	 */
+	public int getVisibleGeometries() {
+		return visibleGeometries;
+	}
+
+	/**
+	 * @return the count of geometries which were rejected by the occlusion culling in the current frame.
+	 */
+	public int getOccludedGeometries() {
+		return occludedGeometries;
+	}
+
+	/**
+	 * @return the count of occluder triangles which were rasterized in the current frame.
+	 */
+	public int getOccluderTriangles() {
+		return occluderTriangles;
+	}
+
+	/**
+	 * @return the time spent by the occlusion culling of the current frame in nanoseconds.
+	 */
+	public long getOcclusionTime() {
+		return occlusionTime;
+	}
+
+	/**
+	 * @return the count of uniform uploads in the current frame.
+	 */
+	public int getUniformUploads() {
+		return uniformUploads;
+	}
+
+	/**
+	 * @return the count of skipped uniform uploads in the current frame.
+	 */
+	public int getSkippedUniformUploads() {
+		return skippedUniformUploads;
+	}
+
+	@Override
+	public String toString() {
+		return "RenderStatistics[" +
+			"culledNodes=" + culledNodes +
+			", culledGeometries=" + culledGeometries +
+			", visibleGeometries=" + visibleGeometries +
+			", occludedGeometries=" + occludedGeometries +
+			", occluderTriangles=" + occluderTriangles +
+			", occlusionTime=" + occlusionTime +
+			", uniformUploads=" + uniformUploads +
+			", skippedUniformUploads=" + skippedUniformUploads +
+			"]";
+	}
+}
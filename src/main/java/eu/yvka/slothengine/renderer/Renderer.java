@@ -1,15 +1,18 @@
 package eu.yvka.slothengine.renderer;
 
 import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexArray;
 import eu.yvka.slothengine.geometry.VertexBuffer;
 import eu.yvka.slothengine.math.Color;
 import eu.yvka.slothengine.shader.source.ShaderSource;
 import eu.yvka.slothengine.texture.image.Image;
 import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.UniformBuffer;
 import eu.yvka.slothengine.texture.Texture;
 import org.lwjgl.opengl.GL41;
 
 import java.io.IOException;
+import java.nio.Buffer;
 
 /**
  * Interface which acts as abstraction
@@ -176,6 +179,34 @@ public interface Renderer {
      */
 	void drawMesh(Mesh mesh);
 
+	/**
+	 * Draw several instances of a mesh by a single draw call, the
+	 * per instance model matrices are read from the instance buffer.
+	 * The bound shader must read the matrices from the
+	 * <code>sl_instanceModelMatrix</code> attribute.
+	 *
+	 * @param mesh the mesh which should be rendered.
+	 * @param instanceBuffer a buffer of the type <code>InstanceModelMatrix</code> which contains
+	 *                       16 floats per instance.
+	 * @param instanceCount the count of instances to draw.
+	 */
+	void drawMeshInstanced(Mesh mesh, VertexBuffer instanceBuffer, int instanceCount);
+
+	/**
+	 * Determines if the renderer supports <code>drawMeshInstanced</code>.
+	 *
+	 * @return true if instanced rendering is supported.
+	 */
+	boolean isInstancingSupported();
+
+	/**
+	 * Replays a recorded command buffer, must be called on the thread
+	 * which owns the graphics context.
+	 *
+	 * @param commands the commands to execute.
+	 */
+	void executeCommands(RenderCommandBuffer commands);
+
 	/**
 	 * Bind or create a vertex buffer on the GPU.
 	 *
@@ -183,6 +214,20 @@ public interface Renderer {
      */
 	void updateBuffer(VertexBuffer buffer);
 
+	/**
+	 * Provides the memory into which the next content of a streaming vertex buffer,
+	 * a buffer with the usage <code>STREAM_DRAW</code>, could be written directly.
+	 * The written content is used by the draw calls after the next update of the buffer
+	 * and the data of the vertex buffer itself is ignored for that update.
+	 *
+	 * The memory could be a range of a larger buffer, so it must be written
+	 * by relative puts from its position, which isn't necessarily zero.
+	 *
+	 * @param buffer the streaming vertex buffer.
+	 * @return the memory in the format of the vertex buffer, whose remaining space has the capacity of the buffer.
+	 */
+	Buffer mapBuffer(VertexBuffer buffer);
+
 	/**
 	 * Delete a vertex buffer from the GPU.
 	 *
@@ -190,6 +235,35 @@ public interface Renderer {
      */
 	void deleteBuffer(VertexBuffer buffer);
 
+	/**
+	 * Uploads the content of a uniform buffer if it was modified and
+	 * binds the buffer to its binding point.
+	 *
+	 * @param buffer the uniform buffer to bind.
+	 */
+	void setUniformBuffer(UniformBuffer buffer);
+
+	/**
+	 * Delete a uniform buffer from the GPU.
+	 *
+	 * @param buffer the uniform buffer which should be deleted.
+	 */
+	void deleteUniformBuffer(UniformBuffer buffer);
+
+	/**
+	 * Determines if the renderer supports uniform buffers.
+	 *
+	 * @return true if uniform buffers are supported.
+	 */
+	boolean isUniformBufferSupported();
+
+	/**
+	 * Delete a vertex array from the GPU.
+	 *
+	 * @param vertexArray the vertex array which should be deleted.
+	 */
+	void deleteVertexArray(VertexArray vertexArray);
+
 	/**
 	 * Clean up all resources which are used the renderer.
 	 * Must be called after the end of the render loop.
@@ -207,4 +281,12 @@ public interface Renderer {
 	 */
 	void onNewFrame();
 
+	/**
+	 * Retrieves the statistics of the current frame,
+	 * the statistics are reset by <code>onNewFrame</code>.
+	 *
+	 * @return the statistics of the current frame.
+	 */
+	RenderStatistics getStatistics();
+
 }
@@ -3,33 +3,158 @@ package eu.yvka.slothengine.renderer;
 
 import eu.yvka.slothengine.engine.Engine;
 import eu.yvka.slothengine.engine.EngineComponent;
+import eu.yvka.slothengine.geometry.Mesh;
 import eu.yvka.slothengine.material.Material;
 import eu.yvka.slothengine.material.MaterialParameter;
 import eu.yvka.slothengine.material.Pass;
 import eu.yvka.slothengine.material.TextureBinding;
 import eu.yvka.slothengine.math.Color;
+import eu.yvka.slothengine.math.Frustum;
 import eu.yvka.slothengine.renderer.font.FontRenderer;
+import eu.yvka.slothengine.renderer.occlusion.OcclusionCuller;
 import eu.yvka.slothengine.scene.camera.Camera;
+import eu.yvka.slothengine.scene.BoundingVolumeHierarchy;
 import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.Node;
 import eu.yvka.slothengine.scene.Scene;
+import eu.yvka.slothengine.scene.traversal.IterativeTraverse;
+import eu.yvka.slothengine.scene.traversal.PruningVisitor;
+import eu.yvka.slothengine.scene.traversal.VisitResult;
 import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.ShaderVariable;
+import eu.yvka.slothengine.shader.UniformBuffer;
+import eu.yvka.slothengine.shader.UniformHandle;
 import org.joml.Matrix4f;
+import org.joml.Vector3f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.Font;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 
 public class RendererManager implements EngineComponent {
 
 	private static final Logger Log = LoggerFactory.getLogger(RendererManager.class);
 
+	/**
+	 * Name of the uniform which signals a shader that the model matrix
+	 * must be read from the <code>sl_instanceModelMatrix</code> attribute.
+	 */
+	public static final String INSTANCED_UNIFORM = ShaderVariable.VAR_PREFIX + "instanced";
+
+	/**
+	 * Handles of the engine uniforms which are set per pass.
+	 */
+	private static final UniformHandle MODEL_MATRIX = UniformHandle.of("sl_modelMatrix");
+	private static final UniformHandle MODEL_VIEW_MATRIX = UniformHandle.of("sl_modelViewMatrix");
+	private static final UniformHandle NORMAL_MATRIX = UniformHandle.of("sl_normalMatrix");
+	private static final UniformHandle MVP = UniformHandle.of("sl_mvp");
+	private static final UniformHandle PROJECTION_MATRIX = UniformHandle.of("sl_projectionMatrix");
+	private static final UniformHandle VIEW_MATRIX = UniformHandle.of("sl_viewMatrix");
+	private static final UniformHandle CAMERA_POSITION = UniformHandle.of("sl_cameraPosition");
+	private static final UniformHandle CAMERA_DIRECTION = UniformHandle.of("sl_cameraDirection");
+	private static final UniformHandle TIME = UniformHandle.of("sl_time");
+	private static final UniformHandle INSTANCED = UniformHandle.of(INSTANCED_UNIFORM);
+
+	/**
+	 * Minimal count of geometries which are rendered by an instanced draw call.
+	 */
+	private static final int MIN_INSTANCE_COUNT = 2;
+
+	/**
+	 * Default minimal count of render groups which are recorded in parallel.
+	 */
+	public static final int DEFAULT_PARALLEL_RECORDING_THRESHOLD = 512;
+
+	/**
+	 * std140 layout of the SlothFrame uniform block:
+	 * <code><pre>
+	 * layout(std140) uniform SlothFrame {
+	 *     mat4 sl_projectionMatrix;  // offset   0
+	 *     mat4 sl_viewMatrix;        // offset  64
+	 *     vec4 sl_cameraPosition;    // offset 128
+	 *     vec4 sl_cameraDirection;   // offset 144
+	 *     float sl_time;             // offset 160
+	 * };
+	 * </pre></code>
+	 */
+	private static final int FRAME_PROJECTION_OFFSET = 0;
+	private static final int FRAME_VIEW_OFFSET = 64;
+	private static final int FRAME_CAMERA_POSITION_OFFSET = 128;
+	private static final int FRAME_CAMERA_DIRECTION_OFFSET = 144;
+	private static final int FRAME_TIME_OFFSET = 160;
+	private static final int FRAME_BLOCK_SIZE = 176;
+
 	private RenderState renderState;
 	private Renderer renderer;
 	private FontRenderer fontRenderer;
 	private boolean initialized = false;
 	private Scene currentScene;
+	private final RenderQueue renderQueue = new RenderQueue();
+	private final Frustum frustum = new Frustum();
+	private final UniformBuffer frameUniforms = new UniformBuffer(Shader.FRAME_BLOCK_BINDING, FRAME_BLOCK_SIZE);
+
+	/**
+	 * The normal matrix of the current frame which is shared by all recorders.
+	 */
+	private final Matrix4f normalMatrix = new Matrix4f();
+
+	/**
+	 * The render queue is split into groups, a group is either a single
+	 * queue item or a range of items which are drawn by one instanced draw call.
+	 * A group ends at the exclusive queue index <code>groupEnds[group]</code>.
+	 */
+	private int[] groupEnds = new int[256];
+	private boolean[] groupInstanced = new boolean[256];
+	private int groupCount;
+
+	/**
+	 * Hooks which are recorded around the commands of each group, so the passes are
+	 * prepared and post processed on the render thread in the order of their draw calls.
+	 */
+	private final RenderCommandBuffer.Hook prepareGroupHook = this::prepareGroup;
+	private final RenderCommandBuffer.Hook finishGroupHook = this::finishGroup;
+
+	/**
+	 * Recorders of the command buffers, the first recorder is used by the sequential
+	 * recording and each slice of a parallel recording uses its own recorder.
+	 */
+	private final List<CommandRecorder> recorders = new ArrayList<>();
+	private int activeRecorders;
+	private ForkJoinPool recordingPool = ForkJoinPool.commonPool();
+	private int parallelRecordingThreshold = DEFAULT_PARALLEL_RECORDING_THRESHOLD;
+	private float frameTime;
+
+	/**
+	 * Traversals of the culling, the second one enqueues the subtrees
+	 * which lie completely inside of the frustum without further tests.
+	 */
+	private final IterativeTraverse cullTraversal = new IterativeTraverse();
+	private final IterativeTraverse insideTraversal = new IterativeTraverse();
+	private final PruningVisitor<Node> cullVisitor = this::cullNode;
+	private final PruningVisitor<Node> insideVisitor = this::enqueueInside;
+	private final Consumer<Geometry> hierarchyVisitor = this::enqueueVisible;
+
+	/**
+	 * The retained render list of the current scene, the culling marks the visible
+	 * items of the list with the number of the current frame.
+	 */
+	private RenderList renderList;
+	private long cullFrame;
+
+	/**
+	 * The occlusion culling is disabled without a culler, otherwise the geometries
+	 * which pass the frustum test are collected and tested against the occluders.
+	 */
+	private OcclusionCuller occlusionCuller;
+	private final List<Geometry> occluders = new ArrayList<>();
+	private final List<Geometry> occlusionCandidates = new ArrayList<>();
 
 	@Override
 	public void initialize() {
@@ -81,6 +206,77 @@ public class RendererManager implements EngineComponent {
 		return renderer;
 	}
 
+	/**
+	 * Specifies the renderer which should be used by this manager,
+	 * must be called before <code>initialize</code> otherwise
+	 * a Lwjgl3Renderer is created.
+	 *
+	 * @param renderer the renderer to use.
+	 */
+	public void setRenderer(Renderer renderer) {
+		if (initialized) {
+			throw new IllegalStateException("The renderer can't be changed after the RendererManager is initialized");
+		}
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Specifies the pool which records the command buffers in parallel.
+	 *
+	 * @param recordingPool the pool of the recording threads.
+	 */
+	public void setRecordingPool(ForkJoinPool recordingPool) {
+		if (recordingPool == null) {
+			throw new IllegalArgumentException("The recording pool must not be null");
+		}
+		this.recordingPool = recordingPool;
+	}
+
+	/**
+	 * Specifies the minimal count of render groups which are recorded
+	 * in parallel, smaller frames are recorded on the render thread.
+	 *
+	 * @param parallelRecordingThreshold the minimal count of groups of a parallel recording.
+	 */
+	public void setParallelRecordingThreshold(int parallelRecordingThreshold) {
+		if (parallelRecordingThreshold < 1) {
+			throw new IllegalArgumentException("The parallel recording threshold must be at least 1");
+		}
+		this.parallelRecordingThreshold = parallelRecordingThreshold;
+	}
+
+	/**
+	 * Specifies the culler which rejects the geometries that are hidden
+	 * behind the geometries which are marked as occluder.
+	 *
+	 * @param occlusionCuller the occlusion culler or null to disable the occlusion culling.
+	 */
+	public void setOcclusionCuller(OcclusionCuller occlusionCuller) {
+		this.occlusionCuller = occlusionCuller;
+	}
+
+	public OcclusionCuller getOcclusionCuller() {
+		return occlusionCuller;
+	}
+
+	/**
+	 * Retrieves the queue which contains the sorted passes of the last rendered frame.
+	 *
+	 * @return the render queue.
+	 */
+	public RenderQueue getRenderQueue() {
+		return renderQueue;
+	}
+
+	/**
+	 * Retrieves the statistics of the current frame such as the count of culled objects.
+	 *
+	 * @return the statistics of the current frame.
+	 */
+	public RenderStatistics getStatistics() {
+		return renderer.getStatistics();
+	}
+
 	public FontRenderer getFontRenderer() {
 		return fontRenderer;
 	}
@@ -107,101 +303,500 @@ public class RendererManager implements EngineComponent {
 		currentScene = scene;
 	}
 
+	/**
+	 * Renders the current scene.
+	 *
+	 * The visible passes are sorted and grouped on the render thread, then
+	 * the groups are recorded into command buffers which are replayed by the renderer.
+	 * Large frames are recorded in parallel by disjoint slices of the groups.
+	 *
+	 * @param elapsedTime the elapsed time since the last frame.
+	 */
 	public void render(float elapsedTime) {
 		if (currentScene == null) return;
 
 		renderer.setClearColor(Color.LightGrey);
 		renderer.clearBuffers(true, true, true);
 
-		currentScene.traverse((node) -> {
-			if (node instanceof Geometry) {
-				Geometry geometry = (Geometry) node;
-				if (geometry.isVisible()) {
-					renderGeometry((Geometry) node, elapsedTime);
-				}
+		Camera camera = currentScene.getCamera();
+		frustum.update(camera.getProjectionMatrix(), camera.getViewMatrix());
+		updateFrameUniforms(camera, elapsedTime);
+
+		currentScene.prepareRender();
+		Node rootNode = currentScene.getRootNode();
+
+		renderList = currentScene.getRenderList();
+		renderList.prepare();
+		renderList.clearVisible();
+		cullFrame++;
+		BoundingVolumeHierarchy hierarchy = currentScene.getBoundingVolumeHierarchy();
+		if (hierarchy != null) {
+			hierarchy.query(frustum, hierarchyVisitor);
+		} else {
+			cullTraversal.traverse(rootNode, cullVisitor);
+		}
+		if (occlusionCuller != null) {
+			cullOccluded(camera);
+		}
+		fillRenderQueue(camera);
+
+		frameTime = elapsedTime;
+		camera.getViewMatrix().normal(normalMatrix);
+		prepareGroups();
+		recordGroups();
+
+		for (int i = 0; i < activeRecorders; i++) {
+			renderer.executeCommands(recorders.get(i).commands);
+		}
+	}
+
+	/**
+	 * Splits the sorted render queue into groups, each group is either a single pass of a
+	 * geometry or a range of items which is drawn by one instanced draw call.
+	 */
+	private void prepareGroups() {
+		groupCount = 0;
+		int size = renderQueue.size();
+		int i = 0;
+		while (i < size) {
+			int groupEnd = findInstanceGroupEnd(i, size);
+			if (groupEnd - i >= MIN_INSTANCE_COUNT && isInstancingAvailable(renderQueue.getPass(i).getShader())) {
+				addGroup(groupEnd, true);
+				i = groupEnd;
+				continue;
+			}
+
+			for (; i < groupEnd; i++) {
+				addGroup(i + 1, false);
 			}
-		});
+		}
 	}
 
-	private void renderGeometry(Geometry geometry, float elapsedTime) {
-		Camera camera = currentScene.getCamera();
-		Matrix4f projectionMatrix = camera.getProjectionMatrix();
-		Matrix4f viewMatrix = camera.getViewMatrix();
+	private void addGroup(int end, boolean instanced) {
+		if (groupCount == groupEnds.length) {
+			groupEnds = Arrays.copyOf(groupEnds, groupCount * 2);
+			groupInstanced = Arrays.copyOf(groupInstanced, groupCount * 2);
+		}
+		groupEnds[groupCount] = end;
+		groupInstanced[groupCount] = instanced;
+		groupCount++;
+	}
 
-		Matrix4f modelMatrix = geometry.getTransformMatrix();
-		Matrix4f normalMatrix = new Matrix4f();
-		viewMatrix.normal(normalMatrix);
+	private int getGroupStart(int group) {
+		return group == 0 ? 0 : groupEnds[group - 1];
+	}
 
-		Matrix4f modelViewMatrix = new Matrix4f(viewMatrix).mul(modelMatrix);
-		Matrix4f modelViewProjectionMatrix = new Matrix4f(projectionMatrix).mul(modelViewMatrix);
+	/**
+	 * Determines if a shader could render a group of instances, which requires
+	 * a linked shader that provides the <code>sl_instanced</code> path.
+	 *
+	 * @param shader the shader of the group.
+	 * @return true if the group could be drawn by an instanced draw call.
+	 */
+	private boolean isInstancingAvailable(Shader shader) {
+		return renderer.isInstancingSupported()
+			&& shader.isValid()
+			&& shader.isUniformsResolved()
+			&& shader.getUniform(INSTANCED).getLocation() >= 0;
+	}
 
-		Material material = geometry.getMaterial();
+	/**
+	 * Prepares the pass of a group right before the commands of the group are replayed.
+	 * The material parameters are applied to the shader here instead of being recorded,
+	 * so changes of <code>preparePass</code> and of the previous <code>postProcessPass</code> are drawn.
+	 *
+	 * @param group the group whose commands are replayed next.
+	 */
+	private void prepareGroup(int group) {
+		int index = getGroupStart(group);
+		Pass pass = renderQueue.getPass(index);
+		int passIndex = renderQueue.getPassIndex(index);
+		Material material = renderQueue.getGeometry(index).getMaterial();
 		List<Pass> passes = material.getPasses();
-		int countOfPasses = passes.size();
-
-		for (int i = 0; i < countOfPasses; i++) {
-			Pass pass = passes.get(i);
-			Pass nextPass = i > 0 ? passes.get(i - 1) : null;
-			Pass prevPass = i + 1 < countOfPasses ? passes.get(i + 1) : null;
-
-			Shader shader = pass.getShader();
-			shader.getUniform("sl_cameraPosition").setValue(camera.getPosition());
-			shader.getUniform("sl_cameraDirection").setValue(camera.getDirection());
-			shader.getUniform("sl_projectionMatrix").setValue(projectionMatrix);
-			shader.getUniform("sl_modelViewMatrix").setValue(modelViewMatrix);
-			shader.getUniform("sl_viewMatrix").setValue(viewMatrix);
-			shader.getUniform("sl_modelMatrix").setValue(modelMatrix);
-			shader.getUniform("sl_normalMatrix").setValue(normalMatrix);
-			shader.getUniform("sl_mvp").setValue(modelViewProjectionMatrix);
-			shader.getUniform("sl_time").setValue(elapsedTime);
-
-			pass.preparePass(prevPass);
-			if (currentScene.getLightList() != null && pass.isLightningEnabled()) {
-				currentScene.getLightList().passToShader(shader);
+
+		pass.preparePass(passIndex > 0 ? passes.get(passIndex - 1) : null);
+		Shader shader = pass.getShader();
+		if (currentScene.getLightList() != null && pass.isLightningEnabled()) {
+			currentScene.getLightList().passToShader(shader);
+		}
+		applyMaterialParameters(shader, material);
+		if (!groupInstanced[group] && material.hasFallbackShader()) {
+			applyMaterialParameters(material.getFallbackShader(), material);
+		}
+	}
+
+	/**
+	 * Finishes the pass of a group right after the commands of the group were replayed.
+	 *
+	 * @param group the group whose commands were replayed.
+	 */
+	private void finishGroup(int group) {
+		int index = getGroupStart(group);
+		Pass pass = renderQueue.getPass(index);
+		int passIndex = renderQueue.getPassIndex(index);
+		List<Pass> passes = renderQueue.getGeometry(index).getMaterial().getPasses();
+		pass.postProcessPass(passIndex + 1 < passes.size() ? passes.get(passIndex + 1) : null);
+	}
+
+	/**
+	 * Records the groups of the current frame, on the render thread if the frame
+	 * is small or by disjoint slices of the groups in the recording pool.
+	 */
+	private void recordGroups() {
+		int slices = 1;
+		if (groupCount >= parallelRecordingThreshold) {
+			slices = Math.max(1, Math.min(recordingPool.getParallelism(), groupCount));
+		}
+
+		while (recorders.size() < slices) {
+			recorders.add(new CommandRecorder());
+		}
+		activeRecorders = slices;
+
+		if (slices == 1) {
+			recordSlice(recorders.get(0), 0, groupCount);
+		} else {
+			recordingPool.invoke(new RecordSlicesAction(0, slices, slices));
+		}
+	}
+
+	/**
+	 * Records the groups of a slice into the command buffer of a recorder,
+	 * only reads the scene and could therefore run on any thread.
+	 *
+	 * @param recorder the recorder of the slice.
+	 * @param fromGroup the first group of the slice.
+	 * @param toGroup the exclusive last group of the slice.
+	 */
+	private void recordSlice(CommandRecorder recorder, int fromGroup, int toGroup) {
+		recorder.commands.clear();
+		for (int group = fromGroup; group < toGroup; group++) {
+			int start = getGroupStart(group);
+			recorder.commands.callHook(prepareGroupHook, group);
+			if (groupInstanced[group]) {
+				recordInstanced(recorder, start, groupEnds[group]);
+			} else {
+				recordPass(recorder, start);
 			}
+			recorder.commands.callHook(finishGroupHook, group);
+		}
+	}
 
-			for(MaterialParameter parameter : material.getMaterialParameters().values()) {
-				shader.getUniform(parameter.getName()).setValue(parameter);
+	/**
+	 * Determines the end of a group of consecutive opaque queue items which share
+	 * the same mesh, material and pass and therefore could be drawn by a single instanced draw call.
+	 *
+	 * @param start the index of the first item of the group.
+	 * @param size the size of the render queue.
+	 * @return the exclusive end index of the group.
+	 */
+	private int findInstanceGroupEnd(int start, int size) {
+		Pass pass = renderQueue.getPass(start);
+		if (RenderQueue.getBucket(pass) != RenderQueue.BUCKET_OPAQUE) {
+			return start + 1;
+		}
+
+		Geometry geometry = renderQueue.getGeometry(start);
+		Mesh mesh = geometry.getMesh();
+		Material material = geometry.getMaterial();
+		int passIndex = renderQueue.getPassIndex(start);
+
+		int end = start + 1;
+		while (end < size) {
+			Geometry other = renderQueue.getGeometry(end);
+			if (renderQueue.getPass(end) != pass
+				|| renderQueue.getPassIndex(end) != passIndex
+				|| other.getMesh() != mesh
+				|| other.getMaterial() != material) {
+				break;
 			}
-			useShader(shader);
-
-			if (! shader.isValid()) {
-				if (material.hasFallbackShader()) {
-					// when material pass shader can't be compiled we continue with
-					// a fallback shader if one is provided.
-					final Shader fallbackShader = material.getFallbackShader();
-					fallbackShader.getUniform("sl_cameraPosition").setValue(camera.getPosition());
-					fallbackShader.getUniform("sl_cameraDirection").setValue(camera.getDirection());
-					fallbackShader.getUniform("sl_projectionMatrix").setValue(projectionMatrix);
-					fallbackShader.getUniform("sl_modelViewMatrix").setValue(modelViewMatrix);
-					fallbackShader.getUniform("sl_viewMatrix").setValue(viewMatrix);
-					fallbackShader.getUniform("sl_modelMatrix").setValue(modelMatrix);
-					fallbackShader.getUniform("sl_normalMatrix").setValue(normalMatrix);
-					fallbackShader.getUniform("sl_mvp").setValue(modelViewProjectionMatrix);
-					useShader(fallbackShader);
-					shader = fallbackShader;
-
-				}
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Records the queue items from start to end as a single instanced draw call,
+	 * the model matrices of the geometries are appended to the draw command.
+	 *
+	 * @param recorder the recorder of the current slice.
+	 * @param start the index of the first item.
+	 * @param end the exclusive index of the last item.
+	 */
+	private void recordInstanced(CommandRecorder recorder, int start, int end) {
+		RenderCommandBuffer commands = recorder.commands;
+		Geometry geometry = renderQueue.getGeometry(start);
+		Pass pass = renderQueue.getPass(start);
+		Shader shader = pass.getShader();
+
+		commands.setShader(shader, null);
+		recordFrameUniforms(commands, shader, null);
+		commands.setUniform(NORMAL_MATRIX, normalMatrix);
+		commands.setUniform(INSTANCED, 1);
+		commands.useShader();
+
+		recordTextures(commands, pass);
+		commands.setRenderState(pass.getRenderState());
+		commands.drawMeshInstanced(geometry.getMesh(), end - start);
+		for (int i = start; i < end; i++) {
+			commands.putInstance(renderQueue.getGeometry(i).getWorldMatrix());
+		}
+	}
+
+	/**
+	 * Records a single pass of a geometry.
+	 *
+	 * @param recorder the recorder of the current slice.
+	 * @param index the index of the queue item.
+	 */
+	private void recordPass(CommandRecorder recorder, int index) {
+		RenderCommandBuffer commands = recorder.commands;
+		Geometry geometry = renderQueue.getGeometry(index);
+		Pass pass = renderQueue.getPass(index);
+
+		Camera camera = currentScene.getCamera();
+		Matrix4f modelMatrix = geometry.getWorldMatrix();
+		camera.getViewMatrix().mul(modelMatrix, recorder.modelViewMatrix);
+		camera.getProjectionMatrix().mul(recorder.modelViewMatrix, recorder.modelViewProjectionMatrix);
+
+		Material material = geometry.getMaterial();
+		Shader shader = pass.getShader();
+		Shader fallbackShader = material.hasFallbackShader() ? material.getFallbackShader() : null;
+
+		// the uniforms are applied to the fallback shader as well if the shader is invalid
+		commands.setShader(shader, fallbackShader);
+		recordFrameUniforms(commands, shader, fallbackShader);
+		commands.setUniform(MODEL_VIEW_MATRIX, recorder.modelViewMatrix);
+		commands.setUniform(MODEL_MATRIX, modelMatrix);
+		commands.setUniform(NORMAL_MATRIX, normalMatrix);
+		commands.setUniform(MVP, recorder.modelViewProjectionMatrix);
+		commands.setUniform(INSTANCED, 0);
+		commands.useShader();
+
+		recordTextures(commands, pass);
+		commands.setRenderState(pass.getRenderState());
+		commands.drawMesh(geometry.getMesh());
+	}
+
+	/**
+	 * Writes the per frame engine uniforms into the frame uniform buffer
+	 * and binds it to the frame binding point, once per frame.
+	 *
+	 * @param camera the camera of the current scene.
+	 * @param elapsedTime the elapsed time since the last frame.
+	 */
+	private void updateFrameUniforms(Camera camera, float elapsedTime) {
+		if (!renderer.isUniformBufferSupported()) return;
+
+		frameUniforms.put(FRAME_PROJECTION_OFFSET, camera.getProjectionMatrix());
+		frameUniforms.put(FRAME_VIEW_OFFSET, camera.getViewMatrix());
+		frameUniforms.put(FRAME_CAMERA_POSITION_OFFSET, camera.getPosition(), 1.0f);
+		frameUniforms.put(FRAME_CAMERA_DIRECTION_OFFSET, camera.getDirection(), 0.0f);
+		frameUniforms.put(FRAME_TIME_OFFSET, elapsedTime);
+		renderer.setUniformBuffer(frameUniforms);
+	}
+
+	/**
+	 * Records the per frame uniforms for shaders which don't
+	 * read them from the frame uniform block.
+	 *
+	 * @param commands the command buffer to record into.
+	 * @param shader the shader.
+	 * @param fallbackShader the fallback shader of the pass or null.
+	 */
+	private void recordFrameUniforms(RenderCommandBuffer commands, Shader shader, Shader fallbackShader) {
+		if (shader.isFrameBlockUsed() && (fallbackShader == null || fallbackShader.isFrameBlockUsed())) return;
+
+		Camera camera = currentScene.getCamera();
+		commands.setUniform(CAMERA_POSITION, camera.getPosition());
+		commands.setUniform(CAMERA_DIRECTION, camera.getDirection());
+		commands.setUniform(PROJECTION_MATRIX, camera.getProjectionMatrix());
+		commands.setUniform(VIEW_MATRIX, camera.getViewMatrix());
+		commands.setUniform(TIME, frameTime);
+	}
+
+	/**
+	 * Tests the world bounds of a node against the view frustum and
+	 * puts the geometry of the node into the render queue if it is not culled.
+	 * A node which lies outside of the frustum rejects its whole subtree,
+	 * a node which lies completely inside enqueues its subtree without further tests.
+	 *
+	 * @param node the node to test.
+	 * @return whether the traversal descends into the children of the node.
+	 */
+	private VisitResult cullNode(Node node) {
+		Frustum.Intersection intersection = frustum.intersects(node.getWorldBound());
+		if (intersection == Frustum.Intersection.OUTSIDE) {
+			renderer.getStatistics().onNodeCulled();
+			return VisitResult.SKIP_CHILDREN;
+		}
+		if (intersection == Frustum.Intersection.INSIDE) {
+			insideTraversal.traverse(node, insideVisitor);
+			return VisitResult.SKIP_CHILDREN;
+		}
+
+		if (node instanceof Geometry) {
+			Geometry geometry = (Geometry) node;
+			if (frustum.intersects(geometry.getMeshWorldBound()) != Frustum.Intersection.OUTSIDE) {
+				renderer.getStatistics().onGeometryVisible();
+				enqueue(geometry);
+			} else {
+				renderer.getStatistics().onGeometryCulled();
 			}
+		}
+		return VisitResult.CONTINUE;
+	}
 
-			if (shader.isValid()) {
-				for (TextureBinding tb : pass.getTextures().values()) {
-					renderer.setTexture(tb.getUint(), tb.getTexture());
-				}
+	private VisitResult enqueueInside(Node node) {
+		if (node instanceof Geometry) {
+			enqueueVisible((Geometry) node);
+		}
+		return VisitResult.CONTINUE;
+	}
 
-				renderer.applyRenderState(pass.getRenderState());
-				renderer.drawMesh(geometry.getMesh());
+	private void enqueueVisible(Geometry geometry) {
+		renderer.getStatistics().onGeometryVisible();
+		enqueue(geometry);
+	}
+
+	/**
+	 * Marks the passes of a visible geometry in the render list.
+	 *
+	 * @param geometry the geometry which passed the frustum test.
+	 */
+	private void enqueue(Geometry geometry) {
+		if (!geometry.isVisible() || geometry.getMesh() == null || geometry.getMaterial() == null) return;
+		if (occlusionCuller != null) {
+			if (!geometry.isOccluder()) {
+				occlusionCandidates.add(geometry);
+				return;
 			}
-			pass.postProcessPass(nextPass);
+			occluders.add(geometry);
 		}
+		renderList.markVisible(geometry, cullFrame);
 	}
 
-	private void useShader(Shader shader) {
-		try {
-            renderer.setShader(shader);
-		} catch (Exception ex) {
-            Log.error("Failed to setup shader", ex);
-        }
+	/**
+	 * Rasterizes the visible occluders and marks the collected candidates
+	 * of the frustum culling which aren't hidden behind them.
+	 *
+	 * @param camera the camera of the frame.
+	 */
+	private void cullOccluded(Camera camera) {
+		long start = System.nanoTime();
+		RenderStatistics statistics = renderer.getStatistics();
+
+		occlusionCuller.beginFrame(camera);
+		for (int i = 0; i < occluders.size(); i++) {
+			occlusionCuller.addOccluder(occluders.get(i));
+		}
+		occlusionCuller.rasterize();
+
+		for (int i = 0; i < occlusionCandidates.size(); i++) {
+			Geometry geometry = occlusionCandidates.get(i);
+			if (occlusionCuller.isOccluded(geometry.getMeshWorldBound())) {
+				statistics.onGeometryOccluded();
+			} else {
+				renderList.markVisible(geometry, cullFrame);
+			}
+		}
+		occluders.clear();
+		occlusionCandidates.clear();
+		statistics.onOcclusionCulled(occlusionCuller.getOccluderTriangleCount(), System.nanoTime() - start);
+	}
+
+	/**
+	 * Collects the visible items of the render list into the render queue.
+	 *
+	 * Only the visible lists of the render list are iterated, which were collected while
+	 * the geometries were culled. The distance to the camera is patched into the retained
+	 * keys, it only orders opaque items of the same state front to back and sorts the
+	 * transparent items back to front.
+	 *
+	 * @param camera the camera of the frame.
+	 */
+	private void fillRenderQueue(Camera camera) {
+		renderQueue.clear();
+		Vector3f cameraPosition = camera.getPosition();
+		queueVisible(RenderQueue.BUCKET_OPAQUE, cameraPosition);
+		int opaqueCount = renderQueue.size();
+		queueVisible(RenderQueue.BUCKET_TRANSPARENT, cameraPosition);
+
+		renderQueue.sort(0, opaqueCount);
+		renderQueue.sort(opaqueCount, renderQueue.size());
+	}
+
+	private void queueVisible(int bucket, Vector3f cameraPosition) {
+		int count = renderList.getVisibleCount(bucket);
+		for (int i = 0; i < count; i++) {
+			Geometry geometry = renderList.getVisibleGeometry(bucket, i);
+			if (geometry == null) continue;
+
+			float distance = cameraPosition.distance(geometry.getWorldPosition());
+			long key = renderList.getVisibleSortKey(bucket, i);
+			if (bucket == RenderQueue.BUCKET_OPAQUE) {
+				key = RenderQueue.withOpaqueDepth(key, distance);
+			} else {
+				key = RenderQueue.withTransparentDepth(key, distance);
+			}
+			renderQueue.add(geometry, renderList.getVisiblePass(bucket, i), renderList.getVisiblePassIndex(bucket, i), key);
+		}
+	}
+
+	private void applyMaterialParameters(Shader shader, Material material) {
+		List<MaterialParameter> parameters = material.getMaterialParameterList();
+		for (int i = 0; i < parameters.size(); i++) {
+			MaterialParameter parameter = parameters.get(i);
+			shader.getUniform(parameter.getHandle()).setValue(parameter);
+		}
+	}
+
+	private void recordTextures(RenderCommandBuffer commands, Pass pass) {
+		List<TextureBinding> textures = pass.getTextureBindingList();
+		for (int i = 0; i < textures.size(); i++) {
+			TextureBinding binding = textures.get(i);
+			commands.setTexture(binding.getUint(), binding.getTexture());
+		}
+	}
+
+	/**
+	 * Command buffer of a recording slice with its own scratch matrices.
+	 */
+	private static class CommandRecorder {
+		final RenderCommandBuffer commands = new RenderCommandBuffer();
+		final Matrix4f modelViewMatrix = new Matrix4f();
+		final Matrix4f modelViewProjectionMatrix = new Matrix4f();
+	}
+
+	/**
+	 * Records a range of slices by splitting it until a single slice remains.
+	 */
+	private class RecordSlicesAction extends RecursiveAction {
+
+		private final int fromSlice;
+		private final int toSlice;
+		private final int sliceCount;
+
+		RecordSlicesAction(int fromSlice, int toSlice, int sliceCount) {
+			this.fromSlice = fromSlice;
+			this.toSlice = toSlice;
+			this.sliceCount = sliceCount;
+		}
+
+		@Override
+		protected void compute() {
+			if (toSlice - fromSlice == 1) {
+				int fromGroup = (int) ((long) groupCount * fromSlice / sliceCount);
+				int toGroup = (int) ((long) groupCount * toSlice / sliceCount);
+				recordSlice(recorders.get(fromSlice), fromGroup, toGroup);
+				return;
+			}
+
+			int middle = (fromSlice + toSlice) >>> 1;
+			invokeAll(
+				new RecordSlicesAction(fromSlice, middle, sliceCount),
+				new RecordSlicesAction(middle, toSlice, sliceCount));
+		}
 	}
 
 }
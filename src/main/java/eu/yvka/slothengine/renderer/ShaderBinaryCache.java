@@ -0,0 +1,219 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.source.ShaderSource;
+import eu.yvka.slothengine.utils.BufferUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stores the binaries of linked shader programs in a directory, so that
+ * a program could be loaded without compiling its sources on the next start.
+ *
+ * An entry is identified by a hash of the sources of the program and
+ * of the vendor, renderer and version of the OpenGL driver, which
+ * ensures that a changed source or driver never loads a stale binary.
+ */
+public class ShaderBinaryCache {
+
+	private static final Logger Log = LoggerFactory.getLogger(ShaderBinaryCache.class);
+
+	private static final int MAGIC = 0x534C4243;
+	private static final String EXTENSION = ".bin";
+
+	private final Path directory;
+	private final String driver;
+	private int hits;
+	private int misses;
+
+	/**
+	 * Creates a cache which stores its entries in the specified directory.
+	 *
+	 * @param directory the cache directory, which is created by the first store.
+	 * @param vendor the vendor of the OpenGL driver.
+	 * @param renderer the renderer of the OpenGL driver.
+	 * @param version the version of the OpenGL driver.
+	 */
+	public ShaderBinaryCache(Path directory, String vendor, String renderer, String version) {
+		this.directory = directory;
+		this.driver = vendor + "\n" + renderer + "\n" + version;
+	}
+
+	/**
+	 * Computes the key of the cache entry of a shader from its sources and the driver.
+	 *
+	 * @param shader the shader.
+	 * @return the key of the cache entry.
+	 */
+	public String computeKey(Shader shader) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported by the jvm", e);
+		}
+
+		digest.update(driver.getBytes(StandardCharsets.UTF_8));
+		for (ShaderSource source : shader.getShaderSources()) {
+			digest.update((byte) 0);
+			digest.update(source.getType().name().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(source.getPreprocessedSource().getBytes(StandardCharsets.UTF_8));
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Loads a cached program binary.
+	 *
+	 * @param key the key of the entry.
+	 * @return the entry or null if there is no readable entry for the key.
+	 */
+	public Entry load(String key) {
+		Path file = directory.resolve(key + EXTENSION);
+		try (InputStream in = Files.newInputStream(file);
+			 DataInputStream data = new DataInputStream(in)) {
+
+			if (data.readInt() != MAGIC) {
+				Log.warn("Ignore the shader binary {} with an unknown format", file);
+				return null;
+			}
+
+			int format = data.readInt();
+			int length = data.readInt();
+			byte[] bytes = new byte[length];
+			data.readFully(bytes);
+
+			ByteBuffer binary = BufferUtils.createByteBuffer(length);
+			binary.put(bytes).flip();
+			return new Entry(format, binary);
+
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			Log.warn("Failed to read the shader binary " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a program binary, failures are logged and otherwise ignored.
+	 *
+	 * @param key the key of the entry.
+	 * @param format the binary format of the driver.
+	 * @param binary the program binary from its position to its limit.
+	 */
+	public void store(String key, int format, ByteBuffer binary) {
+		Path file = directory.resolve(key + EXTENSION);
+		byte[] bytes = new byte[binary.remaining()];
+		binary.duplicate().get(bytes);
+
+		try {
+			Files.createDirectories(directory);
+			try (OutputStream out = Files.newOutputStream(file);
+				 DataOutputStream data = new DataOutputStream(out)) {
+				data.writeInt(MAGIC);
+				data.writeInt(format);
+				data.writeInt(bytes.length);
+				data.write(bytes);
+			}
+		} catch (IOException e) {
+			Log.warn("Failed to write the shader binary " + file, e);
+		}
+	}
+
+	/**
+	 * Removes an entry which could not be loaded by the driver.
+	 *
+	 * @param key the key of the entry.
+	 */
+	public void invalidate(String key) {
+		try {
+			Files.deleteIfExists(directory.resolve(key + EXTENSION));
+		} catch (IOException e) {
+			Log.warn("Failed to delete the shader binary " + key, e);
+		}
+	}
+
+	/**
+	 * Counts a program which was loaded from the cache.
+	 */
+	public void onHit() {
+		hits++;
+	}
+
+	/**
+	 * Counts a program which had to be compiled.
+	 */
+	public void onMiss() {
+		misses++;
+	}
+
+	/**
+	 * @return the count of programs which were loaded from the cache.
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the count of programs which had to be compiled.
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the directory of the cache.
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * A cached program binary.
+	 */
+	public static class Entry {
+
+		private final int format;
+		private final ByteBuffer binary;
+
+		Entry(int format, ByteBuffer binary) {
+			this.format = format;
+			this.binary = binary;
+		}
+
+		/**
+		 * @return the binary format of the driver.
+		 */
+		public int getFormat() {
+			return format;
+		}
+
+		/**
+		 * @return the program binary.
+		 */
+		public ByteBuffer getBinary() {
+			return binary;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package eu.yvka.slothengine.renderer;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Assigns dense ids to the passes or meshes which are used by the items of a render list.
+ *
+ * The ids are reference counted and recycled once the last item of an object was removed,
+ * so the ids stay below the count of the objects which are in use at the same time,
+ * no matter how many objects were created before. The render queue stores these ids
+ * in the material and mesh fields of its sort keys.
+ */
+final class SortIdTable {
+
+	/**
+	 * The id and the reference count of each object.
+	 */
+	private final Map<Object, int[]> entries = new IdentityHashMap<>();
+	private int[] freeIds = new int[16];
+	private int freeIdCount;
+	private int nextId;
+
+	/**
+	 * Retrieves the id of an object and adds a reference to it.
+	 *
+	 * @param object the pass or mesh.
+	 * @return the id of the object.
+	 */
+	int acquire(Object object) {
+		int[] entry = entries.get(object);
+		if (entry == null) {
+			entry = new int[] {allocateId(), 0};
+			entries.put(object, entry);
+		}
+		entry[1]++;
+		return entry[0];
+	}
+
+	/**
+	 * Removes a reference of an object, the id of the object is recycled with its last reference.
+	 *
+	 * @param object the pass or mesh.
+	 */
+	void release(Object object) {
+		int[] entry = entries.get(object);
+		if (entry == null || --entry[1] > 0) return;
+
+		entries.remove(object);
+		if (freeIdCount == freeIds.length) {
+			freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+		}
+		freeIds[freeIdCount++] = entry[0];
+	}
+
+	/**
+	 * @param object the pass or mesh.
+	 * @return the id of the object or 0 if the object isn't referenced.
+	 */
+	int getId(Object object) {
+		int[] entry = entries.get(object);
+		return entry != null ? entry[0] : 0;
+	}
+
+	/**
+	 * @return the count of objects which are referenced.
+	 */
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Releases all objects and their ids.
+	 */
+	void clear() {
+		entries.clear();
+		freeIdCount = 0;
+		nextId = 0;
+	}
+
+	private int allocateId() {
+		return freeIdCount > 0 ? freeIds[--freeIdCount] : nextId++;
+	}
+}
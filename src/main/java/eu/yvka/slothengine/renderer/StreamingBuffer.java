@@ -0,0 +1,360 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.VertexAttributePointer;
+import eu.yvka.slothengine.utils.BufferUtils;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.*;
+
+import static org.lwjgl.opengl.GL11.GL_INVALID_VALUE;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+
+/**
+ * Buffer object for vertex data which is replaced every frame.
+ *
+ * The buffer is sub-allocated linearly, each update of a frame receives the next
+ * free range of the current frame region. So several updates per frame, such as
+ * the instance data of each instanced draw call, never wait for the GPU.
+ *
+ * If the context supports buffer storage the buffer object is split into
+ * <code>REGION_COUNT</code> frame regions which are persistently mapped. A fence is
+ * placed behind the draw calls of a frame by <code>beginFrame</code>, which then rotates
+ * to the next region. The fence of a region is waited for before the region is written
+ * again, so the CPU only blocks if it runs more than two frames ahead.
+ *
+ * Otherwise the updates are staged in client memory and uploaded into the ranges of a
+ * single region, whose storage is orphaned by the first update of each frame. The
+ * driver then provides a new storage instead of waiting for draw calls which still read the old one.
+ *
+ * An update which doesn't fit into the rest of the current region grows the regions
+ * to at least twice their size. A persistently mapped buffer then replaces its
+ * buffer object, so the renderer must take over the new id after each update.
+ *
+ * The buffer object must be bound to <code>GL_ARRAY_BUFFER</code> before
+ * the buffer is created, updated, committed or released.
+ */
+class StreamingBuffer {
+
+	/**
+	 * Count of regions of a persistently mapped buffer.
+	 */
+	static final int REGION_COUNT = 3;
+
+	/**
+	 * Alignment of the sub-allocations in bytes, a multiple of the size of every format.
+	 */
+	private static final int ALIGNMENT = 16;
+
+	private final VertexAttributePointer.Format format;
+	private final int elementSize;
+	private final boolean persistent;
+	private int id;
+	private int regionSize;
+
+	/**
+	 * Views of the regions in the format of the vertex buffer,
+	 * a single client side region if the buffer isn't persistently mapped.
+	 */
+	private Buffer[] regions;
+	private long[] fences;
+	private int region = 0;
+
+	/**
+	 * The byte offset of the next free range within the current region and
+	 * the byte offset of the range which was allocated by the last update.
+	 */
+	private int frameOffset;
+	private int allocationOffset;
+	private boolean frameStarted;
+	private boolean mapped;
+
+	/**
+	 * Determines if the context supports persistently mapped buffers.
+	 *
+	 * @param caps the capabilities of the context.
+	 * @return true if buffer storage is supported.
+	 */
+	static boolean isPersistentMappingSupported(GLCapabilities caps) {
+		return caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+	}
+
+	/**
+	 * Creates the storage of a streaming buffer for the buffer object which is bound to <code>GL_ARRAY_BUFFER</code>.
+	 *
+	 * @param id the id of the bound buffer object.
+	 * @param regionSize the initial size of a frame region in bytes.
+	 * @param format the format of the vertex data.
+	 * @param persistent true if the buffer should be persistently mapped.
+	 */
+	StreamingBuffer(int id, int regionSize, VertexAttributePointer.Format format, boolean persistent) {
+		this.id = id;
+		this.regionSize = align(Math.max(regionSize, ALIGNMENT));
+		this.format = format;
+		this.elementSize = format.getSizeInBytes();
+		this.persistent = persistent;
+		createStorage();
+	}
+
+	private void createStorage() {
+		if (persistent) {
+			int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+			long size = (long) regionSize * REGION_COUNT;
+			glBufferStorage(GL_ARRAY_BUFFER, size, flags);
+			ByteBuffer mapping = glMapBufferRange(GL_ARRAY_BUFFER, 0, size, flags);
+			if (mapping == null) {
+				throw new RendererExpception("Failed to map the streaming buffer %d", id);
+			}
+			mapping.order(ByteOrder.nativeOrder());
+
+			regions = new Buffer[REGION_COUNT];
+			fences = new long[REGION_COUNT];
+			for (int i = 0; i < REGION_COUNT; i++) {
+				mapping.limit((i + 1) * regionSize).position(i * regionSize);
+				regions[i] = view(mapping.slice().order(ByteOrder.nativeOrder()), format);
+			}
+		} else {
+			glBufferData(GL_ARRAY_BUFFER, regionSize, GL_STREAM_DRAW);
+			regions = new Buffer[] { view(BufferUtils.createByteBuffer(regionSize), format) };
+			fences = null;
+		}
+		region = 0;
+		frameOffset = 0;
+		frameStarted = true;
+	}
+
+	/**
+	 * @return the id of the buffer object, which changes if a persistently mapped buffer grows.
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * @return true if the regions are persistently mapped.
+	 */
+	boolean isPersistent() {
+		return persistent;
+	}
+
+	/**
+	 * Finishes the updates of the current frame, must be called once per frame.
+	 * A persistent buffer fences the draw calls of its current region and rotates to the next region,
+	 * any other buffer orphans its storage at the next update.
+	 */
+	void beginFrame() {
+		if (!frameStarted) return;
+
+		if (persistent) {
+			fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+			region = (region + 1) % REGION_COUNT;
+		}
+		frameOffset = 0;
+		frameStarted = false;
+	}
+
+	/**
+	 * Allocates the next range of the current region for a direct write of the vertex data,
+	 * the range is used by the next <code>commit</code>.
+	 *
+	 * @param count the count of elements which are written.
+	 * @return the range in the format of the vertex buffer, positioned at its start.
+	 */
+	Buffer map(int count) {
+		mapped = true;
+		return allocate(count);
+	}
+
+	/**
+	 * @return true if a range was mapped and not committed yet.
+	 */
+	boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Copies vertex data into the next range of the current region.
+	 *
+	 * @param data the vertex data, which is copied from the start up to its limit.
+	 * @param format the format of the vertex data.
+	 */
+	void write(Buffer data, VertexAttributePointer.Format format) {
+		data.rewind();
+		Buffer target = allocate(data.limit());
+		switch (format) {
+			case Byte:
+			case Unsingned_Byte:
+				((ByteBuffer) target).put((ByteBuffer) data);
+				break;
+			case Short:
+			case Unsigned_Short:
+				((ShortBuffer) target).put((ShortBuffer) data);
+				break;
+			case Int:
+			case Unsigned_Int:
+				((IntBuffer) target).put((IntBuffer) data);
+				break;
+			case Float:
+				((FloatBuffer) target).put((FloatBuffer) data);
+				break;
+			case Double:
+				((DoubleBuffer) target).put((DoubleBuffer) data);
+				break;
+			default:
+				throw new RendererExpception("Unknown buffer format");
+		}
+		data.rewind();
+	}
+
+	/**
+	 * Allocates a range of the current region. The first allocation of a frame waits until the GPU has
+	 * finished reading a persistent region or orphans the storage of any other buffer.
+	 *
+	 * @param count the count of elements.
+	 * @return the range in the format of the vertex buffer, positioned at its start.
+	 */
+	private Buffer allocate(int count) {
+		int size = align(count * elementSize);
+		if (frameOffset + size > regionSize) {
+			grow(size);
+		}
+
+		if (!frameStarted) {
+			if (persistent) {
+				waitForRegion(region);
+			} else {
+				// orphan the previous storage so that pending draw calls don't stall the upload
+				glBufferData(GL_ARRAY_BUFFER, regionSize, GL_STREAM_DRAW);
+			}
+			frameStarted = true;
+		}
+
+		allocationOffset = frameOffset;
+		frameOffset += size;
+
+		Buffer target = regions[persistent ? region : 0];
+		int start = allocationOffset / elementSize;
+		target.limit(start + count);
+		target.position(start);
+		return target;
+	}
+
+	/**
+	 * Replaces the storage by one whose regions are at least twice as large,
+	 * the content of the current frame was already consumed by its draw calls.
+	 *
+	 * @param required the size in bytes which must fit into an empty region.
+	 */
+	private void grow(int required) {
+		int size = regionSize * 2;
+		while (size < required) {
+			size *= 2;
+		}
+
+		if (persistent) {
+			release();
+			glDeleteBuffers(id);
+			id = glGenBuffers();
+			if (id == GL_INVALID_VALUE) {
+				throw new RendererExpception("Invalid buffer object name returned, creation of buffer object failed");
+			}
+			glBindBuffer(GL_ARRAY_BUFFER, id);
+		}
+		regionSize = size;
+		createStorage();
+	}
+
+	private void waitForRegion(int index) {
+		if (fences[index] != 0) {
+			glClientWaitSync(fences[index], GL_SYNC_FLUSH_COMMANDS_BIT, GL_TIMEOUT_IGNORED);
+			glDeleteSync(fences[index]);
+			fences[index] = 0;
+		}
+	}
+
+	/**
+	 * Makes the content of the last allocated range visible to the GPU,
+	 * the range must be filled up to the position of its buffer.
+	 *
+	 * @param format the format of the vertex data.
+	 * @return the byte offset of the range in the buffer object.
+	 */
+	long commit(VertexAttributePointer.Format format) {
+		mapped = false;
+		if (persistent) {
+			// coherent mappings are visible without an explicit flush
+			return (long) region * regionSize + allocationOffset;
+		}
+
+		Buffer data = regions[0];
+		data.limit(data.position());
+		data.position(allocationOffset / elementSize);
+		switch (format) {
+			case Byte:
+			case Unsingned_Byte:
+				glBufferSubData(GL_ARRAY_BUFFER, allocationOffset, (ByteBuffer) data);
+				break;
+			case Short:
+			case Unsigned_Short:
+				glBufferSubData(GL_ARRAY_BUFFER, allocationOffset, (ShortBuffer) data);
+				break;
+			case Int:
+			case Unsigned_Int:
+				glBufferSubData(GL_ARRAY_BUFFER, allocationOffset, (IntBuffer) data);
+				break;
+			case Float:
+				glBufferSubData(GL_ARRAY_BUFFER, allocationOffset, (FloatBuffer) data);
+				break;
+			case Double:
+				glBufferSubData(GL_ARRAY_BUFFER, allocationOffset, (DoubleBuffer) data);
+				break;
+			default:
+				throw new RendererExpception("Unknown buffer format");
+		}
+		return allocationOffset;
+	}
+
+	/**
+	 * Releases the fences and the mapping, the buffer object itself is deleted by the renderer.
+	 */
+	void release() {
+		if (!persistent) return;
+
+		for (int i = 0; i < REGION_COUNT; i++) {
+			if (fences[i] != 0) {
+				glDeleteSync(fences[i]);
+				fences[i] = 0;
+			}
+		}
+		glUnmapBuffer(GL_ARRAY_BUFFER);
+	}
+
+	private static int align(int size) {
+		return (size + ALIGNMENT - 1) & -ALIGNMENT;
+	}
+
+	private static Buffer view(ByteBuffer bytes, VertexAttributePointer.Format format) {
+		switch (format) {
+			case Byte:
+			case Unsingned_Byte:
+				return bytes;
+			case Short:
+			case Unsigned_Short:
+				return bytes.asShortBuffer();
+			case Int:
+			case Unsigned_Int:
+				return bytes.asIntBuffer();
+			case Float:
+				return bytes.asFloatBuffer();
+			case Double:
+				return bytes.asDoubleBuffer();
+			default:
+				throw new RendererExpception("Unknown buffer format");
+		}
+	}
+}
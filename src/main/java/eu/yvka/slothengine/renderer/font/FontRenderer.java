@@ -5,6 +5,7 @@ import eu.yvka.slothengine.texture.TextureManager;
 import eu.yvka.slothengine.engine.Engine;
 import eu.yvka.slothengine.renderer.*;
 import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.UniformHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +63,20 @@ public class FontRenderer {
 	 */
 	private static final String FONT_SHADER = "FontRender";
 
+	/**
+	 * Handles of the uniforms of the font shader.
+	 */
+	private static final UniformHandle FONT_SPRITE_UNIFORM = UniformHandle.of("fontSprite");
+	private static final UniformHandle X_OFFSET_UNIFORM = UniformHandle.of("xOffset");
+	private static final UniformHandle Y_OFFSET_UNIFORM = UniformHandle.of("yOffset");
+	private static final UniformHandle X_END_UNIFORM = UniformHandle.of("xEnd");
+	private static final UniformHandle Y_END_UNIFORM = UniformHandle.of("yEnd");
+	private static final UniformHandle X_START_QUAD_UNIFORM = UniformHandle.of("xStartQuad");
+	private static final UniformHandle Y_START_QUAD_UNIFORM = UniformHandle.of("yStartQuad");
+	private static final UniformHandle X_END_QUAD_UNIFORM = UniformHandle.of("xEndQuad");
+	private static final UniformHandle Y_END_QUAD_UNIFORM = UniformHandle.of("yEndQuad");
+	private static final UniformHandle COLOR_UNIFORM = UniformHandle.of("color");
+
 	/**
 	 * Logger for this class
 	 */
@@ -292,18 +307,18 @@ public class FontRenderer {
 		GridPos pos = gridPosMap.get(letter);
 
 		// Texture Coords
-		fontShader.getUniform("fontSprite").setValue(0);
-		fontShader.getUniform("xOffset").setValue(pos.x);
-		fontShader.getUniform("yOffset").setValue(pos.y);
-		fontShader.getUniform("xEnd").setValue(pos.endX);
-		fontShader.getUniform("yEnd").setValue(pos.endY);
+		fontShader.getUniform(FONT_SPRITE_UNIFORM).setValue(0);
+		fontShader.getUniform(X_OFFSET_UNIFORM).setValue(pos.x);
+		fontShader.getUniform(Y_OFFSET_UNIFORM).setValue(pos.y);
+		fontShader.getUniform(X_END_UNIFORM).setValue(pos.endX);
+		fontShader.getUniform(Y_END_UNIFORM).setValue(pos.endY);
 
 		// Quad Position and Size
-		fontShader.getUniform("xStartQuad").setValue(xStartQuad);
-		fontShader.getUniform("yStartQuad").setValue(yStartQuad);
-		fontShader.getUniform("xEndQuad").setValue(xEndQuad);
-		fontShader.getUniform("yEndQuad").setValue(yEndQuad);
-		fontShader.getUniform("color").setValue(color);
+		fontShader.getUniform(X_START_QUAD_UNIFORM).setValue(xStartQuad);
+		fontShader.getUniform(Y_START_QUAD_UNIFORM).setValue(yStartQuad);
+		fontShader.getUniform(X_END_QUAD_UNIFORM).setValue(xEndQuad);
+		fontShader.getUniform(Y_END_QUAD_UNIFORM).setValue(yEndQuad);
+		fontShader.getUniform(COLOR_UNIFORM).setValue(color);
 
 		try {
 			renderer.setShader(fontShader);
@@ -0,0 +1,361 @@
+package eu.yvka.slothengine.renderer.occlusion;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A low resolution software depth buffer with a hierarchical z pyramid.
+ *
+ * Triangles are collected in clip space, transformed to screen space and rasterized
+ * tile by tile, the tiles are disjoint so that they are rasterized in parallel without
+ * synchronization. The inner loop walks the pixels of a row by incremented edge functions
+ * over flat float arrays, which the JIT is able to unroll and vectorize.
+ *
+ * Each level of the pyramid stores the farthest depth of 2x2 texels of the level below,
+ * so that a screen rectangle is tested against at most 4x4 texels of a coarse level.
+ * The depth is the window depth from 0 at the near plane to 1 at the far plane.
+ */
+public class HierarchicalDepthBuffer {
+
+	/**
+	 * The edge length of the square tiles in pixels.
+	 */
+	public static final int TILE_SIZE = 32;
+
+	/**
+	 * Frames with fewer triangles are rasterized on the calling thread.
+	 */
+	private static final int PARALLEL_TRIANGLE_THRESHOLD = 64;
+
+	private static final int TILES_PER_TASK = 2;
+	private static final int TRIANGLE_STRIDE = 9;
+	private static final float MIN_AREA = 1e-6f;
+
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int tileCount;
+	private final float[][] levels;
+	private final int[] levelWidths;
+	private final int[] levelHeights;
+
+	/**
+	 * The screen space corners of the triangles, x, y and depth per corner
+	 * in counter clockwise order.
+	 */
+	private float[] triangles = new float[TRIANGLE_STRIDE * 256];
+	private int triangleCount;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Creates a depth buffer which is cleared to the far plane.
+	 *
+	 * @param width the width in pixels.
+	 * @param height the height in pixels.
+	 */
+	public HierarchicalDepthBuffer(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("The size of the depth buffer must be at least 1x1");
+		}
+		this.width = width;
+		this.height = height;
+		this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.tileCount = tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE);
+
+		int levelCount = 1;
+		for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2) {
+			levelCount++;
+		}
+		levels = new float[levelCount][];
+		levelWidths = new int[levelCount];
+		levelHeights = new int[levelCount];
+		for (int level = 0, w = width, h = height; level < levelCount; level++, w = (w + 1) / 2, h = (h + 1) / 2) {
+			levels[level] = new float[w * h];
+			levelWidths[level] = w;
+			levelHeights[level] = h;
+		}
+		clear();
+	}
+
+	/**
+	 * Specifies the pool which rasterizes the tiles in parallel.
+	 *
+	 * @param pool the pool of the rasterization threads.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("The pool must not be null");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Removes all triangles and resets all levels to the far plane.
+	 */
+	public void clear() {
+		triangleCount = 0;
+		for (float[] level : levels) {
+			Arrays.fill(level, 1.0f);
+		}
+	}
+
+	/**
+	 * Adds a triangle whose corners are given as homogeneous clip coordinates (x, y, z, w).
+	 * Triangles which cross the near plane are dropped instead of being clipped,
+	 * so that they never occlude anything they don't cover.
+	 *
+	 * @return true if the triangle was added, false if it was dropped or lies outside of the view.
+	 */
+	public boolean addTriangle(float x0, float y0, float z0, float w0,
+							   float x1, float y1, float z1, float w1,
+							   float x2, float y2, float z2, float w2) {
+		if (w0 <= 0.0f || w1 <= 0.0f || w2 <= 0.0f) return false;
+		if (z0 < -w0 || z1 < -w1 || z2 < -w2) return false;
+		if (z0 > w0 && z1 > w1 && z2 > w2) return false;
+		if (x0 < -w0 && x1 < -w1 && x2 < -w2 || x0 > w0 && x1 > w1 && x2 > w2) return false;
+		if (y0 < -w0 && y1 < -w1 && y2 < -w2 || y0 > w0 && y1 > w1 && y2 > w2) return false;
+
+		float sx0 = toScreenX(x0 / w0), sy0 = toScreenY(y0 / w0);
+		float sx1 = toScreenX(x1 / w1), sy1 = toScreenY(y1 / w1);
+		float sx2 = toScreenX(x2 / w2), sy2 = toScreenY(y2 / w2);
+		float area = (sx1 - sx0) * (sy2 - sy0) - (sx2 - sx0) * (sy1 - sy0);
+		if (Math.abs(area) < MIN_AREA) return false;
+
+		if (triangleCount * TRIANGLE_STRIDE == triangles.length) {
+			triangles = Arrays.copyOf(triangles, triangles.length * 2);
+		}
+		int i = triangleCount++ * TRIANGLE_STRIDE;
+		triangles[i] = sx0;
+		triangles[i + 1] = sy0;
+		triangles[i + 2] = toDepth(z0 / w0);
+		// both sides occlude, clockwise triangles are stored in counter clockwise order
+		int second = area > 0.0f ? 3 : 6;
+		int third = area > 0.0f ? 6 : 3;
+		triangles[i + second] = sx1;
+		triangles[i + second + 1] = sy1;
+		triangles[i + second + 2] = toDepth(z1 / w1);
+		triangles[i + third] = sx2;
+		triangles[i + third + 1] = sy2;
+		triangles[i + third + 2] = toDepth(z2 / w2);
+		return true;
+	}
+
+	/**
+	 * Rasterizes the added triangles and rebuilds the pyramid.
+	 */
+	public void rasterize() {
+		if (triangleCount >= PARALLEL_TRIANGLE_THRESHOLD && tileCount > TILES_PER_TASK) {
+			pool.invoke(new RasterizeTilesAction(0, tileCount));
+		} else {
+			for (int tile = 0; tile < tileCount; tile++) {
+				rasterizeTile(tile);
+			}
+		}
+		buildPyramid();
+	}
+
+	/**
+	 * Tests whether a screen rectangle is hidden behind the rasterized triangles.
+	 * The rectangle is tested against the finest level at which it covers at most 4x4 texels.
+	 *
+	 * @param minX the minimal x coordinate in normalized device coordinates.
+	 * @param minY the minimal y coordinate in normalized device coordinates.
+	 * @param maxX the maximal x coordinate in normalized device coordinates.
+	 * @param maxY the maximal y coordinate in normalized device coordinates.
+	 * @param minZ the nearest depth of the tested object in normalized device coordinates.
+	 * @return true if all covered texels are nearer than the object.
+	 */
+	public boolean isOccluded(float minX, float minY, float maxX, float maxY, float minZ) {
+		float left = toScreenX(minX);
+		float right = toScreenX(maxX);
+		float bottom = toScreenY(minY);
+		float top = toScreenY(maxY);
+		if (right < 0.0f || top < 0.0f || left >= width || bottom >= height) return false;
+
+		int x0 = clamp((int) Math.floor(left), width);
+		int x1 = clamp((int) Math.floor(right), width);
+		int y0 = clamp((int) Math.floor(bottom), height);
+		int y1 = clamp((int) Math.floor(top), height);
+
+		int level = 0;
+		while (x1 - x0 > 3 || y1 - y0 > 3) {
+			x0 >>= 1;
+			x1 >>= 1;
+			y0 >>= 1;
+			y1 >>= 1;
+			level++;
+		}
+
+		float[] depth = levels[level];
+		int levelWidth = levelWidths[level];
+		float farthest = 0.0f;
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				farthest = Math.max(farthest, depth[y * levelWidth + x]);
+			}
+		}
+		return toDepth(minZ) > farthest;
+	}
+
+	/**
+	 * @return the width of the full resolution level in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the full resolution level in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the count of levels including the full resolution level.
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	/**
+	 * @return the count of triangles which were added since the last clear.
+	 */
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+
+	/**
+	 * Retrieves the depth of a texel, the depth of a coarse level is the farthest depth of the texels below.
+	 *
+	 * @param level the level, 0 is the full resolution.
+	 * @param x the column of the texel.
+	 * @param y the row of the texel, row 0 is at the bottom of the screen.
+	 * @return the window depth from 0 at the near plane to 1 at the far plane.
+	 */
+	public float getDepth(int level, int x, int y) {
+		return levels[level][y * levelWidths[level] + x];
+	}
+
+	private void rasterizeTile(int tile) {
+		int tileX = (tile % tilesX) * TILE_SIZE;
+		int tileY = (tile / tilesX) * TILE_SIZE;
+		int tileMaxX = Math.min(tileX + TILE_SIZE, width) - 1;
+		int tileMaxY = Math.min(tileY + TILE_SIZE, height) - 1;
+		float[] depth = levels[0];
+
+		for (int t = 0; t < triangleCount; t++) {
+			int i = t * TRIANGLE_STRIDE;
+			float x0 = triangles[i], y0 = triangles[i + 1], z0 = triangles[i + 2];
+			float x1 = triangles[i + 3], y1 = triangles[i + 4], z1 = triangles[i + 5];
+			float x2 = triangles[i + 6], y2 = triangles[i + 7], z2 = triangles[i + 8];
+
+			// pixels are sampled at their centers
+			int minX = Math.max(tileX, (int) Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5f));
+			int maxX = Math.min(tileMaxX, (int) Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5f));
+			int minY = Math.max(tileY, (int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+			int maxY = Math.min(tileMaxY, (int) Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+			if (minX > maxX || minY > maxY) continue;
+
+			// edge functions which are positive inside of the triangle, e12 weights the first corner
+			float a12 = y1 - y2, b12 = x2 - x1;
+			float a20 = y2 - y0, b20 = x0 - x2;
+			float a01 = y0 - y1, b01 = x1 - x0;
+			float inverseArea = 1.0f / (b01 * (y2 - y0) - (x2 - x0) * (y1 - y0));
+			float zdx = (z0 * a12 + z1 * a20 + z2 * a01) * inverseArea;
+			float zdy = (z0 * b12 + z1 * b20 + z2 * b01) * inverseArea;
+
+			float px = minX + 0.5f;
+			float py = minY + 0.5f;
+			float e12Row = a12 * (px - x1) + b12 * (py - y1);
+			float e20Row = a20 * (px - x2) + b20 * (py - y2);
+			float e01Row = a01 * (px - x0) + b01 * (py - y0);
+			float zRow = z0 + (px - x0) * zdx + (py - y0) * zdy;
+
+			for (int y = minY; y <= maxY; y++) {
+				float e12 = e12Row, e20 = e20Row, e01 = e01Row, z = zRow;
+				int row = y * width;
+				for (int x = minX; x <= maxX; x++) {
+					boolean inside = (e12 >= 0.0f) & (e20 >= 0.0f) & (e01 >= 0.0f);
+					float current = depth[row + x];
+					depth[row + x] = inside && z < current ? z : current;
+					e12 += a12;
+					e20 += a20;
+					e01 += a01;
+					z += zdx;
+				}
+				e12Row += b12;
+				e20Row += b20;
+				e01Row += b01;
+				zRow += zdy;
+			}
+		}
+	}
+
+	private void buildPyramid() {
+		for (int level = 1; level < levels.length; level++) {
+			float[] source = levels[level - 1];
+			float[] target = levels[level];
+			int sourceWidth = levelWidths[level - 1];
+			int sourceHeight = levelHeights[level - 1];
+			int targetWidth = levelWidths[level];
+			int targetHeight = levelHeights[level];
+
+			for (int y = 0; y < targetHeight; y++) {
+				int row0 = (y * 2) * sourceWidth;
+				int row1 = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+				for (int x = 0; x < targetWidth; x++) {
+					int column0 = x * 2;
+					int column1 = Math.min(x * 2 + 1, sourceWidth - 1);
+					float farthest = Math.max(
+						Math.max(source[row0 + column0], source[row0 + column1]),
+						Math.max(source[row1 + column0], source[row1 + column1]));
+					target[y * targetWidth + x] = farthest;
+				}
+			}
+		}
+	}
+
+	private float toScreenX(float ndcX) {
+		return (ndcX * 0.5f + 0.5f) * width;
+	}
+
+	private float toScreenY(float ndcY) {
+		return (ndcY * 0.5f + 0.5f) * height;
+	}
+
+	private static float toDepth(float ndcZ) {
+		return ndcZ * 0.5f + 0.5f;
+	}
+
+	private static int clamp(int value, int size) {
+		return Math.max(0, Math.min(value, size - 1));
+	}
+
+	/**
+	 * Rasterizes a range of tiles, larger ranges are split into halves.
+	 */
+	private class RasterizeTilesAction extends RecursiveAction {
+
+		private final int fromTile;
+		private final int toTile;
+
+		RasterizeTilesAction(int fromTile, int toTile) {
+			this.fromTile = fromTile;
+			this.toTile = toTile;
+		}
+
+		@Override
+		protected void compute() {
+			if (toTile - fromTile <= TILES_PER_TASK) {
+				for (int tile = fromTile; tile < toTile; tile++) {
+					rasterizeTile(tile);
+				}
+				return;
+			}
+			int middle = (fromTile + toTile) >>> 1;
+			invokeAll(new RasterizeTilesAction(fromTile, middle), new RasterizeTilesAction(middle, toTile));
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package eu.yvka.slothengine.renderer.occlusion;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.TriangleHierarchy;
+import eu.yvka.slothengine.math.BoundingBox;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.camera.Camera;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Rejects geometries which are hidden behind designated occluders.
+ *
+ * Each frame the triangles of the visible occluders are rasterized into a
+ * <code>HierarchicalDepthBuffer</code>, then the screen bounds of the world bounds
+ * of the candidates are tested against its pyramid. The culling runs on the cpu only
+ * and is conservative, a geometry is only rejected if its bounds are hidden completely.
+ *
+ * The triangles of an occluder are read from the <code>TriangleHierarchy</code> of its mesh,
+ * an occluder whose hierarchy is still being built occludes nothing until it is ready.
+ */
+public class OcclusionCuller {
+
+	public static final int DEFAULT_WIDTH = 256;
+	public static final int DEFAULT_HEIGHT = 128;
+
+	private final HierarchicalDepthBuffer depthBuffer;
+	private final Matrix4f viewProjection = new Matrix4f();
+	private final Matrix4f modelViewProjection = new Matrix4f();
+	private final Vector3f corner = new Vector3f();
+	private final Vector4f c0 = new Vector4f();
+	private final Vector4f c1 = new Vector4f();
+	private final Vector4f c2 = new Vector4f();
+	private int occluderCount;
+
+	/**
+	 * Creates an occlusion culler with a depth buffer of 256x128 pixels.
+	 */
+	public OcclusionCuller() {
+		this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	/**
+	 * Creates an occlusion culler.
+	 *
+	 * @param width the width of the depth buffer in pixels.
+	 * @param height the height of the depth buffer in pixels.
+	 */
+	public OcclusionCuller(int width, int height) {
+		depthBuffer = new HierarchicalDepthBuffer(width, height);
+	}
+
+	/**
+	 * Specifies the pool which rasterizes the occluders in parallel.
+	 *
+	 * @param pool the pool of the rasterization threads.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		depthBuffer.setPool(pool);
+	}
+
+	/**
+	 * Clears the depth buffer and takes the view and projection of the camera for the next frame.
+	 *
+	 * @param camera the camera of the frame.
+	 */
+	public void beginFrame(Camera camera) {
+		viewProjection.set(camera.getProjectionMatrix()).mul(camera.getViewMatrix());
+		depthBuffer.clear();
+		occluderCount = 0;
+	}
+
+	/**
+	 * Adds the triangles of an occluder to the depth buffer,
+	 * must be called between <code>beginFrame</code> and <code>rasterize</code>.
+	 *
+	 * @param geometry the occluder.
+	 */
+	public void addOccluder(Geometry geometry) {
+		Mesh mesh = geometry.getMesh();
+		if (mesh == null) return;
+
+		TriangleHierarchy triangles = mesh.requestTriangleHierarchy().getNow(null);
+		if (triangles == null) return;
+
+		occluderCount++;
+		modelViewProjection.set(viewProjection).mul(geometry.getTransformMatrix());
+		for (int triangle = 0; triangle < triangles.getTriangleCount(); triangle++) {
+			toClipSpace(triangles, triangle, 0, c0);
+			toClipSpace(triangles, triangle, 1, c1);
+			toClipSpace(triangles, triangle, 2, c2);
+			depthBuffer.addTriangle(c0.x, c0.y, c0.z, c0.w, c1.x, c1.y, c1.z, c1.w, c2.x, c2.y, c2.z, c2.w);
+		}
+	}
+
+	/**
+	 * Rasterizes the added occluders, must be called before the first occlusion test of a frame.
+	 */
+	public void rasterize() {
+		depthBuffer.rasterize();
+	}
+
+	/**
+	 * Tests whether a world space box is hidden behind the rasterized occluders,
+	 * boxes which reach behind the near plane are never occluded.
+	 *
+	 * @param box the world bounds of the tested geometry.
+	 * @return true if the box is hidden completely.
+	 */
+	public boolean isOccluded(BoundingBox box) {
+		if (box.isEmpty() || box.isInfinite()) return false;
+
+		Vector3f min = box.getMin();
+		Vector3f max = box.getMax();
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < 8; i++) {
+			c0.set(
+				(i & 1) == 0 ? min.x : max.x,
+				(i & 2) == 0 ? min.y : max.y,
+				(i & 4) == 0 ? min.z : max.z,
+				1.0f);
+			viewProjection.transform(c0);
+			if (c0.w <= 0.0f || c0.z < -c0.w) return false;
+
+			float x = c0.x / c0.w;
+			float y = c0.y / c0.w;
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+			minZ = Math.min(minZ, c0.z / c0.w);
+		}
+		return depthBuffer.isOccluded(minX, minY, maxX, maxY, minZ);
+	}
+
+	/**
+	 * @return the count of occluders which were rasterized in the current frame.
+	 */
+	public int getOccluderCount() {
+		return occluderCount;
+	}
+
+	/**
+	 * @return the count of occluder triangles which were rasterized in the current frame.
+	 */
+	public int getOccluderTriangleCount() {
+		return depthBuffer.getTriangleCount();
+	}
+
+	/**
+	 * @return the depth buffer of this culler.
+	 */
+	public HierarchicalDepthBuffer getDepthBuffer() {
+		return depthBuffer;
+	}
+
+	private void toClipSpace(TriangleHierarchy triangles, int triangle, int index, Vector4f dest) {
+		triangles.getCorner(triangle, index, corner);
+		modelViewProjection.transform(dest.set(corner.x, corner.y, corner.z, 1.0f));
+	}
+}
@@ -0,0 +1,909 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.math.BoundingBox;
+import eu.yvka.slothengine.math.BoundingSphere;
+import eu.yvka.slothengine.math.Frustum;
+import eu.yvka.slothengine.math.Ray;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Dynamic bounding volume hierarchy over the world bounds of the meshes of geometries.
+ *
+ * The hierarchy is a binary tree of axis aligned boxes whose leaves reference
+ * a single geometry each. Geometries are inserted by descending to the sibling with
+ * the least growth of surface area and the boxes are refitted bottom up when
+ * the bounds of geometries change. Refitting keeps the tree valid but degrades its
+ * quality, so the tree is rebuilt from time to time by a binned surface area heuristic
+ * on a worker thread and swapped in by the next <code>refit</code>.
+ *
+ * The nodes are stored in primitive arrays and the queries use a reused stack,
+ * so queries allocate nothing but must not be called concurrently or nested.
+ */
+public class BoundingVolumeHierarchy {
+
+	/**
+	 * Default ratio of refitted leaves to all leaves which starts a rebuild.
+	 */
+	public static final float DEFAULT_REBUILD_RATIO = 1.0f;
+
+	private static final int NULL = -1;
+	private static final int BOX_STRIDE = 6;
+	private static final int BIN_COUNT = 16;
+
+	private float[] bounds = new float[0];
+	private int[] parents = new int[0];
+	private int[] lefts = new int[0];
+	private int[] rights = new int[0];
+	private Geometry[] leafGeometries = new Geometry[0];
+	private int nodeCapacity;
+	private int root = NULL;
+	private int freeNode = NULL;
+
+	/**
+	 * The leaf nodes in a dense array and the leaf node of each geometry.
+	 */
+	private int[] leafNodes = new int[0];
+	private int[] leafPositions = new int[0];
+	private int leafCount;
+	private final Map<Geometry, Integer> leaves = new IdentityHashMap<>();
+
+	/**
+	 * Incremented by every insertion or removal, a rebuild
+	 * of an older structure is discarded.
+	 */
+	private int structureVersion;
+	private int refittedLeaves;
+	private float rebuildRatio = DEFAULT_REBUILD_RATIO;
+	private CompletableFuture<Build> pendingBuild;
+	private int pendingVersion;
+
+	private int[] stack = new int[64];
+	private final BoundingBox nodeBox = new BoundingBox();
+	private final PickResult candidate = new PickResult();
+
+	/**
+	 * @return the count of geometries in this hierarchy.
+	 */
+	public int size() {
+		return leafCount;
+	}
+
+	/**
+	 * @param geometry the geometry.
+	 * @return true if the geometry is part of this hierarchy.
+	 */
+	public boolean contains(Geometry geometry) {
+		return leaves.containsKey(geometry);
+	}
+
+	/**
+	 * Inserts a geometry with the current world bound of its mesh.
+	 *
+	 * @param geometry the geometry to insert.
+	 */
+	public void insert(Geometry geometry) {
+		if (leaves.containsKey(geometry)) return;
+
+		int leaf = allocateNode();
+		leafGeometries[leaf] = geometry;
+		setBox(leaf, geometry.getMeshWorldBound());
+		addLeaf(leaf);
+		leaves.put(geometry, leaf);
+		insertLeaf(leaf);
+		structureVersion++;
+	}
+
+	/**
+	 * Removes a geometry.
+	 *
+	 * @param geometry the geometry to remove.
+	 */
+	public void remove(Geometry geometry) {
+		Integer leaf = leaves.remove(geometry);
+		if (leaf == null) return;
+
+		removeLeaf(leaf);
+		removeFromLeaves(leaf);
+		freeNode(leaf);
+		structureVersion++;
+	}
+
+	/**
+	 * Removes all geometries.
+	 */
+	public void clear() {
+		if (pendingBuild != null) {
+			pendingBuild.cancel(false);
+			pendingBuild = null;
+		}
+		Arrays.fill(leafGeometries, null);
+		leaves.clear();
+		leafCount = 0;
+		root = NULL;
+		freeNode = NULL;
+		nodeCapacity = 0;
+		refittedLeaves = 0;
+		structureVersion++;
+		parents = new int[0];
+		lefts = new int[0];
+		rights = new int[0];
+		bounds = new float[0];
+		leafGeometries = new Geometry[0];
+		leafPositions = new int[0];
+	}
+
+	/**
+	 * Specifies how many leaves must be refitted before a rebuild is started.
+	 *
+	 * @param rebuildRatio the ratio of refitted leaves to all leaves, zero or less disables the rebuilds.
+	 */
+	public void setRebuildRatio(float rebuildRatio) {
+		this.rebuildRatio = rebuildRatio;
+	}
+
+	/**
+	 * Copies the world bounds of the geometries into the leaves and refits the boxes
+	 * of the ancestors of the changed leaves. A finished rebuild is swapped in before.
+	 *
+	 * @return the count of changed leaves.
+	 */
+	public int refit() {
+		swapPendingBuild();
+
+		int changed = 0;
+		for (int i = 0; i < leafCount; i++) {
+			int leaf = leafNodes[i];
+			if (setBox(leaf, leafGeometries[leaf].getMeshWorldBound())) {
+				refitAncestors(parents[leaf]);
+				changed++;
+			}
+		}
+		refittedLeaves += changed;
+		return changed;
+	}
+
+	/**
+	 * Starts a rebuild on the executor if enough leaves were refitted since the last build.
+	 *
+	 * @param executor the executor of the rebuild.
+	 * @return true if a rebuild was started.
+	 */
+	public boolean maintain(Executor executor) {
+		if (pendingBuild != null || rebuildRatio <= 0.0f || leafCount < 2) return false;
+		if (refittedLeaves < rebuildRatio * leafCount) return false;
+
+		rebuildAsync(executor);
+		return true;
+	}
+
+	/**
+	 * Starts a rebuild of the tree from the current leaves on the executor,
+	 * the new tree is swapped in by the first <code>refit</code> after the rebuild is finished
+	 * unless geometries were inserted or removed in the meantime.
+	 *
+	 * @param executor the executor of the rebuild.
+	 */
+	public void rebuildAsync(Executor executor) {
+		if (pendingBuild != null) {
+			pendingBuild.cancel(false);
+		}
+		Build build = snapshot();
+		pendingVersion = structureVersion;
+		refittedLeaves = 0;
+		pendingBuild = CompletableFuture.supplyAsync(build::run, executor);
+	}
+
+	/**
+	 * Rebuilds the tree from the current leaves on the calling thread.
+	 */
+	public void rebuild() {
+		if (pendingBuild != null) {
+			pendingBuild.cancel(false);
+			pendingBuild = null;
+		}
+		refittedLeaves = 0;
+		if (leafCount > 0) {
+			adopt(snapshot().run());
+		}
+	}
+
+	/**
+	 * @return true if a rebuild is running or waits to be swapped in.
+	 */
+	public boolean isRebuildPending() {
+		return pendingBuild != null;
+	}
+
+	private void swapPendingBuild() {
+		if (pendingBuild == null || !pendingBuild.isDone()) return;
+
+		CompletableFuture<Build> finished = pendingBuild;
+		pendingBuild = null;
+		if (pendingVersion != structureVersion || finished.isCompletedExceptionally()) return;
+		adopt(finished.join());
+	}
+
+	/**
+	 * Reports all geometries whose bounds intersect the frustum,
+	 * subtrees which lie completely inside are reported without further tests.
+	 *
+	 * @param frustum the frustum.
+	 * @param consumer receives the geometries.
+	 */
+	public void query(Frustum frustum, Consumer<Geometry> consumer) {
+		if (root == NULL) return;
+
+		int top = push(0, root);
+		while (top > 0) {
+			int node = stack[--top];
+			if (isEmpty(node)) continue;
+
+			Frustum.Intersection intersection = frustum.intersects(getBox(node, nodeBox));
+			if (intersection == Frustum.Intersection.OUTSIDE) continue;
+			if (intersection == Frustum.Intersection.INSIDE) {
+				top = reportSubtree(node, top, consumer);
+				continue;
+			}
+
+			if (lefts[node] == NULL) {
+				consumer.accept(leafGeometries[node]);
+			} else {
+				top = push(top, lefts[node]);
+				top = push(top, rights[node]);
+			}
+		}
+	}
+
+	/**
+	 * Reports all geometries whose bounds overlap the box.
+	 *
+	 * @param box the box.
+	 * @param consumer receives the geometries.
+	 */
+	public void query(BoundingBox box, Consumer<Geometry> consumer) {
+		if (root == NULL || box.isEmpty()) return;
+
+		Vector3f min = box.getMin();
+		Vector3f max = box.getMax();
+		int top = push(0, root);
+		while (top > 0) {
+			int node = stack[--top];
+			int o = node * BOX_STRIDE;
+			if (isEmpty(node)
+				|| bounds[o] > max.x || bounds[o + 3] < min.x
+				|| bounds[o + 1] > max.y || bounds[o + 4] < min.y
+				|| bounds[o + 2] > max.z || bounds[o + 5] < min.z) {
+				continue;
+			}
+
+			if (lefts[node] == NULL) {
+				consumer.accept(leafGeometries[node]);
+			} else {
+				top = push(top, lefts[node]);
+				top = push(top, rights[node]);
+			}
+		}
+	}
+
+	/**
+	 * Reports all geometries whose bounds overlap the sphere.
+	 *
+	 * @param sphere the sphere.
+	 * @param consumer receives the geometries.
+	 */
+	public void query(BoundingSphere sphere, Consumer<Geometry> consumer) {
+		if (root == NULL || sphere.isEmpty()) return;
+
+		Vector3f center = sphere.getCenter();
+		float radiusSquared = sphere.getRadius() * sphere.getRadius();
+		int top = push(0, root);
+		while (top > 0) {
+			int node = stack[--top];
+			if (isEmpty(node) || distanceSquared(node, center) > radiusSquared) continue;
+
+			if (lefts[node] == NULL) {
+				consumer.accept(leafGeometries[node]);
+			} else {
+				top = push(top, lefts[node]);
+				top = push(top, rights[node]);
+			}
+		}
+	}
+
+	/**
+	 * Casts a ray against the geometries and reports the nearest hit, the children
+	 * of a node are visited front to back and subtrees which lie behind the nearest hit
+	 * are skipped. The geometries of the reached leaves are picked at triangle level.
+	 *
+	 * @param ray the ray.
+	 * @param maxDistance the distance at which the ray ends.
+	 * @param result receives the nearest hit.
+	 * @return true if the ray hit a geometry.
+	 */
+	public boolean pick(Ray ray, float maxDistance, PickResult result) {
+		result.clear();
+		if (root == NULL) return false;
+
+		float nearest = maxDistance;
+		int top = push(0, root);
+		while (top > 0) {
+			int node = stack[--top];
+			if (isEmpty(node)) continue;
+
+			float distance = intersects(ray, node, nearest);
+			if (distance > nearest) continue;
+
+			if (lefts[node] == NULL) {
+				if (leafGeometries[node].pick(ray, nearest, candidate) && candidate.getDistance() <= nearest) {
+					nearest = candidate.getDistance();
+					result.set(candidate);
+				}
+				continue;
+			}
+
+			int near = lefts[node];
+			int far = rights[node];
+			float nearDistance = isEmpty(near) ? Float.POSITIVE_INFINITY : intersects(ray, near, nearest);
+			float farDistance = isEmpty(far) ? Float.POSITIVE_INFINITY : intersects(ray, far, nearest);
+			if (farDistance < nearDistance) {
+				int swap = near;
+				near = far;
+				far = swap;
+				float swapDistance = nearDistance;
+				nearDistance = farDistance;
+				farDistance = swapDistance;
+			}
+			// the nearer child is pushed last so that it is visited first
+			if (farDistance <= nearest) top = push(top, far);
+			if (nearDistance <= nearest) top = push(top, near);
+		}
+		return result.isHit();
+	}
+
+	/**
+	 * Computes the bounds of all geometries of this hierarchy.
+	 *
+	 * @param dest the box which receives the bounds.
+	 * @return the dest box.
+	 */
+	public BoundingBox getBounds(BoundingBox dest) {
+		if (root == NULL) return dest.setEmpty();
+		return getBox(root, dest);
+	}
+
+	/**
+	 * Computes the surface area heuristic cost of the tree, the sum of the surface areas
+	 * of the inner nodes relative to the root, which grows while the tree degrades.
+	 *
+	 * @return the cost of the tree.
+	 */
+	public float getCost() {
+		if (root == NULL || lefts[root] == NULL) return 0.0f;
+
+		float rootArea = area(root);
+		if (!(rootArea > 0.0f)) return 0.0f;
+
+		float sum = 0.0f;
+		int top = push(0, root);
+		while (top > 0) {
+			int node = stack[--top];
+			if (lefts[node] == NULL) continue;
+			sum += area(node);
+			top = push(top, lefts[node]);
+			top = push(top, rights[node]);
+		}
+		return sum / rootArea;
+	}
+
+	/*
+	 * Tree maintenance
+	 */
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			parents[leaf] = NULL;
+			return;
+		}
+
+		int sibling = findSibling(leaf);
+		int oldParent = parents[sibling];
+		int newParent = allocateNode();
+		parents[newParent] = oldParent;
+		lefts[newParent] = sibling;
+		rights[newParent] = leaf;
+		parents[sibling] = newParent;
+		parents[leaf] = newParent;
+		unionInto(newParent, sibling, leaf);
+
+		if (oldParent == NULL) {
+			root = newParent;
+		} else if (lefts[oldParent] == sibling) {
+			lefts[oldParent] = newParent;
+		} else {
+			rights[oldParent] = newParent;
+		}
+		refitAncestors(oldParent);
+	}
+
+	/**
+	 * Descends from the root to the node whose union with the leaf adds the least
+	 * surface area, the inherited cost accounts for the growth of the ancestors.
+	 */
+	private int findSibling(int leaf) {
+		int node = root;
+		while (lefts[node] != NULL) {
+			float area = area(node);
+			float combinedArea = unionArea(node, leaf);
+			float cost = 2.0f * combinedArea;
+			float inheritedCost = 2.0f * (combinedArea - area);
+
+			float leftCost = descendCost(lefts[node], leaf, inheritedCost);
+			float rightCost = descendCost(rights[node], leaf, inheritedCost);
+			if (cost < leftCost && cost < rightCost) break;
+
+			node = leftCost <= rightCost ? lefts[node] : rights[node];
+		}
+		return node;
+	}
+
+	private float descendCost(int child, int leaf, float inheritedCost) {
+		float combinedArea = unionArea(child, leaf);
+		if (lefts[child] == NULL) {
+			return combinedArea + inheritedCost;
+		}
+		return combinedArea - area(child) + inheritedCost;
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+
+		int parent = parents[leaf];
+		int grandParent = parents[parent];
+		int sibling = lefts[parent] == leaf ? rights[parent] : lefts[parent];
+
+		if (grandParent == NULL) {
+			root = sibling;
+			parents[sibling] = NULL;
+		} else {
+			if (lefts[grandParent] == parent) {
+				lefts[grandParent] = sibling;
+			} else {
+				rights[grandParent] = sibling;
+			}
+			parents[sibling] = grandParent;
+			refitAncestors(grandParent);
+		}
+		freeNode(parent);
+	}
+
+	/**
+	 * Recalculates the boxes from a node up to the root and stops
+	 * at the first ancestor whose box doesn't change.
+	 */
+	private void refitAncestors(int node) {
+		while (node != NULL) {
+			if (!unionInto(node, lefts[node], rights[node])) return;
+			node = parents[node];
+		}
+	}
+
+	private int allocateNode() {
+		if (freeNode == NULL) {
+			growNodes(Math.max(16, nodeCapacity * 2));
+		}
+		int node = freeNode;
+		freeNode = parents[node];
+		parents[node] = NULL;
+		lefts[node] = NULL;
+		rights[node] = NULL;
+		leafGeometries[node] = null;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		leafGeometries[node] = null;
+		lefts[node] = NULL;
+		rights[node] = NULL;
+		parents[node] = freeNode;
+		freeNode = node;
+	}
+
+	private void growNodes(int capacity) {
+		bounds = Arrays.copyOf(bounds, capacity * BOX_STRIDE);
+		parents = Arrays.copyOf(parents, capacity);
+		lefts = Arrays.copyOf(lefts, capacity);
+		rights = Arrays.copyOf(rights, capacity);
+		leafGeometries = Arrays.copyOf(leafGeometries, capacity);
+		leafPositions = Arrays.copyOf(leafPositions, capacity);
+
+		// link the new nodes into the free list
+		for (int node = capacity - 1; node >= nodeCapacity; node--) {
+			lefts[node] = NULL;
+			rights[node] = NULL;
+			parents[node] = freeNode;
+			freeNode = node;
+		}
+		nodeCapacity = capacity;
+	}
+
+	private void addLeaf(int leaf) {
+		if (leafCount == leafNodes.length) {
+			leafNodes = Arrays.copyOf(leafNodes, Math.max(16, leafCount * 2));
+		}
+		leafPositions[leaf] = leafCount;
+		leafNodes[leafCount++] = leaf;
+	}
+
+	private void removeFromLeaves(int leaf) {
+		int position = leafPositions[leaf];
+		int last = leafNodes[--leafCount];
+		leafNodes[position] = last;
+		leafPositions[last] = position;
+	}
+
+	/*
+	 * Rebuild
+	 */
+
+	private Build snapshot() {
+		Geometry[] geometries = new Geometry[leafCount];
+		float[] boxes = new float[leafCount * BOX_STRIDE];
+		for (int i = 0; i < leafCount; i++) {
+			int leaf = leafNodes[i];
+			geometries[i] = leafGeometries[leaf];
+			System.arraycopy(bounds, leaf * BOX_STRIDE, boxes, i * BOX_STRIDE, BOX_STRIDE);
+		}
+		return new Build(geometries, boxes);
+	}
+
+	private void adopt(Build build) {
+		int capacity = Math.max(16, build.nodeCount);
+		bounds = build.bounds;
+		parents = build.parents;
+		lefts = build.lefts;
+		rights = build.rights;
+		leafGeometries = build.leafGeometries;
+		leafPositions = new int[capacity];
+		nodeCapacity = build.nodeCount;
+		freeNode = NULL;
+		root = build.nodeCount > 0 ? 0 : NULL;
+		if (capacity > nodeCapacity) {
+			growNodes(capacity);
+		}
+
+		leafCount = 0;
+		leaves.clear();
+		for (int node = 0; node < build.nodeCount; node++) {
+			if (lefts[node] == NULL) {
+				addLeaf(node);
+				leaves.put(leafGeometries[node], node);
+			}
+		}
+
+		// the bounds may have changed while the tree was built
+		for (int i = 0; i < leafCount; i++) {
+			int leaf = leafNodes[i];
+			if (setBox(leaf, leafGeometries[leaf].getMeshWorldBound())) {
+				refitAncestors(parents[leaf]);
+			}
+		}
+	}
+
+	/**
+	 * Builds a tree from a snapshot of the leaves by a binned surface area heuristic,
+	 * the build only touches its own arrays and runs on a worker thread.
+	 */
+	private static class Build {
+
+		private final Geometry[] geometries;
+		private final float[] boxes;
+		private final int[] items;
+		private final float[] centroids;
+
+		private float[] bounds;
+		private int[] parents;
+		private int[] lefts;
+		private int[] rights;
+		private Geometry[] leafGeometries;
+		private int nodeCount;
+
+		private final int[] binCounts = new int[BIN_COUNT];
+		private final float[] binBounds = new float[BIN_COUNT * BOX_STRIDE];
+		private final float[] rightAreas = new float[BIN_COUNT];
+		private final float[] sweep = new float[BOX_STRIDE];
+
+		Build(Geometry[] geometries, float[] boxes) {
+			this.geometries = geometries;
+			this.boxes = boxes;
+			this.items = new int[geometries.length];
+			this.centroids = new float[geometries.length * 3];
+		}
+
+		Build run() {
+			int count = geometries.length;
+			int capacity = Math.max(1, 2 * count - 1);
+			bounds = new float[capacity * BOX_STRIDE];
+			parents = new int[capacity];
+			lefts = new int[capacity];
+			rights = new int[capacity];
+			leafGeometries = new Geometry[capacity];
+
+			for (int i = 0; i < count; i++) {
+				items[i] = i;
+				int o = i * BOX_STRIDE;
+				boolean empty = boxes[o] > boxes[o + 3] || boxes[o + 1] > boxes[o + 4] || boxes[o + 2] > boxes[o + 5];
+				for (int axis = 0; axis < 3; axis++) {
+					float centroid = (boxes[o + axis] + boxes[o + 3 + axis]) * 0.5f;
+					// empty and infinite boxes have no usable centroid
+					centroids[i * 3 + axis] = empty || Float.isNaN(centroid) || Float.isInfinite(centroid) ? 0.0f : centroid;
+				}
+			}
+			if (count > 0) {
+				build(0, count, NULL);
+			}
+			return this;
+		}
+
+		private int build(int from, int to, int parent) {
+			int node = nodeCount++;
+			parents[node] = parent;
+
+			if (to - from == 1) {
+				int item = items[from];
+				System.arraycopy(boxes, item * BOX_STRIDE, bounds, node * BOX_STRIDE, BOX_STRIDE);
+				lefts[node] = NULL;
+				rights[node] = NULL;
+				leafGeometries[node] = geometries[item];
+				return node;
+			}
+
+			int split = split(from, to);
+			int left = build(from, split, node);
+			int right = build(split, to, node);
+			lefts[node] = left;
+			rights[node] = right;
+			union(bounds, node, left, right);
+			return node;
+		}
+
+		/**
+		 * Partitions the items by the bin boundary with the least surface area cost
+		 * along the axis of the largest centroid extent.
+		 */
+		private int split(int from, int to) {
+			float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				int c = items[i] * 3;
+				minX = Math.min(minX, centroids[c]);
+				minY = Math.min(minY, centroids[c + 1]);
+				minZ = Math.min(minZ, centroids[c + 2]);
+				maxX = Math.max(maxX, centroids[c]);
+				maxY = Math.max(maxY, centroids[c + 1]);
+				maxZ = Math.max(maxZ, centroids[c + 2]);
+			}
+
+			int axis = 0;
+			float axisMin = minX, extent = maxX - minX;
+			if (maxY - minY > extent) {
+				axis = 1;
+				axisMin = minY;
+				extent = maxY - minY;
+			}
+			if (maxZ - minZ > extent) {
+				axis = 2;
+				axisMin = minZ;
+				extent = maxZ - minZ;
+			}
+			if (!(extent > 0.0f)) {
+				return (from + to) >>> 1;
+			}
+
+			Arrays.fill(binCounts, 0);
+			for (int b = 0; b < BIN_COUNT; b++) {
+				setEmpty(binBounds, b);
+			}
+			float scale = BIN_COUNT / extent;
+			for (int i = from; i < to; i++) {
+				int item = items[i];
+				int b = bin(centroids[item * 3 + axis], axisMin, scale);
+				binCounts[b]++;
+				merge(binBounds, b, boxes, item);
+			}
+
+			// sweep from the right to collect the areas of the right sides
+			setEmpty(sweep, 0);
+			int rightCount = 0;
+			for (int b = BIN_COUNT - 1; b > 0; b--) {
+				merge(sweep, 0, binBounds, b);
+				rightCount += binCounts[b];
+				rightAreas[b] = rightCount > 0 ? area(sweep, 0) * rightCount : 0.0f;
+			}
+
+			setEmpty(sweep, 0);
+			int leftCount = 0;
+			int bestBin = NULL;
+			float bestCost = Float.POSITIVE_INFINITY;
+			for (int b = 0; b < BIN_COUNT - 1; b++) {
+				merge(sweep, 0, binBounds, b);
+				leftCount += binCounts[b];
+				if (leftCount == 0 || leftCount == to - from) continue;
+
+				float cost = area(sweep, 0) * leftCount + rightAreas[b + 1];
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestBin = b;
+				}
+			}
+			if (bestBin == NULL) {
+				return (from + to) >>> 1;
+			}
+
+			int i = from, j = to - 1;
+			while (i <= j) {
+				if (bin(centroids[items[i] * 3 + axis], axisMin, scale) <= bestBin) {
+					i++;
+				} else {
+					int swap = items[i];
+					items[i] = items[j];
+					items[j--] = swap;
+				}
+			}
+			return i;
+		}
+
+		private static int bin(float centroid, float min, float scale) {
+			return Math.min(BIN_COUNT - 1, (int) ((centroid - min) * scale));
+		}
+	}
+
+	/*
+	 * Box helpers
+	 */
+
+	private boolean isEmpty(int node) {
+		int o = node * BOX_STRIDE;
+		return bounds[o] > bounds[o + 3] || bounds[o + 1] > bounds[o + 4] || bounds[o + 2] > bounds[o + 5];
+	}
+
+	/**
+	 * Copies a box into a node.
+	 *
+	 * @return true if the box of the node changed.
+	 */
+	private boolean setBox(int node, BoundingBox box) {
+		Vector3f min = box.getMin();
+		Vector3f max = box.getMax();
+		int o = node * BOX_STRIDE;
+		if (bounds[o] == min.x && bounds[o + 1] == min.y && bounds[o + 2] == min.z
+			&& bounds[o + 3] == max.x && bounds[o + 4] == max.y && bounds[o + 5] == max.z) {
+			return false;
+		}
+		bounds[o] = min.x;
+		bounds[o + 1] = min.y;
+		bounds[o + 2] = min.z;
+		bounds[o + 3] = max.x;
+		bounds[o + 4] = max.y;
+		bounds[o + 5] = max.z;
+		return true;
+	}
+
+	private BoundingBox getBox(int node, BoundingBox dest) {
+		int o = node * BOX_STRIDE;
+		dest.getMin().set(bounds[o], bounds[o + 1], bounds[o + 2]);
+		dest.getMax().set(bounds[o + 3], bounds[o + 4], bounds[o + 5]);
+		return dest;
+	}
+
+	/**
+	 * Stores the union of two nodes in a node.
+	 *
+	 * @return true if the box of the node changed.
+	 */
+	private boolean unionInto(int node, int a, int b) {
+		return union(bounds, node, a, b);
+	}
+
+	private static boolean union(float[] bounds, int node, int a, int b) {
+		int o = node * BOX_STRIDE, oa = a * BOX_STRIDE, ob = b * BOX_STRIDE;
+		boolean changed = false;
+		for (int i = 0; i < 3; i++) {
+			float min = Math.min(bounds[oa + i], bounds[ob + i]);
+			float max = Math.max(bounds[oa + 3 + i], bounds[ob + 3 + i]);
+			changed |= bounds[o + i] != min || bounds[o + 3 + i] != max;
+			bounds[o + i] = min;
+			bounds[o + 3 + i] = max;
+		}
+		return changed;
+	}
+
+	private float area(int node) {
+		return area(bounds, node);
+	}
+
+	private float unionArea(int a, int b) {
+		int oa = a * BOX_STRIDE, ob = b * BOX_STRIDE;
+		float dx = Math.max(bounds[oa + 3], bounds[ob + 3]) - Math.min(bounds[oa], bounds[ob]);
+		float dy = Math.max(bounds[oa + 4], bounds[ob + 4]) - Math.min(bounds[oa + 1], bounds[ob + 1]);
+		float dz = Math.max(bounds[oa + 5], bounds[ob + 5]) - Math.min(bounds[oa + 2], bounds[ob + 2]);
+		return surfaceArea(dx, dy, dz);
+	}
+
+	private static float area(float[] bounds, int box) {
+		int o = box * BOX_STRIDE;
+		return surfaceArea(bounds[o + 3] - bounds[o], bounds[o + 4] - bounds[o + 1], bounds[o + 5] - bounds[o + 2]);
+	}
+
+	/**
+	 * Computes the surface area of a box, empty boxes have no area
+	 * and unbounded boxes are clamped to keep the costs comparable.
+	 */
+	private static float surfaceArea(float dx, float dy, float dz) {
+		if (!(dx >= 0.0f) || !(dy >= 0.0f) || !(dz >= 0.0f)) return 0.0f;
+		float area = 2.0f * (dx * dy + dy * dz + dz * dx);
+		return area < Float.POSITIVE_INFINITY ? area : Float.MAX_VALUE;
+	}
+
+	private static void setEmpty(float[] bounds, int box) {
+		int o = box * BOX_STRIDE;
+		bounds[o] = bounds[o + 1] = bounds[o + 2] = Float.POSITIVE_INFINITY;
+		bounds[o + 3] = bounds[o + 4] = bounds[o + 5] = Float.NEGATIVE_INFINITY;
+	}
+
+	private static void merge(float[] dest, int destBox, float[] source, int sourceBox) {
+		int o = destBox * BOX_STRIDE, os = sourceBox * BOX_STRIDE;
+		for (int i = 0; i < 3; i++) {
+			dest[o + i] = Math.min(dest[o + i], source[os + i]);
+			dest[o + 3 + i] = Math.max(dest[o + 3 + i], source[os + 3 + i]);
+		}
+	}
+
+	private float distanceSquared(int node, Vector3f point) {
+		int o = node * BOX_STRIDE;
+		float dx = Math.max(Math.max(bounds[o] - point.x, point.x - bounds[o + 3]), 0.0f);
+		float dy = Math.max(Math.max(bounds[o + 1] - point.y, point.y - bounds[o + 4]), 0.0f);
+		float dz = Math.max(Math.max(bounds[o + 2] - point.z, point.z - bounds[o + 5]), 0.0f);
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private float intersects(Ray ray, int node, float maxDistance) {
+		int o = node * BOX_STRIDE;
+		return ray.intersects(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], bounds[o + 4], bounds[o + 5], maxDistance);
+	}
+
+	private int reportSubtree(int subtree, int top, Consumer<Geometry> consumer) {
+		int bottom = top;
+		top = push(top, subtree);
+		while (top > bottom) {
+			int node = stack[--top];
+			if (lefts[node] == NULL) {
+				if (!isEmpty(node)) {
+					consumer.accept(leafGeometries[node]);
+				}
+			} else {
+				top = push(top, lefts[node]);
+				top = push(top, rights[node]);
+			}
+		}
+		return top;
+	}
+
+	private int push(int top, int node) {
+		if (top == stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		stack[top] = node;
+		return top + 1;
+	}
+}
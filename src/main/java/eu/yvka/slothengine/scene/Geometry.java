@@ -1,14 +1,31 @@
 package eu.yvka.slothengine.scene;
 
 import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.TriangleHierarchy;
+import eu.yvka.slothengine.geometry.TriangleHit;
 import eu.yvka.slothengine.material.BasicMaterial;
 import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.math.BoundingBox;
+import eu.yvka.slothengine.math.Ray;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 public class Geometry extends Node {
 
 	private Mesh mesh;
 	private Material material;
 	private boolean visible;
+	private boolean occluder;
+	private final BoundingBox meshWorldBound = new BoundingBox();
+	private final float[] matrixScratch = new float[16];
+
+	/**
+	 * The mesh, its bounds revision and the world matrix revision
+	 * from which <code>meshWorldBound</code> was computed.
+	 */
+	private Mesh boundMesh;
+	private int boundMeshRevision;
+	private int boundWorldRevision = -1;
 
 
 	public Geometry(String id) {
@@ -21,12 +38,31 @@ public class Geometry extends Node {
 		this.visible = true;
 	}
 
+	/**
+	 * Creates a geometry with the specified mesh and material.
+	 *
+	 * @param id the id of the geometry.
+	 * @param mesh the mesh to render.
+	 * @param material the material which describes how the mesh is rendered.
+	 */
+	public Geometry(String id, Mesh mesh, Material material) {
+		super(id);
+		this.mesh = mesh;
+		this.material = material;
+		this.visible = true;
+	}
+
 	public Material getMaterial() {
 		return material;
 	}
 
 	public void setMaterial(Material material) {
+		Scene attachedScene = getScene();
+		if (attachedScene != null) {
+			attachedScene.onMaterialChanged(this, this.material, material);
+		}
 		this.material = material;
+		notifyChanged();
 	}
 
 	public Mesh getMesh() {
@@ -35,6 +71,126 @@ public class Geometry extends Node {
 
 	public void setMesh(Mesh mesh) {
 		this.mesh = mesh;
+		boundDirty = true;
+		notifyChanged();
+	}
+
+	/**
+	 * Retrieves the world space bounding box of the mesh of this geometry
+	 * without its children, the box is updated by <code>updateWorldBound</code>.
+	 *
+	 * @return the world bounding box of the mesh.
+	 */
+	public BoundingBox getMeshWorldBound() {
+		return meshWorldBound;
+	}
+
+	/**
+	 * Recombines the world bound of this geometry if it is dirty or if the bounds of its mesh
+	 * were changed since the last combination, which is detected by the bounds revision of the mesh.
+	 */
+	@Override
+	boolean recombineWorldBound(boolean childrenChanged) {
+		return super.recombineWorldBound(childrenChanged || isMeshWorldBoundOutdated());
+	}
+
+	@Override
+	protected void combineWorldBound() {
+		super.combineWorldBound();
+		if (mesh == null) {
+			if (boundMesh != null && gridEntry != null) {
+				gridEntry.setRadius(0.0f);
+			}
+			meshWorldBound.setEmpty();
+			boundMesh = null;
+			return;
+		}
+		if (isMeshWorldBoundOutdated()) {
+			mesh.getBoundingBox().transform(getTransformMatrix(), matrixScratch, meshWorldBound);
+			boundMesh = mesh;
+			boundMeshRevision = mesh.getBoundsRevision();
+			boundWorldRevision = worldMatrixRevision;
+			if (gridEntry != null) {
+				gridEntry.setRadius(getMeshWorldRadius());
+			}
+		}
+		worldBound.merge(meshWorldBound);
+	}
+
+	/**
+	 * Calculates the radius of the sphere around the world position which encloses the world
+	 * bound of the mesh, so the radius includes the scale and an offset of the mesh.
+	 *
+	 * @return the radius or 0 if the world bound of the mesh is empty or infinite.
+	 */
+	float getMeshWorldRadius() {
+		if (meshWorldBound.isEmpty() || meshWorldBound.isInfinite()) {
+			return 0.0f;
+		}
+		Vector3f min = meshWorldBound.getMin();
+		Vector3f max = meshWorldBound.getMax();
+		float dx = Math.max(worldPosition.x - min.x, max.x - worldPosition.x);
+		float dy = Math.max(worldPosition.y - min.y, max.y - worldPosition.y);
+		float dz = Math.max(worldPosition.z - min.z, max.z - worldPosition.z);
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * @return true if the mesh, its bounds or the world matrix were changed since
+	 * the world bound of the mesh was computed.
+	 */
+	boolean isMeshWorldBoundOutdated() {
+		return mesh != boundMesh
+			|| mesh != null && mesh.getBoundsRevision() != boundMeshRevision
+			|| worldMatrixRevision != boundWorldRevision;
+	}
+
+	/**
+	 * Casts a ray against the triangles of the mesh of this geometry. The ray is transformed
+	 * into the model space of the mesh, so all geometries share the <code>TriangleHierarchy</code>
+	 * of their mesh. The hierarchy is built in the background, until it is ready and for
+	 * meshes without triangles the ray is tested against the world bounds of the mesh.
+	 *
+	 * @param ray the ray in world space.
+	 * @param maxDistance the distance at which the ray ends.
+	 * @param result receives the hit, which is only modified on a hit.
+	 * @return true if the ray hit the mesh within the max distance.
+	 */
+	public boolean pick(Ray ray, float maxDistance, PickResult result) {
+		if (mesh == null) return false;
+
+		float boundDistance = ray.intersects(meshWorldBound);
+		if (boundDistance == Float.POSITIVE_INFINITY || boundDistance > maxDistance) return false;
+
+		// the pick never waits for the hierarchy, until it is built the mesh is hit at its bounds
+		TriangleHierarchy hierarchy = mesh.requestTriangleHierarchy().getNow(null);
+		if (hierarchy == null || hierarchy.getTriangleCount() == 0) {
+			result.set(this, boundDistance, ray.getPoint(boundDistance, new Vector3f()));
+			return true;
+		}
+
+		Matrix4f worldMatrix = getTransformMatrix();
+		Matrix4f inverse = new Matrix4f().set(worldMatrix).invert();
+		Vector3f origin = inverse.transformPosition(new Vector3f(ray.getOrigin()));
+		Vector3f direction = inverse.transformDirection(new Vector3f(ray.getDirection()));
+		Ray modelRay = new Ray().set(origin, direction);
+
+		// the end of the ray is mapped into model space, so a scaled mesh prunes the same range
+		float modelMaxDistance = Float.POSITIVE_INFINITY;
+		if (maxDistance < Float.POSITIVE_INFINITY) {
+			Vector3f end = inverse.transformPosition(ray.getPoint(maxDistance, new Vector3f()));
+			modelMaxDistance = end.distance(origin);
+		}
+
+		TriangleHit hit = new TriangleHit();
+		if (!hierarchy.intersect(modelRay, modelMaxDistance, hit)) return false;
+
+		Vector3f point = worldMatrix.transformPosition(modelRay.getPoint(hit.getDistance(), new Vector3f()));
+		float distance = point.distance(ray.getOrigin());
+		if (distance > maxDistance) return false;
+
+		result.set(this, distance, point, hit);
+		return true;
 	}
 
 	public boolean isVisible() {
@@ -42,6 +198,33 @@ public class Geometry extends Node {
 	}
 
 	public void setVisible(boolean visible) {
+		if (this.visible == visible) return;
 		this.visible = visible;
+		notifyChanged();
+	}
+
+	/**
+	 * @return true if the mesh of this geometry hides the geometries behind it from the occlusion culling.
+	 */
+	public boolean isOccluder() {
+		return occluder;
+	}
+
+	/**
+	 * Designates this geometry as occluder, the triangles of the occluders are rasterized into
+	 * the depth buffer of the occlusion culling which rejects the geometries behind them.
+	 * Occluders should be large, closed and have few triangles such as walls or buildings.
+	 *
+	 * @param occluder true if this geometry should occlude other geometries.
+	 */
+	public void setOccluder(boolean occluder) {
+		this.occluder = occluder;
+	}
+
+	private void notifyChanged() {
+		Scene attachedScene = getScene();
+		if (attachedScene != null) {
+			attachedScene.onGeometryChanged(this);
+		}
 	}
 }
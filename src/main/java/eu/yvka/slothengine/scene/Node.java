@@ -1,20 +1,36 @@
 package eu.yvka.slothengine.scene;
 
-import eu.yvka.slothengine.scene.light.Light;
-
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Node extends Spatial {
 
 	private List<Node> children = new ArrayList<>();
+	private List<NodeController> controllers = null;
 
 	public Node(String id) {
 		super(id);
 	}
 
 
+	/**
+	 * Retrieves a descendant of this node by its id, the lookup uses the id index
+	 * of the scene if this node is attached to a scene.
+	 *
+	 * @param id the id of the descendant.
+	 * @return the descendant or null if this node has no descendant with the id.
+	 */
 	public Node getChild(String id) {
+		Scene attachedScene = getScene();
+		if (attachedScene != null) {
+			Spatial spatial = attachedScene.getSpatial(id);
+			if (spatial instanceof Node && spatial != this && isAncestorOf(spatial)) {
+				return (Node) spatial;
+			}
+			return null;
+		}
+
 		for (Node child : children) {
 			if (id.equals(child.getId())) {
 				return child;
@@ -28,6 +44,135 @@ public class Node extends Spatial {
 		return null;
 	}
 
+	private boolean isAncestorOf(Spatial spatial) {
+		for (Spatial ancestor = spatial.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+			if (ancestor == this) return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected boolean updateWorldTransform(boolean parentChanged) {
+		boolean changed = super.updateWorldTransform(parentChanged);
+		for (int i = 0; i < children.size(); i++) {
+			children.get(i).updateWorldTransform(changed);
+		}
+		return changed;
+	}
+
+	/**
+	 * Updates the world bounds of this node and all of its descendants,
+	 * the bound of a node is the union of the bounds of its children.
+	 */
+	public void updateWorldBound() {
+		updateWorldBound(true);
+	}
+
+	/**
+	 * Recombines the world bounds of the dirty spatials of this subtree and of their ancestors.
+	 *
+	 * @param force true if all bounds are recombined regardless of their dirty flags.
+	 * @return true if the world bound of this node was recombined.
+	 */
+	boolean updateWorldBound(boolean force) {
+		boolean childChanged = false;
+		for (int i = 0; i < children.size(); i++) {
+			childChanged |= children.get(i).updateWorldBound(force);
+		}
+		return recombineWorldBound(childChanged || force);
+	}
+
+	/**
+	 * Recombines the world bound of this node if it is dirty or if the bounds of its children changed.
+	 *
+	 * @param childrenChanged true if the bound of a child was recombined.
+	 * @return true if the world bound was recombined.
+	 */
+	boolean recombineWorldBound(boolean childrenChanged) {
+		if (!childrenChanged && !boundDirty) {
+			return false;
+		}
+		combineWorldBound();
+		boundDirty = false;
+		return true;
+	}
+
+	/**
+	 * Calculates the world bound of this node from the already updated bounds of its children.
+	 */
+	protected void combineWorldBound() {
+		worldBound.setEmpty();
+		for (int i = 0; i < children.size(); i++) {
+			worldBound.merge(children.get(i).worldBound);
+		}
+	}
+
+	/**
+	 * Runs the controllers of this node and its descendants, then updates
+	 * their world transformations and bounds in a single pass over the subtree.
+	 * Only the bounds of dirty spatials and their ancestors are recombined.
+	 *
+	 * @param elapsedTime the elapsed time since the last frame.
+	 * @param parentChanged true if the world matrix of the parent was recalculated.
+	 * @param updateTransforms false if the transformations are updated by a transform store.
+	 * @return true if the world bound of this node was recombined.
+	 */
+	boolean updateSubtree(float elapsedTime, boolean parentChanged, boolean updateTransforms) {
+		runControllers(elapsedTime);
+		boolean changed = updateTransforms && super.updateWorldTransform(parentChanged);
+		boolean childChanged = false;
+		for (int i = 0; i < children.size(); i++) {
+			childChanged |= children.get(i).updateSubtree(elapsedTime, changed, updateTransforms);
+		}
+		return updateTransforms && recombineWorldBound(childChanged);
+	}
+
+	/**
+	 * Updates the world transformation of this node without its descendants.
+	 */
+	boolean updateRootTransform() {
+		return super.updateWorldTransform(false);
+	}
+
+	void runControllers(float elapsedTime) {
+		if (controllers == null) return;
+		for (int i = 0; i < controllers.size(); i++) {
+			controllers.get(i).update(this, elapsedTime);
+		}
+	}
+
+	/**
+	 * Attaches a controller which is called on every <code>Scene.update</code>.
+	 *
+	 * @param controller the controller to attach.
+	 */
+	public void addController(NodeController controller) {
+		if (controller == null) {
+			throw new IllegalArgumentException("Controller must be not null");
+		}
+		if (controllers == null) {
+			controllers = new ArrayList<>(2);
+		}
+		controllers.add(controller);
+	}
+
+	/**
+	 * Detaches a controller from this node.
+	 *
+	 * @param controller the controller to detach.
+	 * @return true if the controller was attached.
+	 */
+	public boolean removeController(NodeController controller) {
+		return controllers != null && controllers.remove(controller);
+	}
+
+	/**
+	 * @return the controllers of this node.
+	 */
+	public List<NodeController> getControllers() {
+		return controllers == null ? Collections.emptyList() : Collections.unmodifiableList(controllers);
+	}
+
 	public List<Node> getChildren() {
 		return children;
 	}
@@ -45,18 +190,25 @@ public class Node extends Spatial {
 			throw new IllegalArgumentException("This node is already attached to a different scene.");
 		}
 
+		Scene attachedScene = getScene();
+		if (attachedScene != null) {
+			attachedScene.checkNotUpdating("Adding a node");
+			// fails before any modification if an id is already used
+			attachedScene.checkIds(node);
+		}
+
 		if (node.hasParent()) {
 			node.getParent().removeChild(node);
 		}
 
 		node.setParent(this);
-		node.scene = scene;
 		children.add(node);
+		boundDirty = true;
 
-		if (node instanceof Light) {
-			scene.getLightList().add((Light) node);
+		if (attachedScene != null) {
+			attachedScene.register(node);
+			attachedScene.onStructureChanged();
 		}
-
 	}
 
 	public int removeChild(Node child) {
@@ -64,13 +216,16 @@ public class Node extends Spatial {
 			int childIndex = children.indexOf(child);
 			if (childIndex != -1) {
 
-				if (child instanceof Light) {
-					scene.getLightList().remove((Light) child);
+				Scene attachedScene = getScene();
+				if (attachedScene != null) {
+					attachedScene.checkNotUpdating("Removing a node");
+					attachedScene.unregister(child);
+					attachedScene.onStructureChanged();
 				}
 
 				child.setParent(null);
-				child.scene = null;
 				children.remove(childIndex);
+				boundDirty = true;
 				return childIndex;
 			}
 		}
@@ -0,0 +1,23 @@
+package eu.yvka.slothengine.scene;
+
+/**
+ * Callback which is attached to a node and called once per frame by <code>Scene.update</code>
+ * before the world transformations are updated.
+ *
+ * The controllers of different top level subtrees are called concurrently,
+ * a controller must therefore only modify its node and the descendants of its node.
+ * Changes of the visibility, mesh or material of a geometry are allowed, the scene applies
+ * them to its indices after all controllers were called. Adding or removing nodes and
+ * changing ids fails with an <code>IllegalStateException</code>.
+ */
+@FunctionalInterface
+public interface NodeController {
+
+	/**
+	 * Updates the node to which this controller is attached.
+	 *
+	 * @param node the node of the controller.
+	 * @param elapsedTime the elapsed time since the last frame.
+	 */
+	void update(Node node, float elapsedTime);
+}
@@ -0,0 +1,112 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.geometry.TriangleHit;
+import org.joml.Vector3f;
+
+/**
+ * Result of a ray cast against the geometries of a scene, which holds the
+ * nearest hit geometry, the distance along the ray and the hit triangle of the mesh.
+ */
+public class PickResult {
+
+	private Geometry geometry;
+	private float distance = Float.POSITIVE_INFINITY;
+	private final Vector3f point = new Vector3f();
+	private final TriangleHit triangleHit = new TriangleHit();
+
+	/**
+	 * Resets this result to a miss.
+	 *
+	 * @return this result in order to support method-chaining.
+	 */
+	public PickResult clear() {
+		geometry = null;
+		distance = Float.POSITIVE_INFINITY;
+		point.zero();
+		triangleHit.clear();
+		return this;
+	}
+
+	/**
+	 * Specifies the hit geometry.
+	 *
+	 * @param geometry the hit geometry.
+	 * @param distance the distance along the ray.
+	 * @param point the hit point in world space.
+	 * @return this result in order to support method-chaining.
+	 */
+	public PickResult set(Geometry geometry, float distance, Vector3f point) {
+		this.geometry = geometry;
+		this.distance = distance;
+		this.point.set(point);
+		this.triangleHit.clear();
+		return this;
+	}
+
+	/**
+	 * Specifies the hit geometry and the hit triangle of its mesh.
+	 *
+	 * @param geometry the hit geometry.
+	 * @param distance the distance along the ray in world space.
+	 * @param point the hit point in world space.
+	 * @param triangleHit the hit triangle in the model space of the mesh.
+	 * @return this result in order to support method-chaining.
+	 */
+	public PickResult set(Geometry geometry, float distance, Vector3f point, TriangleHit triangleHit) {
+		set(geometry, distance, point);
+		this.triangleHit.set(triangleHit);
+		return this;
+	}
+
+	/**
+	 * Copies another result.
+	 *
+	 * @param result the result to copy.
+	 * @return this result in order to support method-chaining.
+	 */
+	public PickResult set(PickResult result) {
+		return set(result.geometry, result.distance, result.point, result.triangleHit);
+	}
+
+	/**
+	 * @return true if the ray hit a geometry.
+	 */
+	public boolean isHit() {
+		return geometry != null;
+	}
+
+	/**
+	 * @return the hit geometry or null if the ray hit nothing.
+	 */
+	public Geometry getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * @return the distance of the hit along the ray or <code>Float.POSITIVE_INFINITY</code> on a miss.
+	 */
+	public float getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return the hit point in world space.
+	 */
+	public Vector3f getPoint() {
+		return point;
+	}
+
+	/**
+	 * @return the hit triangle and its barycentric coordinates, which is a miss
+	 * if only the bounds of a mesh without triangles were hit.
+	 */
+	public TriangleHit getTriangleHit() {
+		return triangleHit;
+	}
+
+	@Override
+	public String toString() {
+		if (geometry == null) return "PickResult[miss]";
+		return "PickResult[geometry=" + geometry.getId() + ", distance=" + distance + "]";
+	}
+}
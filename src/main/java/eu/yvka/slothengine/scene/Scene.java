@@ -1,23 +1,58 @@
 package eu.yvka.slothengine.scene;
 
+import eu.yvka.slothengine.engine.AppSettings;
+import eu.yvka.slothengine.engine.Engine;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.math.Ray;
+import eu.yvka.slothengine.renderer.RenderList;
+import eu.yvka.slothengine.scene.light.Light;
 import eu.yvka.slothengine.scene.light.LightList;
 import eu.yvka.slothengine.scene.camera.Camera;
 import eu.yvka.slothengine.scene.camera.FreeCamera;
 import eu.yvka.slothengine.scene.traversal.DepthFirstTraverse;
 import eu.yvka.slothengine.scene.traversal.GraphTraversal;
+import eu.yvka.slothengine.scene.traversal.IterativeTraverse;
+import eu.yvka.slothengine.scene.traversal.PruningVisitor;
+import eu.yvka.slothengine.scene.traversal.VisitResult;
 import eu.yvka.slothengine.scene.traversal.Visitor;
 
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class Scene {
 	/**
 	 * Root Node name.
 	 */
 	public static final String ROOT_NODE = "Root Node";
 
+	/**
+	 * Default count of top level subtrees which are updated by a single task.
+	 */
+	public static final int DEFAULT_UPDATE_SPLIT_THRESHOLD = 4;
+
 	/**
 	 * Scene Traverse strategy
 	 */
 	private GraphTraversal depthFirstTraversal = new DepthFirstTraverse();
 
+	/**
+	 * Pre order traversal which allows visitors to prune subtrees.
+	 */
+	private final IterativeTraverse pruningTraversal = new IterativeTraverse();
+
 	/**
 	 * Root Node of this scene
 	 */
@@ -39,6 +74,62 @@ public class Scene {
 	 */
 	private LightList lights;
 
+	/**
+	 * Index of all spatials of this scene by their id.
+	 */
+	private final Map<String, Spatial> spatialIndex = new HashMap<>();
+
+	/**
+	 * All geometries of this scene and the geometries per material,
+	 * which are maintained when nodes are added or removed.
+	 */
+	private final Set<Geometry> geometries = new LinkedHashSet<>();
+	private final Map<Material, Set<Geometry>> geometriesByMaterial = new IdentityHashMap<>();
+
+	/**
+	 * Retained list of the render items of the geometries, which is
+	 * maintained when geometries are added, removed or changed.
+	 */
+	private final RenderList renderList = new RenderList();
+
+	/**
+	 * Optional hierarchy of the bounds of all geometries, null if disabled.
+	 */
+	private BoundingVolumeHierarchy boundingVolumeHierarchy;
+
+	/**
+	 * Optional spatial hash of the positions of lights and geometries, null if disabled.
+	 */
+	private SpatialHashGrid spatialGrid;
+
+	/**
+	 * Optional store of the transformations of all spatials, null if disabled.
+	 */
+	private TransformStore transformStore;
+
+	/**
+	 * The pool which updates the top level subtrees in parallel.
+	 */
+	private ForkJoinPool updatePool = ForkJoinPool.commonPool();
+	private int updateSplitThreshold;
+
+	/**
+	 * True if the geometric state was updated by <code>update</code>
+	 * and not yet consumed by <code>prepareRender</code>.
+	 */
+	private boolean geometricStateUpdated;
+
+	/**
+	 * True while the top level subtrees are updated, which might happen concurrently.
+	 */
+	private volatile boolean updatingSubtrees;
+
+	/**
+	 * The index changes which were requested by node controllers during the update of the subtrees,
+	 * they are applied on the calling thread of <code>update</code> after all subtrees were updated.
+	 */
+	private final Queue<Runnable> pendingChanges = new ConcurrentLinkedQueue<>();
+
 	/**
 	 * Creates a empty active scene.
 	 */
@@ -46,7 +137,8 @@ public class Scene {
 		camera = new FreeCamera();
 		lights = new LightList();
 		rootNode = new Node(ROOT_NODE);
-		rootNode.scene = this;
+		register(rootNode);
+		setUpdateSplitThreshold(Engine.getSettings().getInteger(AppSettings.SceneUpdateSplitThreshold, DEFAULT_UPDATE_SPLIT_THRESHOLD));
 	}
 
 	/**
@@ -56,9 +148,223 @@ public class Scene {
 		return rootNode;
 	}
 
+	/**
+	 * Replaces the root node of this scene, the scene is left unchanged if the new
+	 * hierarchy contains duplicate ids or is already attached to a scene.
+	 *
+	 * @param rootNode the new root node.
+	 */
 	public void setRootNode(Node rootNode) {
+		if (rootNode == null) {
+			throw new IllegalArgumentException("The root node must be not null");
+		}
+		if (rootNode.scene != null && rootNode != this.rootNode) {
+			throw new IllegalArgumentException("The root node is already attached to a scene");
+		}
+		// the ids of the old root are replaced, so only duplicates within the new hierarchy are rejected
+		checkIds(rootNode, false);
+		if (this.rootNode != null) {
+			unregister(this.rootNode);
+		}
 		this.rootNode = rootNode;
-		this.rootNode.scene = this;
+		register(rootNode);
+		onStructureChanged();
+	}
+
+	/**
+	 * Retrieves a spatial of this scene by its id.
+	 *
+	 * @param id the id of the spatial.
+	 * @return the spatial or null if the scene contains no spatial with the id.
+	 */
+	public Spatial getSpatial(String id) {
+		return spatialIndex.get(id);
+	}
+
+	/**
+	 * @return all geometries of this scene.
+	 */
+	public Set<Geometry> getGeometries() {
+		return Collections.unmodifiableSet(geometries);
+	}
+
+	/**
+	 * Retrieves the geometries of this scene which use the specified material.
+	 *
+	 * @param material the material.
+	 * @return the geometries which use the material.
+	 */
+	public Set<Geometry> getGeometries(Material material) {
+		Set<Geometry> result = geometriesByMaterial.get(material);
+		return result == null ? Collections.emptySet() : Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * @return the retained render list of the geometries of this scene.
+	 */
+	public RenderList getRenderList() {
+		return renderList;
+	}
+
+	/**
+	 * Verifies that the ids of a subtree are unique and not used by this scene.
+	 *
+	 * @param subtree the subtree which is going to be attached.
+	 * @throws IllegalArgumentException if an id is already used.
+	 */
+	void checkIds(Node subtree) {
+		checkIds(subtree, true);
+	}
+
+	private void checkIds(Node subtree, boolean checkScene) {
+		Set<String> subtreeIds = new HashSet<>();
+		Deque<Node> stack = new ArrayDeque<>();
+		stack.push(subtree);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			String id = node.getId();
+			Spatial other = checkScene ? spatialIndex.get(id) : null;
+			if ((other != null && other != node) || !subtreeIds.add(id)) {
+				throw new IllegalArgumentException("A spatial with the id " + id + " is already part of the scene");
+			}
+			pushChildren(stack, node);
+		}
+	}
+
+	/**
+	 * Attaches the nodes of a subtree to this scene and adds them to the indices.
+	 */
+	void register(Node subtree) {
+		Deque<Node> stack = new ArrayDeque<>();
+		stack.push(subtree);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			node.scene = this;
+			spatialIndex.put(node.getId(), node);
+
+			if (node instanceof Light) {
+				lights.add((Light) node);
+			}
+			if (spatialGrid != null) {
+				insertIntoGrid(node);
+			}
+			if (node instanceof Geometry) {
+				Geometry geometry = (Geometry) node;
+				geometries.add(geometry);
+				addToMaterial(geometry, geometry.getMaterial());
+				renderList.add(geometry);
+				if (boundingVolumeHierarchy != null) {
+					boundingVolumeHierarchy.insert(geometry);
+				}
+			}
+			pushChildren(stack, node);
+		}
+	}
+
+	/**
+	 * Detaches the nodes of a subtree from this scene and removes them from the indices.
+	 */
+	void unregister(Node subtree) {
+		Deque<Node> stack = new ArrayDeque<>();
+		stack.push(subtree);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			node.scene = null;
+			spatialIndex.remove(node.getId(), node);
+
+			if (node instanceof Light) {
+				lights.remove(node);
+			}
+			if (spatialGrid != null) {
+				spatialGrid.remove(node);
+			}
+			if (node instanceof Geometry) {
+				Geometry geometry = (Geometry) node;
+				geometries.remove(geometry);
+				removeFromMaterial(geometry, geometry.getMaterial());
+				renderList.remove(geometry);
+				if (boundingVolumeHierarchy != null) {
+					boundingVolumeHierarchy.remove(geometry);
+				}
+			}
+			pushChildren(stack, node);
+		}
+	}
+
+	/**
+	 * Fails if the top level subtrees are being updated, used by the operations
+	 * which node controllers must not call.
+	 *
+	 * @param operation the name of the operation for the error message.
+	 */
+	void checkNotUpdating(String operation) {
+		if (updatingSubtrees) {
+			throw new IllegalStateException(operation + " is not allowed while the scene is updated by its node controllers");
+		}
+	}
+
+	void onIdChanged(Spatial spatial, String oldId, String newId) {
+		checkNotUpdating("Changing the id of a spatial");
+		if (oldId.equals(newId)) return;
+
+		if (spatialIndex.containsKey(newId)) {
+			throw new IllegalArgumentException("A spatial with the id " + newId + " is already part of the scene");
+		}
+		spatialIndex.remove(oldId, spatial);
+		spatialIndex.put(newId, spatial);
+	}
+
+	void onMaterialChanged(Geometry geometry, Material oldMaterial, Material newMaterial) {
+		if (updatingSubtrees) {
+			pendingChanges.add(() -> onMaterialChanged(geometry, oldMaterial, newMaterial));
+			return;
+		}
+		removeFromMaterial(geometry, oldMaterial);
+		addToMaterial(geometry, newMaterial);
+	}
+
+	/**
+	 * Notifies the scene that the mesh, material or visibility of a geometry was changed.
+	 * Changes by node controllers are deferred until all subtrees were updated.
+	 */
+	void onGeometryChanged(Geometry geometry) {
+		if (updatingSubtrees) {
+			pendingChanges.add(() -> onGeometryChanged(geometry));
+			return;
+		}
+		renderList.update(geometry);
+	}
+
+	private void applyPendingChanges() {
+		Runnable change;
+		while ((change = pendingChanges.poll()) != null) {
+			change.run();
+		}
+	}
+
+	private void addToMaterial(Geometry geometry, Material material) {
+		if (material == null) return;
+		Set<Geometry> set = geometriesByMaterial.get(material);
+		if (set == null) {
+			set = new LinkedHashSet<>();
+			geometriesByMaterial.put(material, set);
+		}
+		set.add(geometry);
+	}
+
+	private void removeFromMaterial(Geometry geometry, Material material) {
+		if (material == null) return;
+		Set<Geometry> set = geometriesByMaterial.get(material);
+		if (set != null && set.remove(geometry) && set.isEmpty()) {
+			geometriesByMaterial.remove(material);
+		}
+	}
+
+	private static void pushChildren(Deque<Node> stack, Node node) {
+		List<Node> children = node.getChildren();
+		for (int i = children.size() - 1; i >= 0; i--) {
+			stack.push(children.get(i));
+		}
 	}
 
 	/**
@@ -96,9 +402,261 @@ public class Scene {
 		depthFirstTraversal.traverse(rootNode, visitor);
 	}
 
+	/**
+	 * Visits the nodes of this scene in pre order, the visitor decides
+	 * if the traversal descends into the subtree of a node or stops.
+	 * The traversal allocates nothing unless it is nested in another traversal.
+	 *
+	 * @param visitor the visitor.
+	 * @return <code>STOP</code> if the visitor stopped the traversal otherwise <code>CONTINUE</code>.
+	 */
+	public VisitResult traverse(PruningVisitor<Node> visitor) {
+		return pruningTraversal.traverse(rootNode, visitor);
+	}
+
+	/**
+	 * Recalculates the world matrices of the spatials whose local transformation
+	 * or ancestors were changed and updates the world bounds, called once per frame
+	 * before the scene is rendered.
+	 */
+	public void updateGeometricState() {
+		if (transformStore != null) {
+			if (transformStore.isStructureChanged()) {
+				transformStore.rebuild(rootNode);
+			}
+			transformStore.update();
+		} else {
+			rootNode.updateWorldTransform(false);
+		}
+		rootNode.updateWorldBound(false);
+		updateBoundingVolumeHierarchy();
+	}
+
+	/**
+	 * Refits the bounding volume hierarchy to the updated world bounds
+	 * and starts a rebuild if the tree has degraded.
+	 */
+	private void updateBoundingVolumeHierarchy() {
+		if (boundingVolumeHierarchy == null) return;
+
+		boundingVolumeHierarchy.refit();
+		boundingVolumeHierarchy.maintain(updatePool);
+	}
+
+	/**
+	 * Enables or disables a <code>BoundingVolumeHierarchy</code> over the world bounds of all
+	 * geometries, which answers frustum, overlap and ray queries without traversing the scene.
+	 * The hierarchy is refitted after each update and rebuilt by the update pool when it has degraded.
+	 *
+	 * @param enabled true to enable the bounding volume hierarchy.
+	 */
+	public void setBoundingVolumeHierarchyEnabled(boolean enabled) {
+		if (enabled == (boundingVolumeHierarchy != null)) return;
+
+		if (enabled) {
+			boundingVolumeHierarchy = new BoundingVolumeHierarchy();
+			for (Geometry geometry : geometries) {
+				boundingVolumeHierarchy.insert(geometry);
+			}
+			boundingVolumeHierarchy.rebuild();
+		} else {
+			boundingVolumeHierarchy.clear();
+			boundingVolumeHierarchy = null;
+		}
+	}
+
+	/**
+	 * @return the bounding volume hierarchy or null if it isn't enabled.
+	 */
+	public BoundingVolumeHierarchy getBoundingVolumeHierarchy() {
+		return boundingVolumeHierarchy;
+	}
+
+	/**
+	 * Specifies a spatial hash which tracks the world positions of the lights and geometries
+	 * of this scene for radius and box queries. The spatials are moved whenever their world matrix
+	 * is recalculated, which includes the parallel subtree updates of <code>update</code>.
+	 *
+	 * @param spatialGrid the empty grid or null to disable the tracking.
+	 */
+	public void setSpatialHashGrid(SpatialHashGrid spatialGrid) {
+		if (this.spatialGrid == spatialGrid) return;
+
+		if (this.spatialGrid != null) {
+			this.spatialGrid.clear();
+		}
+		this.spatialGrid = spatialGrid;
+		if (spatialGrid != null) {
+			Deque<Node> stack = new ArrayDeque<>();
+			stack.push(rootNode);
+			while (!stack.isEmpty()) {
+				Node node = stack.pop();
+				insertIntoGrid(node);
+				pushChildren(stack, node);
+			}
+		}
+	}
+
+	/**
+	 * @return the spatial hash of this scene or null if it isn't enabled.
+	 */
+	public SpatialHashGrid getSpatialHashGrid() {
+		return spatialGrid;
+	}
+
+	/**
+	 * Inserts lights as points and geometries with the radius of the world bound of their mesh,
+	 * the radius of a geometry is updated whenever the world bound of its mesh is recalculated.
+	 */
+	private void insertIntoGrid(Node node) {
+		if (node instanceof Light) {
+			spatialGrid.insert(node, 0.0f);
+		} else if (node instanceof Geometry) {
+			spatialGrid.insert(node, ((Geometry) node).getMeshWorldRadius());
+		}
+	}
+
+	/**
+	 * Casts a ray against the triangles of the geometries of this scene and reports
+	 * the nearest hit, the ray is tested against the bounding volume hierarchy if it is
+	 * enabled otherwise against all geometries.
+	 *
+	 * @param ray the ray, for example <code>Camera.getPickRay</code> at the mouse position.
+	 * @param result receives the nearest hit.
+	 * @return true if the ray hit a geometry.
+	 */
+	public boolean pick(Ray ray, PickResult result) {
+		if (boundingVolumeHierarchy != null) {
+			return boundingVolumeHierarchy.pick(ray, Float.POSITIVE_INFINITY, result);
+		}
+
+		result.clear();
+		for (Geometry geometry : geometries) {
+			geometry.pick(ray, result.getDistance(), result);
+		}
+		return result.isHit();
+	}
+
+	/**
+	 * Enables or disables the storage of all transformations in a <code>TransformStore</code>,
+	 * which recalculates the world matrices in a single linear pass over primitive arrays.
+	 *
+	 * While the store is enabled, local transformations must be changed by the setters of
+	 * <code>Spatial</code> or followed by <code>Spatial.markTransformDirty</code>
+	 * if the vectors of a spatial are modified in place.
+	 *
+	 * @param enabled true to enable the transform store.
+	 */
+	public void setTransformStoreEnabled(boolean enabled) {
+		if (enabled == (transformStore != null)) return;
+
+		if (enabled) {
+			transformStore = new TransformStore();
+		} else {
+			transformStore.clear();
+			transformStore = null;
+		}
+	}
+
+	/**
+	 * @return the transform store or null if it isn't enabled.
+	 */
+	public TransformStore getTransformStore() {
+		return transformStore;
+	}
+
+	/**
+	 * Notifies the scene that nodes were added to or removed from its hierarchy.
+	 */
+	void onStructureChanged() {
+		if (transformStore != null) {
+			transformStore.onStructureChanged();
+		}
+	}
+
+	/**
+	 * Updates the camera, runs the node controllers and updates the world
+	 * transformations and bounds of the scene.
+	 *
+	 * The top level subtrees of the root node are split into tasks of at most
+	 * <code>updateSplitThreshold</code> subtrees which are updated in parallel,
+	 * the method returns after all tasks have finished. Visibility, mesh and material
+	 * changes of the controllers are applied to the render list and the indices afterwards.
+	 *
+	 * @param elapsedTime the elapsed time since the last frame.
+	 */
 	public void update(float elapsedTime) {
-		// TODO: update node
 		camera.update(elapsedTime);
+
+		boolean updateTransforms = transformStore == null;
+		rootNode.runControllers(elapsedTime);
+		boolean rootChanged = updateTransforms && rootNode.updateRootTransform();
+
+		List<Node> children = rootNode.getChildren();
+		UpdateSubtreesAction action = new UpdateSubtreesAction(children, 0, children.size(), elapsedTime, rootChanged, updateTransforms);
+		updatingSubtrees = true;
+		try {
+			if (children.size() <= updateSplitThreshold) {
+				action.compute();
+			} else {
+				updatePool.invoke(action);
+			}
+		} finally {
+			updatingSubtrees = false;
+			applyPendingChanges();
+		}
+
+		if (updateTransforms) {
+			// the subtrees don't report whether their bounds changed, the root merges only its children
+			rootNode.recombineWorldBound(true);
+			updateBoundingVolumeHierarchy();
+		} else {
+			updateGeometricState();
+		}
+		geometricStateUpdated = true;
+	}
+
+	/**
+	 * Ensures that the geometric state is up to date before the scene is rendered,
+	 * which is only required if the scene wasn't updated by <code>update</code> since the last frame.
+	 */
+	public void prepareRender() {
+		if (!geometricStateUpdated) {
+			updateGeometricState();
+		}
+		geometricStateUpdated = false;
+	}
+
+	/**
+	 * Specifies the pool which updates the top level subtrees in parallel.
+	 *
+	 * @param updatePool the pool of the update threads.
+	 */
+	public void setUpdatePool(ForkJoinPool updatePool) {
+		if (updatePool == null) {
+			throw new IllegalArgumentException("The update pool must not be null");
+		}
+		this.updatePool = updatePool;
+	}
+
+	/**
+	 * Specifies the maximal count of top level subtrees which are updated by a single task,
+	 * a scene with fewer top level subtrees is updated on the calling thread.
+	 *
+	 * @param updateSplitThreshold the count of subtrees per task.
+	 */
+	public void setUpdateSplitThreshold(int updateSplitThreshold) {
+		if (updateSplitThreshold < 1) {
+			throw new IllegalArgumentException("The update split threshold must be at least 1");
+		}
+		this.updateSplitThreshold = updateSplitThreshold;
+	}
+
+	/**
+	 * @return the maximal count of top level subtrees which are updated by a single task.
+	 */
+	public int getUpdateSplitThreshold() {
+		return updateSplitThreshold;
 	}
 
 	/**
@@ -120,5 +678,40 @@ public class Scene {
 		getRootNode().removeChild(node);
 	}
 
+	/**
+	 * Updates a range of top level subtrees, ranges above the split threshold are split in halves.
+	 */
+	private class UpdateSubtreesAction extends RecursiveAction {
+
+		private final List<Node> subtrees;
+		private final int from;
+		private final int to;
+		private final float elapsedTime;
+		private final boolean parentChanged;
+		private final boolean updateTransforms;
+
+		UpdateSubtreesAction(List<Node> subtrees, int from, int to, float elapsedTime, boolean parentChanged, boolean updateTransforms) {
+			this.subtrees = subtrees;
+			this.from = from;
+			this.to = to;
+			this.elapsedTime = elapsedTime;
+			this.parentChanged = parentChanged;
+			this.updateTransforms = updateTransforms;
+		}
 
+		@Override
+		protected void compute() {
+			if (to - from <= updateSplitThreshold) {
+				for (int i = from; i < to; i++) {
+					subtrees.get(i).updateSubtree(elapsedTime, parentChanged, updateTransforms);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(
+				new UpdateSubtreesAction(subtrees, from, middle, elapsedTime, parentChanged, updateTransforms),
+				new UpdateSubtreesAction(subtrees, middle, to, elapsedTime, parentChanged, updateTransforms));
+		}
+	}
 }
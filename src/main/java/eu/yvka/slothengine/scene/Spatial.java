@@ -1,14 +1,11 @@
 package eu.yvka.slothengine.scene;
 
+import eu.yvka.slothengine.math.BoundingBox;
 import eu.yvka.slothengine.math.Transformation;
 import org.joml.Matrix4f;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Stack;
-
 /**
  * Base class for a spatial hierarchy which is
  * the base class for a simple scene graph.
@@ -47,10 +44,51 @@ public class Spatial {
 	protected final Transformation localTransformation = new Transformation();
 
 	/**
-	 * The world transformation of this object which maintains the
-	 * the combination of the parent word transformation and this local transformation.
+	 * The world matrix of this object which maintains the combination
+	 * of the parent world matrix and the local transformation.
+	 */
+	protected final Matrix4f worldMatrix = new Matrix4f();
+
+	/**
+	 * The translation of the world matrix.
+	 */
+	protected final Vector3f worldPosition = new Vector3f();
+
+	/**
+	 * Marks that the world matrix of this spatial and of its descendants must be recalculated
+	 * by the next <code>updateWorldTransform</code>, which happens once per frame.
+	 */
+	protected boolean transformDirty = true;
+
+	/**
+	 * Incremented whenever the world matrix was recalculated, allows
+	 * subclasses to cache values which are derived from the world matrix.
+	 */
+	protected int worldMatrixRevision = 0;
+
+	/**
+	 * Marks that the world bound of this spatial must be recombined by the next update,
+	 * set whenever the world matrix was recalculated or the content of the spatial changed.
+	 */
+	protected boolean boundDirty = true;
+
+	/**
+	 * The optional store which holds the transformation of this spatial in the slot
+	 * <code>transformSlot</code>, the local transformation is written through into the store.
+	 */
+	private TransformStore transformStore;
+	private int transformSlot = -1;
+
+	/**
+	 * The entry of this spatial in the spatial grid of its scene, which
+	 * is moved whenever the world matrix was recalculated.
 	 */
-	protected final Transformation wordTransformation = new Transformation();
+	SpatialHashGrid.Entry gridEntry;
+
+	/**
+	 * The world space bounding box of this spatial and all of its descendants.
+	 */
+	protected final BoundingBox worldBound = new BoundingBox();
 
 	/**
 	 * Creates the Spatial which the specified id.
@@ -65,7 +103,6 @@ public class Spatial {
 
 		this.id = id;
 		localTransformation.resetTransform();
-		wordTransformation.resetTransform();
 	}
 
 	/**
@@ -74,6 +111,10 @@ public class Spatial {
 	 * @param newId the new id of this spatial object
      */
 	public void setId(String newId) {
+		Scene attachedScene = getScene();
+		if (attachedScene != null) {
+			attachedScene.onIdChanged(this, id, newId);
+		}
 		this.id = newId;
 	}
 
@@ -116,6 +157,7 @@ public class Spatial {
      */
 	protected void setParent(Node parent) {
 		this.parent = parent;
+		transformDirty = true;
 	}
 
 	/**
@@ -127,42 +169,134 @@ public class Spatial {
 		id = UNSET_ID;
 	}
 
+	/**
+	 * Retrieves the world matrix which was calculated by the last
+	 * <code>Scene.updateGeometricState</code>, the matrix isn't updated
+	 * by this call which allows to read it from several threads while rendering.
+	 *
+	 * @return the world matrix.
+	 */
 	public Matrix4f getTransformMatrix() {
-		updateTransform();
-		return wordTransformation.getTransformMatrix();
+		return worldMatrix;
 	}
 
-	protected void combineWithParent() {
-		if (true) {
-			if (parent == null) {
-				wordTransformation.set(localTransformation);
-			} else {
-				wordTransformation.set(localTransformation);
-				wordTransformation.combine(parent.wordTransformation);
-			}
+	/**
+	 * Retrieves the world matrix which was calculated by the last
+	 * <code>Scene.updateGeometricState</code>.
+	 *
+	 * @return the world matrix.
+	 * @see #getTransformMatrix()
+	 */
+	public Matrix4f getWorldMatrix() {
+		return worldMatrix;
+	}
+
+	/**
+	 * Marks the world matrix of this spatial and its descendants as outdated.
+	 */
+	public void markTransformDirty() {
+		transformDirty = true;
+		if (transformStore != null) {
+			syncTransformStore();
 		}
 	}
 
-	public void updateTransform() {
-		Stack<Spatial> nodeStack = new Stack<>();
+	void bindTransformStore(TransformStore store, int slot) {
+		this.transformStore = store;
+		this.transformSlot = slot;
+	}
+
+	void unbindTransformStore() {
+		this.transformStore = null;
+		this.transformSlot = -1;
+		this.transformDirty = true;
+	}
+
+	/**
+	 * @return the slot of this spatial in the transform store of its scene or -1.
+	 */
+	public int getTransformSlot() {
+		return transformSlot;
+	}
+
+	/**
+	 * Receives the world matrix which was calculated by the transform store.
+	 */
+	void setWorldMatrix(float[] matrices, int offset) {
+		TransformStore.copy(matrices, offset, worldMatrix);
+		worldMatrix.getTranslation(worldPosition);
+		worldMatrixRevision++;
+		transformDirty = false;
+		boundDirty = true;
+		if (gridEntry != null) {
+			gridEntry.move();
+		}
+	}
+
+	/**
+	 * Writes the local transformation into the transform store, which is required
+	 * after the vectors of <code>getPosition</code>, <code>getRotation</code> or
+	 * <code>getScale</code> were modified in place while the store is enabled.
+	 */
+	private void syncTransformStore() {
+		transformStore.setPosition(transformSlot, localTransformation.getPosition());
+		transformStore.setRotation(transformSlot, localTransformation.getRotation());
+		transformStore.setScale(transformSlot, localTransformation.getScale());
+	}
+
+	/**
+	 * Recalculates the world matrix of this spatial if its local transformation
+	 * or the world matrix of its parent were changed since the last update.
+	 *
+	 * @param parentChanged true if the world matrix of the parent was recalculated.
+	 * @return true if the world matrix was recalculated.
+	 */
+	protected boolean updateWorldTransform(boolean parentChanged) {
+		// the local vectors could be modified in place, so their changes are checked as well
+		boolean localChanged = localTransformation.updateTransformMatrix();
+		if (!parentChanged && !localChanged && !transformDirty) {
+			return false;
+		}
+
+		Matrix4f localMatrix = localTransformation.getCachedTransformMatrix();
 		if (parent == null) {
-			wordTransformation.set(localTransformation);
+			worldMatrix.set(localMatrix);
 		} else {
-			Spatial root = this;
-			while (true) {
-				Spatial localParent = root.parent;
-				if (localParent == null) {
-					wordTransformation.set(localTransformation);
-					break;
-				}
-				nodeStack.push(root);
-				root = localParent;
-			}
+			parent.worldMatrix.mul(localMatrix, worldMatrix);
+		}
+		worldMatrix.getTranslation(worldPosition);
+		worldMatrixRevision++;
+		transformDirty = false;
+		boundDirty = true;
+		if (gridEntry != null) {
+			gridEntry.move();
 		}
+		return true;
+	}
 
-		for(Spatial node : nodeStack) {
-			node.combineWithParent();
+	/**
+	 * Updates the world transformation of this spatial and its ancestors,
+	 * beginning at the root of the hierarchy. Prefer <code>Scene.updateGeometricState</code>
+	 * which updates all dirty spatials of a scene in a single pass.
+	 */
+	public void updateTransform() {
+		if (parent != null) {
+			parent.updateTransform();
 		}
+		updateWorldTransform(parent != null);
+		// the descendants are updated by the next pass over the scene
+		transformDirty = true;
+	}
+
+	/**
+	 * Retrieves the world space bounding box which encloses this spatial
+	 * and all of its descendants. The box is only valid after the last call of
+	 * <code>Node.updateWorldBound</code>.
+	 *
+	 * @return the world bounding box.
+	 */
+	public BoundingBox getWorldBound() {
+		return worldBound;
 	}
 
 	public Quaternionf getRotation() {
@@ -171,6 +305,10 @@ public class Spatial {
 
 	public void setRotation(Quaternionf rotation) {
 		localTransformation.setRotation(rotation);
+		transformDirty = true;
+		if (transformStore != null) {
+			transformStore.setRotation(transformSlot, localTransformation.getRotation());
+		}
 	}
 
 
@@ -180,31 +318,50 @@ public class Spatial {
 
 	public void setScale(float scale) {
 		localTransformation.setScale(scale);
+		transformDirty = true;
+		if (transformStore != null) {
+			transformStore.setScale(transformSlot, localTransformation.getScale());
+		}
 	}
 
 	public void setScale(Vector3f scaleVector) {
 		localTransformation.setScale(scaleVector);
+		transformDirty = true;
+		if (transformStore != null) {
+			transformStore.setScale(transformSlot, localTransformation.getScale());
+		}
 	}
 
 	public Vector3f getPosition() {
 		return localTransformation.getPosition();
 	}
 
+	/**
+	 * @return the world position which was calculated by the last <code>Scene.updateGeometricState</code>.
+	 */
 	public Vector3f getWorldPosition() {
-		updateTransform();
-		return wordTransformation.getPosition();
+		return worldPosition;
 	}
 
 	public void setPosition(Vector3f translate) {
 		localTransformation.setPosition(translate);
+		transformDirty = true;
+		if (transformStore != null) {
+			transformStore.setPosition(transformSlot, localTransformation.getPosition());
+		}
 	}
 
 	public void setPosition(float x, float y, float z) {
 		localTransformation.setPosition(x, y, z);
+		transformDirty = true;
+		if (transformStore != null) {
+			transformStore.setPosition(transformSlot, localTransformation.getPosition());
+		}
 	}
 
 	public void resetTransform() {
 		localTransformation.resetTransform();
+		markTransformDirty();
 	}
 
 	/**
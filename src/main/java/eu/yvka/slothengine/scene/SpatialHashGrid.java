@@ -0,0 +1,621 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.math.BoundingBox;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Loose spatial hash which sorts spatials into uniform cells by their world position
+ * and answers radius and box queries for neighbourhood tests such as the light assignment.
+ *
+ * Each spatial has a radius and is stored only in the cell of its position, queries
+ * are expanded by the largest radius so that a spatial is found whenever its sphere
+ * overlaps the query. Moving a spatial inside of its cell only updates its position,
+ * moving it into another cell is a constant time swap removal and append.
+ *
+ * The cells are distributed over lock stripes, so that the parallel scene update could
+ * relocate spatials without a global lock. A spatial must be moved by one thread at a time,
+ * which holds for the subtree tasks of <code>Scene.update</code>. Queries lock the stripes
+ * of the visited cells, the consumer of a query must not modify the grid.
+ *
+ * The cells of a stripe are stored in an open addressing map with primitive keys and
+ * queries reuse their state, so that neither a move nor a query allocates memory.
+ */
+public class SpatialHashGrid {
+
+	/**
+	 * Default count of lock stripes.
+	 */
+	public static final int DEFAULT_STRIPE_COUNT = 64;
+
+	private static final int COORDINATE_BITS = 21;
+	private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+	private static final int MAX_COORDINATE = (1 << (COORDINATE_BITS - 1)) - 1;
+
+	private final float cellSize;
+	private final float inverseCellSize;
+	private final Stripe[] stripes;
+	private final int stripeMask;
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger cellCount = new AtomicInteger();
+	private volatile float maxRadius;
+
+	/**
+	 * The state of a query, which is claimed by a query and replaced
+	 * by a state of its own for nested or concurrent queries.
+	 */
+	private final QueryState sharedQuery = new QueryState();
+	private final AtomicBoolean sharedQueryInUse = new AtomicBoolean();
+
+	/**
+	 * Creates a grid with the default count of lock stripes.
+	 *
+	 * @param cellSize the edge length of a cell, which should be about the size of a typical query.
+	 */
+	public SpatialHashGrid(float cellSize) {
+		this(cellSize, DEFAULT_STRIPE_COUNT);
+	}
+
+	/**
+	 * Creates a grid.
+	 *
+	 * @param cellSize the edge length of a cell, which should be about the size of a typical query.
+	 * @param stripeCount the count of lock stripes, which is rounded up to a power of two.
+	 */
+	public SpatialHashGrid(float cellSize, int stripeCount) {
+		if (!(cellSize > 0.0f)) {
+			throw new IllegalArgumentException("The cell size must be positive");
+		}
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("The grid requires at least one lock stripe");
+		}
+
+		int count = Integer.highestOneBit(stripeCount);
+		if (count < stripeCount) count <<= 1;
+
+		this.cellSize = cellSize;
+		this.inverseCellSize = 1.0f / cellSize;
+		this.stripes = new Stripe[count];
+		this.stripeMask = count - 1;
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * @return the edge length of a cell.
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * @return the count of spatials in this grid.
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Inserts a spatial at its world position, a spatial could be part of one grid only.
+	 *
+	 * @param spatial the spatial to insert.
+	 * @param radius the radius of the spatial around its position.
+	 * @throws IllegalArgumentException if the spatial is already part of a grid.
+	 */
+	public void insert(Spatial spatial, float radius) {
+		if (spatial.gridEntry != null) {
+			throw new IllegalArgumentException("The spatial " + spatial.getId() + " is already part of a spatial grid");
+		}
+		growMaxRadius(Math.max(radius, 0.0f));
+
+		Vector3f position = spatial.getWorldPosition();
+		Entry entry = new Entry(this, spatial, Math.max(radius, 0.0f));
+		long key = cellKey(position.x, position.y, position.z);
+		Stripe stripe = stripe(key);
+		stripe.lock.lock();
+		try {
+			entry.setPosition(position);
+			stripe.add(key, entry, cellCount);
+		} finally {
+			stripe.lock.unlock();
+		}
+		spatial.gridEntry = entry;
+		size.incrementAndGet();
+	}
+
+	/**
+	 * Removes a spatial.
+	 *
+	 * @param spatial the spatial to remove.
+	 */
+	public void remove(Spatial spatial) {
+		Entry entry = spatial.gridEntry;
+		if (entry == null || entry.grid != this) return;
+
+		Stripe stripe = stripe(entry.cellKey);
+		stripe.lock.lock();
+		try {
+			stripe.remove(entry, cellCount);
+		} finally {
+			stripe.lock.unlock();
+		}
+		spatial.gridEntry = null;
+		size.decrementAndGet();
+	}
+
+	/**
+	 * Moves a spatial to its current world position, which is called
+	 * by the spatial whenever its world matrix was recalculated.
+	 *
+	 * @param spatial the moved spatial.
+	 */
+	public void move(Spatial spatial) {
+		Entry entry = spatial.gridEntry;
+		if (entry == null || entry.grid != this) return;
+
+		Vector3f position = spatial.getWorldPosition();
+		long oldKey = entry.cellKey;
+		long newKey = cellKey(position.x, position.y, position.z);
+		Stripe oldStripe = stripe(oldKey);
+
+		if (oldKey == newKey) {
+			oldStripe.lock.lock();
+			try {
+				entry.setPosition(position);
+			} finally {
+				oldStripe.lock.unlock();
+			}
+			return;
+		}
+
+		// the stripes are always locked in the order of their index to avoid dead locks
+		Stripe newStripe = stripe(newKey);
+		Stripe first = stripeIndex(oldKey) <= stripeIndex(newKey) ? oldStripe : newStripe;
+		Stripe second = first == oldStripe ? newStripe : oldStripe;
+		first.lock.lock();
+		try {
+			if (second != first) second.lock.lock();
+			try {
+				oldStripe.remove(entry, cellCount);
+				entry.setPosition(position);
+				newStripe.add(newKey, entry, cellCount);
+			} finally {
+				if (second != first) second.lock.unlock();
+			}
+		} finally {
+			first.lock.unlock();
+		}
+	}
+
+	/**
+	 * Changes the radius of a spatial.
+	 *
+	 * @param spatial the spatial.
+	 * @param radius the new radius of the spatial around its position.
+	 */
+	public void setRadius(Spatial spatial, float radius) {
+		Entry entry = spatial.gridEntry;
+		if (entry == null || entry.grid != this) return;
+
+		growMaxRadius(Math.max(radius, 0.0f));
+		Stripe stripe = stripe(entry.cellKey);
+		stripe.lock.lock();
+		try {
+			entry.radius = Math.max(radius, 0.0f);
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Reports all spatials whose sphere overlaps the query sphere.
+	 *
+	 * @param center the center of the query.
+	 * @param radius the radius of the query.
+	 * @param consumer receives the spatials.
+	 */
+	public void query(Vector3f center, float radius, Consumer<Spatial> consumer) {
+		float extent = radius + maxRadius;
+		QueryState query = claimQuery();
+		try {
+			query.setSphere(center, radius, consumer);
+			visit(query, center.x - extent, center.y - extent, center.z - extent,
+				center.x + extent, center.y + extent, center.z + extent);
+		} finally {
+			releaseQuery(query);
+		}
+	}
+
+	/**
+	 * Reports all spatials whose sphere overlaps the box.
+	 *
+	 * @param box the box of the query.
+	 * @param consumer receives the spatials.
+	 */
+	public void query(BoundingBox box, Consumer<Spatial> consumer) {
+		if (box.isEmpty()) return;
+
+		Vector3f min = box.getMin();
+		Vector3f max = box.getMax();
+		float extent = maxRadius;
+		QueryState query = claimQuery();
+		try {
+			query.setBox(min, max, consumer);
+			visit(query, min.x - extent, min.y - extent, min.z - extent,
+				max.x + extent, max.y + extent, max.z + extent);
+		} finally {
+			releaseQuery(query);
+		}
+	}
+
+	private QueryState claimQuery() {
+		return sharedQueryInUse.compareAndSet(false, true) ? sharedQuery : new QueryState();
+	}
+
+	private void releaseQuery(QueryState query) {
+		query.consumer = null;
+		if (query == sharedQuery) {
+			sharedQueryInUse.set(false);
+		}
+	}
+
+	/**
+	 * Removes all spatials.
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				CellMap cells = stripe.cells;
+				int entries = 0;
+				for (int i = 0; i < cells.capacity(); i++) {
+					Cell cell = cells.cellAt(i);
+					if (cell == null) continue;
+					for (int e = 0; e < cell.size; e++) {
+						cell.entries[e].spatial.gridEntry = null;
+					}
+					entries += cell.size;
+				}
+				cellCount.addAndGet(-cells.size());
+				size.addAndGet(-entries);
+				cells.clear();
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Visits the entries of the cells of the query range, large ranges
+	 * visit the occupied cells instead of every cell of the range.
+	 */
+	private void visit(QueryState query, float rangeMinX, float rangeMinY, float rangeMinZ, float rangeMaxX, float rangeMaxY, float rangeMaxZ) {
+		int minX = cellCoordinate(rangeMinX), maxX = cellCoordinate(rangeMaxX);
+		int minY = cellCoordinate(rangeMinY), maxY = cellCoordinate(rangeMaxY);
+		int minZ = cellCoordinate(rangeMinZ), maxZ = cellCoordinate(rangeMaxZ);
+		long rangeCells = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+
+		if (rangeCells > cellCount.get()) {
+			for (Stripe stripe : stripes) {
+				stripe.lock.lock();
+				try {
+					CellMap cells = stripe.cells;
+					for (int i = 0; i < cells.capacity(); i++) {
+						Cell cell = cells.cellAt(i);
+						if (cell != null && cell.x >= minX && cell.x <= maxX && cell.y >= minY && cell.y <= maxY && cell.z >= minZ && cell.z <= maxZ) {
+							query.visit(cell);
+						}
+					}
+				} finally {
+					stripe.lock.unlock();
+				}
+			}
+			return;
+		}
+
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					long key = pack(x, y, z);
+					Stripe stripe = stripe(key);
+					stripe.lock.lock();
+					try {
+						Cell cell = stripe.cells.get(key);
+						if (cell != null) {
+							query.visit(cell);
+						}
+					} finally {
+						stripe.lock.unlock();
+					}
+				}
+			}
+		}
+	}
+
+	private synchronized void growMaxRadius(float radius) {
+		if (radius > maxRadius) {
+			maxRadius = radius;
+		}
+	}
+
+	private int cellCoordinate(float value) {
+		float cell = (float) Math.floor(value * inverseCellSize);
+		if (!(cell > -MAX_COORDINATE)) return -MAX_COORDINATE;
+		if (!(cell < MAX_COORDINATE)) return MAX_COORDINATE;
+		return (int) cell;
+	}
+
+	private long cellKey(float x, float y, float z) {
+		return pack(cellCoordinate(x), cellCoordinate(y), cellCoordinate(z));
+	}
+
+	private static long pack(int x, int y, int z) {
+		return ((x & COORDINATE_MASK) << (2 * COORDINATE_BITS)) | ((y & COORDINATE_MASK) << COORDINATE_BITS) | (z & COORDINATE_MASK);
+	}
+
+	private int stripeIndex(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32) & stripeMask;
+	}
+
+	private Stripe stripe(long key) {
+		return stripes[stripeIndex(key)];
+	}
+
+	/**
+	 * The position and radius of a spatial in the grid, guarded by the lock of the stripe of its cell.
+	 */
+	static final class Entry {
+
+		private final SpatialHashGrid grid;
+		private final Spatial spatial;
+		private float radius;
+		private float x;
+		private float y;
+		private float z;
+		private long cellKey;
+		private Cell cell;
+		private int index;
+
+		Entry(SpatialHashGrid grid, Spatial spatial, float radius) {
+			this.grid = grid;
+			this.spatial = spatial;
+			this.radius = radius;
+		}
+
+		/**
+		 * Moves the spatial to its current world position.
+		 */
+		void move() {
+			grid.move(spatial);
+		}
+
+		/**
+		 * Changes the radius of the spatial.
+		 */
+		void setRadius(float radius) {
+			grid.setRadius(spatial, radius);
+		}
+
+		private void setPosition(Vector3f position) {
+			x = position.x;
+			y = position.y;
+			z = position.z;
+		}
+	}
+
+	private static final class Cell {
+
+		private final int x;
+		private final int y;
+		private final int z;
+		private Entry[] entries = new Entry[4];
+		private int size;
+
+		Cell(long key) {
+			// sign extend the packed coordinates
+			this.x = (int) (key << (64 - 3 * COORDINATE_BITS) >> (64 - COORDINATE_BITS));
+			this.y = (int) (key << (64 - 2 * COORDINATE_BITS) >> (64 - COORDINATE_BITS));
+			this.z = (int) (key << (64 - COORDINATE_BITS) >> (64 - COORDINATE_BITS));
+		}
+	}
+
+	private static final class Stripe {
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final CellMap cells = new CellMap();
+
+		void add(long key, Entry entry, AtomicInteger cellCount) {
+			Cell cell = cells.get(key);
+			if (cell == null) {
+				cell = new Cell(key);
+				cells.put(key, cell);
+				cellCount.incrementAndGet();
+			}
+			if (cell.size == cell.entries.length) {
+				Entry[] entries = new Entry[cell.size * 2];
+				System.arraycopy(cell.entries, 0, entries, 0, cell.size);
+				cell.entries = entries;
+			}
+			entry.cellKey = key;
+			entry.cell = cell;
+			entry.index = cell.size;
+			cell.entries[cell.size++] = entry;
+		}
+
+		void remove(Entry entry, AtomicInteger cellCount) {
+			Cell cell = entry.cell;
+			Entry last = cell.entries[--cell.size];
+			cell.entries[entry.index] = last;
+			last.index = entry.index;
+			cell.entries[cell.size] = null;
+			entry.cell = null;
+
+			if (cell.size == 0) {
+				cells.remove(entry.cellKey);
+				cellCount.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Open addressing map from the packed coordinates of a cell to the cell, which
+	 * uses linear probing and stores the keys in a primitive array.
+	 */
+	private static final class CellMap {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private Cell[] cells = new Cell[INITIAL_CAPACITY];
+		private int shift = 64 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		int capacity() {
+			return cells.length;
+		}
+
+		/**
+		 * @return the cell at a position of the table or null if the position is free.
+		 */
+		Cell cellAt(int index) {
+			return cells[index];
+		}
+
+		Cell get(long key) {
+			int mask = cells.length - 1;
+			for (int i = index(key); cells[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return cells[i];
+				}
+			}
+			return null;
+		}
+
+		void put(long key, Cell cell) {
+			// the load factor is kept at most 1/2
+			if ((size + 1) * 2 > cells.length) {
+				resize(cells.length * 2);
+			}
+			int mask = cells.length - 1;
+			int i = index(key);
+			while (cells[i] != null && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if (cells[i] == null) {
+				size++;
+			}
+			keys[i] = key;
+			cells[i] = cell;
+		}
+
+		void remove(long key) {
+			int mask = cells.length - 1;
+			int i = index(key);
+			while (cells[i] != null && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if (cells[i] == null) return;
+
+			// shifts the following entries of the probe sequence back into the gap
+			int gap = i;
+			for (int j = (gap + 1) & mask; cells[j] != null; j = (j + 1) & mask) {
+				int home = index(keys[j]);
+				if (((j - home) & mask) >= ((j - gap) & mask)) {
+					keys[gap] = keys[j];
+					cells[gap] = cells[j];
+					gap = j;
+				}
+			}
+			cells[gap] = null;
+			size--;
+		}
+
+		void clear() {
+			Arrays.fill(cells, null);
+			size = 0;
+		}
+
+		private int index(long key) {
+			return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+		}
+
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Cell[] oldCells = cells;
+			keys = new long[capacity];
+			cells = new Cell[capacity];
+			shift = 64 - Integer.numberOfTrailingZeros(capacity);
+			size = 0;
+			for (int i = 0; i < oldCells.length; i++) {
+				if (oldCells[i] != null) {
+					put(oldKeys[i], oldCells[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The reusable state of a sphere or box query, which tests the entries of the visited cells.
+	 */
+	private static final class QueryState {
+
+		private boolean sphere;
+		private float x, y, z, radius;
+		private float minX, minY, minZ;
+		private float maxX, maxY, maxZ;
+		private Consumer<Spatial> consumer;
+
+		void setSphere(Vector3f center, float radius, Consumer<Spatial> consumer) {
+			this.sphere = true;
+			this.x = center.x;
+			this.y = center.y;
+			this.z = center.z;
+			this.radius = radius;
+			this.consumer = consumer;
+		}
+
+		void setBox(Vector3f min, Vector3f max, Consumer<Spatial> consumer) {
+			this.sphere = false;
+			this.minX = min.x;
+			this.minY = min.y;
+			this.minZ = min.z;
+			this.maxX = max.x;
+			this.maxY = max.y;
+			this.maxZ = max.z;
+			this.consumer = consumer;
+		}
+
+		void visit(Cell cell) {
+			for (int i = 0; i < cell.size; i++) {
+				Entry entry = cell.entries[i];
+				if (sphere ? overlapsSphere(entry) : overlapsBox(entry)) {
+					consumer.accept(entry.spatial);
+				}
+			}
+		}
+
+		private boolean overlapsSphere(Entry entry) {
+			float dx = entry.x - x, dy = entry.y - y, dz = entry.z - z;
+			float reach = radius + entry.radius;
+			return dx * dx + dy * dy + dz * dz <= reach * reach;
+		}
+
+		private boolean overlapsBox(Entry entry) {
+			float dx = Math.max(Math.max(minX - entry.x, entry.x - maxX), 0.0f);
+			float dy = Math.max(Math.max(minY - entry.y, entry.y - maxY), 0.0f);
+			float dz = Math.max(Math.max(minZ - entry.z, entry.z - maxZ), 0.0f);
+			return dx * dx + dy * dy + dz * dz <= entry.radius * entry.radius;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package eu.yvka.slothengine.scene;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the local transformations and world matrices of the spatials of a scene
+ * in contiguous primitive arrays which are indexed by the slot of a spatial.
+ *
+ * The slots are assigned in depth first order, so the parent of a spatial always
+ * has a lower slot than the spatial itself. This allows to recalculate all world
+ * matrices in a single linear loop over the arrays, without following any references.
+ *
+ * The store is optional and enabled by <code>Scene.setTransformStoreEnabled</code>,
+ * it pays off for large scenes where the world matrices of many spatials change per frame.
+ * The store improves the memory layout of the update but doesn't save memory, the updated
+ * world matrices are still copied into the spatials because they are read from there.
+ */
+public class TransformStore {
+
+	private static final int POSITION_STRIDE = 3;
+	private static final int ROTATION_STRIDE = 4;
+	private static final int SCALE_STRIDE = 3;
+	private static final int MATRIX_STRIDE = 16;
+
+	private float[] positions = new float[0];
+	private float[] rotations = new float[0];
+	private float[] scales = new float[0];
+	private float[] worldMatrices = new float[0];
+	private int[] parents = new int[0];
+
+	/**
+	 * Marks the slots whose local transformation was changed since the last update.
+	 */
+	private boolean[] dirty = new boolean[0];
+
+	/**
+	 * Marks the slots whose world matrix was recalculated by the last update.
+	 */
+	private boolean[] changed = new boolean[0];
+
+	private Spatial[] spatials = new Spatial[0];
+	private int size;
+	private boolean structureChanged = true;
+
+	/**
+	 * The stacks of the depth first traversal of <code>rebuild</code>, which are kept between rebuilds.
+	 */
+	private Node[] stackNodes = new Node[16];
+	private int[] stackParentSlots = new int[16];
+
+	/**
+	 * @return the count of used slots.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Marks that spatials were added or removed,
+	 * the slots are assigned again by the next update.
+	 */
+	public void onStructureChanged() {
+		structureChanged = true;
+	}
+
+	/**
+	 * @return true if the slots must be assigned again.
+	 */
+	public boolean isStructureChanged() {
+		return structureChanged;
+	}
+
+	/**
+	 * Assigns the slots of the spatials of a hierarchy in depth first order
+	 * and copies their local transformations into the store.
+	 *
+	 * @param root the root of the hierarchy.
+	 */
+	public void rebuild(Node root) {
+		for (int i = 0; i < size; i++) {
+			spatials[i].unbindTransformStore();
+		}
+		Arrays.fill(spatials, 0, size, null);
+		size = 0;
+
+		int top = push(0, root, -1);
+		while (top > 0) {
+			top--;
+			Node node = stackNodes[top];
+			stackNodes[top] = null;
+			int slot = allocate(node, stackParentSlots[top]);
+
+			List<Node> children = node.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				top = push(top, children.get(i), slot);
+			}
+		}
+		structureChanged = false;
+	}
+
+	private int push(int top, Node node, int parentSlot) {
+		if (top == stackNodes.length) {
+			stackNodes = Arrays.copyOf(stackNodes, top * 2);
+			stackParentSlots = Arrays.copyOf(stackParentSlots, top * 2);
+		}
+		stackNodes[top] = node;
+		stackParentSlots[top] = parentSlot;
+		return top + 1;
+	}
+
+	private int allocate(Spatial spatial, int parent) {
+		ensureCapacity(size + 1);
+		int slot = size++;
+		spatials[slot] = spatial;
+		parents[slot] = parent;
+		setPosition(slot, spatial.localTransformation.getPosition());
+		setRotation(slot, spatial.localTransformation.getRotation());
+		setScale(slot, spatial.localTransformation.getScale());
+		spatial.bindTransformStore(this, slot);
+		return slot;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= parents.length) return;
+
+		int newCapacity = Math.max(capacity, parents.length * 2 + 16);
+		positions = Arrays.copyOf(positions, newCapacity * POSITION_STRIDE);
+		rotations = Arrays.copyOf(rotations, newCapacity * ROTATION_STRIDE);
+		scales = Arrays.copyOf(scales, newCapacity * SCALE_STRIDE);
+		worldMatrices = Arrays.copyOf(worldMatrices, newCapacity * MATRIX_STRIDE);
+		parents = Arrays.copyOf(parents, newCapacity);
+		dirty = Arrays.copyOf(dirty, newCapacity);
+		changed = Arrays.copyOf(changed, newCapacity);
+		spatials = Arrays.copyOf(spatials, newCapacity);
+	}
+
+	/**
+	 * Sets the local position of a slot.
+	 *
+	 * @param slot the slot of the spatial.
+	 * @param position the local position.
+	 */
+	public void setPosition(int slot, Vector3f position) {
+		int i = slot * POSITION_STRIDE;
+		positions[i] = position.x;
+		positions[i + 1] = position.y;
+		positions[i + 2] = position.z;
+		dirty[slot] = true;
+	}
+
+	/**
+	 * Sets the local rotation of a slot.
+	 *
+	 * @param slot the slot of the spatial.
+	 * @param rotation the local rotation.
+	 */
+	public void setRotation(int slot, Quaternionf rotation) {
+		int i = slot * ROTATION_STRIDE;
+		rotations[i] = rotation.x;
+		rotations[i + 1] = rotation.y;
+		rotations[i + 2] = rotation.z;
+		rotations[i + 3] = rotation.w;
+		dirty[slot] = true;
+	}
+
+	/**
+	 * Sets the local scale of a slot.
+	 *
+	 * @param slot the slot of the spatial.
+	 * @param scale the local scale.
+	 */
+	public void setScale(int slot, Vector3f scale) {
+		int i = slot * SCALE_STRIDE;
+		scales[i] = scale.x;
+		scales[i + 1] = scale.y;
+		scales[i + 2] = scale.z;
+		dirty[slot] = true;
+	}
+
+	/**
+	 * Marks the local transformation of a slot as changed.
+	 *
+	 * @param slot the slot of the spatial.
+	 */
+	public void markDirty(int slot) {
+		dirty[slot] = true;
+	}
+
+	/**
+	 * Recalculates the world matrices of the dirty slots and their descendants in a single
+	 * linear pass and copies them into the world matrices of the corresponding spatials.
+	 */
+	public void update() {
+		for (int slot = 0; slot < size; slot++) {
+			int parent = parents[slot];
+			boolean slotChanged = dirty[slot] || (parent >= 0 && changed[parent]);
+			changed[slot] = slotChanged;
+			if (!slotChanged) continue;
+
+			dirty[slot] = false;
+			computeWorldMatrix(slot, parent);
+		}
+
+		for (int slot = 0; slot < size; slot++) {
+			if (changed[slot]) {
+				spatials[slot].setWorldMatrix(worldMatrices, slot * MATRIX_STRIDE);
+			}
+		}
+	}
+
+	/**
+	 * Computes the world matrix of a slot as the product of the world matrix of the
+	 * parent and the local translation, rotation and scale, both matrices are affine.
+	 */
+	private void computeWorldMatrix(int slot, int parent) {
+		int p = slot * POSITION_STRIDE;
+		int r = slot * ROTATION_STRIDE;
+		int s = slot * SCALE_STRIDE;
+
+		float qx = rotations[r], qy = rotations[r + 1], qz = rotations[r + 2], qw = rotations[r + 3];
+		float sx = scales[s], sy = scales[s + 1], sz = scales[s + 2];
+		float xx = qx * qx, yy = qy * qy, zz = qz * qz;
+		float xy = qx * qy, xz = qx * qz, yz = qy * qz;
+		float xw = qx * qw, yw = qy * qw, zw = qz * qw;
+
+		// local matrix in column major order, the fourth row is (0, 0, 0, 1)
+		float l00 = (1.0f - 2.0f * (yy + zz)) * sx;
+		float l01 = 2.0f * (xy + zw) * sx;
+		float l02 = 2.0f * (xz - yw) * sx;
+		float l10 = 2.0f * (xy - zw) * sy;
+		float l11 = (1.0f - 2.0f * (xx + zz)) * sy;
+		float l12 = 2.0f * (yz + xw) * sy;
+		float l20 = 2.0f * (xz + yw) * sz;
+		float l21 = 2.0f * (yz - xw) * sz;
+		float l22 = (1.0f - 2.0f * (xx + yy)) * sz;
+		float l30 = positions[p];
+		float l31 = positions[p + 1];
+		float l32 = positions[p + 2];
+
+		float[] m = worldMatrices;
+		int w = slot * MATRIX_STRIDE;
+		if (parent < 0) {
+			set(m, w, l00, l01, l02, l10, l11, l12, l20, l21, l22, l30, l31, l32);
+			return;
+		}
+
+		int pm = parent * MATRIX_STRIDE;
+		float p00 = m[pm], p01 = m[pm + 1], p02 = m[pm + 2];
+		float p10 = m[pm + 4], p11 = m[pm + 5], p12 = m[pm + 6];
+		float p20 = m[pm + 8], p21 = m[pm + 9], p22 = m[pm + 10];
+		float p30 = m[pm + 12], p31 = m[pm + 13], p32 = m[pm + 14];
+
+		set(m, w,
+			p00 * l00 + p10 * l01 + p20 * l02,
+			p01 * l00 + p11 * l01 + p21 * l02,
+			p02 * l00 + p12 * l01 + p22 * l02,
+			p00 * l10 + p10 * l11 + p20 * l12,
+			p01 * l10 + p11 * l11 + p21 * l12,
+			p02 * l10 + p12 * l11 + p22 * l12,
+			p00 * l20 + p10 * l21 + p20 * l22,
+			p01 * l20 + p11 * l21 + p21 * l22,
+			p02 * l20 + p12 * l21 + p22 * l22,
+			p00 * l30 + p10 * l31 + p20 * l32 + p30,
+			p01 * l30 + p11 * l31 + p21 * l32 + p31,
+			p02 * l30 + p12 * l31 + p22 * l32 + p32);
+	}
+
+	private static void set(float[] m, int offset,
+							float m00, float m01, float m02,
+							float m10, float m11, float m12,
+							float m20, float m21, float m22,
+							float m30, float m31, float m32) {
+		m[offset] = m00;
+		m[offset + 1] = m01;
+		m[offset + 2] = m02;
+		m[offset + 3] = 0.0f;
+		m[offset + 4] = m10;
+		m[offset + 5] = m11;
+		m[offset + 6] = m12;
+		m[offset + 7] = 0.0f;
+		m[offset + 8] = m20;
+		m[offset + 9] = m21;
+		m[offset + 10] = m22;
+		m[offset + 11] = 0.0f;
+		m[offset + 12] = m30;
+		m[offset + 13] = m31;
+		m[offset + 14] = m32;
+		m[offset + 15] = 1.0f;
+	}
+
+	/**
+	 * Copies the world matrix of a slot.
+	 *
+	 * @param slot the slot of the spatial.
+	 * @param dest the matrix which receives the world matrix.
+	 * @return the dest matrix.
+	 */
+	public Matrix4f getWorldMatrix(int slot, Matrix4f dest) {
+		return copy(worldMatrices, slot * MATRIX_STRIDE, dest);
+	}
+
+	/**
+	 * Unbinds all spatials and releases the slots.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			spatials[i].unbindTransformStore();
+			spatials[i] = null;
+		}
+		size = 0;
+		structureChanged = true;
+	}
+
+	static Matrix4f copy(float[] m, int offset, Matrix4f dest) {
+		return dest.set(
+			m[offset], m[offset + 1], m[offset + 2], m[offset + 3],
+			m[offset + 4], m[offset + 5], m[offset + 6], m[offset + 7],
+			m[offset + 8], m[offset + 9], m[offset + 10], m[offset + 11],
+			m[offset + 12], m[offset + 13], m[offset + 14], m[offset + 15]);
+	}
+}
@@ -1,8 +1,10 @@
 package eu.yvka.slothengine.scene.camera;
 
+import eu.yvka.slothengine.math.Ray;
 import org.joml.Matrix4f;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 
 public abstract class Camera {
 
@@ -25,6 +27,10 @@ public abstract class Camera {
 	protected float pitch;
 	protected float roll;
 
+	private final Matrix4f pickMatrix = new Matrix4f();
+	private final Vector4f pickNear = new Vector4f();
+	private final Vector4f pickFar = new Vector4f();
+
 	public Camera() {
 
 		this.orientation = new Quaternionf();
@@ -90,4 +96,30 @@ public abstract class Camera {
 		return this.direction;
 	}
 
+	/**
+	 * Computes the world space ray through a point of the viewport, which is used
+	 * to pick objects at the mouse position of the <code>InputManager</code>.
+	 *
+	 * @param x the x coordinate of the point in pixels, starting at the left border.
+	 * @param y the y coordinate of the point in pixels, starting at the top border.
+	 * @param width the width of the viewport in pixels.
+	 * @param height the height of the viewport in pixels.
+	 * @param dest the ray which receives the result.
+	 * @return the dest ray.
+	 */
+	public Ray getPickRay(double x, double y, int width, int height, Ray dest) {
+		float ndcX = (float) (2.0 * x / width - 1.0);
+		float ndcY = (float) (1.0 - 2.0 * y / height);
+
+		projectionMatrix.mul(viewMatrix, pickMatrix).invert();
+		pickNear.set(ndcX, ndcY, -1.0f, 1.0f);
+		pickFar.set(ndcX, ndcY, 1.0f, 1.0f);
+		pickMatrix.transform(pickNear);
+		pickMatrix.transform(pickFar);
+
+		float nx = pickNear.x / pickNear.w, ny = pickNear.y / pickNear.w, nz = pickNear.z / pickNear.w;
+		float fx = pickFar.x / pickFar.w, fy = pickFar.y / pickFar.w, fz = pickFar.z / pickFar.w;
+		return dest.set(nx, ny, nz, fx - nx, fy - ny, fz - nz);
+	}
+
 }
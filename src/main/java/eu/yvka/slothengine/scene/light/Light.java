@@ -9,6 +9,7 @@ import eu.yvka.slothengine.scene.Geometry;
 import eu.yvka.slothengine.scene.Node;
 import eu.yvka.slothengine.shader.Shader;
 import eu.yvka.slothengine.shader.Uniform;
+import eu.yvka.slothengine.shader.UniformHandle;
 import eu.yvka.slothengine.shader.ShaderVariable;
 
 /**
@@ -37,6 +38,37 @@ public abstract class Light extends Node {
 	public static final String LIGHT_UNIFORM_POSITION = "position";
 	public static final String LIGHT_UNIFORM_ATTENUATION = "attenuation";
 
+	/**
+	 * The count of light indices whose uniform handles are resolved in advance.
+	 */
+	public static final int MAX_LIGHTS = 8;
+
+	/**
+	 * The fields of a light uniform, an index into the handles of a light index.
+	 */
+	protected static final int FIELD_TYPE = 0;
+	protected static final int FIELD_COLOR = 1;
+	protected static final int FIELD_POSITION = 2;
+	protected static final int FIELD_ATTENUATION = 3;
+
+	private static final String[] FIELD_NAMES = {
+		LIGHT_UNIFORM_TYPE, LIGHT_UNIFORM_COLOR, LIGHT_UNIFORM_POSITION, LIGHT_UNIFORM_ATTENUATION
+	};
+
+	/**
+	 * The uniform handles of the fields of each light index, resolved once
+	 * so that passing a light to a shader needs no string operation.
+	 */
+	private static final UniformHandle[][] UNIFORM_HANDLES = new UniformHandle[MAX_LIGHTS][FIELD_NAMES.length];
+
+	static {
+		for (int lightId = 0; lightId < MAX_LIGHTS; lightId++) {
+			for (int field = 0; field < FIELD_NAMES.length; field++) {
+				UNIFORM_HANDLES[lightId][field] = UniformHandle.of(getUniformName(lightId, FIELD_NAMES[field]));
+			}
+		}
+	}
+
 	private Color color;
 	private float attenuation;
 	private LightType type;
@@ -70,12 +102,42 @@ public abstract class Light extends Node {
 	}
 
 	protected void passToShader(int lightId, Shader shader) {
-		getLightUniform(lightId, shader, LIGHT_UNIFORM_COLOR).setValue(color);
-		getLightUniform(lightId, shader, LIGHT_UNIFORM_ATTENUATION).setValue(attenuation);
-		getLightUniform(lightId, shader, LIGHT_UNIFORM_TYPE).setValue(type.ordinal());
+		getLightUniform(lightId, shader, FIELD_COLOR).setValue(color);
+		getLightUniform(lightId, shader, FIELD_ATTENUATION).setValue(attenuation);
+		getLightUniform(lightId, shader, FIELD_TYPE).setValue(type.ordinal());
+	}
+
+	/**
+	 * Retrieves the uniform of a field of a light index, the handles of indices
+	 * below <code>MAX_LIGHTS</code> are taken from a static table.
+	 *
+	 * @param lightId the index of the light in the light array.
+	 * @param shader the shader of the uniform.
+	 * @param field the field of the light, e.g. <code>FIELD_COLOR</code>.
+	 * @return the uniform of the shader.
+	 */
+	protected Uniform getLightUniform(int lightId, Shader shader, int field) {
+		if (lightId < MAX_LIGHTS) {
+			return shader.getUniform(UNIFORM_HANDLES[lightId][field]);
+		}
+		return shader.getUniform(UniformHandle.of(getUniformName(lightId, FIELD_NAMES[field])));
 	}
 
+	/**
+	 * Retrieves the uniform of a field of a light index by its name.
+	 *
+	 * @param lightId the index of the light in the light array.
+	 * @param shader the shader of the uniform.
+	 * @param name the name of the field, e.g. <code>LIGHT_UNIFORM_COLOR</code>.
+	 * @return the uniform of the shader.
+	 * @deprecated concatenates the uniform name, use the field constants instead.
+	 */
+	@Deprecated
 	protected Uniform getLightUniform(int lightId, Shader shader, String name) {
-		return shader.getUniform(LIGHT_UNIFORM_ARRAY + "[" + lightId + "]." + name);
+		return shader.getUniform(UniformHandle.of(getUniformName(lightId, name)));
+	}
+
+	private static String getUniformName(int lightId, String name) {
+		return LIGHT_UNIFORM_ARRAY + "[" + lightId + "]." + name;
 	}
 }
@@ -2,6 +2,7 @@ package eu.yvka.slothengine.scene.light;
 
 import eu.yvka.slothengine.shader.Shader;
 import eu.yvka.slothengine.shader.ShaderVariable;
+import eu.yvka.slothengine.shader.UniformHandle;
 
 import java.util.ArrayList;
 
@@ -12,8 +13,10 @@ public class LightList extends ArrayList<Light> {
 
 	public static final String LIGHTS_UNIFORM_COUNT = ShaderVariable.VAR_PREFIX + "light_count";
 
+	private static final UniformHandle LIGHTS_COUNT_HANDLE = UniformHandle.of(LIGHTS_UNIFORM_COUNT);
+
 	public void passToShader(Shader shader) {
-		shader.getUniform(LIGHTS_UNIFORM_COUNT).setValue(size());
+		shader.getUniform(LIGHTS_COUNT_HANDLE).setValue(size());
 		for (int i = 0; i < size(); i++) {
 			this.get(i).passToShader(i, shader);
 		}
@@ -14,6 +14,6 @@ public class PointLight extends Light{
 	@Override
 	protected void passToShader(int lightId, Shader shader) {
 		super.passToShader(lightId, shader);
-		getLightUniform(lightId, shader, LIGHT_UNIFORM_POSITION).setValue(getWorldPosition());
+		getLightUniform(lightId, shader, FIELD_POSITION).setValue(getWorldPosition());
 	}
 }
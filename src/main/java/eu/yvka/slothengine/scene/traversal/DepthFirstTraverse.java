@@ -2,17 +2,31 @@ package eu.yvka.slothengine.scene.traversal;
 
 import eu.yvka.slothengine.scene.Node;
 
+/**
+ * Post order traversal which visits the children of a node before the node itself,
+ * uses an explicit stack instead of recursion. Every traversal uses its own stack,
+ * so an instance can be used by nested traversals and by several threads.
+ */
 public class DepthFirstTraverse implements GraphTraversal {
 
 	@Override
 	public void traverse(Node node, Visitor<Node> visitor, int depth) {
-		if (node == null || depth == 0) {
+		if (node == null || depth <= 0) {
 			return;
 		}
 
-		for (Node child : node.getChildren()) {
-			traverse(child, visitor, depth - 1);
+		// the value of an entry is the index of the next child to visit
+		TraversalStack stack = new TraversalStack();
+		stack.push(node, 0);
+		while (!stack.isEmpty()) {
+			Node current = stack.peekNode();
+			int child = stack.peekValue();
+			if (stack.size() < depth && child < current.getChildren().size()) {
+				stack.setValue(child + 1);
+				stack.push(current.getChildren().get(child), 0);
+			} else {
+				visitor.visit(stack.pop());
+			}
 		}
-		visitor.visit(node);
 	}
 }
@@ -0,0 +1,91 @@
+package eu.yvka.slothengine.scene.traversal;
+
+import eu.yvka.slothengine.scene.Node;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pre order traversal which uses an explicit stack instead of recursion,
+ * so that deep graphs can't overflow the call stack.
+ *
+ * Traversals with a <code>PruningVisitor</code> reuse the stack of the instance,
+ * therefore they allocate nothing once the stack is large enough. A nested or
+ * concurrent traversal finds the stack in use and falls back to a stack of its own,
+ * just like the traversals with a plain <code>Visitor</code>.
+ */
+public class IterativeTraverse implements GraphTraversal {
+
+	private final TraversalStack sharedStack = new TraversalStack();
+	private final AtomicBoolean sharedStackInUse = new AtomicBoolean();
+
+	@Override
+	public void traverse(Node node, Visitor<Node> visitor, int depth) {
+		traverse(node, (visited) -> {
+			visitor.visit(visited);
+			return VisitResult.CONTINUE;
+		}, depth, new TraversalStack());
+	}
+
+	/**
+	 * Visits the nodes of a graph in pre order until the visitor stops the traversal.
+	 *
+	 * @param node the root of the graph.
+	 * @param visitor the visitor which decides if the children of a node are visited.
+	 * @return <code>STOP</code> if the visitor stopped the traversal otherwise <code>CONTINUE</code>.
+	 */
+	public VisitResult traverse(Node node, PruningVisitor<Node> visitor) {
+		return traverse(node, visitor, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Visits the nodes of a graph in pre order until the visitor stops the traversal.
+	 *
+	 * @param node the root of the graph.
+	 * @param visitor the visitor which decides if the children of a node are visited.
+	 * @param depth the count of levels to visit, the root is the first level.
+	 * @return <code>STOP</code> if the visitor stopped the traversal otherwise <code>CONTINUE</code>.
+	 */
+	public VisitResult traverse(Node node, PruningVisitor<Node> visitor, int depth) {
+		if (!sharedStackInUse.compareAndSet(false, true)) {
+			return traverse(node, visitor, depth, new TraversalStack());
+		}
+		try {
+			return traverse(node, visitor, depth, sharedStack);
+		} finally {
+			sharedStackInUse.set(false);
+		}
+	}
+
+	private static VisitResult traverse(Node node, PruningVisitor<Node> visitor, int depth, TraversalStack stack) {
+		if (node == null || depth <= 0) {
+			return VisitResult.CONTINUE;
+		}
+
+		// the value of an entry is the depth of its node
+		stack.push(node, 1);
+		try {
+			while (!stack.isEmpty()) {
+				int currentDepth = stack.peekValue();
+				Node current = stack.pop();
+
+				VisitResult result = visitor.visit(current);
+				if (result == VisitResult.STOP) {
+					return VisitResult.STOP;
+				}
+				if (result == VisitResult.SKIP_CHILDREN || currentDepth >= depth) {
+					continue;
+				}
+
+				// push in reverse order so that the first child is visited first
+				List<Node> children = current.getChildren();
+				for (int i = children.size() - 1; i >= 0; i--) {
+					stack.push(children.get(i), currentDepth + 1);
+				}
+			}
+			return VisitResult.CONTINUE;
+		} finally {
+			stack.clear();
+		}
+	}
+}
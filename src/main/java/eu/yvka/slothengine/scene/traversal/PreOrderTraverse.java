@@ -4,15 +4,10 @@ import eu.yvka.slothengine.scene.Node;
 
 public class PreOrderTraverse implements GraphTraversal {
 
+	private final IterativeTraverse traversal = new IterativeTraverse();
+
 	@Override
 	public void traverse(Node node, Visitor<Node> visitor, int depth) {
-		if (node == null || depth == 0) {
-			return;
-		}
-
-		visitor.visit(node);
-		for (Node child : node.getChildren()) {
-			traverse(child, visitor, depth - 1);
-		}
+		traversal.traverse(node, visitor, depth);
 	}
 }
@@ -0,0 +1,21 @@
+package eu.yvka.slothengine.scene.traversal;
+
+import eu.yvka.slothengine.scene.Node;
+
+/**
+ * Visitor which decides after each visited node
+ * if the traversal descends into the subtree of the node.
+ *
+ * @param <T> the type of the node
+ */
+@FunctionalInterface
+public interface PruningVisitor<T extends Node> {
+
+	/**
+	 * Visits a node.
+	 *
+	 * @param node the visited node.
+	 * @return how the traversal should continue.
+	 */
+	VisitResult visit(T node);
+}
@@ -0,0 +1,63 @@
+package eu.yvka.slothengine.scene.traversal;
+
+import eu.yvka.slothengine.scene.Node;
+
+import java.util.Arrays;
+
+/**
+ * Explicit stack of the iterative traversals, which holds a node and an int value per entry.
+ * The arrays only grow, so a reused stack allocates nothing once it is large enough.
+ */
+final class TraversalStack {
+
+	private Node[] nodes = new Node[64];
+	private int[] values = new int[64];
+	private int size;
+
+	void push(Node node, int value) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		nodes[size] = node;
+		values[size] = value;
+		size++;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Node peekNode() {
+		return nodes[size - 1];
+	}
+
+	int peekValue() {
+		return values[size - 1];
+	}
+
+	void setValue(int value) {
+		values[size - 1] = value;
+	}
+
+	/**
+	 * Removes the top entry, the value of the entry must be read before.
+	 *
+	 * @return the node of the removed entry.
+	 */
+	Node pop() {
+		size--;
+		Node node = nodes[size];
+		nodes[size] = null;
+		return node;
+	}
+
+	void clear() {
+		Arrays.fill(nodes, 0, size, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,22 @@
+package eu.yvka.slothengine.scene.traversal;
+
+/**
+ * Result of a visit which controls how a traversal continues.
+ */
+public enum VisitResult {
+
+	/**
+	 * Continues with the children of the visited node.
+	 */
+	CONTINUE,
+
+	/**
+	 * Skips the descendants of the visited node and continues with its next sibling.
+	 */
+	SKIP_CHILDREN,
+
+	/**
+	 * Stops the traversal immediately.
+	 */
+	STOP
+}
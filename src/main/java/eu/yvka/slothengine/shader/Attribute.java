@@ -54,6 +54,11 @@ public class Attribute extends ShaderVariable {
 	 */
 	public final String TEXTCOORDS6_ATTRIBUTE_NAME = VAR_PREFIX + "textcoord06";
 
+	/**
+	 * Default Attribute name for the per instance model matrix
+	 */
+	public final String INSTANCE_MODEL_MATRIX_ATTRIBUTE_NAME = VAR_PREFIX + "instanceModelMatrix";
+
 
 	/**
 	 * Set the name of this attribute by it's corresponding
@@ -64,8 +69,18 @@ public class Attribute extends ShaderVariable {
 	 * @param buffer the corresponding vertex buffer.
      */
 	public void bindName(VertexBuffer buffer) {
+		bindName(buffer.getType());
+	}
+
+	/**
+	 * Set the name of this attribute by the specified VertexBuffer type
+	 * if no name was set before.
+	 *
+	 * @param type the type of the corresponding vertex buffer.
+	 */
+	public void bindName(VertexBuffer.Type type) {
 		if (getName() == null) {
-			setName(toName(buffer.getType()));
+			setName(toName(type));
 		}
 	}
 
@@ -80,6 +95,7 @@ public class Attribute extends ShaderVariable {
 			case TextCoords04: return TEXTCOORDS4_ATTRIBUTE_NAME;
 			case TextCoords05: return TEXTCOORDS5_ATTRIBUTE_NAME;
 			case TextCoords06: return TEXTCOORDS6_ATTRIBUTE_NAME;
+			case InstanceModelMatrix: return INSTANCE_MODEL_MATRIX_ATTRIBUTE_NAME;
 		}
 		return null;
 	}
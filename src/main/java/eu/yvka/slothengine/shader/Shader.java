@@ -6,22 +6,57 @@ import eu.yvka.slothengine.shader.source.ShaderSource;
 import eu.yvka.slothengine.utils.HardwareObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class Shader extends HardwareObject {
 
+	/**
+	 * Name of the std140 uniform block which provides the per frame
+	 * engine uniforms such as the camera matrices.
+	 */
+	public static final String FRAME_BLOCK_NAME = "SlothFrame";
+
+	/**
+	 * Binding point of the per frame uniform block.
+	 */
+	public static final int FRAME_BLOCK_BINDING = 0;
+
+	/**
+	 * The members of the per frame uniform block, these uniforms
+	 * are not set per draw call if a shader uses the block.
+	 */
+	public static final String[] FRAME_BLOCK_UNIFORMS = {
+		"sl_projectionMatrix",
+		"sl_viewMatrix",
+		"sl_cameraPosition",
+		"sl_cameraDirection",
+		"sl_time"
+	};
+
 	private List<ShaderSource> shaderSources = null;
-	private Map<String, Uniform> uniforms = null;
+	private Uniform[] uniformTable = null;
+	private List<Uniform> uniformList = null;
+	private boolean uniformsResolved;
 	private Map<VertexBuffer.Type, Attribute> attributes = null;
 	private String shaderName = null;
 	private boolean valid;
+	private long attributeLayout;
+	private boolean frameBlockUsed;
+
+	/**
+	 * The revisions of the sources at the time the program was linked,
+	 * a shared source which is compiled by another program requires a new link.
+	 */
+	private int[] linkedRevisions = new int[0];
 
 	public Shader(String name) {
 		super(Shader.class);
 		shaderSources = new ArrayList<>();
-		uniforms = new HashMap<>();
+		uniformTable = new Uniform[Math.max(16, UniformHandle.count())];
+		uniformList = new ArrayList<>();
 		attributes = new HashMap<>();
 		this.shaderName = name;
 	}
@@ -40,20 +75,120 @@ public class Shader extends HardwareObject {
 		return shaderSources;
 	}
 
+	/**
+	 * Retrieves a uniform by its name, prefer <code>getUniform(UniformHandle)</code>
+	 * with a handle which is resolved once in code which is executed per frame.
+	 *
+	 * @param name the name of the uniform.
+	 * @return the uniform, which is created if the shader doesn't know it yet.
+	 */
 	public Uniform getUniform(String name) {
-		Uniform uniform = uniforms.get(name);
+		return getUniform(UniformHandle.of(name));
+	}
 
-		if (uniform == null) {
-			uniform = new Uniform();
-			uniform.setName(name);
-			uniforms.put(name, uniform);
+	/**
+	 * Retrieves a uniform by its handle.
+	 *
+	 * The uniform is created if it doesn't exist yet, a uniform which is created
+	 * after the active uniforms of the linked program were resolved is
+	 * marked as not found and therefore never uploaded.
+	 *
+	 * @param handle the handle of the uniform.
+	 * @return the uniform.
+	 */
+	public Uniform getUniform(UniformHandle handle) {
+		int id = handle.getId();
+		if (id < uniformTable.length) {
+			Uniform uniform = uniformTable[id];
+			if (uniform != null) {
+				return uniform;
+			}
+		} else {
+			uniformTable = Arrays.copyOf(uniformTable, Math.max(id + 1, uniformTable.length * 2));
 		}
 
+		Uniform uniform = new Uniform(handle);
+		if (uniformsResolved) {
+			uniform.setLocation(ShaderVariable.LOCATION_NOT_FOUND);
+		}
+		uniformTable[id] = uniform;
+		uniformList.add(uniform);
 		return uniform;
 	}
 
-	public Iterable<Uniform> getUniforms() {
-		return uniforms.values();
+	/**
+	 * Determines if the renderer already resolved the active uniforms of the linked program.
+	 *
+	 * @return true if the locations of the uniforms are known.
+	 */
+	public boolean isUniformsResolved() {
+		return uniformsResolved;
+	}
+
+	/**
+	 * Specifies if the active uniforms of the linked program were resolved,
+	 * only for internal use by the renderer.
+	 *
+	 * @param uniformsResolved true if the locations of the uniforms are known.
+	 */
+	public void setUniformsResolved(boolean uniformsResolved) {
+		this.uniformsResolved = uniformsResolved;
+	}
+
+	/**
+	 * Retrieves the uniforms of this shader in the order of their creation,
+	 * the list can be iterated by index without allocating an iterator.
+	 *
+	 * @return the uniforms of this shader.
+	 */
+	public List<Uniform> getUniforms() {
+		return uniformList;
+	}
+
+	/**
+	 * Retrieves the attribute layout of this shader which encodes
+	 * the attribute location of each vertex buffer type. Shaders with the
+	 * same layout could share the vertex arrays of a mesh.
+	 *
+	 * @return the attribute layout which was resolved by the renderer after the last link.
+	 */
+	public long getAttributeLayout() {
+		return attributeLayout;
+	}
+
+	/**
+	 * Specifies the attribute layout of this shader, only for internal use
+	 * by the renderer.
+	 *
+	 * @param attributeLayout the resolved attribute layout.
+	 */
+	public void setAttributeLayout(long attributeLayout) {
+		this.attributeLayout = attributeLayout;
+	}
+
+	/**
+	 * Determines if this shader reads the per frame uniforms from the
+	 * <code>SlothFrame</code> uniform block instead of single uniforms.
+	 *
+	 * @return true if the shader declares the frame uniform block.
+	 */
+	public boolean isFrameBlockUsed() {
+		return frameBlockUsed;
+	}
+
+	/**
+	 * Specifies if this shader declares the frame uniform block, only for
+	 * internal use by the renderer.
+	 *
+	 * @param frameBlockUsed true if the shader declares the block.
+	 */
+	public void setFrameBlockUsed(boolean frameBlockUsed) {
+		this.frameBlockUsed = frameBlockUsed;
+		if (frameBlockUsed) {
+			for (String name : FRAME_BLOCK_UNIFORMS) {
+				removeUniform(name);
+			}
+		}
 	}
 
 	public Iterable<Attribute> getAttributes() {
@@ -61,7 +196,15 @@ public class Shader extends HardwareObject {
 	}
 
 	public ShaderVariable removeUniform(String name) {
-		return uniforms.remove(name);
+		int id = UniformHandle.of(name).getId();
+		if (id >= uniformTable.length) return null;
+
+		Uniform uniform = uniformTable[id];
+		if (uniform != null) {
+			uniformTable[id] = null;
+			uniformList.remove(uniform);
+		}
+		return uniform;
 	}
 
 	public Attribute getAttribute(VertexBuffer.Type type) {
@@ -85,9 +228,31 @@ public class Shader extends HardwareObject {
 		this.shaderName = shaderName;
 	}
 
+	/**
+	 * Remembers the revisions of the sources which are linked into the program,
+	 * must only be called by the renderer.
+	 */
+	public void onLinked() {
+		if (linkedRevisions.length != shaderSources.size()) {
+			linkedRevisions = new int[shaderSources.size()];
+		}
+		for (int i = 0; i < linkedRevisions.length; i++) {
+			linkedRevisions[i] = shaderSources.get(i).getRevision();
+		}
+	}
+
 	@Override
 	public boolean isUpdateRequired() {
-		return shaderSources.stream().anyMatch(HardwareObject::isUpdateRequired);
+		if (super.isUpdateRequired() || linkedRevisions.length != shaderSources.size()) {
+			return true;
+		}
+		for (int i = 0; i < shaderSources.size(); i++) {
+			ShaderSource source = shaderSources.get(i);
+			if (source.isUpdateRequired() || source.getRevision() != linkedRevisions[i]) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
@@ -97,7 +262,9 @@ public class Shader extends HardwareObject {
 
 	@Override
 	public void resetObject() {
-		shaderSources.forEach(ShaderSource::resetObject);
+		// the sources could be shared with other shaders and are reset on their own
+		uniformsResolved = false;
+		linkedRevisions = new int[0];
 		enableUpdateRequired();
 	}
 
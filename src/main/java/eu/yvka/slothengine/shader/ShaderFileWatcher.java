@@ -0,0 +1,171 @@
+package eu.yvka.slothengine.shader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a shader folder and its sub folders for modified files,
+ * further folders outside of the shader folder could be added by <code>watch</code>.
+ *
+ * The events of the file system are received by a daemon thread, the paths
+ * of the modified files are put into a lock free queue which is drained
+ * by the render thread through <code>poll</code>. If the file system drops events
+ * the watcher reports the root folder, which means that every file could be modified.
+ */
+public class ShaderFileWatcher implements Closeable {
+
+	private static final Logger Log = LoggerFactory.getLogger(ShaderFileWatcher.class);
+
+	private final Path root;
+	private final Queue<Path> modifiedFiles = new ConcurrentLinkedQueue<>();
+	private final Set<Path> watchedFolders = ConcurrentHashMap.newKeySet();
+	private WatchService watchService;
+	private Thread thread;
+
+	/**
+	 * Creates a watcher for a shader folder, the watching starts with <code>start</code>.
+	 *
+	 * @param root the folder which contains the shader files.
+	 */
+	public ShaderFileWatcher(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * @return the watched folder.
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Registers the folder tree at the file system and starts the watching thread.
+	 *
+	 * @throws IOException if the folder could not be watched.
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null) {
+			throw new IllegalStateException("The shader file watcher is already started");
+		}
+
+		watchService = FileSystems.getDefault().newWatchService();
+		if (Files.isDirectory(root)) {
+			registerTree(root, watchService);
+		}
+		for (Path folder : watchedFolders) {
+			folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		}
+
+		thread = new Thread(this::processEvents, "ShaderFileWatcher");
+		thread.setDaemon(true);
+		thread.start();
+		Log.info("Watch the shader folder {} for modifications", root);
+	}
+
+	/**
+	 * Watches a single folder without its sub folders, such as the folder of a shader
+	 * file outside of the shader folder. Folders within the shader folder are already watched.
+	 *
+	 * @param folder the folder to watch.
+	 * @throws IOException if the folder could not be watched.
+	 */
+	public synchronized void watch(Path folder) throws IOException {
+		Path normalized = folder.toAbsolutePath().normalize();
+		if (normalized.startsWith(root) && Files.isDirectory(root)) return;
+		if (!watchedFolders.add(normalized)) return;
+
+		if (watchService != null) {
+			normalized.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+			Log.info("Watch the shader folder {} for modifications", normalized);
+		}
+	}
+
+	/**
+	 * Retrieves the next modified file, must only be called by a single thread.
+	 *
+	 * @return the absolute path of a modified file, the root folder if events were lost
+	 * or null if there are no further modifications.
+	 */
+	public Path poll() {
+		return modifiedFiles.poll();
+	}
+
+	/**
+	 * Stops the watching thread.
+	 */
+	@Override
+	public synchronized void close() {
+		if (watchService == null) return;
+
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			Log.warn("Failed to close the shader file watcher", e);
+		}
+		watchService = null;
+		thread = null;
+	}
+
+	private void processEvents() {
+		WatchService service = watchService;
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				Path folder = (Path) key.watchable();
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						modifiedFiles.offer(root);
+						continue;
+					}
+
+					Path file = folder.resolve((Path) event.context());
+					if (event.kind() == ENTRY_CREATE && Files.isDirectory(file)) {
+						registerTree(file, service);
+					}
+					modifiedFiles.offer(file);
+				}
+
+				if (!key.reset() && folder.equals(root)) {
+					Log.warn("The shader folder {} is no longer accessible, stop watching", root);
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// the watcher was closed
+		} catch (IOException e) {
+			Log.error("Failed to watch the shader folder " + root, e);
+		}
+	}
+
+	private static void registerTree(Path folder, WatchService service) throws IOException {
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
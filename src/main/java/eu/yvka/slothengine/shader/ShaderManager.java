@@ -13,7 +13,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -30,6 +35,20 @@ public class ShaderManager implements EngineComponent {
 	private Map<String, Shader> shaderMap;
 	private boolean initialized;
 
+	/**
+	 * The file sources which are created by this manager and reloaded
+	 * when the watcher reports a modification of their file.
+	 */
+	private final List<FileShaderSource> fileSources = new ArrayList<>();
+
+	/**
+	 * Interned sources by their type and file or content, so that a source
+	 * which is used by several shaders is compiled only once.
+	 */
+	private final Map<String, ShaderSource> sourceMap = new HashMap<>();
+	private ShaderFileWatcher fileWatcher;
+	private final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new File(ASSET_PATH));
+
 	/******************************************************************************
 	 *
 	 * Methods
@@ -40,11 +59,37 @@ public class ShaderManager implements EngineComponent {
 		return getShader(shader, shader, null);
 	}
 
+	/**
+	 * Retrieves the variant of a shader which is compiled with the specified defines,
+	 * variants with equal defines are shared.
+	 *
+	 * @param shader the name of the vertex and fragment shader.
+	 * @param defines the defines of the variant, for example <code>LIGHTING</code> or <code>MAX_LIGHTS=8</code>.
+	 * @return the shader variant.
+	 */
+	public Shader getShader(String shader, Map<String, String> defines) {
+		return getShader(shader, shader, null, defines);
+	}
+
 	public Shader getShader(String vertexShader, String fragmentShader) {
 		return getShader(vertexShader, fragmentShader, null);
 	}
 
 	public Shader getShader(String vertexShader, String fragmentShader, String geometryShader) {
+		return getShader(vertexShader, fragmentShader, geometryShader, Collections.emptyMap());
+	}
+
+	/**
+	 * Retrieves the variant of a shader which is compiled with the specified defines,
+	 * variants with equal sources and defines are compiled only once and shared.
+	 *
+	 * @param vertexShader the name of the vertex shader.
+	 * @param fragmentShader the name of the fragment shader.
+	 * @param geometryShader the name of the geometry shader or null.
+	 * @param defines the defines of the variant.
+	 * @return the shader variant.
+	 */
+	public Shader getShader(String vertexShader, String fragmentShader, String geometryShader, Map<String, String> defines) {
 		Objects.requireNonNull(vertexShader, "A vertex shader is required");
 		Objects.requireNonNull(fragmentShader, "A fragment shader is required");
 
@@ -57,6 +102,9 @@ public class ShaderManager implements EngineComponent {
 				id += "_" + geometryShader;
 			}
 		}
+		if (defines != null && !defines.isEmpty()) {
+			id += "[" + ShaderPreprocessor.toKey(defines) + "]";
+		}
 
 		Shader shader = shaderMap.get(id);
 		if (shader == null) {
@@ -68,7 +116,7 @@ public class ShaderManager implements EngineComponent {
 				geometrySrc = new File(ASSET_PATH + toShaderFileName(geometryShader, ShaderType.GEOMETRY));
 			}
 
-			shader = registerFileShader(vertexSrc, fragmentSrc, geometrySrc, id);
+			shader = registerFileShader(vertexSrc, fragmentSrc, geometrySrc, id, defines);
 		}
 
 
@@ -76,17 +124,21 @@ public class ShaderManager implements EngineComponent {
 	}
 
 	public Shader registerFileShader(File vertexShader, File fragmentShader, File geometryShader, String id) {
+		return registerFileShader(vertexShader, fragmentShader, geometryShader, id, Collections.emptyMap());
+	}
+
+	public Shader registerFileShader(File vertexShader, File fragmentShader, File geometryShader, String id, Map<String, String> defines) {
 
 		if (shaderMap.containsKey(id)) {
 			throw new IllegalArgumentException("Shader with the id " + id + " is already registered.");
 		}
 
 		Shader shader = new Shader(id);
-		shader.addSource(new FileShaderSource(ShaderType.VERTEX, vertexShader));
-		shader.addSource(new FileShaderSource(ShaderType.FRAGMENT, fragmentShader));
+		shader.addSource(createFileSource(ShaderType.VERTEX, vertexShader, defines));
+		shader.addSource(createFileSource(ShaderType.FRAGMENT, fragmentShader, defines));
 
 		if (geometryShader != null) {
-			shader.addSource(new FileShaderSource(ShaderType.GEOMETRY, geometryShader));
+			shader.addSource(createFileSource(ShaderType.GEOMETRY, geometryShader, defines));
 		}
 
 		shaderMap.put(id, shader);
@@ -108,14 +160,14 @@ public class ShaderManager implements EngineComponent {
 		try {
 			final Shader shader = new Shader(id);
 			String vertexSource = IOUtils.toString(new InputStreamReader(vertexIn));
-			shader.addSource(new StringShaderSource(toShaderFileName(id, ShaderType.VERTEX),ShaderType.VERTEX, vertexSource));
+			shader.addSource(createStringSource(id, ShaderType.VERTEX, vertexSource));
 
 			String fragmentSource = IOUtils.toString(new InputStreamReader(fragmentIn));
-			shader.addSource(new StringShaderSource(toShaderFileName(id, ShaderType.FRAGMENT),ShaderType.FRAGMENT, fragmentSource));
+			shader.addSource(createStringSource(id, ShaderType.FRAGMENT, fragmentSource));
 
 			if (geometryIn != null) {
 				String geometrySource = IOUtils.toString(new InputStreamReader(geometryIn));
-				shader.addSource(new StringShaderSource(toShaderFileName(id, ShaderType.GEOMETRY), ShaderType.GEOMETRY, geometrySource));
+				shader.addSource(createStringSource(id, ShaderType.GEOMETRY, geometrySource));
 			}
 
 			shaderMap.put(id, shader);
@@ -130,10 +182,91 @@ public class ShaderManager implements EngineComponent {
 	}
 
 	public ShaderSource getSource(ShaderType type, String name) {
-		FileShaderSource fileShaderSource = new FileShaderSource(type,
-			new File(ASSET_PATH + name + "." + type.getExtension()));
+		return createFileSource(type, new File(ASSET_PATH + name + "." + type.getExtension()), Collections.emptyMap());
+	}
+
+	/**
+	 * Retrieves the interned source of a file or creates it, the source
+	 * is shared by all shaders which use the file with the same defines.
+	 */
+	private FileShaderSource createFileSource(ShaderType type, File file, Map<String, String> defines) {
+		String key = type.name() + ":" + file.toPath().toAbsolutePath().normalize();
+		if (defines != null && !defines.isEmpty()) {
+			key += "[" + ShaderPreprocessor.toKey(defines) + "]";
+		}
 
-		return fileShaderSource;
+		FileShaderSource source = (FileShaderSource) sourceMap.get(key);
+		if (source == null) {
+			source = new FileShaderSource(type, file, preprocessor, defines);
+			sourceMap.put(key, source);
+			fileSources.add(source);
+			watchFolderOf(source);
+		}
+		return source;
+	}
+
+	/**
+	 * Watches the folder of a file source, which is required
+	 * for shader files outside of the shader folder.
+	 */
+	private void watchFolderOf(FileShaderSource source) {
+		if (fileWatcher == null) return;
+
+		File folder = source.getFile().getAbsoluteFile().getParentFile();
+		if (folder == null || !folder.isDirectory()) return;
+		try {
+			fileWatcher.watch(folder.toPath());
+		} catch (IOException e) {
+			Log.warn("Shader hot reload is disabled for {}, its folder could not be watched", source.getName(), e);
+		}
+	}
+
+	/**
+	 * Retrieves the interned source with the specified content or creates it.
+	 */
+	private ShaderSource createStringSource(String id, ShaderType type, String content) {
+		String key = type.name() + "#" + content;
+		ShaderSource source = sourceMap.get(key);
+		if (source == null) {
+			source = new StringShaderSource(toShaderFileName(id, type), type, content);
+			sourceMap.put(key, source);
+		}
+		return source;
+	}
+
+	/**
+	 * Marks the file sources whose files were modified since the last frame,
+	 * the affected shaders are compiled again before they are used the next time.
+	 */
+	private void reloadModifiedSources() {
+		Path modifiedFile;
+		while ((modifiedFile = fileWatcher.poll()) != null) {
+			boolean allModified = modifiedFile.equals(fileWatcher.getRoot());
+			for (int i = 0; i < fileSources.size(); i++) {
+				FileShaderSource source = fileSources.get(i);
+				if (allModified || source.dependsOn(modifiedFile)
+					|| modifiedFile.equals(source.getFile().toPath().toAbsolutePath().normalize())) {
+					Log.info("Reload the modified shader source {}", source.getName());
+					source.onFileModified();
+				}
+			}
+		}
+	}
+
+	private void startFileWatcher() {
+		fileWatcher = new ShaderFileWatcher(Paths.get(ASSET_PATH));
+		try {
+			fileWatcher.start();
+		} catch (IOException e) {
+			Log.warn("Shader hot reload is disabled, the shader folder could not be watched", e);
+			fileWatcher = null;
+			return;
+		}
+
+		// sources which were created before the engine was initialized
+		for (int i = 0; i < fileSources.size(); i++) {
+			watchFolderOf(fileSources.get(i));
+		}
 	}
 
 
@@ -187,12 +320,26 @@ public class ShaderManager implements EngineComponent {
 			e.printStackTrace();
 		}
 
+		startFileWatcher();
 		initialized = true;
 	}
 
+	@Override
+	public void onFrameStart() {
+		if (fileWatcher != null) {
+			reloadModifiedSources();
+		}
+	}
+
 	@Override
 	public void shutdown() {
 		// Already performed from the render clean up
+		if (fileWatcher != null) {
+			fileWatcher.close();
+			fileWatcher = null;
+		}
+		fileSources.clear();
+		sourceMap.clear();
 		initialized = false;
 	}
 
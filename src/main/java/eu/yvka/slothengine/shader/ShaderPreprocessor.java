@@ -0,0 +1,194 @@
+package eu.yvka.slothengine.shader;
+
+import eu.yvka.slothengine.utils.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Preprocessor which runs before a shader source is passed to the driver.
+ *
+ * The preprocessor replaces <code>#include "file"</code> directives by the content
+ * of the file, which is resolved relative to the include folder. A file is included
+ * only once per source, further includes of the same file are ignored. The defines
+ * of a shader variant are inserted behind the <code>#version</code> directive.
+ *
+ * <code>#line</code> directives are emitted behind the inserted defines and around each
+ * included file, so the line numbers of compile errors match the original files. The source
+ * string number of the directive is 0 for the processed source and the position of the
+ * included file in <code>includedFiles</code>, starting at 1, for an included file.
+ *
+ * <code><pre>
+ * #version 150
+ * #include "SlothFrame.glsl"
+ *
+ * #ifdef LIGHTING
+ * ...
+ * #endif
+ * </pre></code>
+ */
+public class ShaderPreprocessor {
+
+	private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*#\\s*include\\s+[\"<]([^\">]+)[\">]\\s*$");
+	private static final Pattern VERSION_PATTERN = Pattern.compile("^\\s*#\\s*version\\b.*$");
+	private static final Pattern DEFINE_NAME_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	private final File includeFolder;
+
+	/**
+	 * Creates a preprocessor which resolves includes relative to the specified folder.
+	 *
+	 * @param includeFolder the folder of the included files.
+	 */
+	public ShaderPreprocessor(File includeFolder) {
+		this.includeFolder = includeFolder;
+	}
+
+	/**
+	 * @return the folder of the included files.
+	 */
+	public File getIncludeFolder() {
+		return includeFolder;
+	}
+
+	/**
+	 * Resolves the includes of a source and inserts the specified defines.
+	 *
+	 * @param source the source to process.
+	 * @param defines the defines of the variant, a null or empty value defines only the name.
+	 * @param includedFiles receives the absolute paths of the included files.
+	 * @return the processed source.
+	 * @throws IOException if an included file could not be read.
+	 */
+	public String process(String source, Map<String, String> defines, Collection<Path> includedFiles) throws IOException {
+		return process(null, source, defines, includedFiles);
+	}
+
+	/**
+	 * Resolves the includes of the source of a file and inserts the specified defines,
+	 * includes of the file itself are ignored.
+	 *
+	 * @param sourceFile the absolute path of the file of the source or null.
+	 * @param source the source to process.
+	 * @param defines the defines of the variant, a null or empty value defines only the name.
+	 * @param includedFiles receives the absolute paths of the included files.
+	 * @return the processed source.
+	 * @throws IOException if an included file could not be read.
+	 */
+	public String process(Path sourceFile, String source, Map<String, String> defines, Collection<Path> includedFiles) throws IOException {
+		if (defines.isEmpty() && !source.contains("include")) {
+			return source;
+		}
+
+		StringBuilder result = new StringBuilder(source.length() + 256);
+		String[] lines = source.split("\r?\n", -1);
+
+		int firstLine = 0;
+		if (lines.length > 0 && VERSION_PATTERN.matcher(lines[0]).matches()) {
+			result.append(lines[0]).append('\n');
+			firstLine = 1;
+		}
+		if (!defines.isEmpty()) {
+			appendDefines(result, defines);
+			appendLineDirective(result, firstLine + 1, 0);
+		}
+
+		appendLines(result, lines, firstLine, 0, sourceFile, includedFiles);
+		return result.toString();
+	}
+
+	/**
+	 * Creates the canonical representation of a define set, which is
+	 * independent of the order of the defines.
+	 *
+	 * @param defines the defines.
+	 * @return the defines sorted by their name, for example <code>LIGHTING,MAX_LIGHTS=8</code>.
+	 */
+	public static String toKey(Map<String, String> defines) {
+		StringBuilder key = new StringBuilder();
+		for (Map.Entry<String, String> define : new TreeMap<>(defines).entrySet()) {
+			if (key.length() > 0) {
+				key.append(',');
+			}
+			key.append(define.getKey());
+			if (define.getValue() != null && !define.getValue().isEmpty()) {
+				key.append('=').append(define.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Creates an immutable copy of a define set which is sorted by the names of the defines.
+	 *
+	 * @param defines the defines.
+	 * @return the sorted copy.
+	 * @throws IllegalArgumentException if the name of a define isn't a valid identifier.
+	 */
+	public static Map<String, String> copyDefines(Map<String, String> defines) {
+		if (defines == null || defines.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		for (String name : defines.keySet()) {
+			if (name == null || !DEFINE_NAME_PATTERN.matcher(name).matches()) {
+				throw new IllegalArgumentException("The define name '" + name + "' isn't a valid identifier");
+			}
+		}
+		return Collections.unmodifiableMap(new TreeMap<>(defines));
+	}
+
+	private void appendDefines(StringBuilder result, Map<String, String> defines) {
+		for (Map.Entry<String, String> define : new TreeMap<>(defines).entrySet()) {
+			result.append("#define ").append(define.getKey());
+			if (define.getValue() != null && !define.getValue().isEmpty()) {
+				result.append(' ').append(define.getValue());
+			}
+			result.append('\n');
+		}
+	}
+
+	/**
+	 * Appends the lines of a file from the specified index and replaces its includes.
+	 *
+	 * @param sourceNumber the source string number of the file in the <code>#line</code> directives.
+	 */
+	private void appendLines(StringBuilder result, String[] lines, int from, int sourceNumber, Path sourceFile, Collection<Path> includedFiles) throws IOException {
+		for (int i = from; i < lines.length; i++) {
+			Matcher include = INCLUDE_PATTERN.matcher(lines[i]);
+			if (!include.matches()) {
+				result.append(lines[i]).append('\n');
+				continue;
+			}
+
+			File file = new File(includeFolder, include.group(1));
+			Path path = file.toPath().toAbsolutePath().normalize();
+			if (path.equals(sourceFile) || includedFiles.contains(path)) {
+				// already included, which also breaks include cycles, the empty line keeps the numbering
+				result.append('\n');
+				continue;
+			}
+			if (!file.isFile()) {
+				throw new IOException("The included shader file " + path + " doesn't exist");
+			}
+			includedFiles.add(path);
+
+			int includedNumber = includedFiles.size();
+			appendLineDirective(result, 1, includedNumber);
+			appendLines(result, IOUtils.toString(file).split("\r?\n", -1), 0, includedNumber, sourceFile, includedFiles);
+			// the next line of this file, the line at index i has the number i + 1
+			appendLineDirective(result, i + 2, sourceNumber);
+		}
+	}
+
+	private static void appendLineDirective(StringBuilder result, int line, int sourceNumber) {
+		result.append("#line ").append(line).append(' ').append(sourceNumber).append('\n');
+	}
+}
@@ -9,48 +9,97 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
+/**
+ * A uniform variable of a shader.
+ *
+ * The value of a uniform is kept in primitive slots and a reused
+ * matrix buffer so that updating a uniform doesn't allocate any memory.
+ * A new value is compared with the current value and the uniform is only
+ * marked for an upload if the value or its type changed.
+ */
 public class Uniform extends ShaderVariable {
 
+	private static final int MATRIX3_SIZE = 9;
+	private static final int MATRIX4_SIZE = 16;
 
-	private Object value;
+	private final float[] floatValue = new float[4];
+	private final int[] intValue = new int[4];
+	private FloatBuffer matrixValue;
+	private FloatBuffer pendingMatrixValue;
 	private VariableType type;
+	private UniformHandle handle;
+
+	/**
+	 * Creates a uniform without a handle, the handle is resolved from the name on its first use.
+	 *
+	 * @deprecated uniforms are created by their shader, use <code>Shader.getUniform</code> instead.
+	 */
+	@Deprecated
+	public Uniform() {
+	}
+
+	/**
+	 * Creates a uniform for the name of a handle.
+	 *
+	 * @param handle the handle of the uniform name.
+	 */
+	Uniform(UniformHandle handle) {
+		this.handle = handle;
+		setName(handle.getName());
+	}
+
+	/**
+	 * @return the handle of this uniform.
+	 */
+	public UniformHandle getHandle() {
+		if (handle == null && getName() != null) {
+			handle = UniformHandle.of(getName());
+		}
+		return handle;
+	}
 
 	public void setValue(float value) {
-		setValue(VariableType.Float, value);
+		setFloatValue(VariableType.Float, value, 0, 0, 0);
 	}
 
 	public void setValue(float v1, float v2) {
-		setValue(VariableType.Float2, new float[] {v1, v2});
+		setFloatValue(VariableType.Float2, v1, v2, 0, 0);
 	}
 
 	public void setValue(float v1, float v2, float v3) {
-		setValue(VariableType.Float3, new float[] {v1, v2, v3});
+		setFloatValue(VariableType.Float3, v1, v2, v3, 0);
 	}
 
 	public void setValue(float v1, float v2, float v3, float v4) {
-
-		setValue(VariableType.Float4, new float[] {v1, v2, v3, v4});
+		setFloatValue(VariableType.Float4, v1, v2, v3, v4);
 	}
 
 	public void setValue(int v1) {
-		setValue(VariableType.Int, v1);
+		setIntValue(VariableType.Int, v1, 0, 0, 0);
 	}
 
 	public void setValue(int v1, int v2) {
-		setValue(VariableType.Int2, new int[] {v1, v2});
+		setIntValue(VariableType.Int2, v1, v2, 0, 0);
 	}
 
 	public void setValue(int v1, int v2, int v3) {
-		setValue(VariableType.Int3, new int[] {v1, v2, v3});
+		setIntValue(VariableType.Int3, v1, v2, v3, 0);
 	}
 
 	public void setValue(int v1, int v2, int v3, int v4) {
-		setValue(VariableType.Int4, new int[] {v1, v2, v3, v4});
+		setIntValue(VariableType.Int4, v1, v2, v3, v4);
 	}
 
 	public void setValue(Matrix4f value) {
-		setValue(VariableType.Matrix4x4, value);
+		value.get(0, preparePendingMatrixValue(VariableType.Matrix4x4));
+		commitMatrixValue(VariableType.Matrix4x4);
+	}
+
+	public void setValue(Matrix3f value) {
+		value.get(0, preparePendingMatrixValue(VariableType.Matrix3x3));
+		commitMatrixValue(VariableType.Matrix3x3);
 	}
 
 	public void setValue(Color color) {
@@ -66,52 +115,232 @@ public class Uniform extends ShaderVariable {
 	}
 
 	public void setValue(MaterialParameter parameter) {
-		setValue(parameter.getType(), parameter.getValue());
+		VariableType parameterType = parameter.getType();
+		switch (parameterType) {
+			case Float:
+			case Float2:
+			case Float3:
+			case Float4:
+				setFloatValue(parameterType,
+					parameter.getFloat(0), parameter.getFloat(1),
+					parameter.getFloat(2), parameter.getFloat(3));
+				break;
+			case Int:
+			case Int2:
+			case Int3:
+			case Int4:
+				setIntValue(parameterType,
+					parameter.getInt(0), parameter.getInt(1),
+					parameter.getInt(2), parameter.getInt(3));
+				break;
+			case Matrix3x3:
+				setValue(parameter.getMatrix3f());
+				break;
+			case Matrix4x4:
+				setValue(parameter.getMatrix4f());
+				break;
+		}
 	}
 
+	/**
+	 * Specifies the value of this uniform by an object.
+	 *
+	 * @param type the type of the value.
+	 * @param value a <code>Number</code> or an array for the scalar and vector types,
+	 *              a JOML matrix for the matrix types.
+	 * @throws IllegalArgumentException if the value doesn't match the type.
+	 * @deprecated boxes its value, use the typed setters instead.
+	 */
+	@Deprecated
 	public void setValue(VariableType type, Object value) {
-		if (this.value == value) return;
-
 		switch (type) {
 			case Float:
 			case Float2:
 			case Float3:
 			case Float4:
+				if (value instanceof Number) {
+					setFloatValue(type, ((Number) value).floatValue(), 0, 0, 0);
+				} else if (value instanceof float[] && ((float[]) value).length >= componentCount(type)) {
+					float[] v = (float[]) value;
+					int count = componentCount(type);
+					setFloatValue(type, v[0], count > 1 ? v[1] : 0, count > 2 ? v[2] : 0, count > 3 ? v[3] : 0);
+				} else {
+					throw new IllegalArgumentException("Unsupported value of the " + type + " uniform " + getName() + ": " + value);
+				}
+				break;
 			case Int:
 			case Int2:
 			case Int3:
 			case Int4:
-				this.value = value;
+				if (value instanceof Number) {
+					setIntValue(type, ((Number) value).intValue(), 0, 0, 0);
+				} else if (value instanceof int[] && ((int[]) value).length >= componentCount(type)) {
+					int[] v = (int[]) value;
+					int count = componentCount(type);
+					setIntValue(type, v[0], count > 1 ? v[1] : 0, count > 2 ? v[2] : 0, count > 3 ? v[3] : 0);
+				} else {
+					throw new IllegalArgumentException("Unsupported value of the " + type + " uniform " + getName() + ": " + value);
+				}
 				break;
 			case Matrix3x3:
-				Matrix3f matrix3f = (Matrix3f) value;
-				if (value != null) {
-					this.value = BufferUtils.createFloatBuffer(9);
+				if (!(value instanceof Matrix3f)) {
+					throw new IllegalArgumentException("Unsupported value of the " + type + " uniform " + getName() + ": " + value);
 				}
-				matrix3f.get((FloatBuffer) this.value);
+				setValue((Matrix3f) value);
 				break;
 			case Matrix4x4:
-				Matrix4f matrix4f = (Matrix4f) value;
-				if (value != null) {
-					this.value = BufferUtils.createFloatBuffer(16);
+				if (!(value instanceof Matrix4f)) {
+					throw new IllegalArgumentException("Unsupported value of the " + type + " uniform " + getName() + ": " + value);
 				}
-				matrix4f.get((FloatBuffer) this.value);
+				setValue((Matrix4f) value);
 				break;
+		}
+	}
 
+	/**
+	 * Retrieves the value of this uniform as an object, a copy
+	 * of a scalar or vector value is created by every call.
+	 *
+	 * @return the value as <code>Float</code>, <code>Integer</code>, a float or int array
+	 *         or the matrix buffer of <code>getMatrixBuffer</code>.
+	 * @deprecated allocates, use the typed getters instead.
+	 */
+	@Deprecated
+	public Object getValue() {
+		if (type == null) return null;
+		switch (type) {
+			case Float: return floatValue[0];
+			case Float2:
+			case Float3:
+			case Float4: return Arrays.copyOf(floatValue, componentCount(type));
+			case Int: return intValue[0];
+			case Int2:
+			case Int3:
+			case Int4: return Arrays.copyOf(intValue, componentCount(type));
+			default: return matrixValue;
 		}
+	}
 
-		this.type = type;
-		enableUpdateRequired();
+	/**
+	 * Retrieves a component of a float or float vector uniform.
+	 *
+	 * @param index the index of the component between 0 and 3.
+	 * @return the value of the component.
+	 */
+	public float getFloat(int index) {
+		return floatValue[index];
 	}
 
-	public Object getValue() {
-		return value;
+	/**
+	 * Retrieves a component of an int or int vector uniform.
+	 *
+	 * @param index the index of the component between 0 and 3.
+	 * @return the value of the component.
+	 */
+	public int getInt(int index) {
+		return intValue[index];
+	}
+
+	/**
+	 * Retrieves the column major content of a matrix uniform,
+	 * the buffer is reused by subsequent updates of this uniform.
+	 *
+	 * @return the matrix buffer or null if no matrix was assigned.
+	 */
+	public FloatBuffer getMatrixBuffer() {
+		return matrixValue;
 	}
 
 	public VariableType getType() {
 		return type;
 	}
 
+	private static int componentCount(VariableType type) {
+		if (type.ordinal() <= VariableType.Float4.ordinal()) {
+			return type.ordinal() - VariableType.Float.ordinal() + 1;
+		}
+		return type.ordinal() - VariableType.Int.ordinal() + 1;
+	}
+
+	private void setFloatValue(VariableType type, float v1, float v2, float v3, float v4) {
+		// compare the bits in order to detect changes of NaN and signed zero values
+		if (this.type == type
+			&& Float.floatToIntBits(floatValue[0]) == Float.floatToIntBits(v1)
+			&& Float.floatToIntBits(floatValue[1]) == Float.floatToIntBits(v2)
+			&& Float.floatToIntBits(floatValue[2]) == Float.floatToIntBits(v3)
+			&& Float.floatToIntBits(floatValue[3]) == Float.floatToIntBits(v4)) {
+			return;
+		}
+
+		floatValue[0] = v1;
+		floatValue[1] = v2;
+		floatValue[2] = v3;
+		floatValue[3] = v4;
+		this.type = type;
+		enableUpdateRequired();
+	}
+
+	private void setIntValue(VariableType type, int v1, int v2, int v3, int v4) {
+		if (this.type == type
+			&& intValue[0] == v1
+			&& intValue[1] == v2
+			&& intValue[2] == v3
+			&& intValue[3] == v4) {
+			return;
+		}
+
+		intValue[0] = v1;
+		intValue[1] = v2;
+		intValue[2] = v3;
+		intValue[3] = v4;
+		this.type = type;
+		enableUpdateRequired();
+	}
+
+	private FloatBuffer preparePendingMatrixValue(VariableType type) {
+		if (pendingMatrixValue == null) {
+			pendingMatrixValue = BufferUtils.createFloatBuffer(MATRIX4_SIZE);
+		}
+		pendingMatrixValue.clear();
+		pendingMatrixValue.limit(type == VariableType.Matrix3x3 ? MATRIX3_SIZE : MATRIX4_SIZE);
+		return pendingMatrixValue;
+	}
+
+	/**
+	 * Replaces the current matrix by the pending matrix if they differ,
+	 * the buffers are swapped in order to avoid a copy.
+	 *
+	 * @param type the type of the pending matrix.
+	 */
+	private void commitMatrixValue(VariableType type) {
+		if (this.type == type && matrixValue != null && isMatrixValueEqual()) {
+			return;
+		}
+
+		FloatBuffer previous = matrixValue;
+		matrixValue = pendingMatrixValue;
+		pendingMatrixValue = previous;
+		this.type = type;
+		enableUpdateRequired();
+	}
+
+	/**
+	 * Compares the current with the pending matrix, the bits are compared like the scalar values
+	 * because <code>FloatBuffer.equals</code> doesn't distinguish signed zero values.
+	 */
+	private boolean isMatrixValueEqual() {
+		int size = pendingMatrixValue.limit();
+		if (matrixValue.limit() != size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (Float.floatToIntBits(matrixValue.get(i)) != Float.floatToIntBits(pendingMatrixValue.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return "Uniform variable \"" + super.toString() +"\"";
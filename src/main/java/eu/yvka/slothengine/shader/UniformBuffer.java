@@ -0,0 +1,107 @@
+package eu.yvka.slothengine.shader;
+
+import eu.yvka.slothengine.renderer.Renderer;
+import eu.yvka.slothengine.utils.BufferUtils;
+import eu.yvka.slothengine.utils.HardwareObject;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Abstraction of a uniform buffer object which provides the data of
+ * a uniform block to all shaders which bind the block to the same binding point.
+ *
+ * The content of the buffer is written by absolute offsets and must therefore
+ * follow the layout of the block, for example the <code>std140</code> layout.
+ */
+public class UniformBuffer extends HardwareObject {
+
+	/**
+	 * The binding point of this buffer.
+	 */
+	private final int binding;
+
+	/**
+	 * The content of this buffer.
+	 */
+	private final ByteBuffer data;
+
+	/**
+	 * Creates a uniform buffer.
+	 *
+	 * @param binding the binding point to which the buffer is bound.
+	 * @param size the size of the buffer in bytes.
+	 */
+	public UniformBuffer(int binding, int size) {
+		super(UniformBuffer.class);
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of a uniform buffer must be greater than zero");
+		}
+		this.binding = binding;
+		this.data = BufferUtils.createByteBuffer(size);
+	}
+
+	/**
+	 * @return the binding point of this buffer.
+	 */
+	public int getBinding() {
+		return binding;
+	}
+
+	/**
+	 * @return the content of this buffer.
+	 */
+	public ByteBuffer getData() {
+		return data;
+	}
+
+	/**
+	 * Writes a matrix in column major order.
+	 *
+	 * @param offset the offset in bytes.
+	 * @param matrix the matrix to write.
+	 */
+	public void put(int offset, Matrix4f matrix) {
+		matrix.get(offset, data);
+		enableUpdateRequired();
+	}
+
+	/**
+	 * Writes a vector as vec4.
+	 *
+	 * @param offset the offset in bytes.
+	 * @param vector the x, y, z components.
+	 * @param w the w component.
+	 */
+	public void put(int offset, Vector3f vector, float w) {
+		data.putFloat(offset, vector.x);
+		data.putFloat(offset + 4, vector.y);
+		data.putFloat(offset + 8, vector.z);
+		data.putFloat(offset + 12, w);
+		enableUpdateRequired();
+	}
+
+	/**
+	 * Writes a float.
+	 *
+	 * @param offset the offset in bytes.
+	 * @param value the value to write.
+	 */
+	public void put(int offset, float value) {
+		data.putFloat(offset, value);
+		enableUpdateRequired();
+	}
+
+	@Override
+	public void deleteObject(Renderer renderer) {
+		renderer.deleteUniformBuffer(this);
+		resetObject();
+	}
+
+	@Override
+	public void resetObject() {
+		enableUpdateRequired();
+		setId(UNSET_ID);
+	}
+}
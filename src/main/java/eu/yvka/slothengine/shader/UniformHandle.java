@@ -0,0 +1,71 @@
+package eu.yvka.slothengine.shader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Integer handle of a uniform name.
+ *
+ * Every distinct uniform name receives a process wide unique id
+ * which is used by a <code>Shader</code> as index into its dense
+ * uniform table. A handle should be resolved once, for example in a static field,
+ * and then be used to access the uniforms of any shader without a name lookup.
+ */
+public final class UniformHandle {
+
+	private static final Map<String, UniformHandle> handles = new HashMap<>();
+
+	private final int id;
+	private final String name;
+
+	private UniformHandle(int id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Retrieves the handle of a uniform name, the handle is
+	 * created on the first request of a name.
+	 *
+	 * @param name the name of the uniform.
+	 * @return the handle of the uniform name.
+	 */
+	public static synchronized UniformHandle of(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("The name of a uniform must not be null");
+		}
+
+		UniformHandle handle = handles.get(name);
+		if (handle == null) {
+			handle = new UniformHandle(handles.size(), name);
+			handles.put(name, handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * @return the count of handles which were created so far.
+	 */
+	public static synchronized int count() {
+		return handles.size();
+	}
+
+	/**
+	 * @return the unique id of this handle.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the uniform name of this handle.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "UniformHandle[" + id + ", " + name + "]";
+	}
+}
@@ -2,23 +2,56 @@ package eu.yvka.slothengine.shader.source;
 
 import eu.yvka.slothengine.renderer.Renderer;
 import eu.yvka.slothengine.renderer.RendererExpception;
+import eu.yvka.slothengine.shader.ShaderPreprocessor;
 import eu.yvka.slothengine.shader.ShaderType;
 import eu.yvka.slothengine.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class FileShaderSource extends ShaderSource {
 
+	private static final Logger Log = LoggerFactory.getLogger(FileShaderSource.class);
+
 	private File file;
 	private long lastModified;
 	private String currentSource;
 
+	/**
+	 * Marks that the file must be read again before the source is compiled.
+	 */
+	private boolean fileModified;
+
+	private final ShaderPreprocessor preprocessor;
+	private final Map<String, String> defines;
+	private final List<Path> includedFiles = new ArrayList<>();
+	private String preprocessedSource;
+	private String preprocessError;
+
 	public FileShaderSource(ShaderType type, String path) {
 		this(type, new File(path));
 	}
 
 	public FileShaderSource(ShaderType type, File file) {
+		this(type, file, null, Collections.emptyMap());
+	}
+
+	/**
+	 * Creates a file source which is preprocessed before it is compiled.
+	 *
+	 * @param type the type of the shader.
+	 * @param file the file of the source.
+	 * @param preprocessor the preprocessor which resolves the includes or null.
+	 * @param defines the defines of the shader variant.
+	 */
+	public FileShaderSource(ShaderType type, File file, ShaderPreprocessor preprocessor, Map<String, String> defines) {
 		super(type);
 
 		if (! file.exists()) {
@@ -31,18 +64,70 @@ public class FileShaderSource extends ShaderSource {
 		this.file = file;
 		this.lastModified = 0L;
 		this.currentSource = "";
+		this.fileModified = true;
+		this.preprocessor = preprocessor;
+		this.defines = ShaderPreprocessor.copyDefines(defines);
+	}
+
+	/**
+	 * Notifies this source that its file was modified on the disk, which is
+	 * reported by the <code>ShaderFileWatcher</code> of the <code>ShaderManager</code>.
+	 * The file is read again when the shader is compiled the next time.
+	 */
+	public void onFileModified() {
+		fileModified = true;
+		preprocessedSource = null;
+		enableUpdateRequired();
+	}
+
+	/**
+	 * Determines if this source includes the specified file.
+	 *
+	 * @param file the absolute path of a file.
+	 * @return true if the file was included by the last preprocessing of this source.
+	 */
+	public boolean dependsOn(Path file) {
+		return includedFiles.contains(file);
+	}
+
+	/**
+	 * @return the defines of the shader variant which uses this source.
+	 */
+	public Map<String, String> getDefines() {
+		return defines;
+	}
+
+	@Override
+	public String getPreprocessedSource() {
+		String source = getSource();
+		if (preprocessor == null) return source;
+
+		if (preprocessedSource == null) {
+			includedFiles.clear();
+			preprocessError = null;
+			try {
+				Path path = file.toPath().toAbsolutePath().normalize();
+				preprocessedSource = preprocessor.process(path, source, defines, includedFiles);
+			} catch (IOException e) {
+				// the unresolved source fails to compile, the renderer reports the error with the shader
+				Log.error("Failed to preprocess the shader source {}", getName(), e);
+				preprocessError = e.getMessage();
+				preprocessedSource = source;
+			}
+		}
+		return preprocessedSource;
 	}
 
 	@Override
-	public boolean isUpdateRequired() {
-		return super.isUpdateRequired() || lastModified < file.lastModified();
+	public String getPreprocessError() {
+		return preprocessError;
 	}
 
 	@Override
 	public String getSource() {
-		long fileTimestamp = file.lastModified();
-		if (lastModified < fileTimestamp) {
-			lastModified = fileTimestamp;
+		if (fileModified) {
+			fileModified = false;
+			lastModified = file.lastModified();
 
 			try {
 				this.currentSource = IOUtils.toString(file);
@@ -61,6 +146,8 @@ public class FileShaderSource extends ShaderSource {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		fileModified = true;
+		preprocessedSource = null;
 		enableUpdateRequired();
 	}
 
@@ -81,6 +168,7 @@ public class FileShaderSource extends ShaderSource {
 
 	@Override
 	public void resetObject() {
+		resetAttachments();
 		enableUpdateRequired();
 	}
 
@@ -90,6 +178,8 @@ public class FileShaderSource extends ShaderSource {
 
 	public void setFile(File file) {
 		this.file = file;
+		fileModified = true;
+		preprocessedSource = null;
 		enableUpdateRequired();
 	}
 }
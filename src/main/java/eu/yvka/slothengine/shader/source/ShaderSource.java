@@ -8,6 +8,17 @@ public abstract class ShaderSource extends HardwareObject {
 
 	private ShaderType type;
 
+	/**
+	 * Count of the programs to which the compiled shader object is attached.
+	 */
+	private int attachCount;
+
+	/**
+	 * Incremented on every compilation, programs which were linked
+	 * against an older revision must be linked again.
+	 */
+	private int revision;
+
 	protected ShaderSource(ShaderType type) {
 		super(ShaderSource.class);
 		this.type = type;
@@ -21,6 +32,25 @@ public abstract class ShaderSource extends HardwareObject {
      */
 	public abstract String getSource();
 
+	/**
+	 * Retrieves the source which is passed to the driver, which could differ
+	 * from <code>getSource</code> if the source is preprocessed.
+	 *
+	 * @return the source which is compiled.
+	 */
+	public String getPreprocessedSource() {
+		return getSource();
+	}
+
+	/**
+	 * Retrieves the error of the last preprocessing, such as a missing include.
+	 *
+	 * @return the error message or null if the source was preprocessed successfully.
+	 */
+	public String getPreprocessError() {
+		return null;
+	}
+
 	/**
 	 * Update the underlying shader source.
 	 *
@@ -52,6 +82,57 @@ public abstract class ShaderSource extends HardwareObject {
      */
 	public abstract String getName();
 
+	/**
+	 * Marks that the compiled shader object was attached to a further program,
+	 * must only be called by the renderer.
+	 *
+	 * @return the count of programs to which the shader object is attached.
+	 */
+	public int attach() {
+		return ++attachCount;
+	}
+
+	/**
+	 * Marks that the compiled shader object was detached from a program,
+	 * must only be called by the renderer.
+	 *
+	 * @return the count of programs to which the shader object is still attached.
+	 */
+	public int detach() {
+		if (attachCount == 0) {
+			throw new IllegalStateException("The shader source " + getName() + " is not attached to any program");
+		}
+		return --attachCount;
+	}
+
+	/**
+	 * @return the count of programs to which the compiled shader object is attached.
+	 */
+	public int getAttachCount() {
+		return attachCount;
+	}
+
+	/**
+	 * Marks that the source was compiled, must only be called by the renderer.
+	 */
+	public void onCompiled() {
+		revision++;
+	}
+
+	/**
+	 * @return the revision of the compiled shader object.
+	 */
+	public int getRevision() {
+		return revision;
+	}
+
+	/**
+	 * Resets the attachments after the programs were lost with the context.
+	 */
+	protected void resetAttachments() {
+		attachCount = 0;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("Shader[type: %s, name: %s]", type.toString(), getName());
@@ -49,6 +49,7 @@ public class StringShaderSource extends ShaderSource {
 
 	@Override
 	public void resetObject() {
+		resetAttachments();
 		enableUpdateRequired();
 	}
 
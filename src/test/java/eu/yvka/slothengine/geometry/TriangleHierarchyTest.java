@@ -0,0 +1,192 @@
+package eu.yvka.slothengine.geometry;
+
+import eu.yvka.slothengine.math.Ray;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.PickResult;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TriangleHierarchyTest {
+
+	private static final int GRID = 32;
+	private static final float EPSILON = 1e-4f;
+
+	private final Random random = new Random(7);
+
+	@Test
+	public void intersectMatchesBruteForce() {
+		Mesh mesh = createTerrain();
+		TriangleHierarchy hierarchy = mesh.requestTriangleHierarchy().join();
+		assertEquals(GRID * GRID * 2, hierarchy.getTriangleCount());
+
+		TriangleHit hit = new TriangleHit();
+		Ray ray = new Ray();
+		for (int i = 0; i < 500; i++) {
+			ray.set(
+				random.nextFloat() * GRID, random.nextFloat() * GRID, 10.0f,
+				random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1.0f);
+
+			float expected = bruteForce(hierarchy, ray);
+			boolean isHit = hierarchy.intersect(ray, Float.POSITIVE_INFINITY, hit);
+			assertEquals(expected != Float.POSITIVE_INFINITY, isHit);
+			if (!isHit) continue;
+
+			assertEquals(expected, hit.getDistance(), EPSILON);
+			Vector3f point = interpolate(hierarchy, hit);
+			Vector3f rayPoint = ray.getPoint(hit.getDistance(), new Vector3f());
+			assertEquals(0.0f, point.distance(rayPoint), 1e-3f);
+		}
+	}
+
+	@Test
+	public void intersectRespectsMaxDistance() {
+		TriangleHierarchy hierarchy = createTerrain().requestTriangleHierarchy().join();
+		Ray ray = new Ray().set(new Vector3f(GRID / 2.0f, GRID / 2.0f, 10.0f), new Vector3f(0.0f, 0.0f, -1.0f));
+		TriangleHit hit = new TriangleHit();
+		assertFalse(hierarchy.intersect(ray, 5.0f, hit));
+		assertFalse(hit.isHit());
+		assertTrue(hierarchy.intersect(ray, 20.0f, hit));
+	}
+
+	@Test
+	public void hierarchyIsCachedUntilTheMeshChanges() {
+		Mesh mesh = createQuad();
+		TriangleHierarchy hierarchy = mesh.requestTriangleHierarchy().join();
+		assertSame(hierarchy, mesh.requestTriangleHierarchy().join());
+
+		mesh.setMode(Mesh.Mode.TRIANGLE_STRIP);
+		mesh.setBuffer(VertexBuffer.Type.Index, 1, new short[] {0, 1, 3, 2});
+		TriangleHierarchy strip = mesh.requestTriangleHierarchy().join();
+		assertNotSame(hierarchy, strip);
+		assertEquals(2, strip.getTriangleCount());
+	}
+
+	@Test
+	public void geometryPicksInModelSpace() {
+		Mesh quad = createQuad();
+		Geometry geometry = new Geometry("Quad", quad, null);
+		geometry.setScale(2.0f);
+		geometry.setPosition(10.0f, 0.0f, -5.0f);
+		geometry.updateTransform();
+		geometry.updateWorldBound();
+		// the pick doesn't wait for the hierarchy
+		quad.requestTriangleHierarchy().join();
+
+		Ray ray = new Ray().set(new Vector3f(10.5f, 1.5f, 5.0f), new Vector3f(0.0f, 0.0f, -1.0f));
+		PickResult result = new PickResult();
+		assertTrue(geometry.pick(ray, Float.POSITIVE_INFINITY, result));
+		assertSame(geometry, result.getGeometry());
+		assertEquals(10.0f, result.getDistance(), EPSILON);
+		assertEquals(0.0f, result.getPoint().distance(new Vector3f(10.5f, 1.5f, -5.0f)), EPSILON);
+
+		TriangleHit hit = result.getTriangleHit();
+		assertEquals(1, hit.getTriangle());
+		Vector3f point = interpolate(quad.requestTriangleHierarchy().join(), hit);
+		assertEquals(0.0f, point.distance(new Vector3f(0.25f, 0.75f, 0.0f)), EPSILON);
+
+		assertFalse(geometry.pick(ray, 9.0f, result.clear()));
+		assertTrue("The max distance is mapped into the scaled model space", geometry.pick(ray, 10.5f, result.clear()));
+		assertEquals(1, result.getTriangleHit().getTriangle());
+		ray.set(new Vector3f(12.5f, 0.0f, 5.0f), new Vector3f(0.0f, 0.0f, -1.0f));
+		assertFalse(geometry.pick(ray, Float.POSITIVE_INFINITY, result));
+	}
+
+	/**
+	 * A unit quad in the xy plane which is split along its diagonal into two indexed triangles.
+	 */
+	private static Mesh createQuad() {
+		Mesh mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {
+			0.0f, 0.0f, 0.0f,
+			1.0f, 0.0f, 0.0f,
+			1.0f, 1.0f, 0.0f,
+			0.0f, 1.0f, 0.0f
+		});
+		mesh.setBuffer(VertexBuffer.Type.Index, 1, new short[] {0, 1, 2, 0, 2, 3});
+		return mesh;
+	}
+
+	/**
+	 * A grid of quads with random heights, which is stored in an interleaved buffer
+	 * together with a texture coordinate per vertex.
+	 */
+	private Mesh createTerrain() {
+		int side = GRID + 1;
+		float[] vertices = new float[side * side * 5];
+		for (int y = 0, v = 0; y < side; y++) {
+			for (int x = 0; x < side; x++) {
+				vertices[v++] = x;
+				vertices[v++] = y;
+				vertices[v++] = random.nextFloat() * 2.0f;
+				vertices[v++] = x / (float) GRID;
+				vertices[v++] = y / (float) GRID;
+			}
+		}
+
+		int[] indices = new int[GRID * GRID * 6];
+		for (int y = 0, i = 0; y < GRID; y++) {
+			for (int x = 0; x < GRID; x++) {
+				int corner = y * side + x;
+				indices[i++] = corner;
+				indices[i++] = corner + 1;
+				indices[i++] = corner + side + 1;
+				indices[i++] = corner;
+				indices[i++] = corner + side + 1;
+				indices[i++] = corner + side;
+			}
+		}
+
+		Mesh mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Interleaved, 5, vertices);
+		mesh.setPointer(VertexBuffer.Type.Vertex, 3, 5 * Float.BYTES, 0, VertexAttributePointer.Format.Float);
+		mesh.setPointer(VertexBuffer.Type.TextCoords, 2, 5 * Float.BYTES, 3 * Float.BYTES, VertexAttributePointer.Format.Float);
+		mesh.setBuffer(VertexBuffer.Type.Index, 1, indices);
+		return mesh;
+	}
+
+	private static Vector3f interpolate(TriangleHierarchy hierarchy, TriangleHit hit) {
+		Vector3f p0 = hierarchy.getCorner(hit.getTriangle(), 0, new Vector3f()).mul(hit.getW());
+		Vector3f p1 = hierarchy.getCorner(hit.getTriangle(), 1, new Vector3f()).mul(hit.getU());
+		Vector3f p2 = hierarchy.getCorner(hit.getTriangle(), 2, new Vector3f()).mul(hit.getV());
+		return p0.add(p1).add(p2);
+	}
+
+	private static float bruteForce(TriangleHierarchy hierarchy, Ray ray) {
+		Vector3f p0 = new Vector3f();
+		Vector3f e1 = new Vector3f();
+		Vector3f e2 = new Vector3f();
+		Vector3f p = new Vector3f();
+		Vector3f s = new Vector3f();
+		Vector3f q = new Vector3f();
+		float nearest = Float.POSITIVE_INFINITY;
+		for (int t = 0; t < hierarchy.getTriangleCount(); t++) {
+			hierarchy.getCorner(t, 0, p0);
+			hierarchy.getCorner(t, 1, e1).sub(p0);
+			hierarchy.getCorner(t, 2, e2).sub(p0);
+			ray.getDirection().cross(e2, p);
+			float determinant = e1.dot(p);
+			if (Math.abs(determinant) < 1e-8f) continue;
+
+			float inverse = 1.0f / determinant;
+			ray.getOrigin().sub(p0, s);
+			float u = s.dot(p) * inverse;
+			if (u < 0.0f || u > 1.0f) continue;
+			s.cross(e1, q);
+			float v = ray.getDirection().dot(q) * inverse;
+			if (v < 0.0f || u + v > 1.0f) continue;
+			float distance = e2.dot(q) * inverse;
+			if (distance >= 0.0f && distance < nearest) {
+				nearest = distance;
+			}
+		}
+		return nearest;
+	}
+}
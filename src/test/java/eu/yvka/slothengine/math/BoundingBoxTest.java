@@ -0,0 +1,62 @@
+package eu.yvka.slothengine.math;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BoundingBoxTest {
+
+	private static final float EPSILON = 1e-5f;
+
+	private final float[] scratch = new float[16];
+
+	@Test
+	public void transformMatchesTheTransformedCorners() {
+		BoundingBox box = new BoundingBox(new Vector3f(-1, -2, -3), new Vector3f(2, 1, 0.5f));
+		Matrix4f matrix = new Matrix4f()
+			.translate(4, -1, 2)
+			.rotateXYZ(0.3f, -1.1f, 0.7f)
+			.scale(2.0f, 0.5f, 3.0f);
+
+		BoundingBox expected = new BoundingBox();
+		Vector3f corner = new Vector3f();
+		for (int i = 0; i < 8; i++) {
+			corner.set(
+				(i & 1) == 0 ? box.getMin().x : box.getMax().x,
+				(i & 2) == 0 ? box.getMin().y : box.getMax().y,
+				(i & 4) == 0 ? box.getMin().z : box.getMax().z);
+			matrix.transformPosition(corner);
+			expected.merge(corner.x, corner.y, corner.z);
+		}
+
+		BoundingBox result = box.transform(matrix, scratch, new BoundingBox());
+		assertVector(expected.getMin(), result.getMin());
+		assertVector(expected.getMax(), result.getMax());
+	}
+
+	@Test
+	public void transformIntoItself() {
+		BoundingBox box = new BoundingBox(new Vector3f(-1, -1, -1), new Vector3f(1, 1, 1));
+		box.transform(new Matrix4f().translate(1, 2, 3).scale(2), scratch, box);
+
+		assertVector(new Vector3f(-1, 0, 1), box.getMin());
+		assertVector(new Vector3f(3, 4, 5), box.getMax());
+	}
+
+	@Test
+	public void emptyAndInfiniteBoxesStayEmptyAndInfinite() {
+		Matrix4f matrix = new Matrix4f().translate(1, 2, 3);
+
+		assertTrue(new BoundingBox().transform(matrix, scratch, new BoundingBox()).isEmpty());
+		assertTrue(new BoundingBox().setInfinite().transform(matrix, scratch, new BoundingBox()).isInfinite());
+	}
+
+	private static void assertVector(Vector3f expected, Vector3f actual) {
+		assertEquals(expected.x, actual.x, EPSILON);
+		assertEquals(expected.y, actual.y, EPSILON);
+		assertEquals(expected.z, actual.z, EPSILON);
+	}
+}
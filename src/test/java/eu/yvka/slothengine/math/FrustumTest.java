@@ -0,0 +1,50 @@
+package eu.yvka.slothengine.math;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrustumTest {
+
+	private Frustum frustum;
+
+	@Before
+	public void setUp() {
+		// camera at (0, 0, 10) which looks along -z, the frustum reaches from z = 9 to z = -90
+		Matrix4f projection = new Matrix4f().setPerspective((float) Math.toRadians(90.0), 1.0f, 1.0f, 100.0f);
+		Matrix4f view = new Matrix4f().lookAt(0, 0, 10, 0, 0, 0, 0, 1, 0);
+		frustum = new Frustum();
+		frustum.update(projection, view);
+	}
+
+	@Test
+	public void boxesAreClassifiedAgainstAllPlanes() {
+		assertEquals(Frustum.Intersection.INSIDE, frustum.intersects(box(-1, -1, -1, 1, 1, 1)));
+		assertEquals("Crosses the left plane", Frustum.Intersection.INTERSECT, frustum.intersects(box(-12, -1, -1, -8, 1, 1)));
+		assertEquals("Left of the frustum", Frustum.Intersection.OUTSIDE, frustum.intersects(box(-30, -1, -1, -20, 1, 1)));
+		assertEquals("Above the frustum", Frustum.Intersection.OUTSIDE, frustum.intersects(box(-1, 20, -1, 1, 30, 1)));
+		assertEquals("Behind the camera", Frustum.Intersection.OUTSIDE, frustum.intersects(box(-1, -1, 11, 1, 1, 12)));
+		assertEquals("Crosses the near plane", Frustum.Intersection.INTERSECT, frustum.intersects(box(-0.1f, -0.1f, 8.5f, 0.1f, 0.1f, 9.5f)));
+		assertEquals("Beyond the far plane", Frustum.Intersection.OUTSIDE, frustum.intersects(box(-1, -1, -95, 1, 1, -91)));
+	}
+
+	@Test
+	public void emptyAndInfiniteBoxes() {
+		assertEquals(Frustum.Intersection.OUTSIDE, frustum.intersects(new BoundingBox()));
+		assertEquals(Frustum.Intersection.INTERSECT, frustum.intersects(new BoundingBox().setInfinite()));
+	}
+
+	@Test
+	public void spheresAreClassifiedAgainstAllPlanes() {
+		assertEquals(Frustum.Intersection.INSIDE, frustum.intersects(new BoundingSphere().set(new Vector3f(0, 0, 0), 1.0f)));
+		assertEquals(Frustum.Intersection.INTERSECT, frustum.intersects(new BoundingSphere().set(new Vector3f(10, 0, 0), 1.0f)));
+		assertEquals(Frustum.Intersection.OUTSIDE, frustum.intersects(new BoundingSphere().set(new Vector3f(0, -30, 0), 1.0f)));
+	}
+
+	private static BoundingBox box(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return new BoundingBox(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ));
+	}
+}
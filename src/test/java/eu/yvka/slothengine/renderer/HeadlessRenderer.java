@@ -0,0 +1,311 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexArray;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.math.Color;
+import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.ShaderVariable;
+import eu.yvka.slothengine.shader.Uniform;
+import eu.yvka.slothengine.shader.UniformBuffer;
+import eu.yvka.slothengine.shader.UniformHandle;
+import eu.yvka.slothengine.shader.source.ShaderSource;
+import eu.yvka.slothengine.texture.Texture;
+import eu.yvka.slothengine.texture.image.Image;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+
+import java.nio.Buffer;
+import java.util.List;
+
+/**
+ * Renderer without a graphics context which accepts every call
+ * and only counts the draw calls, allows to run the render loop in tests.
+ * Replayed commands could optionally be traced as text.
+ */
+public class HeadlessRenderer implements Renderer {
+
+	private final RenderStatistics statistics = new RenderStatistics();
+	private final Matrix4f matrix4 = new Matrix4f();
+	private final Matrix3f matrix3 = new Matrix3f();
+	private int drawCalls;
+	private int instancedDrawCalls;
+	private boolean instancingSupported;
+	private boolean uniformBufferSupported;
+	private StringBuilder trace;
+
+	/**
+	 * Specifies if this renderer reports support for instanced draw calls,
+	 * the shaders then provide the <code>sl_instanced</code> uniform.
+	 *
+	 * @param supported true if instancing should be supported.
+	 */
+	public void setInstancingSupported(boolean supported) {
+		instancingSupported = supported;
+	}
+
+	/**
+	 * Specifies if this renderer reports support for uniform buffers,
+	 * the shaders then read the per frame uniforms from the frame uniform block.
+	 *
+	 * @param supported true if uniform buffers should be supported.
+	 */
+	public void setUniformBufferSupported(boolean supported) {
+		uniformBufferSupported = supported;
+	}
+
+	/**
+	 * Enables the tracing of the replayed commands.
+	 *
+	 * @param enabled true if the commands should be traced.
+	 */
+	public void setTraceEnabled(boolean enabled) {
+		trace = enabled ? new StringBuilder() : null;
+	}
+
+	/**
+	 * @return the trace of the replayed commands since the last call of <code>setTraceEnabled</code>.
+	 */
+	public String getTrace() {
+		return trace != null ? trace.toString() : "";
+	}
+
+	/**
+	 * @return the count of draw calls since the creation of this renderer.
+	 */
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	/**
+	 * @return the count of instanced draw calls since the creation of this renderer.
+	 */
+	public int getInstancedDrawCalls() {
+		return instancedDrawCalls;
+	}
+
+	@Override
+	public void applyRenderState(RenderState state) {
+	}
+
+	@Override
+	public void invalidateState() {
+	}
+
+	@Override
+	public void setClearColor(Color clearColor) {
+	}
+
+	@Override
+	public void clearBuffers(boolean color, boolean depth, boolean stencil) {
+	}
+
+	@Override
+	public void setViewport(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void setDepthRange(float near, float far) {
+	}
+
+	@Override
+	public void setClipRect(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void clearClipRect() {
+	}
+
+	@Override
+	public void setShader(Shader shader) {
+		if (shader.isUpdateRequired() || !shader.isUniformsResolved()) {
+			if (instancingSupported) {
+				shader.getUniform(RendererManager.INSTANCED_UNIFORM);
+			}
+			shader.setFrameBlockUsed(uniformBufferSupported);
+		}
+
+		List<Uniform> uniforms = shader.getUniforms();
+		if (shader.isUpdateRequired() || !shader.isUniformsResolved()) {
+			// every uniform which is known at link time counts as active
+			for (int i = 0; i < uniforms.size(); i++) {
+				uniforms.get(i).setLocation(i);
+			}
+			shader.setUniformsResolved(true);
+			shader.setValid(true);
+			shader.disableUpdateRequired();
+		}
+
+		for (int i = 0; i < uniforms.size(); i++) {
+			uniforms.get(i).disableUpdateRequired();
+		}
+	}
+
+	@Override
+	public void deleteShader(Shader shader) {
+	}
+
+	@Override
+	public void deleteShaderSource(ShaderSource source) {
+	}
+
+	@Override
+	public void setTexture(int unit, Texture texture) {
+	}
+
+	@Override
+	public void deleteTexture(Texture texture) {
+	}
+
+	@Override
+	public void deleteImage(Image image) {
+	}
+
+	@Override
+	public void drawMesh(Mesh mesh) {
+		drawCalls++;
+	}
+
+	@Override
+	public void drawMeshInstanced(Mesh mesh, VertexBuffer instanceBuffer, int instanceCount) {
+		drawCalls++;
+		instancedDrawCalls++;
+	}
+
+	@Override
+	public boolean isInstancingSupported() {
+		return instancingSupported;
+	}
+
+	@Override
+	public void executeCommands(RenderCommandBuffer commands) {
+		Shader shader = null;
+		commands.rewind();
+		while (commands.hasRemaining()) {
+			int opcode = commands.readInt();
+			switch (opcode) {
+				case RenderCommandBuffer.SET_SHADER:
+					shader = commands.readObject();
+					commands.readObject();
+					trace("shader ", shader);
+					break;
+				case RenderCommandBuffer.SET_UNIFORM:
+					executeUniformCommand(commands, shader);
+					break;
+				case RenderCommandBuffer.USE_SHADER:
+					setShader(shader);
+					break;
+				case RenderCommandBuffer.SET_TEXTURE:
+					commands.readInt();
+					trace("texture ", commands.readObject());
+					break;
+				case RenderCommandBuffer.SET_RENDER_STATE:
+					trace("state ", commands.readObject());
+					break;
+				case RenderCommandBuffer.DRAW_MESH:
+					Mesh mesh = commands.readObject();
+					trace("draw ", mesh);
+					drawMesh(mesh);
+					break;
+				case RenderCommandBuffer.DRAW_INSTANCED:
+					Mesh instancedMesh = commands.readObject();
+					int instanceCount = commands.readInt();
+					for (int i = 0; i < instanceCount; i++) {
+						commands.readMatrix(matrix4);
+					}
+					trace("draw instanced ", instancedMesh);
+					drawMeshInstanced(instancedMesh, null, instanceCount);
+					break;
+				case RenderCommandBuffer.CALL_HOOK:
+					RenderCommandBuffer.Hook hook = commands.readObject();
+					hook.run(commands.readInt());
+					break;
+				default:
+					throw new IllegalStateException("Unknown render command " + opcode);
+			}
+		}
+	}
+
+	private void executeUniformCommand(RenderCommandBuffer commands, Shader shader) {
+		UniformHandle handle = commands.readObject();
+		ShaderVariable.VariableType type = commands.readVariableType();
+		Uniform uniform = shader.getUniform(handle);
+		switch (type) {
+			case Matrix3x3:
+				uniform.setValue(commands.readMatrix(matrix3));
+				break;
+			case Matrix4x4:
+				uniform.setValue(commands.readMatrix(matrix4));
+				break;
+			default:
+				if (type.ordinal() <= ShaderVariable.VariableType.Float4.ordinal()) {
+					uniform.setValue(commands.readFloat(), commands.readFloat(), commands.readFloat(), commands.readFloat());
+				} else {
+					uniform.setValue(commands.readInt(), commands.readInt(), commands.readInt(), commands.readInt());
+				}
+				break;
+		}
+		if (trace != null) {
+			trace.append("uniform ").append(handle.getName()).append(' ').append(uniform.getType());
+			if (type == ShaderVariable.VariableType.Matrix4x4) {
+				trace.append(' ').append(matrix4);
+			}
+			trace.append('\n');
+		}
+	}
+
+	private void trace(String command, Object argument) {
+		if (trace != null) {
+			trace.append(command).append(System.identityHashCode(argument)).append('\n');
+		}
+	}
+
+	@Override
+	public void updateBuffer(VertexBuffer buffer) {
+	}
+
+	@Override
+	public Buffer mapBuffer(VertexBuffer buffer) {
+		buffer.enableUpdateRequired();
+		return buffer.getBuffer().clear();
+	}
+
+	@Override
+	public void deleteBuffer(VertexBuffer buffer) {
+	}
+
+	@Override
+	public void setUniformBuffer(UniformBuffer buffer) {
+	}
+
+	@Override
+	public void deleteUniformBuffer(UniformBuffer buffer) {
+	}
+
+	@Override
+	public boolean isUniformBufferSupported() {
+		return uniformBufferSupported;
+	}
+
+	@Override
+	public void deleteVertexArray(VertexArray vertexArray) {
+	}
+
+	@Override
+	public void cleanUp() {
+	}
+
+	@Override
+	public void resetGLObjects() {
+	}
+
+	@Override
+	public void onNewFrame() {
+		statistics.reset();
+	}
+
+	@Override
+	public RenderStatistics getStatistics() {
+		return statistics;
+	}
+}
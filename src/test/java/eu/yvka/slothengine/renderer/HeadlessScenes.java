@@ -0,0 +1,75 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.Node;
+import eu.yvka.slothengine.scene.Scene;
+import eu.yvka.slothengine.scene.camera.Camera;
+import eu.yvka.slothengine.shader.Shader;
+
+/**
+ * Scenes which could be rendered by the <code>HeadlessRenderer</code>,
+ * they don't require any engine component.
+ */
+final class HeadlessScenes {
+
+	private HeadlessScenes() {
+	}
+
+	/**
+	 * Creates a camera which looks from (0, 0, 10) to the origin.
+	 *
+	 * @return the camera.
+	 */
+	static Camera createCamera() {
+		return new Camera() {
+			{
+				projectionMatrix.setPerspective((float) Math.toRadians(60.0), 1.0f, 0.1f, 100.0f);
+				position.set(0.0f, 0.0f, 10.0f);
+				direction.set(0.0f, 0.0f, -1.0f);
+				viewMatrix.setLookAt(0.0f, 0.0f, 10.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+			}
+
+			@Override
+			public void update(float time) {
+			}
+		};
+	}
+
+	/**
+	 * Creates a scene with a grid of triangles in front of the camera
+	 * which alternate between two materials.
+	 *
+	 * @param count the count of triangles.
+	 * @return the scene.
+	 */
+	static Scene createTriangleGrid(int count) {
+		Scene scene = new Scene();
+		scene.setCamera(createCamera());
+
+		Mesh triangle = new Mesh();
+		triangle.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {
+			-0.05f, -0.05f, 0.0f,
+			0.05f, -0.05f, 0.0f,
+			0.0f, 0.05f, 0.0f
+		});
+
+		Material opaque = new BasicMaterial(new Shader("Opaque"), null);
+		Material textured = new BasicMaterial(new Shader("Textured"), null);
+		textured.setParameter("sl_textureScale", 2.0f, 2.0f);
+
+		int columns = (int) Math.ceil(Math.sqrt(count));
+		float spacing = 8.0f / columns;
+		Node group = new Node("group");
+		scene.add(group);
+		for (int i = 0; i < count; i++) {
+			Geometry geometry = new Geometry("geometry" + i, triangle, i % 2 == 0 ? opaque : textured);
+			geometry.setPosition((i % columns) * spacing - 4.0f, (i / columns) * spacing - 4.0f, -(i % 7));
+			group.addChild(geometry);
+		}
+		return scene;
+	}
+}
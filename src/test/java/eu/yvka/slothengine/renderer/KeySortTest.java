@@ -0,0 +1,71 @@
+package eu.yvka.slothengine.renderer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class KeySortTest {
+
+	private static final int COUNT = 2000;
+
+	@Test
+	public void sortMatchesArraysSort() {
+		Random random = new Random(5);
+		long[] keys = new long[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			// few distinct keys in order to exercise equal keys as well
+			keys[i] = random.nextInt(64) * 0x1000000000L + random.nextInt(4);
+		}
+		assertSorted(keys, false);
+	}
+
+	@Test
+	public void sortAdaptiveOfNearlySortedKeys() {
+		long[] keys = new long[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			keys[i] = i;
+		}
+		Random random = new Random(7);
+		for (int i = 0; i < 10; i++) {
+			int a = random.nextInt(COUNT);
+			int b = random.nextInt(COUNT);
+			long tmp = keys[a];
+			keys[a] = keys[b];
+			keys[b] = tmp;
+		}
+		assertSorted(keys, true);
+	}
+
+	@Test
+	public void sortAdaptiveOfRandomKeys() {
+		Random random = new Random(9);
+		long[] keys = new long[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			keys[i] = random.nextLong();
+		}
+		assertSorted(keys, true);
+	}
+
+	private static void assertSorted(long[] keys, boolean adaptive) {
+		int[] indices = new int[keys.length];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+		if (adaptive) {
+			KeySort.sortAdaptive(indices, keys, 0, keys.length - 1);
+		} else {
+			KeySort.sort(indices, keys, 0, keys.length - 1);
+		}
+
+		long[] actual = new long[keys.length];
+		for (int i = 0; i < indices.length; i++) {
+			actual[i] = keys[indices[i]];
+		}
+		long[] expected = keys.clone();
+		Arrays.sort(expected);
+		assertArrayEquals(expected, actual);
+	}
+}
@@ -0,0 +1,90 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.renderer.occlusion.OcclusionCuller;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.Scene;
+import eu.yvka.slothengine.shader.Shader;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OcclusionCullingTest {
+
+	private static final int COUNT = 64;
+
+	private RendererManager rendererManager;
+	private HeadlessRenderer renderer;
+	private Geometry wall;
+
+	@Before
+	public void setUp() {
+		Scene scene = HeadlessScenes.createTriangleGrid(COUNT);
+
+		Mesh quad = new Mesh();
+		quad.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {
+			-1.0f, -1.0f, 0.0f,
+			1.0f, -1.0f, 0.0f,
+			1.0f, 1.0f, 0.0f,
+			-1.0f, 1.0f, 0.0f
+		});
+		quad.setBuffer(VertexBuffer.Type.Index, 1, new short[] {0, 1, 2, 0, 2, 3});
+		quad.requestTriangleHierarchy().join();
+
+		// covers the whole view of the camera at (0, 0, 10) with a field of view of 60 degrees
+		wall = new Geometry("wall", quad, new BasicMaterial(new Shader("Wall"), null));
+		wall.setScale(4.0f);
+		wall.setPosition(0.0f, 0.0f, 5.0f);
+		wall.setOccluder(true);
+		scene.add(wall);
+
+		renderer = new HeadlessRenderer();
+		rendererManager = new RendererManager();
+		rendererManager.setRenderer(renderer);
+		rendererManager.setScene(scene);
+		rendererManager.setOcclusionCuller(new OcclusionCuller());
+	}
+
+	@Test
+	public void geometriesBehindTheOccluderAreCulled() {
+		renderFrame();
+
+		RenderStatistics statistics = renderer.getStatistics();
+		assertEquals(COUNT + 1, statistics.getVisibleGeometries());
+		assertEquals(COUNT, statistics.getOccludedGeometries());
+		assertEquals(2, statistics.getOccluderTriangles());
+		assertTrue(statistics.getOcclusionTime() > 0);
+		assertEquals("Only the wall is rendered", 1, rendererManager.getRenderQueue().size());
+	}
+
+	@Test
+	public void geometriesBesideTheOccluderAreRendered() {
+		wall.setScale(1.0f);
+		wall.setPosition(-2.0f, -2.0f, 0.5f);
+		renderFrame();
+
+		RenderStatistics statistics = renderer.getStatistics();
+		int occluded = statistics.getOccludedGeometries();
+		assertTrue("The small wall hides some geometries", occluded > 0);
+		assertTrue("The small wall doesn't hide all geometries", occluded < COUNT);
+		assertEquals(COUNT + 1 - occluded, rendererManager.getRenderQueue().size());
+	}
+
+	@Test
+	public void disabledCullingRendersEverything() {
+		rendererManager.setOcclusionCuller(null);
+		renderFrame();
+
+		assertEquals(0, renderer.getStatistics().getOccludedGeometries());
+		assertEquals(COUNT + 1, rendererManager.getRenderQueue().size());
+	}
+
+	private void renderFrame() {
+		rendererManager.onFrameStart();
+		rendererManager.render(0.016f);
+	}
+}
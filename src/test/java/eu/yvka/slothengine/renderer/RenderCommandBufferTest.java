@@ -0,0 +1,232 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Pass;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.Scene;
+import eu.yvka.slothengine.shader.Shader;
+import eu.yvka.slothengine.shader.ShaderVariable;
+import eu.yvka.slothengine.shader.UniformHandle;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RenderCommandBufferTest {
+
+	@Test
+	public void recordedCommandsAreReadBack() {
+		Shader shader = new Shader("Recorded");
+		Mesh mesh = new Mesh();
+		RenderState state = new RenderState();
+		UniformHandle scale = UniformHandle.of("sl_scale");
+		UniformHandle position = UniformHandle.of("sl_position");
+		UniformHandle count = UniformHandle.of("sl_count");
+		UniformHandle model = UniformHandle.of("sl_modelMatrix");
+		Matrix4f modelMatrix = new Matrix4f().translation(1.0f, 2.0f, 3.0f);
+
+		RenderCommandBuffer commands = new RenderCommandBuffer();
+		commands.setShader(shader, null);
+		commands.setUniform(scale, 0.5f);
+		commands.setUniform(position, new Vector3f(1.0f, 2.0f, 3.0f));
+		commands.setUniform(count, 7);
+		commands.setUniform(model, modelMatrix);
+		commands.useShader();
+		commands.setRenderState(state);
+		commands.drawMesh(mesh);
+
+		commands.rewind();
+		assertEquals(RenderCommandBuffer.SET_SHADER, commands.readInt());
+		assertSame(shader, commands.readObject());
+		assertNull(commands.readObject());
+
+		assertEquals(RenderCommandBuffer.SET_UNIFORM, commands.readInt());
+		assertSame(scale, commands.readObject());
+		assertEquals(ShaderVariable.VariableType.Float, commands.readVariableType());
+		assertEquals(0.5f, commands.readFloat(), 0.0f);
+		commands.skipUniformValue(ShaderVariable.VariableType.Float3);
+
+		assertEquals(RenderCommandBuffer.SET_UNIFORM, commands.readInt());
+		assertSame(position, commands.readObject());
+		assertEquals(ShaderVariable.VariableType.Float3, commands.readVariableType());
+		assertEquals(1.0f, commands.readFloat(), 0.0f);
+		assertEquals(2.0f, commands.readFloat(), 0.0f);
+		assertEquals(3.0f, commands.readFloat(), 0.0f);
+		commands.readFloat();
+
+		assertEquals(RenderCommandBuffer.SET_UNIFORM, commands.readInt());
+		assertSame(count, commands.readObject());
+		assertEquals(ShaderVariable.VariableType.Int, commands.readVariableType());
+		assertEquals(7, commands.readInt());
+		commands.seek(commands.getReadPosition() + 12);
+
+		assertEquals(RenderCommandBuffer.SET_UNIFORM, commands.readInt());
+		assertSame(model, commands.readObject());
+		assertEquals(ShaderVariable.VariableType.Matrix4x4, commands.readVariableType());
+		assertEquals(modelMatrix, commands.readMatrix(new Matrix4f()));
+
+		assertEquals(RenderCommandBuffer.USE_SHADER, commands.readInt());
+		assertEquals(RenderCommandBuffer.SET_RENDER_STATE, commands.readInt());
+		assertSame(state, commands.readObject());
+		assertEquals(RenderCommandBuffer.DRAW_MESH, commands.readInt());
+		assertSame(mesh, commands.readObject());
+		assertFalse(commands.hasRemaining());
+	}
+
+	@Test
+	public void bufferGrowsBeyondInitialCapacity() {
+		Mesh mesh = new Mesh();
+		Matrix4f modelMatrix = new Matrix4f();
+		RenderCommandBuffer commands = new RenderCommandBuffer();
+
+		commands.drawMeshInstanced(mesh, 1000);
+		for (int i = 0; i < 1000; i++) {
+			commands.putInstance(modelMatrix.translation(i, 0.0f, 0.0f));
+		}
+
+		commands.rewind();
+		assertEquals(RenderCommandBuffer.DRAW_INSTANCED, commands.readInt());
+		assertSame(mesh, commands.readObject());
+		assertEquals(1000, commands.readInt());
+		Matrix4f instance = new Matrix4f();
+		Vector3f translation = new Vector3f();
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, commands.readMatrix(instance).getTranslation(translation).x, 0.0f);
+		}
+		assertFalse(commands.hasRemaining());
+
+		commands.clear();
+		assertTrue(commands.isEmpty());
+	}
+
+	@Test
+	public void instancesAreCopiedInBulk() {
+		Mesh mesh = new Mesh();
+		Matrix4f modelMatrix = new Matrix4f();
+		RenderCommandBuffer commands = new RenderCommandBuffer();
+		commands.drawMeshInstanced(mesh, 3);
+		for (int i = 0; i < 3; i++) {
+			commands.putInstance(modelMatrix.translation(i, 2.0f, 0.0f));
+		}
+		commands.callHook(argument -> {}, 7);
+
+		commands.rewind();
+		commands.readInt();
+		commands.readObject();
+		int instanceCount = commands.readInt();
+		FloatBuffer instances = FloatBuffer.allocate(instanceCount * 16);
+		commands.readFloats(instances, instanceCount * 16);
+		assertFalse(instances.hasRemaining());
+		for (int i = 0; i < instanceCount; i++) {
+			assertEquals(i, instances.get(i * 16 + 12), 0.0f);
+			assertEquals(2.0f, instances.get(i * 16 + 13), 0.0f);
+		}
+		assertEquals(RenderCommandBuffer.CALL_HOOK, commands.readInt());
+	}
+
+	@Test
+	public void parallelRecordingReplaysLikeSequentialRecording() {
+		HeadlessRenderer renderer = new HeadlessRenderer();
+		RendererManager rendererManager = new RendererManager();
+		rendererManager.setRenderer(renderer);
+		rendererManager.setScene(HeadlessScenes.createTriangleGrid(256));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			rendererManager.setParallelRecordingThreshold(Integer.MAX_VALUE);
+			String sequential = traceFrame(rendererManager, renderer);
+
+			rendererManager.setRecordingPool(pool);
+			rendererManager.setParallelRecordingThreshold(1);
+			String parallel = traceFrame(rendererManager, renderer);
+
+			assertTrue("The scene must produce draw calls", renderer.getDrawCalls() > 0);
+			assertEquals(sequential, parallel);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void passesArePreparedAroundTheirDrawCalls() {
+		HeadlessRenderer renderer = new HeadlessRenderer();
+		StringBuilder trace = new StringBuilder();
+		Scene scene = new Scene();
+		scene.setCamera(HeadlessScenes.createCamera());
+		Mesh triangle = new Mesh();
+		triangle.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {
+			-0.5f, -0.5f, 0.0f,
+			0.5f, -0.5f, 0.0f,
+			0.0f, 0.5f, 0.0f
+		});
+		for (int i = 0; i < 3; i++) {
+			Geometry geometry = new Geometry("geometry" + i, triangle, new TracingMaterial("Traced" + i, renderer, trace));
+			geometry.setPosition(i - 1.0f, 0.0f, 0.0f);
+			scene.add(geometry);
+		}
+
+		RendererManager rendererManager = new RendererManager();
+		rendererManager.setRenderer(renderer);
+		rendererManager.setScene(scene);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			rendererManager.setRecordingPool(pool);
+			rendererManager.setParallelRecordingThreshold(1);
+			renderFrame(rendererManager);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals("prepare 0\npost 1\nprepare 1\npost 2\nprepare 2\npost 3\n", trace.toString());
+	}
+
+	private String traceFrame(RendererManager rendererManager, HeadlessRenderer renderer) {
+		renderFrame(rendererManager);
+		renderer.setTraceEnabled(true);
+		renderFrame(rendererManager);
+		String trace = renderer.getTrace();
+		renderer.setTraceEnabled(false);
+		return trace;
+	}
+
+	private void renderFrame(RendererManager rendererManager) {
+		rendererManager.onFrameStart();
+		rendererManager.render(0.016f);
+	}
+
+	/**
+	 * Material which traces the draw calls at the preparation and the post processing of its pass.
+	 */
+	private static class TracingMaterial extends BasicMaterial {
+
+		private final HeadlessRenderer renderer;
+		private final StringBuilder trace;
+
+		TracingMaterial(String name, HeadlessRenderer renderer, StringBuilder trace) {
+			super(new Shader(name), null);
+			this.renderer = renderer;
+			this.trace = trace;
+		}
+
+		@Override
+		public void preparePass(Pass previousPass) {
+			super.preparePass(previousPass);
+			trace.append("prepare ").append(renderer.getDrawCalls()).append('\n');
+		}
+
+		@Override
+		public void postProcessPass(Pass nextPass) {
+			trace.append("post ").append(renderer.getDrawCalls()).append('\n');
+		}
+	}
+}
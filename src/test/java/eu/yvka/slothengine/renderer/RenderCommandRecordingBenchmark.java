@@ -0,0 +1,70 @@
+package eu.yvka.slothengine.renderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the frame time of a large scene with the <code>HeadlessRenderer</code>
+ * depending on the count of recording threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RenderCommandRecordingBenchmark {
+
+	@Param({"1", "2", "4", "8"})
+	private int recordingThreads;
+
+	@Param({"10000"})
+	private int geometries;
+
+	private ForkJoinPool pool;
+	private RendererManager rendererManager;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		pool = new ForkJoinPool(recordingThreads);
+		rendererManager = new RendererManager();
+		rendererManager.setRenderer(new HeadlessRenderer());
+		rendererManager.setRecordingPool(pool);
+		rendererManager.setParallelRecordingThreshold(1);
+		rendererManager.setScene(HeadlessScenes.createTriangleGrid(geometries));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public void renderFrame() {
+		rendererManager.onFrameStart();
+		rendererManager.render(0.016f);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(RenderCommandRecordingBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,186 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.scene.Node;
+import eu.yvka.slothengine.scene.Scene;
+import eu.yvka.slothengine.shader.Shader;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RenderListTest {
+
+	private Scene scene;
+	private RenderList renderList;
+
+	@Before
+	public void setUp() {
+		scene = HeadlessScenes.createTriangleGrid(16);
+		renderList = scene.getRenderList();
+		renderList.prepare();
+	}
+
+	@Test
+	public void containsTheGeometriesOfTheScene() {
+		assertEquals(16, renderList.size());
+		assertSorted();
+	}
+
+	@Test
+	public void removedGeometriesAreDroppedByPrepare() {
+		Node group = (Node) scene.getSpatial("group");
+		group.removeChild((Node) scene.getSpatial("geometry3"));
+		group.removeChild((Node) scene.getSpatial("geometry7"));
+		renderList.prepare();
+
+		assertEquals(14, renderList.size());
+		for (int i = 0; i < renderList.size(); i++) {
+			assertNotNull(renderList.getGeometry(i));
+		}
+		assertSorted();
+	}
+
+	@Test
+	public void changedGeometriesAreUpdated() {
+		Geometry geometry = (Geometry) scene.getSpatial("geometry0");
+		geometry.setVisible(false);
+		renderList.prepare();
+		assertEquals(15, renderList.size());
+
+		geometry.setVisible(true);
+		Material material = new BasicMaterial(new Shader("Other"), null);
+		geometry.setMaterial(material);
+		renderList.prepare();
+		assertEquals(16, renderList.size());
+		assertUsesMaterial(geometry, material);
+		assertSorted();
+	}
+
+	@Test
+	public void marksVisibleGeometriesPerFrame() {
+		Geometry geometry = (Geometry) scene.getSpatial("geometry5");
+		assertTrue(renderList.markVisible(geometry, 1));
+
+		int visible = 0;
+		for (int i = 0; i < renderList.size(); i++) {
+			if (renderList.isVisible(i, 1)) {
+				assertTrue(renderList.getGeometry(i) == geometry);
+				visible++;
+			}
+			assertFalse(renderList.isVisible(i, 2));
+		}
+		assertEquals(1, visible);
+	}
+
+	@Test
+	public void collectsVisibleItemsPerBucket() {
+		Geometry geometry = (Geometry) scene.getSpatial("geometry5");
+		renderList.clearVisible();
+		assertTrue(renderList.markVisible(geometry, 1));
+		assertTrue(renderList.markVisible(geometry, 1));
+
+		assertEquals(1, renderList.getVisibleCount(RenderQueue.BUCKET_OPAQUE));
+		assertEquals(0, renderList.getVisibleCount(RenderQueue.BUCKET_TRANSPARENT));
+		assertTrue(renderList.getVisibleGeometry(RenderQueue.BUCKET_OPAQUE, 0) == geometry);
+
+		renderList.clearVisible();
+		assertEquals(0, renderList.getVisibleCount(RenderQueue.BUCKET_OPAQUE));
+	}
+
+	@Test
+	public void replacedPassesAreDetectedByMarkVisible() {
+		Geometry geometry = (Geometry) scene.getSpatial("geometry2");
+		Material material = new BasicMaterial(new Shader("Replaced"), null);
+		geometry.setMaterial(material);
+		renderList.prepare();
+
+		Material replacement = new BasicMaterial(new Shader("Replacement"), null);
+		material.getPasses().set(0, replacement);
+		assertTrue(renderList.markVisible(geometry, 1));
+		renderList.prepare();
+		assertUsesMaterial(geometry, material);
+		assertEquals(16, renderList.size());
+	}
+
+	@Test
+	public void replacedMaterialsRecycleTheirSortIds() {
+		Geometry geometry = (Geometry) scene.getSpatial("geometry0");
+		Geometry other = (Geometry) scene.getSpatial("geometry1");
+		other.setMaterial(new BasicMaterial(new Shader("Shared"), null));
+		Shader shader = other.getMaterial().getShader();
+		for (int i = 0; i < 5000; i++) {
+			geometry.setMaterial(new BasicMaterial(shader, null));
+			renderList.prepare();
+		}
+
+		assertTrue("Live materials must not share their sort id", materialId(geometry) != materialId(other));
+		assertSorted();
+	}
+
+	@Test
+	public void sameStateItemsAreSortedByTheCameraDistance() {
+		Scene pair = HeadlessScenes.createTriangleGrid(0);
+		Geometry template = (Geometry) scene.getSpatial("geometry0");
+		Geometry left = new Geometry("left", template.getMesh(), template.getMaterial());
+		left.setPosition(-2.0f, 0.0f, 0.0f);
+		Geometry right = new Geometry("right", template.getMesh(), template.getMaterial());
+		right.setPosition(2.0f, 0.0f, 0.0f);
+		pair.add(left);
+		pair.add(right);
+
+		RendererManager rendererManager = new RendererManager();
+		rendererManager.setRenderer(new HeadlessRenderer());
+		rendererManager.setScene(pair);
+
+		pair.getCamera().setPosition(-2.0f, 0.0f, 10.0f);
+		renderFrame(rendererManager);
+		RenderQueue queue = rendererManager.getRenderQueue();
+		assertEquals(2, queue.size());
+		assertTrue(queue.getGeometry(0) == left);
+
+		pair.getCamera().setPosition(2.0f, 0.0f, 10.0f);
+		renderFrame(rendererManager);
+		assertEquals(2, queue.size());
+		assertTrue(queue.getGeometry(0) == right);
+	}
+
+	private static void renderFrame(RendererManager rendererManager) {
+		rendererManager.onFrameStart();
+		rendererManager.render(0.016f);
+	}
+
+	private void assertUsesMaterial(Geometry geometry, Material material) {
+		for (int i = 0; i < renderList.size(); i++) {
+			if (renderList.getGeometry(i) == geometry) {
+				assertTrue(renderList.getPass(i) == material.getPasses().get(renderList.getPassIndex(i)));
+				return;
+			}
+		}
+		throw new AssertionError("The geometry is not part of the render list");
+	}
+
+	private long materialId(Geometry geometry) {
+		for (int i = 0; i < renderList.size(); i++) {
+			if (renderList.getGeometry(i) == geometry) {
+				// the material field of an opaque key
+				return (renderList.refreshSortKey(i) >>> 28) & 0xFFF;
+			}
+		}
+		throw new AssertionError("The geometry is not part of the render list");
+	}
+
+	private void assertSorted() {
+		long previous = Long.MIN_VALUE;
+		for (int i = 0; i < renderList.size(); i++) {
+			long key = renderList.refreshSortKey(i);
+			assertTrue("The items must be sorted by their key", key >= previous);
+			previous = key;
+		}
+	}
+}
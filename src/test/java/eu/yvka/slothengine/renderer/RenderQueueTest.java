@@ -0,0 +1,65 @@
+package eu.yvka.slothengine.renderer;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.material.Pass;
+import eu.yvka.slothengine.scene.Geometry;
+import eu.yvka.slothengine.shader.Shader;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RenderQueueTest {
+
+	private static final int MATERIALS = 300;
+	private static final int MESHES = 300;
+	private static final int GEOMETRIES = 3000;
+
+	@Test
+	public void passesAndMeshesAreNotInterleaved() {
+		Shader shader = new Shader("Shared");
+		Material[] materials = new Material[MATERIALS];
+		for (int i = 0; i < MATERIALS; i++) {
+			materials[i] = new BasicMaterial(shader, null);
+		}
+		Mesh[] meshes = new Mesh[MESHES];
+		for (int i = 0; i < MESHES; i++) {
+			meshes[i] = new Mesh();
+		}
+
+		Random random = new Random(11);
+		RenderQueue queue = new RenderQueue();
+		for (int i = 0; i < GEOMETRIES; i++) {
+			Material material = materials[random.nextInt(MATERIALS)];
+			Geometry geometry = new Geometry("geometry" + i, meshes[random.nextInt(MESHES)], material);
+			queue.add(geometry, material, 0, random.nextFloat() * 100.0f);
+		}
+		queue.sort();
+
+		Set<Pass> finishedPasses = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Mesh> finishedMeshes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 1; i < queue.size(); i++) {
+			Pass previousPass = queue.getPass(i - 1);
+			Mesh previousMesh = queue.getGeometry(i - 1).getMesh();
+			Pass pass = queue.getPass(i);
+			Mesh mesh = queue.getGeometry(i).getMesh();
+
+			if (pass != previousPass) {
+				finishedPasses.add(previousPass);
+				finishedMeshes.clear();
+				assertFalse("The items of a pass must be contiguous", finishedPasses.contains(pass));
+			} else if (mesh != previousMesh) {
+				finishedMeshes.add(previousMesh);
+				assertFalse("The items of a mesh must be contiguous within a pass", finishedMeshes.contains(mesh));
+			}
+		}
+		assertEquals(GEOMETRIES, queue.size());
+	}
+}
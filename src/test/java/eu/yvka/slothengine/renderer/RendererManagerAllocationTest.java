@@ -0,0 +1,87 @@
+package eu.yvka.slothengine.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class RendererManagerAllocationTest {
+
+	private static final int WARM_UP_FRAMES = 2000;
+	private static final int MEASURED_FRAMES = 1000;
+
+	private RendererManager rendererManager;
+	private HeadlessRenderer renderer;
+	private com.sun.management.ThreadMXBean threadBean;
+
+	@Before
+	public void setUp() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		renderer = new HeadlessRenderer();
+		rendererManager = new RendererManager();
+		rendererManager.setRenderer(renderer);
+		rendererManager.setScene(HeadlessScenes.createTriangleGrid(32));
+	}
+
+	@Test
+	public void steadyStateFrameAllocatesNothing() {
+		assertNoSteadyStateAllocation();
+	}
+
+	@Test
+	public void steadyStateInstancedFrameAllocatesNothing() {
+		renderer.setInstancingSupported(true);
+		assertNoSteadyStateAllocation();
+		assertTrue("The scene must produce instanced draw calls", renderer.getInstancedDrawCalls() > 0);
+	}
+
+	@Test
+	public void steadyStateFrameWithUniformBuffersAllocatesNothing() {
+		renderer.setUniformBufferSupported(true);
+		renderer.setInstancingSupported(true);
+		assertNoSteadyStateAllocation();
+	}
+
+	private void assertNoSteadyStateAllocation() {
+		for (int i = 0; i < WARM_UP_FRAMES; i++) {
+			renderFrame();
+		}
+		assertTrue("The scene must produce draw calls", renderer.getDrawCalls() > 0);
+
+		long threadId = Thread.currentThread().getId();
+		long overhead = measurementOverhead(threadId);
+
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_FRAMES; i++) {
+			renderFrame();
+		}
+		long after = threadBean.getThreadAllocatedBytes(threadId);
+
+		long allocated = Math.max(0, after - before - overhead);
+		assertEquals("Bytes allocated per frame", 0, allocated / MEASURED_FRAMES);
+	}
+
+	private void renderFrame() {
+		rendererManager.onFrameStart();
+		rendererManager.render(0.016f);
+	}
+
+	private long measurementOverhead(long threadId) {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			long after = threadBean.getThreadAllocatedBytes(threadId);
+			overhead = Math.min(overhead, after - before);
+		}
+		return overhead;
+	}
+}
@@ -0,0 +1,119 @@
+package eu.yvka.slothengine.renderer.occlusion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchicalDepthBufferTest {
+
+	private static final int WIDTH = 256;
+	private static final int HEIGHT = 128;
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void rasterizesTheNearestTriangle() {
+		HierarchicalDepthBuffer buffer = new HierarchicalDepthBuffer(WIDTH, HEIGHT);
+		// the left half of the screen at depth 0.5 and the whole screen behind it at depth 0.75
+		addRectangle(buffer, -1.0f, -1.0f, 0.0f, 1.0f, 0.0f);
+		addRectangle(buffer, -1.0f, -1.0f, 1.0f, 1.0f, 0.5f);
+		buffer.rasterize();
+
+		assertEquals(0.5f, buffer.getDepth(0, 10, 10), 1e-5f);
+		assertEquals(0.75f, buffer.getDepth(0, 200, 100), 1e-5f);
+		assertEquals(0.75f, buffer.getDepth(buffer.getLevelCount() - 1, 0, 0), 1e-5f);
+
+		assertTrue(buffer.isOccluded(-0.9f, -0.9f, -0.1f, 0.9f, 0.2f));
+		assertFalse("In front of the triangles", buffer.isOccluded(-0.9f, -0.9f, -0.1f, 0.9f, -0.2f));
+		assertTrue(buffer.isOccluded(-0.9f, -0.9f, 0.9f, 0.9f, 0.6f));
+		assertFalse("Partly in front of the right half", buffer.isOccluded(-0.9f, -0.9f, 0.9f, 0.9f, 0.2f));
+		assertFalse("Outside of the screen", buffer.isOccluded(1.5f, 1.5f, 2.0f, 2.0f, 0.9f));
+	}
+
+	@Test
+	public void uncoveredPixelsNeverOcclude() {
+		HierarchicalDepthBuffer buffer = new HierarchicalDepthBuffer(WIDTH, HEIGHT);
+		addRectangle(buffer, -0.5f, -0.5f, 0.5f, 0.5f, 0.0f);
+		buffer.rasterize();
+
+		assertTrue(buffer.isOccluded(-0.4f, -0.4f, 0.4f, 0.4f, 0.5f));
+		assertFalse(buffer.isOccluded(-0.6f, -0.4f, 0.4f, 0.4f, 0.5f));
+		assertFalse(buffer.isOccluded(0.55f, 0.55f, 0.6f, 0.6f, 0.5f));
+	}
+
+	@Test
+	public void dropsTrianglesWhichCrossTheNearPlane() {
+		HierarchicalDepthBuffer buffer = new HierarchicalDepthBuffer(WIDTH, HEIGHT);
+		assertFalse(buffer.addTriangle(
+			-1.0f, -1.0f, -2.0f, 1.0f,
+			1.0f, -1.0f, 0.0f, 1.0f,
+			0.0f, 1.0f, 0.0f, 1.0f));
+		assertFalse(buffer.addTriangle(
+			-1.0f, -1.0f, 0.0f, -1.0f,
+			1.0f, -1.0f, 0.0f, 1.0f,
+			0.0f, 1.0f, 0.0f, 1.0f));
+		assertEquals(0, buffer.getTriangleCount());
+	}
+
+	@Test
+	public void parallelRasterizationMatchesSequential() {
+		ForkJoinPool single = new ForkJoinPool(1);
+		try {
+			HierarchicalDepthBuffer parallel = new HierarchicalDepthBuffer(WIDTH, HEIGHT);
+			parallel.setPool(pool);
+			HierarchicalDepthBuffer sequential = new HierarchicalDepthBuffer(WIDTH, HEIGHT);
+			sequential.setPool(single);
+
+			Random random = new Random(3);
+			float[] corners = new float[12];
+			for (int i = 0; i < 500; i++) {
+				for (int c = 0; c < 3; c++) {
+					corners[c * 4] = random.nextFloat() * 2.4f - 1.2f;
+					corners[c * 4 + 1] = random.nextFloat() * 2.4f - 1.2f;
+					corners[c * 4 + 2] = random.nextFloat() * 2.0f - 1.0f;
+					corners[c * 4 + 3] = 1.0f;
+				}
+				addTriangle(parallel, corners);
+				addTriangle(sequential, corners);
+			}
+			parallel.rasterize();
+			sequential.rasterize();
+
+			for (int level = 0, w = WIDTH, h = HEIGHT; level < parallel.getLevelCount(); level++, w = (w + 1) / 2, h = (h + 1) / 2) {
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						assertEquals(sequential.getDepth(level, x, y), parallel.getDepth(level, x, y), 0.0f);
+					}
+				}
+			}
+		} finally {
+			single.shutdown();
+		}
+	}
+
+	private static void addRectangle(HierarchicalDepthBuffer buffer, float minX, float minY, float maxX, float maxY, float z) {
+		buffer.addTriangle(minX, minY, z, 1.0f, maxX, minY, z, 1.0f, maxX, maxY, z, 1.0f);
+		buffer.addTriangle(minX, minY, z, 1.0f, maxX, maxY, z, 1.0f, minX, maxY, z, 1.0f);
+	}
+
+	private static void addTriangle(HierarchicalDepthBuffer buffer, float[] c) {
+		buffer.addTriangle(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], c[8], c[9], c[10], c[11]);
+	}
+}
@@ -0,0 +1,169 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.math.BoundingBox;
+import eu.yvka.slothengine.math.Frustum;
+import eu.yvka.slothengine.math.Ray;
+import eu.yvka.slothengine.scene.traversal.PruningVisitor;
+import eu.yvka.slothengine.scene.traversal.VisitResult;
+import eu.yvka.slothengine.shader.Shader;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Compares the queries of the <code>BoundingVolumeHierarchy</code> with a linear
+ * traversal of the scene which tests the bounds of every geometry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BoundingVolumeHierarchyBenchmark {
+
+	private static final float WORLD_SIZE = 1000.0f;
+
+	@Param({"10000", "100000", "1000000"})
+	private int geometries;
+
+	private Scene scene;
+	private BoundingVolumeHierarchy hierarchy;
+	private final Frustum frustum = new Frustum();
+	private final BoundingBox box = new BoundingBox(new Vector3f(-50.0f), new Vector3f(50.0f));
+	private final Ray ray = new Ray();
+	private final PickResult pickResult = new PickResult();
+
+	private int count;
+	private final Consumer<Geometry> counter = geometry -> count++;
+	private final PruningVisitor<Node> frustumVisitor = this::testFrustum;
+	private final PruningVisitor<Node> boxVisitor = this::testBox;
+	private final PruningVisitor<Node> rayVisitor = this::testRay;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Mesh cube = new Mesh();
+		cube.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {
+			-0.5f, -0.5f, -0.5f,
+			0.5f, 0.5f, 0.5f
+		});
+		Material material = new BasicMaterial(new Shader("Benchmark"), null);
+
+		Random random = new Random(42);
+		scene = new Scene();
+		for (int i = 0; i < geometries; i++) {
+			Geometry geometry = new Geometry("Geometry-" + i, cube, material);
+			geometry.setPosition(coordinate(random), coordinate(random), coordinate(random));
+			scene.add(geometry);
+		}
+		scene.updateGeometricState();
+		scene.setBoundingVolumeHierarchyEnabled(true);
+		hierarchy = scene.getBoundingVolumeHierarchy();
+
+		frustum.update(new Matrix4f().setPerspective((float) Math.toRadians(45.0), 1.0f, 0.1f, 300.0f),
+			new Matrix4f().setLookAt(0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f));
+		ray.set(new Vector3f(-WORLD_SIZE), new Vector3f(1.0f, 1.0f, 1.0f));
+	}
+
+	private static float coordinate(Random random) {
+		return (random.nextFloat() - 0.5f) * WORLD_SIZE;
+	}
+
+	@Benchmark
+	public int frustumHierarchy() {
+		count = 0;
+		hierarchy.query(frustum, counter);
+		return count;
+	}
+
+	@Benchmark
+	public int frustumTraversal() {
+		count = 0;
+		scene.traverse(frustumVisitor);
+		return count;
+	}
+
+	@Benchmark
+	public int boxHierarchy() {
+		count = 0;
+		hierarchy.query(box, counter);
+		return count;
+	}
+
+	@Benchmark
+	public int boxTraversal() {
+		count = 0;
+		scene.traverse(boxVisitor);
+		return count;
+	}
+
+	@Benchmark
+	public float pickHierarchy() {
+		hierarchy.pick(ray, Float.POSITIVE_INFINITY, pickResult);
+		return pickResult.getDistance();
+	}
+
+	@Benchmark
+	public float pickTraversal() {
+		pickResult.clear();
+		scene.traverse(rayVisitor);
+		return pickResult.getDistance();
+	}
+
+	private VisitResult testFrustum(Node node) {
+		if (node instanceof Geometry && frustum.intersects(((Geometry) node).getMeshWorldBound()) != Frustum.Intersection.OUTSIDE) {
+			count++;
+		}
+		return VisitResult.CONTINUE;
+	}
+
+	private VisitResult testBox(Node node) {
+		if (node instanceof Geometry) {
+			BoundingBox bound = ((Geometry) node).getMeshWorldBound();
+			if (bound.getMin().x <= box.getMax().x && bound.getMax().x >= box.getMin().x
+				&& bound.getMin().y <= box.getMax().y && bound.getMax().y >= box.getMin().y
+				&& bound.getMin().z <= box.getMax().z && bound.getMax().z >= box.getMin().z) {
+				count++;
+			}
+		}
+		return VisitResult.CONTINUE;
+	}
+
+	private VisitResult testRay(Node node) {
+		if (node instanceof Geometry) {
+			float distance = ray.intersects(((Geometry) node).getMeshWorldBound());
+			if (distance < pickResult.getDistance()) {
+				pickResult.set((Geometry) node, distance, ray.getOrigin());
+			}
+		}
+		return VisitResult.CONTINUE;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(BoundingVolumeHierarchyBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,169 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.math.BoundingBox;
+import eu.yvka.slothengine.math.BoundingSphere;
+import eu.yvka.slothengine.math.Frustum;
+import eu.yvka.slothengine.math.Ray;
+import eu.yvka.slothengine.shader.Shader;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoundingVolumeHierarchyTest {
+
+	private static final int COUNT = 500;
+
+	private final Random random = new Random(42);
+	private Scene scene;
+	private BoundingVolumeHierarchy hierarchy;
+	private List<Geometry> geometries;
+
+	@Before
+	public void setUp() {
+		scene = new Scene();
+		Mesh cube = new Mesh();
+		cube.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {
+			-0.5f, -0.5f, -0.5f,
+			0.5f, 0.5f, 0.5f,
+			0.5f, -0.5f, 0.5f
+		});
+		Material material = new BasicMaterial(new Shader("Test"), null);
+
+		geometries = new ArrayList<>();
+		for (int i = 0; i < COUNT; i++) {
+			Geometry geometry = new Geometry("geometry" + i, cube, material);
+			geometry.setPosition(randomCoordinate(), randomCoordinate(), randomCoordinate());
+			scene.add(geometry);
+			geometries.add(geometry);
+		}
+		scene.updateGeometricState();
+		scene.setBoundingVolumeHierarchyEnabled(true);
+		hierarchy = scene.getBoundingVolumeHierarchy();
+		hierarchy.setRebuildRatio(0.0f);
+	}
+
+	@Test
+	public void queriesMatchLinearTests() {
+		assertEquals(COUNT, hierarchy.size());
+		assertQueriesMatch();
+	}
+
+	@Test
+	public void refitFollowsMovedGeometries() {
+		float cost = hierarchy.getCost();
+		for (int i = 0; i < COUNT; i += 3) {
+			geometries.get(i).setPosition(randomCoordinate(), randomCoordinate(), randomCoordinate());
+		}
+		scene.updateGeometricState();
+		assertQueriesMatch();
+
+		hierarchy.rebuild();
+		assertTrue("A rebuild must not be worse than the refitted tree", hierarchy.getCost() <= cost * 1.5f);
+		assertQueriesMatch();
+	}
+
+	@Test
+	public void removedGeometriesAreNotReported() {
+		for (int i = 0; i < COUNT; i += 2) {
+			scene.getRootNode().removeChild(geometries.get(i));
+		}
+		geometries.removeIf(geometry -> geometry.getScene() == null);
+
+		assertEquals(COUNT / 2, hierarchy.size());
+		assertQueriesMatch();
+	}
+
+	@Test
+	public void pickReportsTheNearestGeometry() {
+		Geometry near = geometries.get(0);
+		near.setPosition(0.0f, 0.0f, 60.0f);
+		Geometry far = geometries.get(1);
+		far.setPosition(0.0f, 0.0f, 58.0f);
+		scene.updateGeometricState();
+		near.getMesh().requestTriangleHierarchy().join();
+
+		Ray ray = new Ray().set(new Vector3f(0.25f, -0.25f, 100.0f), new Vector3f(0.0f, 0.0f, -1.0f));
+		PickResult result = new PickResult();
+		assertTrue(scene.pick(ray, result));
+		assertSame(near, result.getGeometry());
+		assertEquals(39.75f, result.getDistance(), 1e-4f);
+		assertEquals(0, result.getTriangleHit().getTriangle());
+	}
+
+	private void assertQueriesMatch() {
+		BoundingBox box = new BoundingBox(new Vector3f(-10.0f, -5.0f, -20.0f), new Vector3f(15.0f, 10.0f, 5.0f));
+		List<Geometry> expected = new ArrayList<>();
+		for (Geometry geometry : geometries) {
+			BoundingBox bound = geometry.getMeshWorldBound();
+			if (bound.getMin().x <= box.getMax().x && bound.getMax().x >= box.getMin().x
+				&& bound.getMin().y <= box.getMax().y && bound.getMax().y >= box.getMin().y
+				&& bound.getMin().z <= box.getMax().z && bound.getMax().z >= box.getMin().z) {
+				expected.add(geometry);
+			}
+		}
+		List<Geometry> actual = new ArrayList<>();
+		hierarchy.query(box, actual::add);
+		assertSameGeometries(expected, actual);
+
+		BoundingSphere sphere = new BoundingSphere().set(new Vector3f(5.0f, -5.0f, 0.0f), 12.0f);
+		expected.clear();
+		for (Geometry geometry : geometries) {
+			if (distance(geometry.getMeshWorldBound(), sphere.getCenter()) <= sphere.getRadius()) {
+				expected.add(geometry);
+			}
+		}
+		actual.clear();
+		hierarchy.query(sphere, actual::add);
+		assertSameGeometries(expected, actual);
+
+		Frustum frustum = new Frustum();
+		frustum.update(new Matrix4f().setPerspective((float) Math.toRadians(45.0), 1.0f, 0.1f, 40.0f),
+			new Matrix4f().setLookAt(0.0f, 0.0f, 60.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f));
+		expected.clear();
+		for (Geometry geometry : geometries) {
+			if (frustum.intersects(geometry.getMeshWorldBound()) != Frustum.Intersection.OUTSIDE) {
+				expected.add(geometry);
+			}
+		}
+		actual.clear();
+		hierarchy.query(frustum, actual::add);
+		assertSameGeometries(expected, actual);
+	}
+
+	private static float distance(BoundingBox box, Vector3f point) {
+		float dx = Math.max(Math.max(box.getMin().x - point.x, point.x - box.getMax().x), 0.0f);
+		float dy = Math.max(Math.max(box.getMin().y - point.y, point.y - box.getMax().y), 0.0f);
+		float dz = Math.max(Math.max(box.getMin().z - point.z, point.z - box.getMax().z), 0.0f);
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	private static void assertSameGeometries(List<Geometry> expected, List<Geometry> actual) {
+		Set<Geometry> actualSet = Collections.newSetFromMap(new IdentityHashMap<>());
+		actualSet.addAll(actual);
+		assertEquals("Each geometry must be reported once", actual.size(), actualSet.size());
+		assertEquals(expected.size(), actual.size());
+		for (Geometry geometry : expected) {
+			assertTrue(geometry.getId() + " must be reported", actualSet.contains(geometry));
+		}
+	}
+
+	private float randomCoordinate() {
+		return random.nextFloat() * 100.0f - 50.0f;
+	}
+}
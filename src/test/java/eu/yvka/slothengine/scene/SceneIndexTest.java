@@ -0,0 +1,97 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.material.Material;
+import eu.yvka.slothengine.shader.Shader;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SceneIndexTest {
+
+	private Scene scene;
+	private Node group;
+	private Geometry geometry;
+	private Material material;
+
+	@Before
+	public void setUp() {
+		scene = new Scene();
+		material = new BasicMaterial(new Shader("Test"), null);
+		group = new Node("group");
+		geometry = new Geometry("geometry", null, material);
+		group.addChild(geometry);
+		scene.add(group);
+	}
+
+	@Test
+	public void nestedNodesAreIndexed() {
+		assertSame(geometry, scene.getSpatial("geometry"));
+		assertSame(geometry, scene.getRootNode().getChild("geometry"));
+		assertNull(geometry.getChild("group"));
+		assertTrue(scene.getGeometries(material).contains(geometry));
+	}
+
+	@Test
+	public void duplicateIdsAreRejected() {
+		try {
+			scene.add(new Node("geometry"));
+			fail("A duplicate id must be rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(1, scene.getRootNode().getChildren().size());
+		}
+
+		Node other = new Node("other");
+		scene.add(other);
+		try {
+			other.setId("group");
+			fail("A duplicate id must be rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("other", other.getId());
+		}
+	}
+
+	@Test
+	public void indicesFollowModifications() {
+		geometry.setId("renamed");
+		assertNull(scene.getSpatial("geometry"));
+		assertSame(geometry, scene.getSpatial("renamed"));
+
+		Material other = new BasicMaterial(new Shader("Other"), null);
+		geometry.setMaterial(other);
+		assertTrue(scene.getGeometries(material).isEmpty());
+		assertTrue(scene.getGeometries(other).contains(geometry));
+
+		scene.remove(group);
+		assertNull(scene.getSpatial("renamed"));
+		assertFalse(scene.getGeometries().contains(geometry));
+		assertNull(geometry.getScene());
+	}
+
+	@Test
+	public void invalidRootNodesLeaveTheSceneUnchanged() {
+		Node root = new Node("root");
+		root.addChild(new Node("duplicate"));
+		root.addChild(new Node("duplicate"));
+		try {
+			scene.setRootNode(root);
+			fail("A duplicate id must be rejected");
+		} catch (IllegalArgumentException e) {
+			assertSame(geometry, scene.getSpatial("geometry"));
+			assertSame(scene, geometry.getScene());
+			assertTrue(scene.getGeometries().contains(geometry));
+		}
+
+		Node replacement = new Node("replacement");
+		replacement.addChild(new Node("geometry"));
+		scene.setRootNode(replacement);
+		assertNull(geometry.getScene());
+		assertSame(replacement.getChildren().get(0), scene.getSpatial("geometry"));
+	}
+}
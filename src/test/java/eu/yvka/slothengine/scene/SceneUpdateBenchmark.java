@@ -0,0 +1,87 @@
+package eu.yvka.slothengine.scene;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures <code>Scene.update</code> of a synthetic scene whose top level subtrees
+ * are rotated by a controller every frame, depending on the count of update threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SceneUpdateBenchmark {
+
+	private static final int SUBTREES = 256;
+
+	@Param({"1", "2", "4", "8"})
+	private int updateThreads;
+
+	@Param({"100000"})
+	private int nodes;
+
+	private ForkJoinPool pool;
+	private Scene scene;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		pool = new ForkJoinPool(updateThreads);
+		scene = new Scene();
+		scene.setUpdatePool(pool);
+		scene.setUpdateSplitThreshold(updateThreads == 1 ? SUBTREES : 4);
+
+		int nodesPerSubtree = nodes / SUBTREES;
+		for (int i = 0; i < SUBTREES; i++) {
+			Node subtree = new Node("Subtree-" + i);
+			subtree.setPosition(i, 0.0f, 0.0f);
+			subtree.addController((node, elapsedTime) -> node.getRotation().rotateY(elapsedTime));
+			scene.add(subtree);
+
+			Node parent = subtree;
+			for (int n = 1; n < nodesPerSubtree; n++) {
+				Node child = new Node("Node-" + i + "-" + n);
+				child.setPosition(0.0f, 1.0f, 0.0f);
+				parent.addChild(child);
+				// chains of four nodes to get a hierarchy with some depth
+				parent = n % 4 == 0 ? subtree : child;
+			}
+		}
+		scene.update(0.0f);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public void updateScene() {
+		scene.update(0.016f);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(SceneUpdateBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,138 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.renderer.RenderList;
+import eu.yvka.slothengine.shader.Shader;
+import org.joml.Vector3f;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SceneUpdateTest {
+
+	private static final int SUBTREES = 64;
+	private static final int CHILDREN = 8;
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void parallelUpdateMatchesSequentialUpdate() {
+		AtomicInteger calls = new AtomicInteger();
+		List<Node> sequentialLeaves = new ArrayList<>();
+		List<Node> parallelLeaves = new ArrayList<>();
+		Scene sequential = createScene(calls, sequentialLeaves);
+		sequential.setUpdateSplitThreshold(SUBTREES);
+		Scene parallel = createScene(calls, parallelLeaves);
+		parallel.setUpdatePool(pool);
+		parallel.setUpdateSplitThreshold(1);
+
+		for (int frame = 0; frame < 3; frame++) {
+			sequential.update(0.5f);
+			parallel.update(0.5f);
+		}
+
+		assertEquals(2 * 3 * SUBTREES, calls.get());
+		for (int i = 0; i < sequentialLeaves.size(); i++) {
+			Vector3f expected = sequentialLeaves.get(i).getWorldPosition();
+			Vector3f actual = parallelLeaves.get(i).getWorldPosition();
+			assertEquals(expected.x, actual.x, 0.0f);
+			assertEquals(expected.y, actual.y, 0.0f);
+			assertEquals(expected.z, actual.z, 0.0f);
+		}
+		assertEquals(sequential.getRootNode().getWorldBound().toString(), parallel.getRootNode().getWorldBound().toString());
+	}
+
+	@Test
+	public void controllersMayToggleTheVisibility() {
+		Mesh mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0});
+		BasicMaterial material = new BasicMaterial(new Shader("Toggled"), null);
+
+		Scene scene = new Scene();
+		scene.setUpdatePool(pool);
+		scene.setUpdateSplitThreshold(1);
+		List<Geometry> geometries = new ArrayList<>();
+		for (int i = 0; i < SUBTREES; i++) {
+			Geometry geometry = new Geometry("Geometry-" + i, mesh, material);
+			// every geometry toggles its visibility per frame, odd geometries start invisible
+			geometry.setVisible(i % 2 == 0);
+			geometry.addController((node, elapsedTime) -> {
+				Geometry toggled = (Geometry) node;
+				toggled.setVisible(!toggled.isVisible());
+			});
+			scene.add(geometry);
+			geometries.add(geometry);
+		}
+
+		RenderList renderList = scene.getRenderList();
+		for (int frame = 0; frame < 5; frame++) {
+			scene.update(0.016f);
+			renderList.prepare();
+
+			int visible = 0;
+			// the items of removed geometries are dropped by prepare
+			for (int i = 0; i < renderList.size(); i++) {
+				Geometry geometry = renderList.getGeometry(i);
+				assertTrue(geometry.isVisible());
+				visible++;
+			}
+			int expected = 0;
+			for (Geometry geometry : geometries) {
+				if (geometry.isVisible()) expected++;
+			}
+			assertEquals(SUBTREES / 2, expected);
+			assertEquals(expected * material.getPasses().size(), visible);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void controllersMustNotChangeIds() {
+		Scene scene = new Scene();
+		scene.setUpdateSplitThreshold(SUBTREES);
+		Node node = new Node("Renamed");
+		node.addController((controlled, elapsedTime) -> controlled.setId("Other"));
+		scene.add(node);
+		scene.update(0.016f);
+	}
+
+	private static Scene createScene(AtomicInteger calls, List<Node> leaves) {
+		Scene scene = new Scene();
+		for (int i = 0; i < SUBTREES; i++) {
+			Node subtree = new Node("Subtree-" + i);
+			subtree.setPosition(i, 0, 0);
+			subtree.addController((node, elapsedTime) -> {
+				calls.incrementAndGet();
+				node.getPosition().add(0, elapsedTime, 0);
+			});
+			scene.add(subtree);
+
+			for (int c = 0; c < CHILDREN; c++) {
+				Node leaf = new Node("Leaf-" + i + "-" + c);
+				leaf.setPosition(0, 0, c);
+				subtree.addChild(leaf);
+				leaves.add(leaf);
+			}
+		}
+		return scene;
+	}
+}
@@ -0,0 +1,172 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.math.BoundingBox;
+import org.joml.Vector3f;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialHashGridTest {
+
+	private static final int SUBTREES = 64;
+	private static final int CHILDREN = 8;
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void queriesFindSpatialsInRange() {
+		SpatialHashGrid grid = new SpatialHashGrid(2.0f, 4);
+		List<Spatial> spatials = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Node node = new Node("Node-" + i);
+			node.setPosition(i % 10, i / 10, 0.0f);
+			node.updateTransform();
+			grid.insert(node, 0.0f);
+			spatials.add(node);
+		}
+		assertEquals(100, grid.size());
+
+		assertQueriesMatch(grid, spatials, new Vector3f(4.5f, 4.5f, 0.0f), 2.0f);
+
+		Spatial moved = spatials.get(0);
+		moved.setPosition(50.0f, 50.0f, 0.0f);
+		moved.updateTransform();
+		assertQueriesMatch(grid, spatials, new Vector3f(50.0f, 50.0f, 0.0f), 1.0f);
+
+		grid.remove(moved);
+		spatials.remove(moved);
+		assertEquals(99, grid.size());
+		assertQueriesMatch(grid, spatials, new Vector3f(0.0f, 0.0f, 0.0f), 100.0f);
+	}
+
+	@Test
+	public void manyCellsSurviveRemovals() {
+		SpatialHashGrid grid = new SpatialHashGrid(1.0f, 2);
+		List<Spatial> spatials = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			Node node = new Node("Node-" + i);
+			node.setPosition((i * 7) % 41 - 20, (i * 13) % 37 - 18, i % 5);
+			node.updateTransform();
+			grid.insert(node, 0.0f);
+			spatials.add(node);
+		}
+		for (int i = spatials.size() - 1; i >= 0; i -= 3) {
+			grid.remove(spatials.remove(i));
+		}
+
+		assertEquals(spatials.size(), grid.size());
+		assertQueriesMatch(grid, spatials, new Vector3f(0.0f, 0.0f, 2.0f), 6.0f);
+		assertQueriesMatch(grid, spatials, new Vector3f(0.0f, 0.0f, 0.0f), 100.0f);
+	}
+
+	@Test
+	public void parallelUpdateRelocatesSpatials() {
+		Scene scene = new Scene();
+		List<Spatial> spatials = new ArrayList<>();
+		for (int i = 0; i < SUBTREES; i++) {
+			Node subtree = new Node("Subtree-" + i);
+			subtree.setPosition(i, 0.0f, 0.0f);
+			subtree.addController((node, elapsedTime) -> node.getPosition().add(elapsedTime, elapsedTime * 2.0f, 0.0f));
+			scene.add(subtree);
+
+			for (int c = 0; c < CHILDREN; c++) {
+				Geometry geometry = new Geometry("Geometry-" + i + "-" + c, null, null);
+				geometry.setPosition(0.0f, 0.0f, c);
+				subtree.addChild(geometry);
+				spatials.add(geometry);
+			}
+		}
+		scene.setSpatialHashGrid(new SpatialHashGrid(3.0f));
+		scene.setUpdatePool(pool);
+		scene.setUpdateSplitThreshold(1);
+
+		for (int frame = 0; frame < 10; frame++) {
+			scene.update(1.5f);
+		}
+
+		SpatialHashGrid grid = scene.getSpatialHashGrid();
+		assertEquals(SUBTREES * CHILDREN, grid.size());
+		assertQueriesMatch(grid, spatials, new Vector3f(30.0f, 30.0f, 4.0f), 8.0f);
+		assertQueriesMatch(grid, spatials, new Vector3f(0.0f, 0.0f, 0.0f), 1000.0f);
+	}
+
+	@Test
+	public void geometriesAreFoundWithinTheirScaledBounds() {
+		Mesh mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {-1, -1, -1, 1, 1, 1});
+		Geometry geometry = new Geometry("Scaled", mesh, null);
+		Scene scene = new Scene();
+		scene.add(geometry);
+		scene.setSpatialHashGrid(new SpatialHashGrid(2.0f));
+		scene.update(0.0f);
+
+		SpatialHashGrid grid = scene.getSpatialHashGrid();
+		List<Spatial> found = new ArrayList<>();
+		grid.query(new Vector3f(4.0f, 0.0f, 0.0f), 1.0f, found::add);
+		assertTrue("The unscaled bounds end at x = 1", found.isEmpty());
+
+		geometry.setScale(4.0f);
+		scene.update(0.0f);
+		grid.query(new Vector3f(4.0f, 0.0f, 0.0f), 1.0f, found::add);
+		assertEquals(1, found.size());
+		assertTrue(found.get(0) == geometry);
+	}
+
+	private static void assertQueriesMatch(SpatialHashGrid grid, List<Spatial> spatials, Vector3f center, float radius) {
+		List<Spatial> expected = new ArrayList<>();
+		for (Spatial spatial : spatials) {
+			if (spatial.getWorldPosition().distance(center) <= radius) {
+				expected.add(spatial);
+			}
+		}
+		List<Spatial> actual = new ArrayList<>();
+		grid.query(center, radius, actual::add);
+		assertSameSpatials(expected, actual);
+
+		BoundingBox box = new BoundingBox(new Vector3f(center).sub(radius, radius, radius), new Vector3f(center).add(radius, radius, radius));
+		expected.clear();
+		for (Spatial spatial : spatials) {
+			Vector3f position = spatial.getWorldPosition();
+			if (position.x >= box.getMin().x && position.x <= box.getMax().x
+				&& position.y >= box.getMin().y && position.y <= box.getMax().y
+				&& position.z >= box.getMin().z && position.z <= box.getMax().z) {
+				expected.add(spatial);
+			}
+		}
+		actual.clear();
+		grid.query(box, actual::add);
+		assertSameSpatials(expected, actual);
+	}
+
+	private static void assertSameSpatials(List<Spatial> expected, List<Spatial> actual) {
+		Set<Spatial> actualSet = Collections.newSetFromMap(new IdentityHashMap<>());
+		actualSet.addAll(actual);
+		assertEquals("Each spatial must be reported once", actual.size(), actualSet.size());
+		assertEquals(expected.size(), actual.size());
+		for (Spatial spatial : expected) {
+			assertTrue(spatial.getId() + " must be reported", actualSet.contains(spatial));
+		}
+	}
+}
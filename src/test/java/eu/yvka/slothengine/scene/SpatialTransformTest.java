@@ -0,0 +1,187 @@
+package eu.yvka.slothengine.scene;
+
+import eu.yvka.slothengine.geometry.Mesh;
+import eu.yvka.slothengine.geometry.VertexBuffer;
+import eu.yvka.slothengine.material.BasicMaterial;
+import eu.yvka.slothengine.shader.Shader;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialTransformTest {
+
+	private static final float EPSILON = 1e-5f;
+
+	private Scene scene;
+	private Node parent;
+	private Node child;
+
+	@Before
+	public void setUp() {
+		scene = new Scene();
+		parent = new Node("parent");
+		child = new Node("child");
+		scene.add(parent);
+		parent.addChild(child);
+		child.setPosition(0, 1, 0);
+		scene.updateGeometricState();
+	}
+
+	@Test
+	public void parentChangesArePropagatedToDescendants() {
+		parent.setPosition(2, 0, 0);
+		scene.updateGeometricState();
+
+		assertPosition(2, 1, 0, child.getWorldPosition());
+	}
+
+	@Test
+	public void inPlaceModificationsAreDetected() {
+		parent.getPosition().add(0, 0, 3);
+		parent.getScale().set(2);
+		scene.updateGeometricState();
+
+		assertPosition(0, 2, 3, child.getWorldPosition());
+	}
+
+	@Test
+	public void worldMatrixIsCachedUntilTheNextUpdate() {
+		parent.setPosition(5, 0, 0);
+
+		assertPosition(0, 1, 0, child.getWorldPosition());
+		scene.updateGeometricState();
+		assertPosition(5, 1, 0, child.getWorldPosition());
+	}
+
+	@Test
+	public void transformStoreMatchesTheHierarchyUpdate() {
+		Scene storeScene = new Scene();
+		storeScene.setTransformStoreEnabled(true);
+		Node storeParent = new Node("parent");
+		Node storeChild = new Node("child");
+		storeScene.add(storeParent);
+		storeParent.addChild(storeChild);
+
+		for (Node node : new Node[] { parent, storeParent }) {
+			node.setPosition(1, 2, 3);
+			node.setRotation(new Quaternionf().rotateX(0.3f).rotateY(0.5f).rotateZ(0.7f));
+			node.setScale(new Vector3f(2, 1, 0.5f));
+		}
+		for (Node node : new Node[] { child, storeChild }) {
+			node.setPosition(-1, 4, 2);
+			node.setRotation(new Quaternionf().rotateY(1.2f));
+		}
+		scene.updateGeometricState();
+		storeScene.updateGeometricState();
+
+		assertTrue(storeChild.getTransformSlot() > storeParent.getTransformSlot());
+		assertSameTransform(child.getWorldMatrix(), storeChild.getWorldMatrix());
+
+		parent.setPosition(0, 0, 0);
+		storeParent.setPosition(0, 0, 0);
+		scene.updateGeometricState();
+		storeScene.updateGeometricState();
+		assertSameTransform(child.getWorldMatrix(), storeChild.getWorldMatrix());
+	}
+
+	@Test
+	public void meshBoundChangesUpdateTheWorldBound() {
+		Mesh mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 1, 1, 1});
+		Geometry geometry = new Geometry("geometry", mesh, new BasicMaterial(new Shader("Bound"), null));
+		child.addChild(geometry);
+		scene.updateGeometricState();
+		assertPosition(1, 2, 1, geometry.getWorldBound().getMax());
+
+		mesh.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 3, 3, 3});
+		scene.updateGeometricState();
+		assertPosition(3, 4, 3, geometry.getWorldBound().getMax());
+		assertPosition(3, 4, 3, parent.getWorldBound().getMax());
+	}
+
+	@Test
+	public void meshBoundChangesRecombineOnlyTheirGeometries() {
+		Mesh changing = new Mesh();
+		changing.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 1, 1, 1});
+		Mesh constant = new Mesh();
+		constant.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 1, 1, 1});
+		CountingGeometry dynamic = new CountingGeometry("dynamic", changing);
+		CountingGeometry resting = new CountingGeometry("resting", constant);
+		child.addChild(dynamic);
+		scene.add(resting);
+		scene.updateGeometricState();
+		dynamic.combinations = 0;
+		resting.combinations = 0;
+
+		changing.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 2, 2, 2});
+		scene.updateGeometricState();
+		assertEquals(1, dynamic.combinations);
+		assertEquals(0, resting.combinations);
+		assertPosition(2, 3, 2, parent.getWorldBound().getMax());
+	}
+
+	@Test
+	public void onlyDirtyBoundsAreRecombined() {
+		Mesh mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Vertex, 3, new float[] {0, 0, 0, 1, 1, 1});
+		CountingGeometry moved = new CountingGeometry("moved", mesh);
+		CountingGeometry resting = new CountingGeometry("resting", mesh);
+		child.addChild(moved);
+		scene.add(resting);
+		scene.updateGeometricState();
+		moved.combinations = 0;
+		resting.combinations = 0;
+
+		scene.updateGeometricState();
+		assertEquals(0, moved.combinations);
+		assertEquals(0, resting.combinations);
+
+		moved.setPosition(5, 0, 0);
+		scene.updateGeometricState();
+		assertEquals(1, moved.combinations);
+		assertEquals(0, resting.combinations);
+		assertPosition(6, 2, 1, parent.getWorldBound().getMax());
+		assertPosition(6, 2, 1, scene.getRootNode().getWorldBound().getMax());
+
+		child.removeChild(moved);
+		scene.updateGeometricState();
+		assertTrue(parent.getWorldBound().isEmpty());
+		assertPosition(1, 1, 1, scene.getRootNode().getWorldBound().getMax());
+	}
+
+	private static class CountingGeometry extends Geometry {
+
+		private int combinations;
+
+		CountingGeometry(String id, Mesh mesh) {
+			super(id, mesh, new BasicMaterial(new Shader("Counting"), null));
+		}
+
+		@Override
+		protected void combineWorldBound() {
+			combinations++;
+			super.combineWorldBound();
+		}
+	}
+
+	private static void assertSameTransform(Matrix4f expected, Matrix4f actual) {
+		assertPosition(expected.getTranslation(new Vector3f()), actual.getTranslation(new Vector3f()));
+		Vector3f point = new Vector3f(1, -2, 3);
+		assertPosition(expected.transformPosition(new Vector3f(point)), actual.transformPosition(new Vector3f(point)));
+	}
+
+	private static void assertPosition(Vector3f expected, Vector3f actual) {
+		assertPosition(expected.x, expected.y, expected.z, actual);
+	}
+
+	private static void assertPosition(float x, float y, float z, Vector3f position) {
+		assertEquals(x, position.x, EPSILON);
+		assertEquals(y, position.y, EPSILON);
+		assertEquals(z, position.z, EPSILON);
+	}
+}
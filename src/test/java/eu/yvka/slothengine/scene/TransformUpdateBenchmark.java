@@ -0,0 +1,93 @@
+package eu.yvka.slothengine.scene;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the world matrix update of the <code>Transformation</code> based hierarchy
+ * with the <code>TransformStore</code>, while the top level nodes of a large scene are moved every frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TransformUpdateBenchmark {
+
+	private static final int CHILDREN_PER_NODE = 4;
+
+	@Param({"false", "true"})
+	private boolean transformStore;
+
+	@Param({"100000"})
+	private int nodes;
+
+	private Scene scene;
+	private List<Node> movedNodes;
+	private float time;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		scene = new Scene();
+		scene.setTransformStoreEnabled(transformStore);
+		movedNodes = new ArrayList<>();
+
+		List<Node> level = new ArrayList<>();
+		level.add(scene.getRootNode());
+		int created = 0;
+		while (created < nodes) {
+			List<Node> nextLevel = new ArrayList<>();
+			for (int i = 0; i < level.size() && created < nodes; i++) {
+				for (int c = 0; c < CHILDREN_PER_NODE && created < nodes; c++) {
+					Node child = new Node("Node-" + created++);
+					child.setPosition(c, 1.0f, 0.0f);
+					level.get(i).addChild(child);
+					nextLevel.add(child);
+				}
+			}
+			if (movedNodes.isEmpty()) {
+				movedNodes.addAll(nextLevel);
+			}
+			level = nextLevel;
+		}
+		scene.updateGeometricState();
+	}
+
+	@Benchmark
+	public void updateMovedHierarchy() {
+		time += 0.016f;
+		for (int i = 0; i < movedNodes.size(); i++) {
+			movedNodes.get(i).setPosition(i, (float) Math.sin(time), 0.0f);
+		}
+		scene.updateGeometricState();
+	}
+
+	@Benchmark
+	public void updateStaticHierarchy() {
+		scene.updateGeometricState();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(TransformUpdateBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,93 @@
+package eu.yvka.slothengine.scene.traversal;
+
+import eu.yvka.slothengine.scene.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IterativeTraverseTest {
+
+	@Test
+	public void visitsInPreOrderAndSkipsPrunedSubtrees() {
+		Node root = new Node("root");
+		Node a = new Node("a");
+		Node b = new Node("b");
+		root.addChild(a);
+		root.addChild(b);
+		a.addChild(new Node("a1"));
+		b.addChild(new Node("b1"));
+
+		List<String> visited = new ArrayList<>();
+		VisitResult result = new IterativeTraverse().traverse(root, (node) -> {
+			visited.add(node.getId());
+			return node == a ? VisitResult.SKIP_CHILDREN : VisitResult.CONTINUE;
+		});
+
+		assertEquals(VisitResult.CONTINUE, result);
+		assertEquals("[root, a, b, b1]", visited.toString());
+	}
+
+	@Test
+	public void stopEndsTheTraversal() {
+		Node root = new Node("root");
+		root.addChild(new Node("a"));
+		root.addChild(new Node("b"));
+
+		List<String> visited = new ArrayList<>();
+		VisitResult result = new IterativeTraverse().traverse(root, (node) -> {
+			visited.add(node.getId());
+			return "a".equals(node.getId()) ? VisitResult.STOP : VisitResult.CONTINUE;
+		});
+
+		assertEquals(VisitResult.STOP, result);
+		assertEquals("[root, a]", visited.toString());
+	}
+
+	@Test
+	public void deepGraphsDoNotOverflowTheStack() {
+		Node root = new Node("node0");
+		Node parent = root;
+		for (int i = 1; i < 100000; i++) {
+			Node child = new Node("node" + i);
+			parent.addChild(child);
+			parent = child;
+		}
+
+		int[] preOrder = new int[1];
+		new IterativeTraverse().traverse(root, (node) -> {
+			preOrder[0]++;
+			return VisitResult.CONTINUE;
+		});
+		List<Node> postOrder = new ArrayList<>();
+		new DepthFirstTraverse().traverse(root, postOrder::add);
+
+		assertEquals(100000, preOrder[0]);
+		assertEquals(100000, postOrder.size());
+		assertEquals(root, postOrder.get(postOrder.size() - 1));
+	}
+
+	@Test
+	public void nestedTraversalsDoNotInterfere() {
+		Node root = new Node("root");
+		root.addChild(new Node("a"));
+		root.addChild(new Node("b"));
+
+		IterativeTraverse traversal = new IterativeTraverse();
+		DepthFirstTraverse depthFirst = new DepthFirstTraverse();
+		List<String> visited = new ArrayList<>();
+		traversal.traverse(root, (node) -> {
+			visited.add(node.getId());
+			traversal.traverse(node, (inner) -> {
+				visited.add(inner.getId());
+				return VisitResult.SKIP_CHILDREN;
+			});
+			depthFirst.traverse(node, (inner) -> depthFirst.traverse(inner, (innermost) -> visited.add(innermost.getId()), 1));
+			return VisitResult.CONTINUE;
+		});
+
+		assertEquals("[root, root, a, b, root, a, a, a, b, b, b]", visited.toString());
+	}
+}
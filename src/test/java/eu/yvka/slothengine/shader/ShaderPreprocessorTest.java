@@ -0,0 +1,117 @@
+package eu.yvka.slothengine.shader;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShaderPreprocessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ShaderPreprocessor preprocessor;
+	private final List<Path> includedFiles = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		preprocessor = new ShaderPreprocessor(folder.getRoot());
+	}
+
+	@Test
+	public void includesAreReplacedByTheirContent() throws IOException {
+		File common = write("Common.glsl", "float scale;\nfloat bias;");
+
+		String result = preprocessor.process(
+			"#version 150\n#include \"Common.glsl\"\nvoid main() {}",
+			Collections.emptyMap(), includedFiles);
+
+		assertEquals(
+			"#version 150\n" +
+			"#line 1 1\n" +
+			"float scale;\n" +
+			"float bias;\n" +
+			"#line 3 0\n" +
+			"void main() {}\n", result);
+		assertEquals(Collections.singletonList(path(common)), includedFiles);
+	}
+
+	@Test
+	public void filesAreIncludedOnceAndCyclesAreBroken() throws IOException {
+		File a = write("A.glsl", "#include \"B.glsl\"\nfloat a;");
+		File b = write("B.glsl", "#include \"A.glsl\"\nfloat b;");
+
+		String result = preprocessor.process(
+			"#include \"A.glsl\"\n#include \"B.glsl\"\n#include \"A.glsl\"",
+			Collections.emptyMap(), includedFiles);
+
+		assertEquals(
+			"#line 1 1\n" +
+			"#line 1 2\n" +
+			"\n" +
+			"float b;\n" +
+			"#line 2 1\n" +
+			"float a;\n" +
+			"#line 2 0\n" +
+			"\n" +
+			"\n", result);
+		assertEquals(2, includedFiles.size());
+		assertEquals(path(a), includedFiles.get(0));
+		assertEquals(path(b), includedFiles.get(1));
+	}
+
+	@Test
+	public void aFileDoesNotIncludeItself() throws IOException {
+		File self = write("Self.glsl", "#include \"Self.glsl\"\nfloat self;");
+
+		String result = preprocessor.process(path(self), "#include \"Self.glsl\"\nfloat self;",
+			Collections.emptyMap(), includedFiles);
+
+		assertEquals("\nfloat self;\n", result);
+		assertEquals(0, includedFiles.size());
+	}
+
+	@Test
+	public void definesAreSortedBehindTheVersion() throws IOException {
+		Map<String, String> defines = new LinkedHashMap<>();
+		defines.put("MAX_LIGHTS", "8");
+		defines.put("LIGHTING", null);
+
+		String result = preprocessor.process("#version 150\nvoid main() {}", defines, includedFiles);
+
+		assertEquals(
+			"#version 150\n" +
+			"#define LIGHTING\n" +
+			"#define MAX_LIGHTS 8\n" +
+			"#line 2 0\n" +
+			"void main() {}\n", result);
+	}
+
+	@Test(expected = IOException.class)
+	public void missingIncludesAreReported() throws IOException {
+		preprocessor.process("#include \"Missing.glsl\"", Collections.emptyMap(), includedFiles);
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static Path path(File file) {
+		return file.toPath().toAbsolutePath().normalize();
+	}
+}
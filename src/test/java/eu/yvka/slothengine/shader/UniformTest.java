@@ -0,0 +1,30 @@
+package eu.yvka.slothengine.shader;
+
+import org.joml.Matrix4f;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UniformTest {
+
+	@Test
+	public void equalMatricesDontRequireAnUpdate() {
+		Uniform uniform = new Uniform(UniformHandle.of("sl_test_matrix"));
+		uniform.setValue(new Matrix4f().translation(1.0f, 2.0f, 3.0f));
+		uniform.disableUpdateRequired();
+
+		uniform.setValue(new Matrix4f().translation(1.0f, 2.0f, 3.0f));
+		assertFalse(uniform.isUpdateRequired());
+	}
+
+	@Test
+	public void signedZeroMatrixElementsRequireAnUpdate() {
+		Uniform uniform = new Uniform(UniformHandle.of("sl_test_matrix"));
+		uniform.setValue(new Matrix4f().translation(0.0f, 1.0f, 0.0f));
+		uniform.disableUpdateRequired();
+
+		uniform.setValue(new Matrix4f().translation(-0.0f, 1.0f, 0.0f));
+		assertTrue(uniform.isUpdateRequired());
+	}
+}